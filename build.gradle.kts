@@ -9,6 +9,7 @@ import java.util.concurrent.TimeUnit
 plugins {
     java
     `maven-publish`
+    alias(libs.plugins.jmh)
 }
 
 group = "com.Bumenfeld"
@@ -97,11 +98,17 @@ dependencies {
     implementation(libs.slf4j.api)
     implementation(libs.snakeyaml)
     implementation(libs.okhttp)
+    // streaming parser for bulk whitelist import/export; JDA already ships it
+    implementation(libs.jackson.core)
     implementation(libs.jda) {
         exclude(group = "club.minnced", module = "opus-java")
         exclude(module = "tink")
     }
     runtimeOnly(libs.slf4j.simple)
+
+    // deliberately the real server jar, not stubs: resolved from hytale-release or the
+    // Gradle cache, so benchmarks need no live server but do need the artifact
+    jmh("com.hypixel.hytale:Server:latest.release")
 }
 java {
     toolchain {
@@ -109,7 +116,101 @@ java {
     }
 }
 
+// offline load harnesses: fake Discord, join storms; never packaged into the plugin jar
+val loadtest: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+configurations.named(loadtest.implementationConfigurationName) {
+    extendsFrom(configurations.implementation.get())
+}
+configurations.named(loadtest.runtimeOnlyConfigurationName) {
+    extendsFrom(configurations.runtimeOnly.get())
+}
+
+dependencies {
+    "loadtestImplementation"("com.hypixel.hytale:Server:latest.release")
+}
+
+// the whitelist writer saves the provider's file relative to the working directory
+val loadWorkingDir = layout.buildDirectory.dir("loadtest")
+
+fun JavaExec.runFromLoadWorkingDir() {
+    workingDir = loadWorkingDir.get().asFile
+    doFirst { workingDir.mkdirs() }
+}
+
+val loadArgs = providers.gradleProperty("loadArgs")
+    .map { it.split(' ').filter(String::isNotBlank) }
+    .orElse(emptyList())
+
+tasks.register<JavaExec>("discordLoadTest") {
+    group = "verification"
+    description = "Drives the Discord bot against a local fake Discord API."
+    classpath = loadtest.runtimeClasspath
+    mainClass.set("com.bumenfeld.loadtest.discord.DiscordLoadHarness")
+    argumentProviders.add(CommandLineArgumentProvider { loadArgs.get() })
+    runFromLoadWorkingDir()
+}
+
+tasks.register<JavaExec>("joinStormTest") {
+    group = "verification"
+    description = "Connects a burst of synthetic players through the whitelist gate."
+    classpath = loadtest.runtimeClasspath
+    mainClass.set("com.bumenfeld.loadtest.join.JoinStormHarness")
+    argumentProviders.add(CommandLineArgumentProvider { loadArgs.get() })
+    runFromLoadWorkingDir()
+}
+
+tasks.register<JavaExec>("stressTest") {
+    group = "verification"
+    description = "Races whitelist issuance, validation, revocation and shutdown against each other."
+    classpath = loadtest.runtimeClasspath
+    mainClass.set("com.bumenfeld.loadtest.stress.WhitelistStressSuite")
+    argumentProviders.add(CommandLineArgumentProvider { loadArgs.get() })
+    runFromLoadWorkingDir()
+}
+
+tasks.register<JavaExec>("storeConformance") {
+    group = "verification"
+    description = "Runs the shared WhitelistStore conformance checks against every storage backend."
+    classpath = loadtest.runtimeClasspath
+    mainClass.set("com.bumenfeld.loadtest.store.WhitelistStoreConformance")
+    argumentProviders.add(CommandLineArgumentProvider { loadArgs.get() })
+    runFromLoadWorkingDir()
+}
+
+tasks.register<JavaExec>("timerWheelCheck") {
+    group = "verification"
+    description = "Checks that recurring announcements re-armed from the timer wheel fire on their deadlines."
+    classpath = loadtest.runtimeClasspath
+    mainClass.set("com.bumenfeld.announcement.TimerWheelConformance")
+    argumentProviders.add(CommandLineArgumentProvider { loadArgs.get() })
+    runFromLoadWorkingDir()
+}
+
+val generateLocaleIndex = tasks.register("generateLocaleIndex") {
+    val localesDir = layout.projectDirectory.dir("src/main/resources/locales")
+    val outputDir = layout.buildDirectory.dir("generated/locale-index")
+    inputs.dir(localesDir)
+    outputs.dir(outputDir)
+
+    doLast {
+        val indexFile = outputDir.get().file("locales/index.list").asFile
+        indexFile.parentFile.mkdirs()
+        val entries = localesDir.asFile
+            .listFiles { file -> file.isFile && file.name.endsWith(".properties") }
+            .orEmpty()
+            .map { it.name }
+            .sorted()
+        indexFile.writeText(entries.joinToString(separator = "\n", postfix = "\n"))
+    }
+}
+
 tasks.named<ProcessResources>("processResources") {
+    from(generateLocaleIndex)
+
     val replaceProperties = mapOf(
         "plugin_group" to findProperty("plugin_group"),
         "plugin_maven_group" to findProperty("plugin_maven_group"),
@@ -162,6 +263,17 @@ tasks.withType<Jar> {
     }
 }
 
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("reports/jmh/results.json"))
+    includes.addAll(
+        providers.gradleProperty("jmhIncludes")
+            .map { it.split(',').filter(String::isNotBlank) }
+            .orElse(emptyList())
+    )
+}
+
 tasks.withType<JavaCompile> {
     options.compilerArgs.add("-Xlint:deprecation")
 }
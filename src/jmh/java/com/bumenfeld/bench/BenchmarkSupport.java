@@ -0,0 +1,53 @@
+package com.bumenfeld.bench;
+
+import com.hypixel.hytale.logger.HytaleLogger;
+import com.hypixel.hytale.server.core.modules.accesscontrol.provider.HytaleWhitelistProvider;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Offline fixtures for the benchmarks. Nothing here boots a server: the
+ * whitelist provider is a bare instance that is never loaded from or saved to
+ * disk, and all SQLite files live in a throwaway temp directory.
+ */
+public final class BenchmarkSupport {
+
+    private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+
+    private BenchmarkSupport() {
+        // utility class
+    }
+
+    public static HytaleLogger logger() {
+        return LOGGER;
+    }
+
+    public static HytaleWhitelistProvider whitelistProvider() {
+        return new HytaleWhitelistProvider();
+    }
+
+    public static Path createTempDirectory(String prefix) {
+        try {
+            return Files.createTempDirectory(prefix);
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    public static void deleteRecursively(Path directory) {
+        if (directory == null || Files.notExists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths
+                .sorted(Comparator.reverseOrder())
+                .forEach(path -> path.toFile().delete());
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+}
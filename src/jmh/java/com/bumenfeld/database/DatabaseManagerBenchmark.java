@@ -0,0 +1,95 @@
+package com.bumenfeld.database;
+
+import com.bumenfeld.bench.BenchmarkSupport;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** CRUD cost of {@link DatabaseManager} against a temporary SQLite file. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatabaseManagerBenchmark {
+
+    @Param({ "1000", "100000" })
+    public int rows;
+
+    private Path directory;
+    private DatabaseManager databaseManager;
+    private UUID[] players;
+    private String[] codes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        directory = BenchmarkSupport.createTempDirectory("jmh-db");
+        databaseManager = new DatabaseManager(directory, BenchmarkSupport.logger());
+        databaseManager.initialize();
+        players = new UUID[rows];
+        codes = new String[rows];
+        for (int i = 0; i < rows; i++) {
+            players[i] = UUID.randomUUID();
+            codes[i] = String.format("%06d", i);
+            databaseManager.upsertCode(players[i], codes[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        databaseManager.close();
+        BenchmarkSupport.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public Optional<WhitelistStore.WhitelistCode> findByPlayer() {
+        return databaseManager.findByPlayer(players[randomIndex()]);
+    }
+
+    @Benchmark
+    public Optional<WhitelistStore.WhitelistCode> findByCode() {
+        return databaseManager.findByCode(codes[randomIndex()]);
+    }
+
+    @Benchmark
+    public void upsertExisting() {
+        int index = randomIndex();
+        databaseManager.upsertCode(players[index], codes[index]);
+    }
+
+    @Benchmark
+    public boolean upsertAndDelete() {
+        UUID player = UUID.randomUUID();
+        databaseManager.upsertCode(player, "X" + player.hashCode());
+        return databaseManager.delete(player);
+    }
+
+    @Benchmark
+    public boolean markValidated() {
+        // re-arm the row so every invocation performs a real update
+        int index = randomIndex();
+        databaseManager.upsertCode(players[index], codes[index]);
+        return databaseManager.markValidated(players[index], codes[index], Instant.now());
+    }
+
+    private int randomIndex() {
+        return ThreadLocalRandom.current().nextInt(rows);
+    }
+}
@@ -0,0 +1,165 @@
+package com.bumenfeld.database;
+
+import com.bumenfeld.bench.BenchmarkSupport;
+import com.bumenfeld.database.WhitelistStore.ValidatedEntry;
+import com.bumenfeld.metrics.MetricsRegistry;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SQLite against the mapped log at a million stored players: throughput of
+ * {@link WhitelistCodeService#ensureCode} and
+ * {@link WhitelistCodeService#validateCode}, and the time to open a store of
+ * that size. The seeded store is copied before the service starts, so
+ * {@link #startup()} always reopens the same untouched files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageBackendBenchmark {
+
+    private static final int KNOWN_PLAYERS = 10_000;
+    private static final int IMPORT_BATCH = 1_000;
+
+    @Param({ "sqlite", "mapped" })
+    public String backend;
+
+    @Param({ "1000000" })
+    public int rows;
+
+    private Path directory;
+    private Path startupDirectory;
+    private WhitelistCodeService service;
+    private UUID[] knownPlayers;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        directory = BenchmarkSupport.createTempDirectory("jmh-backend");
+        startupDirectory = BenchmarkSupport.createTempDirectory("jmh-backend-startup");
+        WhitelistStore seed = open(directory);
+        seed.initialize();
+        Instant validatedAt = Instant.now().minusSeconds(86_400);
+        List<ValidatedEntry> batch = new ArrayList<>(IMPORT_BATCH);
+        for (int i = 0; i < rows; i++) {
+            batch.add(new ValidatedEntry(UUID.randomUUID(), validatedAt.plusMillis(i)));
+            if (batch.size() == IMPORT_BATCH) {
+                seed.importValidated(batch);
+                batch.clear();
+            }
+        }
+        seed.importValidated(batch);
+        seed.close();
+        copyFiles(directory, startupDirectory);
+
+        service = new WhitelistCodeService(
+            open(directory),
+            directory,
+            BenchmarkSupport.whitelistProvider(),
+            BenchmarkSupport.logger(),
+            new MetricsRegistry()
+        );
+        service.initialize();
+        knownPlayers = new UUID[KNOWN_PLAYERS];
+        for (int i = 0; i < KNOWN_PLAYERS; i++) {
+            knownPlayers[i] = UUID.randomUUID();
+            service.ensureCode(knownPlayers[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        service.close();
+        BenchmarkSupport.deleteRecursively(directory);
+        BenchmarkSupport.deleteRecursively(startupDirectory);
+    }
+
+    /** Reconnect of a player who already holds an unvalidated code. */
+    @Benchmark
+    public String ensureCodeExisting() {
+        return service.ensureCode(
+            knownPlayers[ThreadLocalRandom.current().nextInt(KNOWN_PLAYERS)]
+        );
+    }
+
+    /** First connect of an unknown player: lookup, generation and insert. */
+    @Benchmark
+    public String ensureCodeNew() {
+        UUID player = UUID.randomUUID();
+        String code = service.ensureCode(player);
+        service.revoke(player, false);
+        return code;
+    }
+
+    /** Full issue-and-validate round trip, including the whitelist mutation. */
+    @Benchmark
+    public WhitelistCodeService.ValidateResult validateCode() {
+        UUID player = UUID.randomUUID();
+        String code = service.ensureCode(player);
+        WhitelistCodeService.ValidateResult result = service.validateCode(code);
+        service.revoke(player, true);
+        return result;
+    }
+
+    /** Opening the seeded store and answering the first lookup. */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 10)
+    public boolean startup() {
+        WhitelistStore store = open(startupDirectory);
+        try {
+            store.initialize();
+            return store.findByPlayer(knownPlayers[0]).isPresent();
+        } finally {
+            store.close();
+        }
+    }
+
+    private WhitelistStore open(Path storeDirectory) {
+        return StorageBackend
+            .fromConfig(backend)
+            .open(
+                new DatabaseManager(storeDirectory, BenchmarkSupport.logger()),
+                BenchmarkSupport.logger(),
+                new MetricsRegistry()
+            );
+    }
+
+    private static void copyFiles(Path from, Path to) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(from)) {
+            for (Path file : files) {
+                if (Files.isRegularFile(file)) {
+                    Files.copy(file, to.resolve(file.getFileName()));
+                }
+            }
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+}
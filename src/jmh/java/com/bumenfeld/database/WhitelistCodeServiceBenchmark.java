@@ -0,0 +1,96 @@
+package com.bumenfeld.database;
+
+import com.bumenfeld.bench.BenchmarkSupport;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Code issuance and validation through {@link WhitelistCodeService}. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WhitelistCodeServiceBenchmark {
+
+    private static final int KNOWN_PLAYERS = 10_000;
+
+    private Path directory;
+    private WhitelistCodeService service;
+    private UUID[] knownPlayers;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        directory = BenchmarkSupport.createTempDirectory("jmh-codes");
+        DatabaseManager databaseManager =
+            new DatabaseManager(directory, BenchmarkSupport.logger());
+        service = new WhitelistCodeService(
+            databaseManager,
+            BenchmarkSupport.whitelistProvider(),
+            BenchmarkSupport.logger()
+        );
+        service.initialize();
+        knownPlayers = new UUID[KNOWN_PLAYERS];
+        for (int i = 0; i < KNOWN_PLAYERS; i++) {
+            knownPlayers[i] = UUID.randomUUID();
+            service.ensureCode(knownPlayers[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        service.close();
+        BenchmarkSupport.deleteRecursively(directory);
+    }
+
+    /** Reconnect of a player who already holds an unvalidated code. */
+    @Benchmark
+    public String ensureCodeExisting() {
+        return service.ensureCode(
+            knownPlayers[ThreadLocalRandom.current().nextInt(KNOWN_PLAYERS)]
+        );
+    }
+
+    /** First connect of an unknown player: lookup, generation and insert. */
+    @Benchmark
+    public String ensureCodeNew() {
+        UUID player = UUID.randomUUID();
+        String code = service.ensureCode(player);
+        service.revoke(player, false);
+        return code;
+    }
+
+    @Benchmark
+    public String generateUniqueCode() {
+        return service.generateUniqueCode();
+    }
+
+    /** Full issue-and-validate round trip, including the whitelist mutation. */
+    @Benchmark
+    public WhitelistCodeService.ValidateResult validateCode() {
+        UUID player = UUID.randomUUID();
+        String code = service.ensureCode(player);
+        WhitelistCodeService.ValidateResult result = service.validateCode(code);
+        service.revoke(player, true);
+        return result;
+    }
+
+    @Benchmark
+    public WhitelistCodeService.ValidateResult validateUnknownCode() {
+        return service.validateCode("ZZZZZZ");
+    }
+}
@@ -0,0 +1,134 @@
+package com.bumenfeld.database;
+
+import com.bumenfeld.bench.BenchmarkSupport;
+import com.bumenfeld.metrics.MetricsRegistry;
+import com.bumenfeld.util.UuidHashSet;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Whitelist membership checks at connect time: the primitive mirror against
+ * the boxed {@code HashSet} the provider keeps and a concurrent key set.
+ * Probes cycle through a shuffled array so lookups miss the cache the way
+ * real connects do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class WhitelistMirrorBenchmark {
+
+    private static final int PROBES = 1 << 16;
+
+    @Param({"100000"})
+    public int whitelisted;
+
+    private WhitelistMirror mirror;
+    private UuidHashSet primitive;
+    private Set<UUID> boxed;
+    private Set<UUID> concurrent;
+    private UUID[] members;
+    private UUID[] strangers;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        UUID[] players = new UUID[whitelisted];
+        for (int i = 0; i < whitelisted; i++) {
+            players[i] = UUID.randomUUID();
+        }
+        primitive = UuidHashSet.of(Arrays.asList(players));
+        boxed = new HashSet<>(Arrays.asList(players));
+        concurrent = ConcurrentHashMap.newKeySet(whitelisted);
+        concurrent.addAll(boxed);
+        mirror = new WhitelistMirror(
+            BenchmarkSupport.whitelistProvider(),
+            BenchmarkSupport.logger(),
+            new MetricsRegistry()
+        );
+        mirror.addedAll(Arrays.asList(players));
+
+        members = new UUID[PROBES];
+        strangers = new UUID[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            // fresh UUID instances so boxed lookups pay the equals() they pay in production
+            UUID member = players[(int) ((i * 2654435761L) % whitelisted)];
+            members[i] = new UUID(member.getMostSignificantBits(), member.getLeastSignificantBits());
+            strangers[i] = UUID.randomUUID();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        int next;
+
+        int advance() {
+            next = (next + 1) & (PROBES - 1);
+            return next;
+        }
+    }
+
+    /** The connect path for a whitelisted player. */
+    @Benchmark
+    public boolean mirrorHit(Cursor cursor) {
+        return mirror.contains(members[cursor.advance()]);
+    }
+
+    /** A refused player: snapshot miss confirmed against the provider. */
+    @Benchmark
+    public boolean mirrorMiss(Cursor cursor) {
+        return mirror.contains(strangers[cursor.advance()]);
+    }
+
+    @Benchmark
+    public boolean primitiveHit(Cursor cursor) {
+        return primitive.contains(members[cursor.advance()]);
+    }
+
+    @Benchmark
+    public boolean primitiveMiss(Cursor cursor) {
+        return primitive.contains(strangers[cursor.advance()]);
+    }
+
+    @Benchmark
+    public boolean hashSetHit(Cursor cursor) {
+        return boxed.contains(members[cursor.advance()]);
+    }
+
+    @Benchmark
+    public boolean hashSetMiss(Cursor cursor) {
+        return boxed.contains(strangers[cursor.advance()]);
+    }
+
+    @Benchmark
+    public boolean concurrentSetHit(Cursor cursor) {
+        return concurrent.contains(members[cursor.advance()]);
+    }
+
+    /** Cost of one reconciliation-sized rebuild. */
+    @Benchmark
+    @Threads(1)
+    public UuidHashSet rebuild() {
+        return UuidHashSet.of(boxed);
+    }
+}
@@ -0,0 +1,137 @@
+package com.bumenfeld.database;
+
+import com.bumenfeld.bench.BenchmarkSupport;
+import com.bumenfeld.database.WhitelistStore.WhitelistCode;
+import com.bumenfeld.metrics.MetricsRegistry;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The same {@link WhitelistStore} workload against every storage backend, so
+ * a new backend can be compared with SQLite on the connect path (lookups,
+ * issuance) and the background paths (batch lookups, validated streaming).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WhitelistStoreBenchmark {
+
+    private static final int BATCH = 500;
+
+    @Param({ "sqlite", "memory", "mapped" })
+    public String backend;
+
+    @Param({ "100000" })
+    public int rows;
+
+    private Path directory;
+    private WhitelistStore store;
+    private UUID[] players;
+    private String[] codes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        directory = BenchmarkSupport.createTempDirectory("jmh-store");
+        store = StorageBackend
+            .fromConfig(backend)
+            .open(
+                new DatabaseManager(directory, BenchmarkSupport.logger()),
+                BenchmarkSupport.logger(),
+                new MetricsRegistry()
+            );
+        store.initialize();
+        players = new UUID[rows];
+        codes = new String[rows];
+        for (int i = 0; i < rows; i++) {
+            players[i] = UUID.randomUUID();
+            codes[i] = String.format("%06d", i);
+            store.upsertCode(players[i], codes[i]);
+            if (i % 2 == 0) {
+                store.markValidated(players[i], codes[i], Instant.now());
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        store.close();
+        BenchmarkSupport.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public Optional<WhitelistCode> findByPlayer() {
+        return store.findByPlayer(players[randomIndex()]);
+    }
+
+    @Benchmark
+    public Optional<WhitelistCode> findByCode() {
+        return store.findByCode(codes[randomIndex()]);
+    }
+
+    /** Reconnect of a player with a pending code: the stored code comes back. */
+    @Benchmark
+    public Optional<String> issueExisting() {
+        int index = randomIndex() | 1;
+        return store.issueCode(players[index < rows ? index : 1], "REISSUE");
+    }
+
+    @Benchmark
+    public boolean issueAndDelete() {
+        UUID player = UUID.randomUUID();
+        // short enough for the mapped log's fixed-width code field
+        store.issueCode(player, "N" + Long.toHexString(player.getLeastSignificantBits()));
+        return store.delete(player);
+    }
+
+    @Benchmark
+    public Map<UUID, WhitelistCode> findByPlayersBatch() {
+        return store.findByPlayers(randomPlayers());
+    }
+
+    @Benchmark
+    public Set<UUID> filterValidatedBatch() {
+        return store.filterValidated(randomPlayers());
+    }
+
+    @Benchmark
+    public int streamValidatedPage() {
+        UUID after = players[randomIndex()];
+        return store.streamValidatedPlayers(after, BATCH, player -> {});
+    }
+
+    private List<UUID> randomPlayers() {
+        List<UUID> batch = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            batch.add(players[randomIndex()]);
+        }
+        return batch;
+    }
+
+    private int randomIndex() {
+        return ThreadLocalRandom.current().nextInt(rows);
+    }
+}
@@ -0,0 +1,43 @@
+package com.bumenfeld.discord;
+
+import java.util.concurrent.TimeUnit;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Formatting work done on every presence refresh. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatusEmbedBenchmark {
+
+    private final DiscordMessages messages = DiscordMessages.defaults();
+
+    public int online = 37;
+
+    @Benchmark
+    public String formatPresenceDescription() {
+        return DiscordBotService.formatPresenceDescription(messages, online, 100, 0);
+    }
+
+    @Benchmark
+    public MessageEmbed createStatusEmbed() {
+        return DiscordBotService.createStatusEmbed(
+            online,
+            100,
+            true,
+            messages.onlineDescription(),
+            "Bumenfeld Server Status"
+        );
+    }
+}
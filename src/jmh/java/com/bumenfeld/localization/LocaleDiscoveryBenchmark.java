@@ -0,0 +1,127 @@
+package com.bumenfeld.localization;
+
+import com.bumenfeld.bench.BenchmarkSupport;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Locale discovery at startup, before and after the build-time index: the
+ * old path walked every entry of the shaded plugin jar looking for
+ * {@code locales/*.properties}, the new one reads {@code locales/index.list}.
+ * Both run against a synthetic jar with {@code entries} class files, roughly
+ * what JDA and its dependencies contribute, and the same bundled locales.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocaleDiscoveryBenchmark {
+
+    private static final String[] LOCALES = { "de", "en", "es", "fr", "it", "nl", "pl", "pt" };
+
+    @Param({ "20000" })
+    public int entries;
+
+    private Path directory;
+    private JarFile jar;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = BenchmarkSupport.createTempDirectory("locale-discovery-bench");
+        Path jarPath = directory.resolve("plugin.jar");
+        byte[] classBytes = new byte[256];
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jarPath))) {
+            for (int i = 0; i < entries; i++) {
+                out.putNextEntry(new JarEntry("shaded/pkg" + (i % 200) + "/Class" + i + ".class"));
+                out.write(classBytes);
+                out.closeEntry();
+            }
+            StringBuilder index = new StringBuilder();
+            for (String locale : LOCALES) {
+                out.putNextEntry(new JarEntry("locales/" + locale + ".properties"));
+                write(out, "online-description=online\n");
+                out.closeEntry();
+                index.append(locale).append(".properties\n");
+            }
+            out.putNextEntry(new JarEntry("locales/index.list"));
+            write(out, index.toString());
+            out.closeEntry();
+        }
+        // the plugin class loader already holds its jar open
+        jar = new JarFile(jarPath.toFile());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        jar.close();
+        BenchmarkSupport.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public List<String> scanJarEntries() {
+        List<String> resources = new ArrayList<>();
+        Enumeration<JarEntry> jarEntries = jar.entries();
+        while (jarEntries.hasMoreElements()) {
+            JarEntry jarEntry = jarEntries.nextElement();
+            String name = jarEntry.getName();
+            if (!jarEntry.isDirectory() &&
+                name.startsWith("locales/") &&
+                name.endsWith(".properties")) {
+                resources.add(name);
+            }
+        }
+        return resources;
+    }
+
+    @Benchmark
+    public List<String> readIndex() throws IOException {
+        List<String> resources = new ArrayList<>();
+        try (
+            InputStream stream = jar.getInputStream(jar.getEntry("locales/index.list"));
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(stream, StandardCharsets.UTF_8)
+            )
+        ) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String name = line.trim();
+                if (!name.isEmpty() && name.endsWith(".properties")) {
+                    resources.add("locales/" + name);
+                }
+            }
+        }
+        return resources;
+    }
+
+    private static void write(OutputStream out, String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,36 @@
+package com.bumenfeld.localization;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocalizationBenchmark {
+
+    private static final String LOCALE_JSON = """
+        {
+          "language": "de",
+          "online-description": "Server ist \\"online\\"",
+          "offline-description": "Server wurde heruntergefahren",
+          "presence-format": "Spieler {online}/{max}"
+        }
+        """;
+
+    @Benchmark
+    public Map<String, String> parseJson() {
+        return LocalizationService.parseJson(LOCALE_JSON);
+    }
+}
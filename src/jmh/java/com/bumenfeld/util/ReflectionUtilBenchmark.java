@@ -0,0 +1,86 @@
+package com.bumenfeld.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Field;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Resolving the whitelist backing set the way {@code WhitelistCodeService}
+ * used to (five {@code getDeclaredField} + {@code setAccessible} probes per
+ * call) against the cached {@link MethodHandle} getter it uses now.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReflectionUtilBenchmark {
+
+    private static final String[] CANDIDATES = {
+        "whitelist",
+        "mutableWhitelist",
+        "mutableList",
+        "list",
+        "backingWhitelist",
+    };
+
+    private Provider provider;
+    private MethodHandle resolved;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        provider = new Provider();
+        resolved = ReflectionUtil.fieldGetter(Provider.class, "list").orElseThrow();
+    }
+
+    /** The previous per-call lookup, reproduced verbatim for comparison. */
+    @Benchmark
+    public Object perCallReflection() {
+        for (String name : CANDIDATES) {
+            try {
+                Field field = provider.getClass().getDeclaredField(name);
+                field.setAccessible(true);
+                Object value = field.get(provider);
+                if (value instanceof Set<?>) {
+                    return value;
+                }
+            } catch (NoSuchFieldException | IllegalAccessException ignored) {
+                // next candidate
+            }
+        }
+        return null;
+    }
+
+    /** Cache lookup plus handle access, as {@code getPublic} now does. */
+    @Benchmark
+    public Object cachedLookup() {
+        return ReflectionUtil.getPublic(Set.class, provider, "list");
+    }
+
+    /** Handle already in hand, the steady state of the whitelist fallback. */
+    @Benchmark
+    public Object resolvedHandle() {
+        return ReflectionUtil.get(resolved, provider);
+    }
+
+    /** Stand-in with the backing set under the fourth candidate name. */
+    static final class Provider {
+
+        private final Set<UUID> list = new HashSet<>();
+    }
+}
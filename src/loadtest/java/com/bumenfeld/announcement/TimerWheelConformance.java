@@ -0,0 +1,111 @@
+package com.bumenfeld.announcement;
+
+import com.bumenfeld.loadtest.HarnessArguments;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Drives {@link HashedTimerWheel} the way {@link AnnouncementScheduler} does,
+ * re-arming recurring entries from inside the expiry callback, and checks
+ * that every firing lands on its deadline. Intervals that are a multiple of
+ * the wheel size re-arm into the bucket being walked, which is where an early
+ * or repeated firing would show up. Lives in the scheduler's package because
+ * the wheel is package-private.
+ *
+ * <p>Arguments, all optional: {@code cycles=4}. Prints PASS/FAIL per check;
+ * exits non-zero on any failure.
+ */
+public final class TimerWheelConformance {
+
+    private static final long TICK_MILLIS = 1_000L;
+    private static final int WHEEL_SIZE = 512;
+    private static final long[] INTERVAL_SECONDS = { 60, 511, 512, 513, 1_024, 7_680 };
+
+    private TimerWheelConformance() {
+        // entry point only
+    }
+
+    public static void main(String[] args) {
+        HarnessArguments arguments = HarnessArguments.parse(args);
+        int cycles = Math.max(2, arguments.intValue("cycles", 4));
+
+        Map<String, Runnable> checks = new LinkedHashMap<>();
+        for (long intervalSeconds : INTERVAL_SECONDS) {
+            checks.put("recurring-" + intervalSeconds + "s", () -> recurring(intervalSeconds, cycles));
+        }
+        checks.put("cancel-from-callback", TimerWheelConformance::cancelFromCallback);
+
+        int failures = 0;
+        for (Map.Entry<String, Runnable> entry : checks.entrySet()) {
+            try {
+                entry.getValue().run();
+                System.out.printf("PASS %s%n", entry.getKey());
+            } catch (RuntimeException failure) {
+                failures++;
+                System.out.printf("FAIL %-24s %s%n", entry.getKey(), failure.getMessage());
+            }
+        }
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /** One recurring entry, re-armed from its own callback, fires exactly once per interval. */
+    private static void recurring(long intervalSeconds, int cycles) {
+        long intervalMillis = intervalSeconds * 1_000L;
+        HashedTimerWheel<Long> wheel = new HashedTimerWheel<>(TICK_MILLIS, WHEEL_SIZE, 0L);
+        List<Long> firedAt = new ArrayList<>();
+        long[] now = { 0L };
+        wheel.schedule(intervalMillis, intervalMillis);
+        // shares the bucket, many turns out, so the walk goes on past the re-armed entry
+        long bystander = intervalMillis + WHEEL_SIZE * TICK_MILLIS * 100;
+        wheel.schedule(-1L, bystander);
+        long end = intervalMillis * cycles;
+        while (now[0] < end) {
+            now[0] += TICK_MILLIS;
+            wheel.advance(now[0], deadline -> {
+                if (deadline < 0) {
+                    throw new IllegalStateException("bystander fired at " + now[0] + " ms");
+                }
+                firedAt.add(now[0]);
+                if (firedAt.size() > cycles) {
+                    throw new IllegalStateException("fired " + firedAt.size() + " times by " + now[0] + " ms");
+                }
+                // AnnouncementScheduler.reschedule: next run one interval after the last
+                wheel.schedule(deadline + intervalMillis, deadline + intervalMillis);
+            });
+        }
+        for (int cycle = 1; cycle <= cycles; cycle++) {
+            long expected = intervalMillis * cycle;
+            long actual = cycle <= firedAt.size() ? firedAt.get(cycle - 1) : -1;
+            if (actual != expected) {
+                throw new IllegalStateException(
+                    "firing " + cycle + ": expected at " + expected + " ms but got " + actual + " ms " + firedAt
+                );
+            }
+        }
+        if (wheel.size() != 2) {
+            throw new IllegalStateException("expected the next firing and the bystander armed, size=" + wheel.size());
+        }
+    }
+
+    /** A callback cancelling an entry due in the same tick stops it from firing. */
+    private static void cancelFromCallback() {
+        HashedTimerWheel<String> wheel = new HashedTimerWheel<>(TICK_MILLIS, WHEEL_SIZE, 0L);
+        List<String> fired = new ArrayList<>();
+        List<HashedTimerWheel.Timeout<String>> armed = new ArrayList<>();
+        armed.add(wheel.schedule("first", 5_000L));
+        armed.add(wheel.schedule("second", 5_000L));
+        wheel.advance(5_000L, payload -> {
+            fired.add(payload);
+            if (payload.equals("first")) {
+                wheel.cancel(armed.get(1));
+            }
+        });
+        if (!fired.equals(List.of("first")) || wheel.size() != 0) {
+            throw new IllegalStateException("fired " + fired + ", size=" + wheel.size());
+        }
+    }
+}
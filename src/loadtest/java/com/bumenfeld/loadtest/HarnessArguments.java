@@ -0,0 +1,49 @@
+package com.bumenfeld.loadtest;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/** {@code key=value} command-line arguments shared by the load harnesses. */
+public final class HarnessArguments {
+
+    private final Map<String, String> values;
+
+    private HarnessArguments(Map<String, String> values) {
+        this.values = values;
+    }
+
+    public static HarnessArguments parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException(
+                    "Expected key=value argument, got '" + arg + "'"
+                );
+            }
+            values.put(arg.substring(0, separator).trim(), arg.substring(separator + 1).trim());
+        }
+        return new HarnessArguments(values);
+    }
+
+    public int intValue(String key, int defaultValue) {
+        String value = values.get(key);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    public double doubleValue(String key, double defaultValue) {
+        String value = values.get(key);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    public String stringValue(String key, String defaultValue) {
+        return values.getOrDefault(key, defaultValue);
+    }
+
+    /** Durations are given in milliseconds. */
+    public Duration durationValue(String key, Duration defaultValue) {
+        String value = values.get(key);
+        return value == null ? defaultValue : Duration.ofMillis(Long.parseLong(value));
+    }
+}
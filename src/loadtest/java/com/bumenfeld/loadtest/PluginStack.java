@@ -0,0 +1,189 @@
+package com.bumenfeld.loadtest;
+
+import com.bumenfeld.announcement.AnnouncementQueue;
+import com.bumenfeld.announcement.AnnouncementScheduler;
+import com.bumenfeld.announcement.GameAnnouncementService;
+import com.bumenfeld.database.DatabaseManager;
+import com.bumenfeld.database.WhitelistCodeService;
+import com.bumenfeld.discord.DiscordBotService;
+import com.bumenfeld.discord.DiscordConfig;
+import com.bumenfeld.loadtest.discord.FakeDiscordServer;
+import com.bumenfeld.localization.LocalizationService;
+import com.bumenfeld.metrics.LatencyHistogram;
+import com.bumenfeld.metrics.MetricsRegistry;
+import com.bumenfeld.player.ConnectionGate;
+import com.bumenfeld.player.PlayerRegistry;
+import com.hypixel.hytale.logger.HytaleLogger;
+import com.hypixel.hytale.server.core.modules.accesscontrol.provider.HytaleWhitelistProvider;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * The plugin's services wired the way {@code DiscordCompanion} wires them, but
+ * against a throwaway data directory, a bare whitelist provider and, when
+ * given one, a {@link FakeDiscordServer}. Nothing here needs a running
+ * Hytale server or network access.
+ */
+public final class PluginStack implements AutoCloseable {
+
+    private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+
+    private final Path dataDirectory;
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final PlayerRegistry playerRegistry = new PlayerRegistry();
+    private final HytaleWhitelistProvider whitelistProvider;
+    private final DatabaseManager databaseManager;
+    private final WhitelistCodeService whitelistCodeService;
+    private final GameAnnouncementService announcementService;
+    private final AnnouncementQueue announcementQueue;
+    private final AnnouncementScheduler announcementScheduler;
+    private final LocalizationService localizationService;
+    private final DiscordBotService discordBotService;
+    private final ConnectionGate connectionGate;
+
+    private volatile DiscordConfig configuration = DiscordConfig.defaults();
+
+    public PluginStack(HytaleWhitelistProvider whitelistProvider, FakeDiscordServer discord) {
+        this.whitelistProvider =
+            Objects.requireNonNull(whitelistProvider, "whitelistProvider");
+        try {
+            this.dataDirectory = Files.createTempDirectory("discord-companion-load");
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        this.databaseManager = new DatabaseManager(dataDirectory, LOGGER, metrics);
+        this.whitelistCodeService = new WhitelistCodeService(
+            databaseManager,
+            whitelistProvider,
+            LOGGER,
+            metrics
+        );
+        this.whitelistCodeService.initialize();
+        this.announcementService = new GameAnnouncementService(LOGGER, playerRegistry);
+        this.announcementQueue = new AnnouncementQueue(announcementService, LOGGER);
+        this.announcementQueue.start();
+        this.announcementScheduler = new AnnouncementScheduler(
+            databaseManager,
+            announcementQueue,
+            LOGGER
+        );
+        this.localizationService = new LocalizationService(dataDirectory, LOGGER);
+        this.discordBotService = discord == null
+            ? null
+            : new DiscordBotService(
+                LOGGER,
+                whitelistCodeService,
+                announcementQueue,
+                announcementScheduler,
+                localizationService,
+                metrics,
+                dataDirectory,
+                discord::configure
+            );
+        this.connectionGate = new ConnectionGate(
+            whitelistCodeService,
+            () -> configuration,
+            this::refreshPresence,
+            metrics,
+            LOGGER
+        );
+    }
+
+    /** Applies {@code config} and, when a Discord stand-in is attached, logs the bot in. */
+    public void start(DiscordConfig config) {
+        this.configuration = Objects.requireNonNull(config, "config");
+        if (discordBotService != null) {
+            discordBotService.start(config);
+        }
+    }
+
+    public static HytaleLogger logger() {
+        return LOGGER;
+    }
+
+    public MetricsRegistry metrics() {
+        return metrics;
+    }
+
+    public PlayerRegistry playerRegistry() {
+        return playerRegistry;
+    }
+
+    public HytaleWhitelistProvider whitelistProvider() {
+        return whitelistProvider;
+    }
+
+    public DatabaseManager databaseManager() {
+        return databaseManager;
+    }
+
+    public WhitelistCodeService whitelistCodeService() {
+        return whitelistCodeService;
+    }
+
+    public ConnectionGate connectionGate() {
+        return connectionGate;
+    }
+
+    public AnnouncementQueue announcementQueue() {
+        return announcementQueue;
+    }
+
+    /** Throws when the stack was built without a fake Discord server. */
+    public DiscordBotService discordBotService() {
+        if (discordBotService == null) {
+            throw new IllegalStateException("Stack was built without a Discord stand-in");
+        }
+        return discordBotService;
+    }
+
+    private void refreshPresence() {
+        // same as DiscordCompanion.refreshPresence, minus the server config lookup
+        if (discordBotService != null) {
+            discordBotService.updatePresence(
+                connectionGate.onlineCount(),
+                configuration.maxPlayers()
+            );
+        }
+    }
+
+    /** One report line with the usual latency quantiles of {@code histogram}. */
+    public static String describe(LatencyHistogram histogram) {
+        return String.format(
+            Locale.ROOT,
+            "%-28s n=%-8d p50=%8.3fms p99=%8.3fms p999=%8.3fms max=%8.3fms",
+            histogram.name(),
+            histogram.count(),
+            histogram.quantileNanos(0.50) / 1e6,
+            histogram.quantileNanos(0.99) / 1e6,
+            histogram.quantileNanos(0.999) / 1e6,
+            histogram.maxNanos() / 1e6
+        );
+    }
+
+    @Override
+    public void close() {
+        if (discordBotService != null) {
+            discordBotService.close();
+        }
+        announcementScheduler.close();
+        announcementQueue.close();
+        announcementService.close();
+        whitelistCodeService.close();
+        try (Stream<Path> paths = Files.walk(dataDirectory)) {
+            paths
+                .sorted(Comparator.reverseOrder())
+                .forEach(path -> path.toFile().delete());
+        } catch (IOException exception) {
+            LOGGER
+                .atWarning()
+                .log("Unable to delete %s: %s", dataDirectory, exception.getMessage());
+        }
+    }
+}
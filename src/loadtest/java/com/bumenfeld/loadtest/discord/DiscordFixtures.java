@@ -0,0 +1,328 @@
+package com.bumenfeld.loadtest.discord;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicLong;
+import net.dv8tion.jda.api.utils.data.DataArray;
+import net.dv8tion.jda.api.utils.data.DataObject;
+
+/**
+ * Canned Discord payloads. Every object carries the fields JDA's entity
+ * builder reads, so the client cannot tell the stand-in apart from the real
+ * API for the entities the plugin touches.
+ */
+final class DiscordFixtures {
+
+    static final long APPLICATION_ID = 1_100_000_000_000_000_001L;
+    static final long BOT_USER_ID = APPLICATION_ID;
+    static final long GUILD_ID = 1_100_000_000_000_000_010L;
+    static final long STATUS_CHANNEL_ID = 1_100_000_000_000_000_020L;
+    static final long ADMIN_ROLE_ID = 1_100_000_000_000_000_030L;
+    static final long ADMIN_USER_ID = 1_100_000_000_000_000_040L;
+    static final long MEMBER_USER_ID = 1_100_000_000_000_000_050L;
+
+    private static final long DISCORD_EPOCH = 1_420_070_400_000L;
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private DiscordFixtures() {
+        // utility class
+    }
+
+    /** Snowflake with the current timestamp, unique within this JVM. */
+    static long nextSnowflake() {
+        long increment = SEQUENCE.getAndIncrement() & 0x3F_FFFFL;
+        return ((System.currentTimeMillis() - DISCORD_EPOCH) << 22) | increment;
+    }
+
+    static String timestamp() {
+        return OffsetDateTime.now(ZoneOffset.UTC).toString();
+    }
+
+    static DataObject user(long id, String username, boolean bot) {
+        return DataObject
+            .empty()
+            .put("id", Long.toUnsignedString(id))
+            .put("username", username)
+            .put("discriminator", "0000")
+            .put("global_name", null)
+            .put("avatar", null)
+            .put("bot", bot)
+            .put("system", false)
+            .put("public_flags", 0)
+            .put("flags", 0);
+    }
+
+    static DataObject selfUser() {
+        return user(BOT_USER_ID, "companion-bot", true)
+            .put("verified", true)
+            .put("mfa_enabled", false);
+    }
+
+    static DataObject member(DataObject user, boolean admin) {
+        DataArray roles = DataArray.empty();
+        if (admin) {
+            roles.add(Long.toUnsignedString(ADMIN_ROLE_ID));
+        }
+        return DataObject
+            .empty()
+            .put("user", user)
+            .put("nick", null)
+            .put("avatar", null)
+            .put("roles", roles)
+            .put("joined_at", timestamp())
+            .put("premium_since", null)
+            .put("deaf", false)
+            .put("mute", false)
+            .put("flags", 0)
+            .put("pending", false)
+            .put("communication_disabled_until", null);
+    }
+
+    static DataObject statusChannel() {
+        return DataObject
+            .empty()
+            .put("id", Long.toUnsignedString(STATUS_CHANNEL_ID))
+            .put("guild_id", Long.toUnsignedString(GUILD_ID))
+            .put("type", 0)
+            .put("name", "server-status")
+            .put("position", 0)
+            .put("permission_overwrites", DataArray.empty())
+            .put("nsfw", false)
+            .put("parent_id", null)
+            .put("topic", null)
+            .put("last_message_id", null)
+            .put("rate_limit_per_user", 0)
+            .put("flags", 0);
+    }
+
+    static DataObject role(long id, String name, long permissions, int position) {
+        return DataObject
+            .empty()
+            .put("id", Long.toUnsignedString(id))
+            .put("name", name)
+            .put("color", 0)
+            .put("hoist", false)
+            .put("icon", null)
+            .put("unicode_emoji", null)
+            .put("position", position)
+            .put("permissions", Long.toString(permissions))
+            .put("managed", false)
+            .put("mentionable", false)
+            .put("flags", 0);
+    }
+
+    static DataObject guild() {
+        return DataObject
+            .empty()
+            .put("id", Long.toUnsignedString(GUILD_ID))
+            .put("name", "Load Test Guild")
+            .put("icon", null)
+            .put("splash", null)
+            .put("discovery_splash", null)
+            .put("banner", null)
+            .put("description", null)
+            .put("owner_id", Long.toUnsignedString(ADMIN_USER_ID))
+            .put("afk_channel_id", null)
+            .put("afk_timeout", 300)
+            .put("verification_level", 0)
+            .put("default_message_notifications", 0)
+            .put("explicit_content_filter", 0)
+            .put("mfa_level", 0)
+            .put("nsfw_level", 0)
+            .put("premium_tier", 0)
+            .put("premium_subscription_count", 0)
+            .put("premium_progress_bar_enabled", false)
+            .put("preferred_locale", "en-US")
+            .put("system_channel_id", null)
+            .put("system_channel_flags", 0)
+            .put("rules_channel_id", null)
+            .put("public_updates_channel_id", null)
+            .put("safety_alerts_channel_id", null)
+            .put("vanity_url_code", null)
+            .put("max_members", 500_000)
+            .put("features", DataArray.empty())
+            .put("emojis", DataArray.empty())
+            .put("stickers", DataArray.empty())
+            .put(
+                "roles",
+                DataArray
+                    .empty()
+                    .add(role(GUILD_ID, "@everyone", 0L, 0))
+                    // 0x8 is ADMINISTRATOR
+                    .add(role(ADMIN_ROLE_ID, "admin", 0x8L, 1))
+            )
+            .put("joined_at", timestamp())
+            .put("large", false)
+            .put("unavailable", false)
+            .put("member_count", 3)
+            .put("members", DataArray.empty().add(member(selfUser(), true)))
+            .put("channels", DataArray.empty().add(statusChannel()))
+            .put("threads", DataArray.empty())
+            .put("voice_states", DataArray.empty())
+            .put("presences", DataArray.empty())
+            .put("stage_instances", DataArray.empty())
+            .put("guild_scheduled_events", DataArray.empty());
+    }
+
+    static DataObject ready(String sessionId, String resumeUrl) {
+        return DataObject
+            .empty()
+            .put("v", 10)
+            .put("user", selfUser())
+            .put(
+                "guilds",
+                DataArray
+                    .empty()
+                    .add(
+                        DataObject
+                            .empty()
+                            .put("id", Long.toUnsignedString(GUILD_ID))
+                            .put("unavailable", true)
+                    )
+            )
+            .put("session_id", sessionId)
+            .put("resume_gateway_url", resumeUrl)
+            .put(
+                "application",
+                DataObject
+                    .empty()
+                    .put("id", Long.toUnsignedString(APPLICATION_ID))
+                    .put("flags", 0)
+            )
+            .put("private_channels", DataArray.empty())
+            .put("relationships", DataArray.empty())
+            .put("presences", DataArray.empty())
+            .put("guild_join_requests", DataArray.empty())
+            .put("geo_ordered_rtc_regions", DataArray.empty())
+            .put("user_settings", DataObject.empty())
+            .put("shard", DataArray.empty().add(0).add(1))
+            .put("_trace", DataArray.empty().add("fake-discord"));
+    }
+
+    static DataObject application() {
+        return DataObject
+            .empty()
+            .put("id", Long.toUnsignedString(APPLICATION_ID))
+            .put("name", "companion-bot")
+            .put("icon", null)
+            .put("description", "")
+            .put("bot_public", false)
+            .put("bot_require_code_grant", false)
+            .put("flags", 0)
+            .put("owner", user(ADMIN_USER_ID, "admin", false))
+            .put("bot", selfUser());
+    }
+
+    static DataObject message(
+        long id,
+        long channelId,
+        DataObject author,
+        DataObject request
+    ) {
+        return DataObject
+            .empty()
+            .put("id", Long.toUnsignedString(id))
+            .put("channel_id", Long.toUnsignedString(channelId))
+            .put("guild_id", Long.toUnsignedString(GUILD_ID))
+            .put("type", 0)
+            .put("content", request.getString("content", ""))
+            .put("author", author)
+            .put("timestamp", timestamp())
+            .put("edited_timestamp", null)
+            .put("tts", false)
+            .put("mention_everyone", false)
+            .put("mentions", DataArray.empty())
+            .put("mention_roles", DataArray.empty())
+            .put("attachments", DataArray.empty())
+            .put("embeds", request.optArray("embeds").orElseGet(DataArray::empty))
+            .put("components", request.optArray("components").orElseGet(DataArray::empty))
+            .put("pinned", false)
+            .put("flags", request.getInt("flags", 0));
+    }
+
+    static DataObject command(DataObject request, long guildId) {
+        DataObject command = DataObject.fromJson(request.toJson());
+        command
+            .put("id", Long.toUnsignedString(nextSnowflake()))
+            .put("application_id", Long.toUnsignedString(APPLICATION_ID))
+            .put("version", Long.toUnsignedString(nextSnowflake()))
+            .put("type", request.getInt("type", 1))
+            .put("default_member_permissions", request.getString("default_member_permissions", null))
+            .put("dm_permission", request.getBoolean("dm_permission", true))
+            .put("nsfw", request.getBoolean("nsfw", false));
+        if (guildId != 0) {
+            command.put("guild_id", Long.toUnsignedString(guildId));
+        }
+        return command;
+    }
+
+    static DataObject interaction(
+        long id,
+        String token,
+        long commandId,
+        String commandName,
+        DataArray options,
+        boolean admin
+    ) {
+        DataObject member = admin
+            ? member(user(ADMIN_USER_ID, "admin", false), true).put("permissions", "8")
+            : member(user(MEMBER_USER_ID, "player", false), false).put("permissions", "0");
+        return DataObject
+            .empty()
+            .put("id", Long.toUnsignedString(id))
+            .put("application_id", Long.toUnsignedString(APPLICATION_ID))
+            .put("type", 2)
+            .put("token", token)
+            .put("version", 1)
+            .put("guild_id", Long.toUnsignedString(GUILD_ID))
+            .put("channel_id", Long.toUnsignedString(STATUS_CHANNEL_ID))
+            .put("channel", statusChannel())
+            .put("member", member)
+            .put("app_permissions", "8")
+            .put("locale", "en-US")
+            .put("guild_locale", "en-US")
+            .put("entitlements", DataArray.empty())
+            .put("context", 0)
+            .put(
+                "data",
+                DataObject
+                    .empty()
+                    .put("id", Long.toUnsignedString(commandId))
+                    .put("name", commandName)
+                    .put("type", 1)
+                    .put("guild_id", Long.toUnsignedString(GUILD_ID))
+                    .put("options", options)
+            );
+    }
+
+    static DataObject stringOption(String name, String value) {
+        return DataObject
+            .empty()
+            .put("name", name)
+            .put("type", 3)
+            .put("value", value);
+    }
+
+    static DataObject integerOption(String name, long value) {
+        return DataObject
+            .empty()
+            .put("name", name)
+            .put("type", 4)
+            .put("value", value);
+    }
+
+    static DataObject subcommand(String name, DataArray options) {
+        return DataObject
+            .empty()
+            .put("name", name)
+            .put("type", 1)
+            .put("options", options);
+    }
+
+    static DataObject error(int code, String message) {
+        return DataObject
+            .empty()
+            .put("code", code)
+            .put("message", message);
+    }
+}
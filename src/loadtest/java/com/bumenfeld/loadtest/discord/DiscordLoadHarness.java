@@ -0,0 +1,149 @@
+package com.bumenfeld.loadtest.discord;
+
+import com.bumenfeld.discord.DiscordBotService;
+import com.bumenfeld.loadtest.HarnessArguments;
+import com.bumenfeld.loadtest.PluginStack;
+import com.bumenfeld.metrics.Counter;
+import com.bumenfeld.metrics.LatencyHistogram;
+import com.hypixel.hytale.server.core.modules.accesscontrol.provider.HytaleWhitelistProvider;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+import net.dv8tion.jda.api.utils.data.DataArray;
+
+/**
+ * Drives {@link DiscordBotService} against a {@link FakeDiscordServer}: presence
+ * and status-embed refreshes interleaved with {@code /whitelist},
+ * {@code /announcement-queue} and {@code /metrics} interactions, paced at a
+ * target rate. Prints interaction round-trip quantiles, the bot's own metrics
+ * and what the stand-in saw (429s, unknown messages, resumes).
+ *
+ * <p>Arguments, all optional: {@code events=20000 rate=2000 faults=discord|none
+ * presence-share=0.5}.
+ */
+public final class DiscordLoadHarness {
+
+    private static final long DRAIN_TIMEOUT_SECONDS = 60;
+
+    private DiscordLoadHarness() {
+        // entry point only
+    }
+
+    public static void main(String[] args) throws Exception {
+        HarnessArguments arguments = HarnessArguments.parse(args);
+        int events = arguments.intValue("events", 20_000);
+        int rate = arguments.intValue("rate", 2_000);
+        double presenceShare = arguments.doubleValue("presence-share", 0.5);
+        FaultPlan faultPlan = "none".equals(arguments.stringValue("faults", "discord"))
+            ? FaultPlan.none()
+            : FaultPlan.discordLike();
+
+        try (
+            FakeDiscordServer discord = FakeDiscordServer.start(faultPlan);
+            PluginStack stack = new PluginStack(new HytaleWhitelistProvider(), discord)
+        ) {
+            stack.start(discord.botConfig(100));
+            DiscordBotService bot = stack.discordBotService();
+
+            LatencyHistogram roundTrip = stack.metrics().histogram(
+                "interaction_round_trip",
+                "INTERACTION_CREATE dispatch to interaction callback"
+            );
+            Counter interactionFailures = stack.metrics().counter(
+                "interaction_failures",
+                "Interactions that failed or were never answered"
+            );
+            List<String> codes = issueCodes(stack, events);
+            List<CompletableFuture<?>> outstanding = new ArrayList<>();
+
+            long intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, rate);
+            long startedAt = System.nanoTime();
+            long nextAt = startedAt;
+            int codeIndex = 0;
+            for (int event = 0; event < events; event++) {
+                long now = System.nanoTime();
+                if (now < nextAt) {
+                    LockSupport.parkNanos(nextAt - now);
+                }
+                nextAt += intervalNanos;
+
+                if (event % 100 < presenceShare * 100) {
+                    bot.updatePresence(event % 100, 100);
+                    continue;
+                }
+                CompletableFuture<String> reply = switch (event % 7) {
+                    case 0 -> discord.dispatchSlashCommand("announcement-queue", DataArray.empty(), true);
+                    case 1 -> discord.dispatchSlashCommand("metrics", DataArray.empty(), true);
+                    default -> discord.dispatchSlashCommand(
+                        "whitelist",
+                        DataArray
+                            .empty()
+                            .add(FakeDiscordServer.stringOption("code", codes.get(codeIndex++ % codes.size()))),
+                        false
+                    );
+                };
+                long dispatchedAt = System.nanoTime();
+                outstanding.add(
+                    reply.whenComplete((content, failure) -> {
+                        if (failure != null) {
+                            interactionFailures.increment();
+                        } else {
+                            roundTrip.recordSince(dispatchedAt);
+                        }
+                    })
+                );
+            }
+            double elapsedSeconds = (System.nanoTime() - startedAt) / 1e9;
+
+            awaitAll(outstanding, interactionFailures);
+            report(stack, discord, roundTrip, events, elapsedSeconds);
+        }
+    }
+
+    private static List<String> issueCodes(PluginStack stack, int count) {
+        List<String> codes = new ArrayList<>(count);
+        for (int i = 0; i < Math.max(1, count / 2); i++) {
+            codes.add(stack.whitelistCodeService().ensureCode(UUID.randomUUID()));
+        }
+        return codes;
+    }
+
+    private static void awaitAll(List<CompletableFuture<?>> outstanding, Counter failures)
+        throws InterruptedException {
+        try {
+            CompletableFuture
+                .allOf(outstanding.toArray(new CompletableFuture[0]))
+                .get(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException ignored) {
+            // individual failures are already counted
+        } catch (TimeoutException exception) {
+            long unanswered = outstanding.stream().filter(future -> !future.isDone()).count();
+            failures.add(unanswered);
+        }
+    }
+
+    private static void report(
+        PluginStack stack,
+        FakeDiscordServer discord,
+        LatencyHistogram roundTrip,
+        int events,
+        double elapsedSeconds
+    ) {
+        System.out.printf(
+            "Drove %d events in %.2fs (%.0f events/s)%n",
+            events,
+            elapsedSeconds,
+            events / elapsedSeconds
+        );
+        System.out.println(PluginStack.describe(roundTrip));
+        System.out.println("-- plugin metrics");
+        stack.metrics().summaryLines().forEach(System.out::println);
+        System.out.println("-- fake discord");
+        System.out.println(discord.stats());
+    }
+}
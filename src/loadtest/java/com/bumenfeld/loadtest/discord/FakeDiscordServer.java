@@ -0,0 +1,739 @@
+package com.bumenfeld.loadtest.discord;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.bumenfeld.database.StorageBackend;
+import com.bumenfeld.discord.DiscordConfig;
+import com.bumenfeld.discord.JoinQueueNotifications;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import net.dv8tion.jda.api.JDABuilder;
+import net.dv8tion.jda.api.requests.RestConfig;
+import net.dv8tion.jda.api.utils.Compression;
+import net.dv8tion.jda.api.utils.data.DataArray;
+import net.dv8tion.jda.api.utils.data.DataObject;
+
+/**
+ * Loopback stand-in for the Discord REST API and gateway, good enough for JDA
+ * to log in, cache one guild with a status channel, register slash commands,
+ * edit the status embed and answer interactions. It never touches the network
+ * beyond 127.0.0.1, so the bot can be driven at thousands of events per second
+ * on a machine with no connectivity.
+ *
+ * <p>Misbehaviour is controlled by a {@link FaultPlan}: per-route rate-limit
+ * buckets with the real {@code X-RateLimit-*} headers, forced 429s,
+ * {@code Unknown Message} errors and periodic gateway reconnect requests.
+ */
+public final class FakeDiscordServer implements AutoCloseable {
+
+    private static final String API_PREFIX = "/api/v10/";
+    private static final int HEARTBEAT_INTERVAL_MILLIS = 41_250;
+    private static final int OP_DISPATCH = 0;
+    private static final int OP_HEARTBEAT = 1;
+    private static final int OP_IDENTIFY = 2;
+    private static final int OP_PRESENCE_UPDATE = 3;
+    private static final int OP_RESUME = 6;
+    private static final int OP_RECONNECT = 7;
+    private static final int OP_INVALID_SESSION = 9;
+    private static final int OP_HELLO = 10;
+    private static final int OP_HEARTBEAT_ACK = 11;
+    private static final int UNKNOWN_MESSAGE = 10008;
+
+    private final FaultPlan faultPlan;
+    private final HttpServer restServer;
+    private final ServerSocket gatewaySocket;
+    private final ExecutorService restExecutor;
+    private final ExecutorService gatewayExecutor;
+    private final ScheduledExecutorService reconnectTicker;
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final Map<Long, DataObject> messages = new ConcurrentHashMap<>();
+    private final Map<String, Long> commandIds = new ConcurrentHashMap<>();
+    private final Map<String, PendingInteraction> interactions = new ConcurrentHashMap<>();
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    private final LongAdder restRequests = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder unknownMessages = new LongAdder();
+    private final LongAdder messagesCreated = new LongAdder();
+    private final LongAdder messagesEdited = new LongAdder();
+    private final LongAdder messagesDeleted = new LongAdder();
+    private final LongAdder commandRegistrations = new LongAdder();
+    private final LongAdder interactionCallbacks = new LongAdder();
+    private final LongAdder webhookEdits = new LongAdder();
+    private final LongAdder presenceUpdates = new LongAdder();
+    private final LongAdder identifies = new LongAdder();
+    private final LongAdder resumes = new LongAdder();
+    private final LongAdder reconnectsRequested = new LongAdder();
+    private final LongAdder dispatches = new LongAdder();
+
+    private volatile GatewayConnection connection;
+    private volatile boolean closed;
+
+    private FakeDiscordServer(FaultPlan faultPlan) throws IOException {
+        this.faultPlan = Objects.requireNonNull(faultPlan, "faultPlan");
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+
+        this.restExecutor = Executors.newFixedThreadPool(8, daemon("fake-discord-rest"));
+        this.restServer = HttpServer.create(new InetSocketAddress(loopback, 0), 0);
+        this.restServer.createContext(API_PREFIX, this::handleRest);
+        this.restServer.setExecutor(restExecutor);
+
+        this.gatewaySocket = new ServerSocket(0, 50, loopback);
+        this.gatewayExecutor = Executors.newCachedThreadPool(daemon("fake-discord-gateway"));
+        this.reconnectTicker =
+            Executors.newSingleThreadScheduledExecutor(daemon("fake-discord-reconnect"));
+    }
+
+    /** Binds both listeners to ephemeral loopback ports and starts serving. */
+    public static FakeDiscordServer start(FaultPlan faultPlan) throws IOException {
+        FakeDiscordServer server = new FakeDiscordServer(faultPlan);
+        server.restServer.start();
+        server.gatewayExecutor.execute(server::acceptGatewayConnections);
+        if (faultPlan.reconnects()) {
+            long period = faultPlan.reconnectInterval().toMillis();
+            server.reconnectTicker.scheduleAtFixedRate(
+                server::requestReconnect,
+                period,
+                period,
+                TimeUnit.MILLISECONDS
+            );
+        }
+        return server;
+    }
+
+    /** Points a JDA builder at this stand-in instead of discord.com. */
+    public JDABuilder configure(JDABuilder builder) {
+        return builder
+            .setRestConfig(new RestConfig().setBaseUrl(restBaseUrl()))
+            .setCompression(Compression.NONE);
+    }
+
+    public String restBaseUrl() {
+        return "http://127.0.0.1:" + restServer.getAddress().getPort() + API_PREFIX;
+    }
+
+    public String gatewayUrl() {
+        return "ws://127.0.0.1:" + gatewaySocket.getLocalPort();
+    }
+
+    public String guildId() {
+        return Long.toUnsignedString(DiscordFixtures.GUILD_ID);
+    }
+
+    public String statusChannelId() {
+        return Long.toUnsignedString(DiscordFixtures.STATUS_CHANNEL_ID);
+    }
+
+    public String adminRoleId() {
+        return Long.toUnsignedString(DiscordFixtures.ADMIN_ROLE_ID);
+    }
+
+    /** Bot configuration pointing at this stand-in's guild, channel and admin role. */
+    public DiscordConfig botConfig(int maxPlayers) {
+        return new DiscordConfig(
+            "fake-token",
+            guildId(),
+            true,
+            maxPlayers,
+            statusChannelId(),
+            "en",
+            null,
+            true,
+            true,
+            true,
+            adminRoleId(),
+            0,
+            DiscordConfig.DEFAULT_CODE_TTL_MINUTES,
+            DiscordConfig.DEFAULT_ARCHIVE_VALIDATED_AFTER_DAYS,
+            DiscordConfig.DEFAULT_BACKUP_INTERVAL_HOURS,
+            DiscordConfig.DEFAULT_BACKUP_RETENTION,
+            StorageBackend.SQLITE,
+            DiscordConfig.DEFAULT_CONNECT_ATTEMPTS_PER_ADDRESS_PER_MINUTE,
+            DiscordConfig.DEFAULT_CONNECT_ATTEMPTS_PER_SECOND,
+            DiscordConfig.DEFAULT_MAX_PENDING_CODES_PER_ADDRESS,
+            true,
+            DiscordConfig.DEFAULT_JOIN_QUEUE_HOLD_SECONDS,
+            JoinQueueNotifications.DM
+        );
+    }
+
+    /** True once a client identified and the guild was delivered. */
+    public boolean isConnected() {
+        GatewayConnection current = connection;
+        return current != null && current.session != null && current.socket.isOpen();
+    }
+
+    /**
+     * Sends an {@code INTERACTION_CREATE} for {@code /name} and completes with
+     * the reply content once the bot answers the interaction callback.
+     */
+    public CompletableFuture<String> dispatchSlashCommand(
+        String name,
+        DataArray options,
+        boolean admin
+    ) {
+        long id = DiscordFixtures.nextSnowflake();
+        String token = "interaction-" + Long.toUnsignedString(id);
+        PendingInteraction pending = new PendingInteraction();
+        interactions.put(token, pending);
+        long commandId = commandIds.computeIfAbsent(
+            name,
+            ignored -> DiscordFixtures.nextSnowflake()
+        );
+        DataObject payload = DiscordFixtures.interaction(
+            id,
+            token,
+            commandId,
+            name,
+            options,
+            admin
+        );
+        if (!dispatch("INTERACTION_CREATE", payload)) {
+            interactions.remove(token);
+            pending.reply.completeExceptionally(
+                new IllegalStateException("No gateway session to dispatch to")
+            );
+        }
+        return pending.reply;
+    }
+
+    public static DataObject stringOption(String name, String value) {
+        return DiscordFixtures.stringOption(name, value);
+    }
+
+    public static DataObject integerOption(String name, long value) {
+        return DiscordFixtures.integerOption(name, value);
+    }
+
+    public static DataObject subcommand(String name, DataArray options) {
+        return DiscordFixtures.subcommand(name, options);
+    }
+
+    /** Removes a stored message, so the next edit of it fails with {@code Unknown Message}. */
+    public boolean deleteStoredMessage(long messageId) {
+        return messages.remove(messageId) != null;
+    }
+
+    /** Asks the connected client to reconnect and resume (gateway opcode 7). */
+    public void requestReconnect() {
+        GatewayConnection current = connection;
+        if (current == null || current.session == null) {
+            return;
+        }
+        reconnectsRequested.increment();
+        current.send(DataObject.empty().put("op", OP_RECONNECT).put("d", null));
+    }
+
+    public Stats stats() {
+        return new Stats(
+            restRequests.sum(),
+            rateLimited.sum(),
+            unknownMessages.sum(),
+            messagesCreated.sum(),
+            messagesEdited.sum(),
+            messagesDeleted.sum(),
+            commandRegistrations.sum(),
+            interactionCallbacks.sum(),
+            webhookEdits.sum(),
+            presenceUpdates.sum(),
+            identifies.sum(),
+            resumes.sum(),
+            reconnectsRequested.sum(),
+            dispatches.sum()
+        );
+    }
+
+    // ---------------------------------------------------------------- REST
+
+    private void handleRest(HttpExchange exchange) throws IOException {
+        restRequests.increment();
+        try (exchange) {
+            String method = exchange.getRequestMethod().toUpperCase(Locale.ROOT);
+            String path = exchange.getRequestURI().getPath().substring(API_PREFIX.length());
+            String[] segments = path.split("/");
+            byte[] body = exchange.getRequestBody().readAllBytes();
+
+            if (!segments[0].equals("interactions") && !segments[0].equals("webhooks")) {
+                if (exchange.getRequestHeaders().getFirst("Authorization") == null) {
+                    respond(exchange, 401, DiscordFixtures.error(0, "401: Unauthorized"));
+                    return;
+                }
+                if (!admitToBucket(exchange, method, segments)) {
+                    return;
+                }
+            }
+            route(exchange, method, segments, body);
+        } catch (RuntimeException exception) {
+            respond(exchange, 500, DiscordFixtures.error(0, exception.toString()));
+        }
+    }
+
+    private void route(
+        HttpExchange exchange,
+        String method,
+        String[] segments,
+        byte[] body
+    ) throws IOException {
+        String route = method + " " + template(segments);
+        switch (route) {
+            case "GET users/@me" -> respond(exchange, 200, DiscordFixtures.selfUser());
+            case "GET oauth2/applications/@me" ->
+                respond(exchange, 200, DiscordFixtures.application());
+            case "GET gateway" ->
+                respond(exchange, 200, DataObject.empty().put("url", gatewayUrl()));
+            case "GET gateway/bot" -> respond(
+                exchange,
+                200,
+                DataObject
+                    .empty()
+                    .put("url", gatewayUrl())
+                    .put("shards", 1)
+                    .put(
+                        "session_start_limit",
+                        DataObject
+                            .empty()
+                            .put("total", 1000)
+                            .put("remaining", 1000)
+                            .put("reset_after", 0)
+                            .put("max_concurrency", 1)
+                    )
+            );
+            case "PUT applications/{id}/commands" ->
+                registerCommands(exchange, body, 0L);
+            case "PUT applications/{id}/guilds/{id}/commands" ->
+                registerCommands(exchange, body, Long.parseUnsignedLong(segments[3]));
+            case "POST channels/{id}/messages" -> {
+                long id = DiscordFixtures.nextSnowflake();
+                DataObject message = DiscordFixtures.message(
+                    id,
+                    Long.parseUnsignedLong(segments[1]),
+                    DiscordFixtures.selfUser(),
+                    parseBody(exchange, body)
+                );
+                messages.put(id, message);
+                messagesCreated.increment();
+                respond(exchange, 200, message);
+            }
+            case "PATCH channels/{id}/messages/{id}" -> {
+                long id = Long.parseUnsignedLong(segments[3]);
+                DataObject existing = lookupMessage(exchange, id);
+                if (existing == null) {
+                    return;
+                }
+                DataObject request = parseBody(exchange, body);
+                DataObject edited = DiscordFixtures
+                    .message(id, Long.parseUnsignedLong(segments[1]), DiscordFixtures.selfUser(), request)
+                    .put("timestamp", existing.getString("timestamp"))
+                    .put("edited_timestamp", DiscordFixtures.timestamp());
+                messages.put(id, edited);
+                messagesEdited.increment();
+                respond(exchange, 200, edited);
+            }
+            case "DELETE channels/{id}/messages/{id}" -> {
+                long id = Long.parseUnsignedLong(segments[3]);
+                if (lookupMessage(exchange, id) == null) {
+                    return;
+                }
+                messages.remove(id);
+                messagesDeleted.increment();
+                respondEmpty(exchange, 204);
+            }
+            case "POST interactions/{id}/{token}/callback" -> {
+                interactionCallbacks.increment();
+                DataObject callback = parseBody(exchange, body);
+                // deferred replies (type 5) finish through the webhook edit instead
+                boolean deferred = callback.getInt("type", 4) == 5;
+                PendingInteraction pending = deferred
+                    ? interactions.get(segments[2])
+                    : interactions.remove(segments[2]);
+                if (pending != null && !deferred) {
+                    pending.reply.complete(
+                        callback
+                            .optObject("data")
+                            .orElseGet(DataObject::empty)
+                            .getString("content", "")
+                    );
+                }
+                respondEmpty(exchange, 204);
+            }
+            case "PATCH webhooks/{id}/{token}/messages/@original",
+                "POST webhooks/{id}/{token}" -> {
+                webhookEdits.increment();
+                PendingInteraction pending = interactions.remove(segments[2]);
+                if (pending != null) {
+                    pending.reply.complete(parseBody(exchange, body).getString("content", ""));
+                }
+                DataObject author = DiscordFixtures.selfUser();
+                DataObject message = DiscordFixtures
+                    .message(
+                        DiscordFixtures.nextSnowflake(),
+                        DiscordFixtures.STATUS_CHANNEL_ID,
+                        author,
+                        parseBody(exchange, body)
+                    )
+                    .put("webhook_id", Long.toUnsignedString(DiscordFixtures.APPLICATION_ID))
+                    .put("application_id", Long.toUnsignedString(DiscordFixtures.APPLICATION_ID));
+                respond(exchange, 200, message);
+            }
+            default -> respond(exchange, 404, DiscordFixtures.error(0, "404: Not Found"));
+        }
+    }
+
+    private void registerCommands(HttpExchange exchange, byte[] body, long guildId)
+        throws IOException {
+        commandRegistrations.increment();
+        DataArray requested = DataArray.fromJson(new String(body, StandardCharsets.UTF_8));
+        DataArray registered = DataArray.empty();
+        for (int i = 0; i < requested.length(); i++) {
+            DataObject command = DiscordFixtures.command(requested.getObject(i), guildId);
+            commandIds.put(command.getString("name"), command.getUnsignedLong("id"));
+            registered.add(command);
+        }
+        respondJson(exchange, 200, registered.toString());
+    }
+
+    private DataObject lookupMessage(HttpExchange exchange, long id) throws IOException {
+        if (roll(faultPlan.unknownMessageRatio())) {
+            // someone deleted the embed by hand
+            messages.remove(id);
+        }
+        DataObject existing = messages.get(id);
+        if (existing == null) {
+            unknownMessages.increment();
+            respond(exchange, 404, DiscordFixtures.error(UNKNOWN_MESSAGE, "Unknown Message"));
+        }
+        return existing;
+    }
+
+    /**
+     * Applies the route bucket and forced 429s. Returns {@code false} after
+     * answering the request with a rate-limit error.
+     */
+    private boolean admitToBucket(
+        HttpExchange exchange,
+        String method,
+        String[] segments
+    ) throws IOException {
+        String key = method + " " + bucketKey(segments);
+        Bucket bucket = buckets.computeIfAbsent(key, ignored -> new Bucket());
+        long windowMillis = faultPlan.bucketWindow().toMillis();
+        long now = System.currentTimeMillis();
+        int remaining;
+        long resetAt;
+        synchronized (bucket) {
+            if (now >= bucket.resetAt) {
+                bucket.resetAt = now + windowMillis;
+                bucket.used = 0;
+            }
+            bucket.used++;
+            remaining = faultPlan.bucketLimit() - bucket.used;
+            resetAt = bucket.resetAt;
+        }
+
+        Headers headers = exchange.getResponseHeaders();
+        double resetAfter = Math.max(0, resetAt - now) / 1000.0;
+        headers.set("X-RateLimit-Limit", Integer.toString(faultPlan.bucketLimit()));
+        headers.set("X-RateLimit-Remaining", Integer.toString(Math.max(0, remaining)));
+        headers.set("X-RateLimit-Reset", String.format(Locale.ROOT, "%.3f", resetAt / 1000.0));
+        headers.set("X-RateLimit-Reset-After", String.format(Locale.ROOT, "%.3f", resetAfter));
+        headers.set("X-RateLimit-Bucket", Integer.toHexString(key.hashCode()));
+
+        boolean forced = roll(faultPlan.rateLimitRatio());
+        if (remaining >= 0 && !forced) {
+            return true;
+        }
+        rateLimited.increment();
+        double retryAfter = forced ? 0.25 : resetAfter;
+        headers.set("Retry-After", Long.toString((long) Math.ceil(retryAfter)));
+        headers.set("X-RateLimit-Scope", forced ? "shared" : "user");
+        respond(
+            exchange,
+            429,
+            DataObject
+                .empty()
+                .put("message", "You are being rate limited.")
+                .put("retry_after", retryAfter)
+                .put("global", false)
+        );
+        return false;
+    }
+
+    /** Route template with every id replaced, as used in {@link #route}. */
+    private static String template(String[] segments) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < segments.length; i++) {
+            if (i > 0) {
+                builder.append('/');
+            }
+            String segment = segments[i];
+            boolean token = i == 2 &&
+                (segments[0].equals("interactions") || segments[0].equals("webhooks"));
+            if (token) {
+                builder.append("{token}");
+            } else if (!segment.isEmpty() && Character.isDigit(segment.charAt(0))) {
+                builder.append("{id}");
+            } else {
+                builder.append(segment);
+            }
+        }
+        return builder.toString();
+    }
+
+    /** Like {@link #template} but keeps the major parameter, as Discord's buckets do. */
+    private static String bucketKey(String[] segments) {
+        String template = template(segments);
+        if (segments.length > 1 &&
+            (segments[0].equals("channels") || segments[0].equals("guilds"))) {
+            return segments[0] + "/" + segments[1] + template.substring(template.indexOf('/'));
+        }
+        return template;
+    }
+
+    private static DataObject parseBody(HttpExchange exchange, byte[] body) {
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        if (body.length == 0 || contentType == null || !contentType.startsWith("application/json")) {
+            // multipart uploads are not needed by the plugin
+            return DataObject.empty();
+        }
+        return DataObject.fromJson(body);
+    }
+
+    private static void respond(HttpExchange exchange, int status, DataObject body)
+        throws IOException {
+        respondJson(exchange, status, body.toString());
+    }
+
+    private static void respondJson(HttpExchange exchange, int status, String json)
+        throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    private static void respondEmpty(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+    }
+
+    private static boolean roll(double ratio) {
+        return ratio > 0 && ThreadLocalRandom.current().nextDouble() < ratio;
+    }
+
+    // ------------------------------------------------------------- gateway
+
+    private void acceptGatewayConnections() {
+        while (!closed) {
+            Socket socket;
+            try {
+                socket = gatewaySocket.accept();
+            } catch (SocketException exception) {
+                // closed
+                return;
+            } catch (IOException exception) {
+                continue;
+            }
+            gatewayExecutor.execute(() -> serveGateway(socket));
+        }
+    }
+
+    private void serveGateway(Socket socket) {
+        WebSocketSession webSocket;
+        try {
+            webSocket = WebSocketSession.accept(socket);
+        } catch (IOException exception) {
+            return;
+        }
+        GatewayConnection current = new GatewayConnection(webSocket);
+        GatewayConnection previous = connection;
+        connection = current;
+        if (previous != null) {
+            previous.socket.close(4000);
+        }
+
+        current.send(
+            DataObject
+                .empty()
+                .put("op", OP_HELLO)
+                .put("d", DataObject.empty().put("heartbeat_interval", HEARTBEAT_INTERVAL_MILLIS))
+        );
+        try {
+            String text;
+            while ((text = webSocket.readText()) != null) {
+                onGatewayPayload(current, DataObject.fromJson(text));
+            }
+        } catch (IOException ignored) {
+            // connection dropped, the client reconnects on its own
+        } finally {
+            webSocket.close();
+            if (connection == current) {
+                connection = null;
+            }
+        }
+    }
+
+    private void onGatewayPayload(GatewayConnection current, DataObject payload) {
+        switch (payload.getInt("op")) {
+            case OP_HEARTBEAT -> current.send(
+                DataObject.empty().put("op", OP_HEARTBEAT_ACK).put("d", null)
+            );
+            case OP_IDENTIFY -> {
+                identifies.increment();
+                Session session = new Session(UUID.randomUUID().toString());
+                sessions.put(session.id, session);
+                current.session = session;
+                current.dispatch("READY", DiscordFixtures.ready(session.id, gatewayUrl()));
+                current.dispatch("GUILD_CREATE", DiscordFixtures.guild());
+            }
+            case OP_RESUME -> {
+                String sessionId = payload.getObject("d").getString("session_id", "");
+                Session session = sessions.get(sessionId);
+                if (session == null) {
+                    current.send(
+                        DataObject.empty().put("op", OP_INVALID_SESSION).put("d", false)
+                    );
+                    return;
+                }
+                resumes.increment();
+                current.session = session;
+                current.dispatch("RESUMED", DataObject.empty());
+            }
+            case OP_PRESENCE_UPDATE -> presenceUpdates.increment();
+            default -> {
+                // request guild members, voice state and friends are not modelled
+            }
+        }
+    }
+
+    private boolean dispatch(String type, DataObject data) {
+        GatewayConnection current = connection;
+        if (current == null || current.session == null) {
+            return false;
+        }
+        return current.dispatch(type, data);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        reconnectTicker.shutdownNow();
+        GatewayConnection current = connection;
+        if (current != null) {
+            current.socket.close();
+        }
+        try {
+            gatewaySocket.close();
+        } catch (IOException ignored) {
+            // shutting down anyway
+        }
+        restServer.stop(0);
+        restExecutor.shutdownNow();
+        gatewayExecutor.shutdownNow();
+        interactions
+            .values()
+            .forEach(pending -> pending.reply.cancel(false));
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /** Counters since start, for harness reports. */
+    public record Stats(
+        long restRequests,
+        long rateLimited,
+        long unknownMessages,
+        long messagesCreated,
+        long messagesEdited,
+        long messagesDeleted,
+        long commandRegistrations,
+        long interactionCallbacks,
+        long webhookEdits,
+        long presenceUpdates,
+        long identifies,
+        long resumes,
+        long reconnectsRequested,
+        long dispatches
+    ) {}
+
+    private static final class Bucket {
+
+        private long resetAt;
+        private int used;
+    }
+
+    private static final class Session {
+
+        private final String id;
+        private final AtomicInteger sequence = new AtomicInteger();
+
+        private Session(String id) {
+            this.id = id;
+        }
+    }
+
+    private static final class PendingInteraction {
+
+        private final CompletableFuture<String> reply = new CompletableFuture<>();
+    }
+
+    private final class GatewayConnection {
+
+        private final WebSocketSession socket;
+        private volatile Session session;
+
+        private GatewayConnection(WebSocketSession socket) {
+            this.socket = socket;
+        }
+
+        private boolean dispatch(String type, DataObject data) {
+            Session current = session;
+            dispatches.increment();
+            return send(
+                DataObject
+                    .empty()
+                    .put("op", OP_DISPATCH)
+                    .put("t", type)
+                    .put("s", current.sequence.incrementAndGet())
+                    .put("d", data)
+            );
+        }
+
+        private boolean send(DataObject payload) {
+            try {
+                socket.sendText(payload.toString());
+                return true;
+            } catch (IOException exception) {
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.bumenfeld.loadtest.discord;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Misbehaviour injected by {@link FakeDiscordServer}.
+ *
+ * @param bucketLimit requests allowed per route bucket and window before the
+ *     stand-in answers 429, mirroring the {@code X-RateLimit-*} headers it sends
+ * @param bucketWindow length of one rate-limit window
+ * @param rateLimitRatio share of REST requests answered with a 429 regardless
+ *     of the bucket state
+ * @param unknownMessageRatio share of message edits and deletes answered with
+ *     {@code 10008 Unknown Message}, as if someone deleted the embed
+ * @param reconnectInterval how often the gateway asks the client to reconnect
+ *     and resume, or {@link Duration#ZERO} to never do so
+ */
+public record FaultPlan(
+    int bucketLimit,
+    Duration bucketWindow,
+    double rateLimitRatio,
+    double unknownMessageRatio,
+    Duration reconnectInterval
+) {
+
+    public FaultPlan {
+        Objects.requireNonNull(bucketWindow, "bucketWindow");
+        Objects.requireNonNull(reconnectInterval, "reconnectInterval");
+        if (bucketLimit <= 0) {
+            throw new IllegalArgumentException("bucketLimit must be > 0");
+        }
+        if (bucketWindow.isNegative() || bucketWindow.isZero()) {
+            throw new IllegalArgumentException("bucketWindow must be positive");
+        }
+        if (rateLimitRatio < 0 || rateLimitRatio > 1) {
+            throw new IllegalArgumentException("rateLimitRatio must be within [0, 1]");
+        }
+        if (unknownMessageRatio < 0 || unknownMessageRatio > 1) {
+            throw new IllegalArgumentException("unknownMessageRatio must be within [0, 1]");
+        }
+        if (reconnectInterval.isNegative()) {
+            throw new IllegalArgumentException("reconnectInterval must not be negative");
+        }
+    }
+
+    /** Effectively unlimited buckets and no injected failures, for raw throughput runs. */
+    public static FaultPlan none() {
+        return new FaultPlan(1_000_000, Duration.ofSeconds(1), 0, 0, Duration.ZERO);
+    }
+
+    /** Discord's real message-edit budget plus a sprinkling of every failure mode. */
+    public static FaultPlan discordLike() {
+        return new FaultPlan(5, Duration.ofSeconds(5), 0.01, 0.01, Duration.ofSeconds(30));
+    }
+
+    public boolean reconnects() {
+        return !reconnectInterval.isZero();
+    }
+}
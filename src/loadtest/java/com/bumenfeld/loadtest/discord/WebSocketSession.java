@@ -0,0 +1,257 @@
+package com.bumenfeld.loadtest.discord;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Minimal RFC 6455 server side for one gateway connection: the upgrade
+ * handshake, masked client frames in, unmasked text frames out. JDA runs with
+ * compression disabled against the stand-in, so no inflate/deflate support is
+ * needed.
+ */
+final class WebSocketSession implements AutoCloseable {
+
+    private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final int OP_CONTINUATION = 0x0;
+    private static final int OP_TEXT = 0x1;
+    private static final int OP_BINARY = 0x2;
+    private static final int OP_CLOSE = 0x8;
+    private static final int OP_PING = 0x9;
+    private static final int OP_PONG = 0xA;
+
+    private final Socket socket;
+    private final InputStream input;
+    private final OutputStream output;
+    private final Object writeLock = new Object();
+
+    private volatile boolean closed;
+    private volatile int closeCode = -1;
+
+    private WebSocketSession(Socket socket) throws IOException {
+        this.socket = socket;
+        this.input = new BufferedInputStream(socket.getInputStream());
+        this.output = socket.getOutputStream();
+    }
+
+    /** Reads the HTTP upgrade request from {@code socket} and completes the handshake. */
+    static WebSocketSession accept(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        WebSocketSession session = new WebSocketSession(socket);
+        Map<String, String> headers = session.readRequestHeaders();
+        String key = headers.get("sec-websocket-key");
+        if (key == null) {
+            session.writeRaw(
+                "HTTP/1.1 400 Bad Request\r\nContent-Length: 0\r\nConnection: close\r\n\r\n"
+            );
+            socket.close();
+            throw new IOException("Missing Sec-WebSocket-Key header");
+        }
+        session.writeRaw(
+            "HTTP/1.1 101 Switching Protocols\r\n" +
+                "Upgrade: websocket\r\n" +
+                "Connection: Upgrade\r\n" +
+                "Sec-WebSocket-Accept: " + acceptKey(key) + "\r\n\r\n"
+        );
+        return session;
+    }
+
+    /**
+     * Blocks until the next complete text message arrives, answering pings on
+     * the way. Returns {@code null} once the peer closed the connection.
+     */
+    String readText() throws IOException {
+        ByteArrayOutputStream message = new ByteArrayOutputStream();
+        int messageOpcode = -1;
+        while (!closed) {
+            int first = readByte();
+            int second = readByte();
+            boolean fin = (first & 0x80) != 0;
+            int opcode = first & 0x0F;
+            boolean masked = (second & 0x80) != 0;
+            long length = second & 0x7F;
+            if (length == 126) {
+                length = (readByte() << 8) | readByte();
+            } else if (length == 127) {
+                length = 0;
+                for (int i = 0; i < 8; i++) {
+                    length = (length << 8) | readByte();
+                }
+            }
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Frame too large: " + length);
+            }
+            byte[] mask = masked ? input.readNBytes(4) : null;
+            byte[] payload = input.readNBytes((int) length);
+            if (payload.length != length) {
+                throw new EOFException("Truncated frame");
+            }
+            if (mask != null) {
+                for (int i = 0; i < payload.length; i++) {
+                    payload[i] ^= mask[i & 3];
+                }
+            }
+
+            switch (opcode) {
+                case OP_PING -> writeFrame(OP_PONG, payload);
+                case OP_PONG -> {
+                    // unsolicited pong, nothing to do
+                }
+                case OP_CLOSE -> {
+                    closeCode = payload.length >= 2
+                        ? ((payload[0] & 0xFF) << 8) | (payload[1] & 0xFF)
+                        : 1005;
+                    close(closeCode);
+                    return null;
+                }
+                case OP_TEXT, OP_BINARY, OP_CONTINUATION -> {
+                    if (opcode != OP_CONTINUATION) {
+                        messageOpcode = opcode;
+                    }
+                    message.write(payload);
+                    if (fin) {
+                        if (messageOpcode == OP_BINARY) {
+                            throw new IOException(
+                                "Binary gateway frames are not supported, disable compression"
+                            );
+                        }
+                        return message.toString(StandardCharsets.UTF_8);
+                    }
+                }
+                default -> throw new IOException("Unsupported opcode " + opcode);
+            }
+        }
+        return null;
+    }
+
+    void sendText(String text) throws IOException {
+        writeFrame(OP_TEXT, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Sends a close frame with {@code code} and drops the TCP connection. */
+    void close(int code) {
+        if (closed) {
+            return;
+        }
+        try {
+            writeFrame(OP_CLOSE, new byte[] { (byte) (code >>> 8), (byte) code });
+        } catch (IOException ignored) {
+            // the peer is already gone
+        }
+        closed = true;
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // closing anyway
+        }
+    }
+
+    boolean isOpen() {
+        return !closed && !socket.isClosed();
+    }
+
+    int closeCode() {
+        return closeCode;
+    }
+
+    @Override
+    public void close() {
+        close(1000);
+    }
+
+    private void writeFrame(int opcode, byte[] payload) throws IOException {
+        synchronized (writeLock) {
+            if (closed) {
+                throw new IOException("WebSocket session is closed");
+            }
+            output.write(0x80 | opcode);
+            if (payload.length < 126) {
+                output.write(payload.length);
+            } else if (payload.length <= 0xFFFF) {
+                output.write(126);
+                output.write(payload.length >>> 8);
+                output.write(payload.length);
+            } else {
+                output.write(127);
+                long length = payload.length;
+                for (int shift = 56; shift >= 0; shift -= 8) {
+                    output.write((int) (length >>> shift));
+                }
+            }
+            output.write(payload);
+            output.flush();
+        }
+    }
+
+    private Map<String, String> readRequestHeaders() throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        String requestLine = readLine();
+        if (requestLine == null || !requestLine.startsWith("GET ")) {
+            throw new IOException("Expected a GET upgrade request, got " + requestLine);
+        }
+        String line;
+        while ((line = readLine()) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(
+                    line.substring(0, colon).trim().toLowerCase(Locale.ROOT),
+                    line.substring(colon + 1).trim()
+                );
+            }
+        }
+        return headers;
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        int next;
+        while ((next = input.read()) != -1) {
+            if (next == '\n') {
+                int length = builder.length();
+                if (length > 0 && builder.charAt(length - 1) == '\r') {
+                    builder.setLength(length - 1);
+                }
+                return builder.toString();
+            }
+            builder.append((char) next);
+        }
+        return builder.isEmpty() ? null : builder.toString();
+    }
+
+    private int readByte() throws IOException {
+        int value = input.read();
+        if (value == -1) {
+            throw new EOFException("Gateway connection closed");
+        }
+        return value;
+    }
+
+    private void writeRaw(String text) throws IOException {
+        synchronized (writeLock) {
+            output.write(text.getBytes(StandardCharsets.ISO_8859_1));
+            output.flush();
+        }
+    }
+
+    private static String acceptKey(String key) {
+        try {
+            byte[] digest = MessageDigest
+                .getInstance("SHA-1")
+                .digest((key + ACCEPT_GUID).getBytes(StandardCharsets.ISO_8859_1));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException("SHA-1 is not available", exception);
+        }
+    }
+}
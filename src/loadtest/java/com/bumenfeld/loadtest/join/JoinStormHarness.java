@@ -0,0 +1,251 @@
+package com.bumenfeld.loadtest.join;
+
+import com.bumenfeld.database.WhitelistCodeService;
+import com.bumenfeld.loadtest.HarnessArguments;
+import com.bumenfeld.loadtest.PluginStack;
+import com.bumenfeld.loadtest.discord.FakeDiscordServer;
+import com.bumenfeld.loadtest.discord.FaultPlan;
+import com.bumenfeld.metrics.LatencyHistogram;
+import com.bumenfeld.player.ConnectionGate;
+import com.hypixel.hytale.server.core.modules.accesscontrol.provider.HytaleWhitelistProvider;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Connects a burst of synthetic players through {@link ConnectionGate}, the
+ * same code the {@code PlayerSetupConnectEvent} and
+ * {@code PlayerDisconnectEvent} listeners delegate to, with the bot logged in
+ * to a {@link FakeDiscordServer}. Part of the players are whitelisted up front
+ * through the real code/validate path; the rest are refused and get a code
+ * issued, which is what hits SQLite during a storm.
+ *
+ * <p>Players connect from {@code addresses} synthetic remote addresses, one
+ * each by default, so the per-address connect budget only shows up when
+ * fewer are given; refusals by the budget are counted apart from the rest.
+ *
+ * <p>Arguments, all optional: {@code players=500 window=3000 whitelisted=0.5
+ * threads=32 stay=5000 addresses=<players> faults=discord|none}; times are in
+ * milliseconds.
+ */
+public final class JoinStormHarness {
+
+    private static final long DRAIN_TIMEOUT_SECONDS = 120;
+
+    private JoinStormHarness() {
+        // entry point only
+    }
+
+    public static void main(String[] args) throws Exception {
+        HarnessArguments arguments = HarnessArguments.parse(args);
+        int players = arguments.intValue("players", 500);
+        Duration window = arguments.durationValue("window", Duration.ofSeconds(3));
+        Duration stay = arguments.durationValue("stay", Duration.ofSeconds(5));
+        double whitelistedShare = arguments.doubleValue("whitelisted", 0.5);
+        int threads = arguments.intValue("threads", 32);
+        int addresses = Math.max(1, arguments.intValue("addresses", players));
+        FaultPlan faultPlan = "none".equals(arguments.stringValue("faults", "discord"))
+            ? FaultPlan.none()
+            : FaultPlan.discordLike();
+
+        try (
+            FakeDiscordServer discord = FakeDiscordServer.start(faultPlan);
+            PluginStack stack = new PluginStack(new HytaleWhitelistProvider(), discord)
+        ) {
+            stack.start(discord.botConfig(players));
+            List<UUID> cohort = buildCohort(stack.whitelistCodeService(), players, whitelistedShare);
+            long presenceBefore = stack
+                .metrics()
+                .histogram("presence_update", "DiscordBotService.updatePresence latency")
+                .count();
+
+            StormResult result = runStorm(
+                stack.connectionGate(),
+                cohort,
+                addresses,
+                window,
+                stay,
+                threads
+            );
+            report(stack, discord, result, presenceBefore);
+        }
+    }
+
+    /** Whitelists {@code share} of the cohort through issue-and-validate, like a real player would. */
+    private static List<UUID> buildCohort(
+        WhitelistCodeService whitelistCodeService,
+        int players,
+        double share
+    ) {
+        List<UUID> cohort = new ArrayList<>(players);
+        int whitelisted = (int) Math.round(players * share);
+        for (int i = 0; i < players; i++) {
+            UUID playerUuid = UUID.randomUUID();
+            if (i < whitelisted) {
+                String code = whitelistCodeService.ensureCode(playerUuid);
+                whitelistCodeService.validateCode(code);
+            }
+            cohort.add(playerUuid);
+        }
+        Collections.shuffle(cohort);
+        return cohort;
+    }
+
+    private static StormResult runStorm(
+        ConnectionGate gate,
+        List<UUID> cohort,
+        int addresses,
+        Duration window,
+        Duration stay,
+        int threads
+    ) throws InterruptedException {
+        ScheduledExecutorService network = Executors.newScheduledThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "join-storm");
+            thread.setDaemon(true);
+            return thread;
+        });
+        RecordingDisconnects disconnects = new RecordingDisconnects();
+        AtomicInteger admitted = new AtomicInteger();
+        CountDownLatch finished = new CountDownLatch(cohort.size());
+        long windowMillis = Math.max(1, window.toMillis());
+        long stayMillis = Math.max(1, stay.toMillis());
+
+        long startedAt = System.nanoTime();
+        for (int i = 0; i < cohort.size(); i++) {
+            UUID playerUuid = cohort.get(i);
+            InetAddress address = syntheticAddress(i % addresses);
+            long connectAt = ThreadLocalRandom.current().nextLong(windowMillis);
+            network.schedule(
+                () -> {
+                    if (!gate.onSetupConnect(playerUuid, address, disconnects)) {
+                        finished.countDown();
+                        return;
+                    }
+                    admitted.incrementAndGet();
+                    long leaveAfter = stayMillis / 2 + ThreadLocalRandom.current().nextLong(stayMillis);
+                    network.schedule(
+                        () -> {
+                            gate.onDisconnect(playerUuid);
+                            finished.countDown();
+                        },
+                        leaveAfter,
+                        TimeUnit.MILLISECONDS
+                    );
+                },
+                connectAt,
+                TimeUnit.MILLISECONDS
+            );
+        }
+        boolean drained = finished.await(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        double elapsedSeconds = (System.nanoTime() - startedAt) / 1e9;
+        network.shutdownNow();
+        return new StormResult(
+            cohort.size(),
+            admitted.get(),
+            disconnects.count.intValue(),
+            disconnects.withoutCode.intValue(),
+            disconnects.throttled.intValue(),
+            drained,
+            elapsedSeconds
+        );
+    }
+
+    /** A distinct address in 10.0.0.0/8 per index. */
+    private static InetAddress syntheticAddress(int index) {
+        try {
+            return InetAddress.getByAddress(
+                new byte[] { 10, (byte) (index >>> 16), (byte) (index >>> 8), (byte) index }
+            );
+        } catch (UnknownHostException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    private static void report(
+        PluginStack stack,
+        FakeDiscordServer discord,
+        StormResult result,
+        long presenceBefore
+    ) {
+        LatencyHistogram setupConnect = stack
+            .metrics()
+            .histogram("player_setup_connect", "onPlayerSetupConnect handler latency");
+        LatencyHistogram lockWait = stack
+            .metrics()
+            .histogram("db_lock_wait", "Time spent waiting for the database lock");
+        LatencyHistogram presence = stack
+            .metrics()
+            .histogram("presence_update", "DiscordBotService.updatePresence latency");
+        FakeDiscordServer.Stats discordStats = discord.stats();
+
+        System.out.printf(
+            "%d players in %.2fs: %d admitted, %d refused (%d over the connect budget, %d without a code)%s%n",
+            result.players(),
+            result.elapsedSeconds(),
+            result.admitted(),
+            result.refused(),
+            result.throttled(),
+            result.refusedWithoutCode(),
+            result.drained() ? "" : ", TIMED OUT before every player finished"
+        );
+        System.out.println(PluginStack.describe(setupConnect));
+        System.out.println(PluginStack.describe(lockWait));
+        System.out.println(PluginStack.describe(presence));
+        System.out.printf(
+            "Discord updates: %d presence refreshes, %d gateway presence ops, %d embed edits, %d embed creates, %d rate limited%n",
+            presence.count() - presenceBefore,
+            discordStats.presenceUpdates(),
+            discordStats.messagesEdited(),
+            discordStats.messagesCreated(),
+            discordStats.rateLimited()
+        );
+        System.out.println("-- plugin metrics");
+        stack.metrics().summaryLines().forEach(System.out::println);
+    }
+
+    /**
+     * Stands in for {@code PacketHandler.disconnect}; checks each refusal
+     * carries a code unless the connect budget turned it away.
+     */
+    private static final class RecordingDisconnects implements Consumer<String> {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder withoutCode = new LongAdder();
+        private final LongAdder throttled = new LongAdder();
+
+        @Override
+        public void accept(String message) {
+            count.increment();
+            if (
+                message.equals(ConnectionGate.RATE_LIMITED_MESSAGE) ||
+                message.equals(ConnectionGate.PENDING_CODES_MESSAGE)
+            ) {
+                throttled.increment();
+            } else if (!message.startsWith("Use Discord to run /whitelist ")) {
+                withoutCode.increment();
+            }
+        }
+    }
+
+    private record StormResult(
+        int players,
+        int admitted,
+        int refused,
+        int refusedWithoutCode,
+        int throttled,
+        boolean drained,
+        double elapsedSeconds
+    ) {}
+}
@@ -0,0 +1,557 @@
+package com.bumenfeld.loadtest.store;
+
+import com.bumenfeld.database.DatabaseManager;
+import com.bumenfeld.database.DatabaseManager.DatabaseException;
+import com.bumenfeld.database.FallbackWhitelistStore;
+import com.bumenfeld.database.MappedLogWhitelistStore;
+import com.bumenfeld.database.StorageBackend;
+import com.bumenfeld.database.WhitelistStore;
+import com.bumenfeld.database.WhitelistStore.CodePage;
+import com.bumenfeld.database.WhitelistStore.PageKey;
+import com.bumenfeld.database.WhitelistStore.ValidatedEntry;
+import com.bumenfeld.database.WhitelistStore.WhitelistCode;
+import com.bumenfeld.loadtest.HarnessArguments;
+import com.bumenfeld.loadtest.PluginStack;
+import com.bumenfeld.metrics.MetricsRegistry;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * The contract every {@link WhitelistStore} has to meet, checked against
+ * each {@link StorageBackend} with a fresh store per check. SQLite is the
+ * reference: the other backends must agree with it on ordering, paging,
+ * conflict handling, archiving and batch results, not just on the happy
+ * path.
+ *
+ * <p>Arguments, all optional: {@code backends=sqlite,memory,mapped rows=1000}.
+ * Prints PASS/FAIL per backend and check; exits non-zero on any failure.
+ */
+public final class WhitelistStoreConformance {
+
+    private WhitelistStoreConformance() {
+        // entry point only
+    }
+
+    public static void main(String[] args) throws Exception {
+        HarnessArguments arguments = HarnessArguments.parse(args);
+        int rows = Math.max(10, arguments.intValue("rows", 1_000));
+        List<StorageBackend> backends = arguments
+            .stringValue("backends", "")
+            .isBlank()
+            ? List.of(StorageBackend.values())
+            : Arrays
+                .stream(arguments.stringValue("backends", "").split(","))
+                .map(StorageBackend::fromConfig)
+                .toList();
+
+        Map<String, Check> checks = new LinkedHashMap<>();
+        checks.put("lifecycle", WhitelistStoreConformance::lifecycle);
+        checks.put("upsert-and-find", WhitelistStoreConformance::upsertAndFind);
+        checks.put("issue-code", WhitelistStoreConformance::issueCode);
+        checks.put("mark-validated", WhitelistStoreConformance::markValidated);
+        checks.put("active-paging", fixture -> activePaging(fixture, rows));
+        checks.put("validated-streaming", fixture -> validatedStreaming(fixture, rows));
+        checks.put("batch-operations", fixture -> batchOperations(fixture, rows));
+        checks.put("expiry-and-archive", fixture -> expiryAndArchive(fixture, rows));
+        checks.put("snapshot", WhitelistStoreConformance::snapshot);
+        checks.put("torn-tail", WhitelistStoreConformance::tornTail);
+        checks.put("degraded-fallback", WhitelistStoreConformance::degradedFallback);
+
+        int failures = 0;
+        for (StorageBackend backend : backends) {
+            for (Map.Entry<String, Check> entry : checks.entrySet()) {
+                String name = backend.configName() + "/" + entry.getKey();
+                long startedAt = System.nanoTime();
+                Path directory = Files.createTempDirectory("store-conformance");
+                WhitelistStore store = backend.open(
+                    new DatabaseManager(directory, PluginStack.logger()),
+                    PluginStack.logger(),
+                    new MetricsRegistry()
+                );
+                try {
+                    store.initialize();
+                    entry.getValue().run(new Fixture(store, directory));
+                    System.out.printf(
+                        "PASS %-32s %6.2fs%n",
+                        name,
+                        (System.nanoTime() - startedAt) / 1e9
+                    );
+                } catch (RuntimeException failure) {
+                    failures++;
+                    System.out.printf("FAIL %-32s %s%n", name, failure);
+                } finally {
+                    store.close();
+                    deleteRecursively(directory);
+                }
+            }
+        }
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /** Calls fail outside initialize/close; data survives a close and reopen. */
+    private static void lifecycle(Fixture fixture) {
+        WhitelistStore store = fixture.store();
+        UUID playerUuid = UUID.randomUUID();
+        store.upsertCode(playerUuid, "LIFE01");
+        store.close();
+        expectThrows(IllegalStateException.class, () -> store.findByPlayer(playerUuid), "read after close");
+        expectThrows(IllegalStateException.class, () -> store.upsertCode(playerUuid, "LIFE02"), "write after close");
+        store.close();
+        store.initialize();
+        store.initialize();
+        check(
+            store.findByCode("LIFE01").map(WhitelistCode::playerUuid).orElse(null),
+            playerUuid,
+            "row after reopen"
+        );
+    }
+
+    private static void upsertAndFind(Fixture fixture) {
+        WhitelistStore store = fixture.store();
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        Instant before = Instant.now().minusMillis(1);
+        store.upsertCode(first, "AAA111");
+        WhitelistCode stored = store.findByPlayer(first).orElseThrow(() -> new ConformanceFailure("upserted row missing"));
+        check(stored.whitelistCode(), "AAA111", "stored code");
+        check(stored.isValidated(), false, "fresh code validated");
+        check(!stored.createdAt().isBefore(before), true, "createdAt is current");
+        check(stored.createdAt().getNano() % 1_000_000, 0, "createdAt is millisecond precision");
+        check(store.findByCode("AAA111").map(WhitelistCode::playerUuid).orElse(null), first, "find by code");
+        check(store.findByCode("aaa111").isPresent(), false, "codes are case sensitive");
+
+        store.markValidated(first, "AAA111", null);
+        store.upsertCode(first, "AAA222");
+        check(store.findByCode("AAA111").isPresent(), false, "replaced code still found");
+        check(store.findByPlayer(first).map(WhitelistCode::isValidated).orElse(true), false, "upsert resets validation");
+
+        expectThrows(DatabaseException.class, () -> store.upsertCode(second, "AAA222"), "duplicate code");
+        check(store.findByPlayer(second).isPresent(), false, "failed upsert left a row");
+        check(store.findByPlayer(UUID.randomUUID()).isPresent(), false, "unknown player");
+    }
+
+    private static void issueCode(Fixture fixture) {
+        WhitelistStore store = fixture.store();
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        check(store.issueCode(first, "ISS001"), Optional.of("ISS001"), "first issue");
+        check(store.issueCode(first, "ISS002"), Optional.of("ISS001"), "pending code kept");
+        check(store.issueCode(first, "ISS003", Instant.now().minusSeconds(60)), Optional.of("ISS001"), "unexpired code kept");
+        check(store.issueCode(second, "ISS001"), Optional.empty(), "code held by another player");
+        check(store.findByPlayer(second).isPresent(), false, "conflicting issue left a row");
+
+        check(store.issueCode(first, "ISS004", Instant.now().plusSeconds(60)), Optional.of("ISS004"), "expired code replaced");
+        check(store.findByCode("ISS001").isPresent(), false, "expired code still found");
+
+        store.markValidated(first, "ISS004", null);
+        check(store.issueCode(first, "ISS005"), Optional.of("ISS005"), "validated code replaced");
+        check(store.findByPlayer(first).map(WhitelistCode::isValidated).orElse(true), false, "reissued code validated");
+    }
+
+    private static void markValidated(Fixture fixture) {
+        WhitelistStore store = fixture.store();
+        UUID playerUuid = UUID.randomUUID();
+        store.upsertCode(playerUuid, "MRK001");
+        check(store.markValidated(playerUuid, "MRK999", null), false, "wrong code accepted");
+        check(store.markValidated(UUID.randomUUID(), "MRK001", null), false, "wrong player accepted");
+        Instant validatedAt = Instant.parse("2024-05-01T10:15:30.123456Z");
+        check(store.markValidated(playerUuid, "MRK001", validatedAt), true, "validation");
+        check(store.markValidated(playerUuid, "MRK001", null), false, "second validation");
+        check(
+            store.findByPlayer(playerUuid).map(WhitelistCode::validatedAt).orElse(null),
+            Instant.parse("2024-05-01T10:15:30.123Z"),
+            "validatedAt truncated to millis"
+        );
+        check(store.delete(playerUuid), true, "delete");
+        check(store.delete(playerUuid), false, "second delete");
+        check(store.markValidated(playerUuid, "MRK001", null), false, "validation after delete");
+    }
+
+    /** Keyset pages in both directions cover every pending code once, in order. */
+    private static void activePaging(Fixture fixture, int rows) {
+        WhitelistStore store = fixture.store();
+        for (int i = 0; i < rows; i++) {
+            UUID playerUuid = UUID.randomUUID();
+            String code = String.format("P%06d", i);
+            store.upsertCode(playerUuid, code);
+            if (i % 5 == 0) {
+                store.markValidated(playerUuid, code, null);
+            }
+        }
+        List<WhitelistCode> all = store.listActiveCodes();
+        check(all.size(), rows - (rows + 4) / 5, "active code count");
+        List<WhitelistCode> sorted = new ArrayList<>(all);
+        sorted.sort(Comparator.comparing(WhitelistCode::pageKey, WhitelistStore.PAGE_ORDER));
+        check(all, sorted, "active codes oldest first, ties by player");
+        check(all.stream().anyMatch(WhitelistCode::isValidated), false, "validated code listed as active");
+
+        int limit = 7;
+        List<WhitelistCode> forward = new ArrayList<>();
+        PageKey after = null;
+        while (true) {
+            CodePage page = store.listActiveCodesAfter(after, limit);
+            forward.addAll(page.codes());
+            check(page.codes().size() == limit || !page.hasMore(), true, "short page claims more");
+            if (!page.hasMore()) {
+                break;
+            }
+            after = page.lastKey();
+        }
+        check(forward, all, "forward pages");
+
+        List<WhitelistCode> backward = new ArrayList<>();
+        PageKey before = new PageKey(Long.MAX_VALUE, "");
+        while (true) {
+            CodePage page = store.listActiveCodesBefore(before, limit);
+            backward.addAll(0, page.codes());
+            if (!page.hasMore()) {
+                break;
+            }
+            before = page.firstKey();
+        }
+        check(backward, all, "backward pages");
+
+        CodePage middle = store.listActiveCodesBefore(all.get(limit).pageKey(), limit);
+        check(middle.codes(), all.subList(0, limit), "page before the second page");
+        check(middle.hasMore(), false, "first page claims older codes");
+        expectThrows(IllegalArgumentException.class, () -> store.listActiveCodesAfter(null, 0), "zero limit");
+    }
+
+    /** Validated players, archived ones included, stream in UUID string order. */
+    private static void validatedStreaming(Fixture fixture, int rows) {
+        WhitelistStore store = fixture.store();
+        List<UUID> validated = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            UUID playerUuid = UUID.randomUUID();
+            String code = String.format("V%06d", i);
+            store.upsertCode(playerUuid, code);
+            if (i % 3 != 0) {
+                store.markValidated(playerUuid, code, Instant.now().minusSeconds(3_600));
+                validated.add(playerUuid);
+            }
+        }
+        int archived = store.archiveValidatedCodes(Instant.now(), validated.size() / 2);
+        check(archived, validated.size() / 2, "archived count");
+        // revalidated after archiving: listed in both tables
+        UUID revalidated = validated.get(0);
+        if (store.findByPlayer(revalidated).isEmpty()) {
+            store.upsertCode(revalidated, "VREVAL");
+            store.markValidated(revalidated, "VREVAL", null);
+        } else {
+            revalidated = null;
+        }
+        validated.sort(Comparator.comparing(UUID::toString));
+
+        List<UUID> streamed = new ArrayList<>();
+        UUID after = null;
+        int limit = 13;
+        while (true) {
+            List<UUID> page = new ArrayList<>();
+            int read = store.streamValidatedPlayers(after, limit, page::add);
+            check(read, page.size(), "players streamed vs returned");
+            streamed.addAll(page);
+            if (read < limit) {
+                break;
+            }
+            after = page.get(page.size() - 1);
+        }
+        check(streamed, validated, "validated players in UUID order");
+
+        List<UUID> entries = new ArrayList<>();
+        after = null;
+        int totalRead = 0;
+        while (true) {
+            List<ValidatedEntry> page = new ArrayList<>();
+            int read = store.streamValidatedEntries(after, limit, page::add);
+            totalRead += read;
+            page.forEach(entry -> entries.add(entry.playerUuid()));
+            if (read < limit) {
+                break;
+            }
+            after = page.get(page.size() - 1).playerUuid();
+        }
+        check(entries, validated, "validated entries in UUID order");
+        // the re-validated player's second row is only read when it lands on the same page
+        int extraRows = totalRead - validated.size();
+        check(extraRows == 0 || (revalidated != null && extraRows == 1), true, "entry rows read");
+
+        List<UUID> probe = new ArrayList<>(validated.subList(0, Math.min(50, validated.size())));
+        UUID pending = UUID.randomUUID();
+        store.upsertCode(pending, "VPEND1");
+        probe.add(pending);
+        probe.add(UUID.randomUUID());
+        check(store.filterValidated(probe), Set.copyOf(validated.subList(0, probe.size() - 2)), "filterValidated");
+        check(store.filterValidated(List.of()), Set.of(), "filterValidated on nothing");
+    }
+
+    private static void batchOperations(Fixture fixture, int rows) {
+        WhitelistStore store = fixture.store();
+        List<UUID> players = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            UUID playerUuid = UUID.randomUUID();
+            players.add(playerUuid);
+            store.upsertCode(playerUuid, String.format("B%06d", i));
+        }
+        List<UUID> lookup = new ArrayList<>(players);
+        lookup.add(UUID.randomUUID());
+        Map<UUID, WhitelistCode> found = store.findByPlayers(lookup);
+        check(found.size(), rows, "findByPlayers size");
+        check(found.get(players.get(rows - 1)), store.findByPlayer(players.get(rows - 1)).orElse(null), "findByPlayers row");
+
+        Instant validatedAt = Instant.parse("2024-01-02T03:04:05.678Z");
+        List<ValidatedEntry> imports = new ArrayList<>();
+        imports.add(new ValidatedEntry(players.get(0), validatedAt));
+        UUID newcomer = UUID.randomUUID();
+        imports.add(new ValidatedEntry(newcomer, validatedAt));
+        imports.add(new ValidatedEntry(newcomer, validatedAt.plusSeconds(1)));
+        check(store.importValidated(imports), 2, "import changed rows");
+        check(store.importValidated(imports), 0, "repeated import");
+        check(store.importValidated(List.of()), 0, "empty import");
+        WhitelistCode imported = store.findByPlayer(newcomer).orElseThrow(() -> new ConformanceFailure("imported row missing"));
+        check(imported.whitelistCode(), WhitelistStore.IMPORTED_CODE_PREFIX + newcomer, "placeholder code");
+        check(imported.validatedAt(), validatedAt, "imported validatedAt");
+        check(store.findByPlayer(players.get(0)).map(WhitelistCode::validatedAt).orElse(null), validatedAt, "pending code validated by import");
+
+        List<UUID> doomed = new ArrayList<>(players.subList(0, rows / 2));
+        doomed.add(UUID.randomUUID());
+        doomed.add(players.get(0));
+        check(store.deleteAll(doomed), rows / 2, "deleteAll count");
+        check(store.findByPlayers(players).size(), rows - rows / 2, "rows left after deleteAll");
+        check(store.deleteAll(List.of()), 0, "deleteAll on nothing");
+    }
+
+    private static void expiryAndArchive(Fixture fixture, int rows) {
+        WhitelistStore store = fixture.store();
+        List<UUID> validated = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            UUID playerUuid = UUID.randomUUID();
+            String code = String.format("E%06d", i);
+            store.upsertCode(playerUuid, code);
+            if (i % 2 == 0) {
+                store.markValidated(playerUuid, code, Instant.now().minusSeconds(i));
+                validated.add(playerUuid);
+            }
+        }
+        int pending = rows - validated.size();
+        check(store.deleteExpiredCodes(Instant.now().minusSeconds(3_600), 100), 0, "nothing expired yet");
+        Instant cutoff = Instant.now().plusSeconds(1);
+        int batch = Math.max(1, pending / 3);
+        List<WhitelistCode> oldest = store.listActiveCodesAfter(null, batch).codes();
+        check(store.deleteExpiredCodes(cutoff, batch), batch, "first expiry batch");
+        Instant newestSwept = oldest.get(batch - 1).createdAt();
+        check(
+            store.listActiveCodesAfter(null, 1).codes().get(0).createdAt().isBefore(newestSwept),
+            false,
+            "sweep skipped an older code"
+        );
+        int deleted = batch;
+        int step;
+        while ((step = store.deleteExpiredCodes(cutoff, batch)) > 0) {
+            deleted += step;
+        }
+        check(deleted, pending, "expired codes deleted");
+        check(store.listActiveCodes().size(), 0, "active codes after sweep");
+
+        check(store.archiveValidatedCodes(Instant.now().minusSeconds(rows + 60L), 100), 0, "nothing archivable yet");
+        int archived = 0;
+        while ((step = store.archiveValidatedCodes(Instant.now(), 64)) > 0) {
+            archived += step;
+        }
+        check(archived, validated.size(), "validated codes archived");
+        check(store.findByPlayer(validated.get(0)).isPresent(), false, "archived code still in the working set");
+        check(store.filterValidated(validated).size(), validated.size(), "archived players still validated");
+        check(store.delete(validated.get(0)), true, "delete of an archived player");
+        check(store.filterValidated(List.of(validated.get(0))), Set.of(), "deleted archived player still validated");
+
+        int steps = 0;
+        while (store.compact(256) > 0) {
+            check(++steps < 10_000, true, "compact converges");
+        }
+    }
+
+    private static void snapshot(Fixture fixture) {
+        WhitelistStore store = fixture.store();
+        store.upsertCode(UUID.randomUUID(), "SNAP01");
+        Path target = fixture.directory().resolve("snapshot" + store.snapshotSuffix());
+        if (!store.supportsSnapshots()) {
+            expectThrows(UnsupportedOperationException.class, () -> store.snapshotTo(target), "snapshot");
+            return;
+        }
+        store.snapshotTo(target);
+        check(Files.exists(target), true, "snapshot written");
+        check(store.checkSnapshot(target), "ok", "snapshot check");
+    }
+
+    /** A log torn mid-record reopens with every intact record, and writes carry on after them. */
+    private static void tornTail(Fixture fixture) {
+        if (!(fixture.store() instanceof MappedLogWhitelistStore store)) {
+            return;
+        }
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        store.upsertCode(first, "TORN01");
+        store.upsertCode(second, "TORN02");
+        store.close();
+        // 64-byte records after a 64-byte header: scribble over the code of the second one
+        byte[] garbage = new byte[24];
+        Arrays.fill(garbage, (byte) 0x5A);
+        try (FileChannel channel = FileChannel.open(store.logPath(), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(garbage), 2 * 64 + 40);
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        store.initialize();
+        check(store.findByCode("TORN01").map(WhitelistCode::playerUuid).orElse(null), first, "intact record");
+        check(store.findByPlayer(second).isPresent(), false, "torn record replayed");
+        store.upsertCode(second, "TORN03");
+        store.close();
+        store.initialize();
+        check(store.findByCode("TORN03").map(WhitelistCode::playerUuid).orElse(null), second, "write after recovery");
+    }
+
+    /**
+     * SQLite out of reach at startup: codes are issued and validated from
+     * memory, the spool survives a restart, and the retry task replays it
+     * once the database can be opened.
+     */
+    private static void degradedFallback(Fixture fixture) {
+        if (!(fixture.store() instanceof FallbackWhitelistStore)) {
+            return;
+        }
+        // a regular file where the database directory should be
+        Path blocker = fixture.directory().resolve("blocked");
+        Path spool = fixture.directory().resolve(FallbackWhitelistStore.DEFAULT_SPOOL_NAME);
+        try {
+            Files.writeString(blocker, "not a directory");
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        UUID validated = UUID.randomUUID();
+        UUID pending = UUID.randomUUID();
+        UUID revoked = UUID.randomUUID();
+        FallbackWhitelistStore store = fallback(blocker, spool);
+        store.initialize();
+        check(store.isDegraded(), true, "degraded after failed initialize");
+        check(store.issueCode(validated, "DEG001"), Optional.of("DEG001"), "issue while degraded");
+        check(store.issueCode(validated, "DEG009"), Optional.of("DEG001"), "reissue keeps the code");
+        check(store.issueCode(pending, "DEG001"), Optional.empty(), "code held by another player");
+        store.upsertCode(pending, "DEG002");
+        store.upsertCode(revoked, "DEG003");
+        check(store.markValidated(validated, "DEG001", null), true, "validate while degraded");
+        check(store.markValidated(pending, "WRONG1", null), false, "validate with a stale code");
+        check(store.delete(revoked), true, "delete while degraded");
+        check(store.findByCode("DEG003").isPresent(), false, "deleted code still visible");
+        check(store.findByPlayer(validated).map(WhitelistCode::isValidated).orElse(false), true, "validated row");
+        expectThrows(DatabaseException.class, () -> store.listActiveCodesAfter(null, 10), "paging while degraded");
+        expectThrows(DatabaseException.class, () -> store.filterValidated(List.of(validated)), "batch while degraded");
+        store.close();
+
+        // a restart while still degraded rebuilds the view from the spool
+        FallbackWhitelistStore restarted = fallback(blocker, spool);
+        restarted.initialize();
+        try {
+            check(restarted.isDegraded(), true, "still degraded after restart");
+            check(restarted.findByCode("DEG002").map(WhitelistCode::playerUuid).orElse(null), pending, "spooled code after restart");
+            try {
+                Files.delete(blocker);
+            } catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+            long deadline = System.nanoTime() + 30_000_000_000L;
+            while (restarted.isDegraded()) {
+                if (System.nanoTime() > deadline) {
+                    throw new ConformanceFailure("database never recovered");
+                }
+                sleep(100);
+            }
+            check(Files.exists(spool), false, "spool removed after replay");
+            check(restarted.findByPlayer(validated).map(WhitelistCode::isValidated).orElse(false), true, "validation replayed");
+            check(restarted.findByCode("DEG002").map(WhitelistCode::playerUuid).orElse(null), pending, "code replayed");
+            check(restarted.findByPlayer(revoked).isPresent(), false, "delete replayed");
+            check(restarted.filterValidated(List.of(validated, pending)), Set.of(validated), "batch after recovery");
+        } finally {
+            restarted.close();
+        }
+    }
+
+    private static FallbackWhitelistStore fallback(Path databaseDirectory, Path spool) {
+        return new FallbackWhitelistStore(
+            new DatabaseManager(databaseDirectory, PluginStack.logger()),
+            spool,
+            PluginStack.logger(),
+            new MetricsRegistry()
+        );
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new ConformanceFailure("interrupted");
+        }
+    }
+
+    private static void check(Object actual, Object expected, String what) {
+        if (!expected.equals(actual)) {
+            throw new ConformanceFailure(what + ": expected " + abbreviate(expected) + " but got " + abbreviate(actual));
+        }
+    }
+
+    private static void expectThrows(Class<? extends Throwable> type, Runnable action, String what) {
+        try {
+            action.run();
+        } catch (Throwable thrown) {
+            if (type.isInstance(thrown)) {
+                return;
+            }
+            throw new ConformanceFailure(what + ": expected " + type.getSimpleName() + " but got " + thrown);
+        }
+        throw new ConformanceFailure(what + ": expected " + type.getSimpleName());
+    }
+
+    private static String abbreviate(Object value) {
+        String text = String.valueOf(value);
+        return text.length() <= 200 ? text : text.substring(0, 200) + "...";
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths
+                .sorted(Comparator.reverseOrder())
+                .forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @FunctionalInterface
+    private interface Check {
+        void run(Fixture fixture);
+    }
+
+    private record Fixture(WhitelistStore store, Path directory) {}
+
+    private static final class ConformanceFailure extends RuntimeException {
+
+        private ConformanceFailure(String message) {
+            super(message);
+        }
+    }
+}
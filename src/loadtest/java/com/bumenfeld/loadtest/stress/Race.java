@@ -0,0 +1,71 @@
+package com.bumenfeld.loadtest.stress;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Releases a set of actors at the same instant, jcstress style, and collects
+ * what each one returned or threw.
+ */
+final class Race {
+
+    private static final long ACTOR_TIMEOUT_SECONDS = 30;
+
+    private final ExecutorService executor;
+
+    Race(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    <T> List<Outcome<T>> run(List<Callable<T>> actors) throws InterruptedException {
+        CountDownLatch ready = new CountDownLatch(actors.size());
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<T>> futures = new ArrayList<>(actors.size());
+        for (Callable<T> actor : actors) {
+            futures.add(
+                executor.submit(() -> {
+                    ready.countDown();
+                    go.await();
+                    return actor.call();
+                })
+            );
+        }
+        ready.await();
+        go.countDown();
+
+        List<Outcome<T>> outcomes = new ArrayList<>(futures.size());
+        for (Future<T> future : futures) {
+            try {
+                outcomes.add(Outcome.value(future.get(ACTOR_TIMEOUT_SECONDS, TimeUnit.SECONDS)));
+            } catch (ExecutionException exception) {
+                outcomes.add(Outcome.failure(exception.getCause()));
+            } catch (TimeoutException exception) {
+                future.cancel(true);
+                outcomes.add(Outcome.failure(exception));
+            }
+        }
+        return outcomes;
+    }
+
+    record Outcome<T>(T value, Throwable failure) {
+
+        static <T> Outcome<T> value(T value) {
+            return new Outcome<>(value, null);
+        }
+
+        static <T> Outcome<T> failure(Throwable failure) {
+            return new Outcome<>(null, failure);
+        }
+
+        boolean failed() {
+            return failure != null;
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package com.bumenfeld.loadtest.stress;
+
+import com.bumenfeld.database.DatabaseManager;
+import com.bumenfeld.database.DatabaseManager.DatabaseException;
+import com.bumenfeld.database.WhitelistCodeService;
+import com.bumenfeld.database.WhitelistCodeService.ValidateResult;
+import com.bumenfeld.database.WhitelistStore.WhitelistCode;
+import com.bumenfeld.loadtest.HarnessArguments;
+import com.bumenfeld.loadtest.PluginStack;
+import com.bumenfeld.loadtest.stress.Race.Outcome;
+import com.hypixel.hytale.server.core.modules.accesscontrol.provider.HytaleWhitelistProvider;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Races {@code ensureCode}, {@code validateCode}, {@code revoke},
+ * {@code close} and {@code initialize} against each other and checks the
+ * invariants the rest of the plugin relies on:
+ *
+ * <ul>
+ *   <li>a code is validated at most once, and only while it is the player's
+ *       current code;</li>
+ *   <li>concurrent issuers for one player agree on a single code, and no two
+ *       players ever share a code;</li>
+ *   <li>a revoke never leaves a whitelisted player without a row;</li>
+ *   <li>after {@code close()} returns, no call succeeds until
+ *       {@code initialize()}, and calls racing the close fail only with
+ *       {@link IllegalStateException} or {@link DatabaseException}.</li>
+ * </ul>
+ *
+ * Each scenario runs for many rounds with all actors released at once, in the
+ * spirit of jcstress. Arguments, all optional: {@code rounds=200 threads=8}.
+ * Exits non-zero when an invariant is violated.
+ */
+public final class WhitelistStressSuite {
+
+    private WhitelistStressSuite() {
+        // entry point only
+    }
+
+    public static void main(String[] args) throws Exception {
+        HarnessArguments arguments = HarnessArguments.parse(args);
+        int rounds = arguments.intValue("rounds", 200);
+        int threads = Math.max(2, arguments.intValue("threads", 8));
+
+        Map<String, Scenario> scenarios = new LinkedHashMap<>();
+        scenarios.put("validate-same-code", WhitelistStressSuite::validateSameCode);
+        scenarios.put("ensure-same-player", WhitelistStressSuite::ensureSamePlayer);
+        scenarios.put("unique-codes", WhitelistStressSuite::uniqueCodes);
+        scenarios.put("validate-vs-revoke", WhitelistStressSuite::validateVersusRevoke);
+        scenarios.put("stale-code-after-reissue", WhitelistStressSuite::staleCodeAfterReissue);
+        scenarios.put("initialize-race", WhitelistStressSuite::initializeRace);
+        scenarios.put("close-during-traffic", WhitelistStressSuite::closeDuringTraffic);
+
+        ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "stress-actor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        int failures = 0;
+        try (PluginStack stack = new PluginStack(new HytaleWhitelistProvider(), null)) {
+            Context context = new Context(stack, new Race(executor), threads);
+            for (Map.Entry<String, Scenario> entry : scenarios.entrySet()) {
+                // the close scenario builds a fresh stack per round, keep it shorter
+                int scenarioRounds = entry.getKey().equals("close-during-traffic")
+                    ? Math.max(1, rounds / 10)
+                    : rounds;
+                long startedAt = System.nanoTime();
+                try {
+                    for (int round = 0; round < scenarioRounds; round++) {
+                        entry.getValue().round(context);
+                    }
+                    System.out.printf(
+                        "PASS %-26s %5d rounds in %6.2fs%n",
+                        entry.getKey(),
+                        scenarioRounds,
+                        (System.nanoTime() - startedAt) / 1e9
+                    );
+                } catch (InvariantViolation violation) {
+                    failures++;
+                    System.out.printf("FAIL %-26s %s%n", entry.getKey(), violation.getMessage());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /** Many validations of one code: exactly one succeeds, the rest see it as used. */
+    private static void validateSameCode(Context context) throws Exception {
+        WhitelistCodeService service = context.service();
+        UUID playerUuid = UUID.randomUUID();
+        String code = service.ensureCode(playerUuid);
+
+        List<Callable<ValidateResult>> actors = new ArrayList<>();
+        for (int i = 0; i < context.threads; i++) {
+            actors.add(() -> service.validateCode(code));
+        }
+        int successes = 0;
+        for (Outcome<ValidateResult> outcome : context.race.run(actors)) {
+            requireNoFailure(outcome);
+            switch (outcome.value().getStatus()) {
+                case SUCCESS -> successes++;
+                case ALREADY_VALIDATED -> {
+                    // expected for every loser
+                }
+                default -> throw new InvariantViolation(
+                    "unexpected status %s for a racing validation", outcome.value().getStatus()
+                );
+            }
+        }
+        check(successes == 1, "code %s validated %d times", code, successes);
+        check(service.isWhitelisted(playerUuid), "validated player %s is not whitelisted", playerUuid);
+    }
+
+    /** Concurrent issuers for one player all hand out the code that ends up stored. */
+    private static void ensureSamePlayer(Context context) throws Exception {
+        WhitelistCodeService service = context.service();
+        UUID playerUuid = UUID.randomUUID();
+
+        List<Callable<String>> actors = new ArrayList<>();
+        for (int i = 0; i < context.threads; i++) {
+            actors.add(() -> service.ensureCode(playerUuid));
+        }
+        Set<String> handedOut = new HashSet<>();
+        for (Outcome<String> outcome : context.race.run(actors)) {
+            requireNoFailure(outcome);
+            handedOut.add(outcome.value());
+        }
+        String stored = service
+            .findByPlayer(playerUuid)
+            .map(WhitelistCode::whitelistCode)
+            .orElse(null);
+        check(handedOut.size() == 1, "player %s was handed %s", playerUuid, handedOut);
+        check(handedOut.contains(stored), "handed out %s but stored %s", handedOut, stored);
+    }
+
+    /** Issuing for many players at once never produces a shared or lost code. */
+    private static void uniqueCodes(Context context) throws Exception {
+        WhitelistCodeService service = context.service();
+        int perActor = 16;
+
+        List<Callable<Map<UUID, String>>> actors = new ArrayList<>();
+        for (int i = 0; i < context.threads; i++) {
+            actors.add(() -> {
+                Map<UUID, String> issued = new HashMap<>();
+                for (int j = 0; j < perActor; j++) {
+                    UUID playerUuid = UUID.randomUUID();
+                    issued.put(playerUuid, service.ensureCode(playerUuid));
+                }
+                return issued;
+            });
+        }
+        Map<String, UUID> owners = new HashMap<>();
+        for (Outcome<Map<UUID, String>> outcome : context.race.run(actors)) {
+            requireNoFailure(outcome);
+            for (Map.Entry<UUID, String> issued : outcome.value().entrySet()) {
+                UUID previous = owners.put(issued.getValue(), issued.getKey());
+                check(previous == null, "code %s issued to %s and %s", issued.getValue(), previous, issued.getKey());
+                Optional<WhitelistCode> stored = service.findByCode(issued.getValue());
+                check(
+                    stored.isPresent() && stored.get().playerUuid().equals(issued.getKey()),
+                    "code %s for %s is not stored for that player",
+                    issued.getValue(),
+                    issued.getKey()
+                );
+            }
+        }
+    }
+
+    /** A revoke racing a validation never leaves a whitelisted player behind without a row. */
+    private static void validateVersusRevoke(Context context) throws Exception {
+        WhitelistCodeService service = context.service();
+        UUID playerUuid = UUID.randomUUID();
+        String code = service.ensureCode(playerUuid);
+
+        List<Callable<Object>> actors = List.of(
+            () -> service.validateCode(code),
+            () -> service.revoke(playerUuid, true)
+        );
+        List<Outcome<Object>> outcomes = context.race.run(actors);
+        outcomes.forEach(WhitelistStressSuite::requireNoFailure);
+        ValidateResult validation = (ValidateResult) outcomes.get(0).value();
+        check(
+            validation.getStatus() == ValidateResult.Status.SUCCESS ||
+                validation.getStatus() == ValidateResult.Status.NOT_FOUND,
+            "validation racing a revoke returned %s",
+            validation.getStatus()
+        );
+        check(Boolean.TRUE.equals(outcomes.get(1).value()), "revoke of %s found no row", playerUuid);
+        check(service.findByPlayer(playerUuid).isEmpty(), "row for %s survived the revoke", playerUuid);
+        check(!service.isWhitelisted(playerUuid), "%s is whitelisted after a revoke", playerUuid);
+    }
+
+    /** A code replaced by revoke-and-reissue cannot validate the new row. */
+    private static void staleCodeAfterReissue(Context context) throws Exception {
+        WhitelistCodeService service = context.service();
+        UUID playerUuid = UUID.randomUUID();
+        String staleCode = service.ensureCode(playerUuid);
+
+        List<Callable<Object>> actors = List.of(
+            () -> service.validateCode(staleCode),
+            () -> {
+                service.revoke(playerUuid, false);
+                return service.ensureCode(playerUuid);
+            }
+        );
+        List<Outcome<Object>> outcomes = context.race.run(actors);
+        outcomes.forEach(WhitelistStressSuite::requireNoFailure);
+        String freshCode = (String) outcomes.get(1).value();
+        if (freshCode.equals(staleCode)) {
+            // the generator picked the same digits again, nothing to check
+            return;
+        }
+        WhitelistCode stored = service
+            .findByPlayer(playerUuid)
+            .orElseThrow(() -> new InvariantViolation("no row for %s after reissue", playerUuid));
+        check(stored.whitelistCode().equals(freshCode), "stored %s, reissued %s", stored.whitelistCode(), freshCode);
+        check(!stored.isValidated(), "reissued code %s was validated through stale code %s", freshCode, staleCode);
+    }
+
+    /** Concurrent initialize calls open exactly one working connection. */
+    private static void initializeRace(Context context) throws Exception {
+        Path directory = Files.createTempDirectory("stress-init");
+        DatabaseManager databaseManager = new DatabaseManager(directory, PluginStack.logger());
+        try {
+            List<Callable<Object>> actors = new ArrayList<>();
+            for (int i = 0; i < context.threads; i++) {
+                actors.add(() -> {
+                    databaseManager.initialize();
+                    return null;
+                });
+            }
+            context.race.run(actors).forEach(WhitelistStressSuite::requireNoFailure);
+            UUID playerUuid = UUID.randomUUID();
+            databaseManager.upsertCode(playerUuid, "INIT01");
+            check(databaseManager.findByPlayer(playerUuid).isPresent(), "initialized database lost a write");
+        } finally {
+            databaseManager.close();
+            deleteRecursively(directory);
+        }
+    }
+
+    /**
+     * Mixed traffic while one actor closes and reopens the database. Calls
+     * overlapping the close may fail, but only with the plugin's own
+     * exceptions, and none may succeed while the database is closed.
+     */
+    private static void closeDuringTraffic(Context context) throws Exception {
+        try (PluginStack stack = new PluginStack(new HytaleWhitelistProvider(), null)) {
+            WhitelistCodeService service = stack.whitelistCodeService();
+            // 0 = open, 1 = closed, 2 = reopening
+            AtomicInteger phase = new AtomicInteger();
+            int operations = 200;
+
+            List<Callable<String>> actors = new ArrayList<>();
+            for (int i = 0; i < context.threads - 1; i++) {
+                actors.add(() -> {
+                    List<String> codes = new ArrayList<>();
+                    for (int op = 0; op < operations; op++) {
+                        boolean closedBefore = phase.get() == 1;
+                        boolean succeeded;
+                        try {
+                            succeeded = randomOperation(service, codes);
+                        } catch (IllegalStateException | DatabaseException expected) {
+                            succeeded = false;
+                        }
+                        if (succeeded && closedBefore && phase.get() == 1) {
+                            return "operation succeeded on a closed database";
+                        }
+                    }
+                    return null;
+                });
+            }
+            actors.add(() -> {
+                TimeUnit.MICROSECONDS.sleep(ThreadLocalRandom.current().nextInt(2_000));
+                service.close();
+                phase.set(1);
+                TimeUnit.MICROSECONDS.sleep(ThreadLocalRandom.current().nextInt(2_000));
+                phase.set(2);
+                service.initialize();
+                phase.set(0);
+                return null;
+            });
+
+            for (Outcome<String> outcome : context.race.run(actors)) {
+                requireNoFailure(outcome);
+                check(outcome.value() == null, "%s", outcome.value());
+            }
+            UUID probe = UUID.randomUUID();
+            check(
+                service.findByCode(service.ensureCode(probe)).isPresent(),
+                "reopened database does not accept writes"
+            );
+        }
+    }
+
+    /** @return whether the operation completed without throwing */
+    private static boolean randomOperation(WhitelistCodeService service, List<String> codes) {
+        switch (ThreadLocalRandom.current().nextInt(4)) {
+            case 0 -> codes.add(service.ensureCode(UUID.randomUUID()));
+            case 1 -> {
+                if (codes.isEmpty()) {
+                    // nothing touched the database, so nothing to judge
+                    return false;
+                }
+                service.validateCode(codes.get(ThreadLocalRandom.current().nextInt(codes.size())));
+            }
+            case 2 -> service.findByPlayer(UUID.randomUUID());
+            default -> service.revoke(UUID.randomUUID(), true);
+        }
+        return true;
+    }
+
+    private static void requireNoFailure(Outcome<?> outcome) {
+        if (outcome.failed()) {
+            InvariantViolation violation = new InvariantViolation(
+                "actor threw %s",
+                outcome.failure()
+            );
+            violation.initCause(outcome.failure());
+            throw violation;
+        }
+    }
+
+    private static void check(boolean condition, String format, Object... args) {
+        if (!condition) {
+            throw new InvariantViolation(format, args);
+        }
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths
+                .sorted(Comparator.reverseOrder())
+                .forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @FunctionalInterface
+    private interface Scenario {
+        void round(Context context) throws Exception;
+    }
+
+    private record Context(PluginStack stack, Race race, int threads) {
+
+        WhitelistCodeService service() {
+            return stack.whitelistCodeService();
+        }
+    }
+
+    private static final class InvariantViolation extends RuntimeException {
+
+        private InvariantViolation(String format, Object... args) {
+            super(String.format(format, args));
+        }
+    }
+}
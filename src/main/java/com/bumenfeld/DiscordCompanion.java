@@ -2,29 +2,42 @@ package com.bumenfeld;
 
 import com.bumenfeld.database.DatabaseManager;
 import com.bumenfeld.database.WhitelistCodeService;
+import com.bumenfeld.database.WhitelistStore;
+import com.bumenfeld.announcement.AnnouncementQueue;
+import com.bumenfeld.announcement.AnnouncementScheduler;
 import com.bumenfeld.announcement.GameAnnouncementService;
 import com.bumenfeld.discord.DiscordBotService;
 import com.bumenfeld.discord.DiscordConfig;
 import com.bumenfeld.discord.DiscordConfigLoader;
+import com.bumenfeld.discord.JoinQueueNotifier;
 import com.bumenfeld.localization.LocalizationService;
+import com.bumenfeld.metrics.MetricsHttpServer;
+import com.bumenfeld.metrics.MetricsRegistry;
+import com.bumenfeld.player.ConnectionGate;
+import com.bumenfeld.player.PlayerRegistry;
 import com.bumenfeld.util.ReflectionUtil;
 import com.hypixel.hytale.logger.HytaleLogger;
 import com.hypixel.hytale.event.EventPriority;
 import com.hypixel.hytale.server.core.HytaleServerConfig;
 import com.hypixel.hytale.server.core.event.events.BootEvent;
 import com.hypixel.hytale.server.core.event.events.ShutdownEvent;
+import com.hypixel.hytale.server.core.event.events.player.AddPlayerToWorldEvent;
+import com.hypixel.hytale.server.core.event.events.player.PlayerConnectEvent;
 import com.hypixel.hytale.server.core.event.events.player.PlayerDisconnectEvent;
 import com.hypixel.hytale.server.core.event.events.player.PlayerSetupConnectEvent;
-import com.hypixel.hytale.server.core.io.PacketHandler;
 import com.hypixel.hytale.server.core.modules.accesscontrol.AccessControlModule;
 import com.hypixel.hytale.server.core.modules.accesscontrol.provider.HytaleWhitelistProvider;
 import com.hypixel.hytale.server.core.plugin.JavaPlugin;
 import com.hypixel.hytale.server.core.plugin.JavaPluginInit;
+import com.hypixel.hytale.server.core.universe.PlayerRef;
+import com.hypixel.hytale.server.core.universe.world.World;
 
+import java.lang.invoke.MethodHandle;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.nio.file.Path;
-import java.util.Set;
+import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public final class DiscordCompanion extends JavaPlugin {
@@ -35,17 +48,27 @@ public final class DiscordCompanion extends JavaPlugin {
     private final DatabaseManager databaseManager;
     private final WhitelistCodeService whitelistCodeService;
     private final GameAnnouncementService announcementService;
+    private final AnnouncementQueue announcementQueue;
+    private final AnnouncementScheduler announcementScheduler;
     private final LocalizationService localizationService;
     private final DiscordBotService discordBotService;
-    private final Set<UUID> onlinePlayers = ConcurrentHashMap.newKeySet();
+    private final ConnectionGate connectionGate;
+    private final JoinQueueNotifier joinQueueNotifier;
+    private final PlayerRegistry playerRegistry = new PlayerRegistry();
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final MetricsHttpServer metricsHttpServer =
+        new MetricsHttpServer(metrics, LOGGER);
     private final Thread shutdownHook;
     private final PlayerLifecycleListener playerLifecycleListener = new PlayerLifecycleListener();
     private final ShutdownListener shutdownListener = new ShutdownListener();
     private final AtomicBoolean shutdownNotified = new AtomicBoolean(false);
+    private final AtomicBoolean remoteAddressWarned = new AtomicBoolean(false);
         private final ServerLifecycleListener serverLifecycleListener =
             new ServerLifecycleListener();
 
     private volatile DiscordConfig discordConfig = DiscordConfig.defaults();
+    // refreshed with the presence; the join queue reads it on every connect
+    private volatile int maxPlayers;
 
     public DiscordCompanion(JavaPluginInit init) {
         super(init);
@@ -67,13 +90,39 @@ public final class DiscordCompanion extends JavaPlugin {
         }
         this.whitelistProvider = provider;
 
-        this.databaseManager = new DatabaseManager(resolveDatabaseDirectory(), LOGGER);
+        // read here rather than in setup(): it picks the whitelist store
+        this.discordConfig = DiscordConfigLoader.load(getDataDirectory(), LOGGER);
+        this.databaseManager = new DatabaseManager(
+            resolveDatabaseDirectory(),
+            LOGGER,
+            metrics
+        );
+        WhitelistStore whitelistStore = discordConfig
+            .storageBackend()
+            .open(databaseManager, LOGGER, metrics);
+        LOGGER
+            .atInfo()
+            .log("Whitelist storage backend: %s", discordConfig.storageBackend().configName());
         this.whitelistCodeService = new WhitelistCodeService(
-            databaseManager,
+            whitelistStore,
+            resolveDatabaseDirectory(),
             whitelistProvider,
+            LOGGER,
+            metrics
+        );
+        this.announcementService = new GameAnnouncementService(
+            LOGGER,
+            playerRegistry
+        );
+        this.announcementQueue = new AnnouncementQueue(
+            announcementService,
+            LOGGER
+        );
+        this.announcementScheduler = new AnnouncementScheduler(
+            databaseManager,
+            announcementQueue,
             LOGGER
         );
-        this.announcementService = new GameAnnouncementService(LOGGER);
         this.localizationService = new LocalizationService(
             this.getDataDirectory(),
             LOGGER
@@ -81,13 +130,48 @@ public final class DiscordCompanion extends JavaPlugin {
         this.discordBotService = new DiscordBotService(
             LOGGER,
             whitelistCodeService,
-            announcementService,
+            announcementQueue,
+            announcementScheduler,
             localizationService,
+            metrics,
             this.getDataDirectory()
         );
+        whitelistCodeService.setUnlinkListener(discordBotService.links()::unlink);
+        this.connectionGate = new ConnectionGate(
+            whitelistCodeService,
+            () -> discordConfig,
+            this::refreshPresence,
+            () -> maxPlayers,
+            metrics,
+            LOGGER
+        );
+        this.joinQueueNotifier = new JoinQueueNotifier(
+            discordBotService,
+            connectionGate::joinQueueSnapshot,
+            () -> discordConfig,
+            metrics,
+            LOGGER
+        );
+        metrics.gauge(
+            "online_players",
+            "Players tracked as online",
+            connectionGate::onlineCount
+        );
+        metrics.gauge(
+            "indexed_players",
+            "Players in the world/group index",
+            playerRegistry::size
+        );
+        metrics.gauge(
+            "announcement_queue_depth",
+            "Announcements waiting to be delivered",
+            () -> announcementQueue.metrics().depth()
+        );
         this.shutdownHook = new Thread(
             () -> {
                 notifyShutdown();
+                metricsHttpServer.close();
+                joinQueueNotifier.close();
                 try {
                     discordBotService.close();
                 } catch (RuntimeException ex) {
@@ -99,6 +183,10 @@ public final class DiscordCompanion extends JavaPlugin {
                         );
                 }
 
+                announcementScheduler.close();
+                announcementQueue.close();
+                announcementService.close();
+
                 try {
                     whitelistCodeService.close();
                 } catch (RuntimeException ex) {
@@ -109,6 +197,17 @@ public final class DiscordCompanion extends JavaPlugin {
                             ex.getMessage()
                         );
                 }
+                // already closed when it is also the whitelist store
+                try {
+                    databaseManager.close();
+                } catch (RuntimeException ex) {
+                    LOGGER
+                        .atWarning()
+                        .log(
+                            "Failed to close announcement database cleanly: %s",
+                            ex.getMessage()
+                        );
+                }
             },
             getName() + "-shutdown-hook"
         );
@@ -117,10 +216,34 @@ public final class DiscordCompanion extends JavaPlugin {
 
     @Override
     protected void setup() {
+        // scheduled announcements live in SQLite whatever the whitelist backend
+        try {
+            databaseManager.initialize();
+        } catch (RuntimeException ex) {
+            // the sqlite whitelist store falls back to memory and keeps retrying
+            LOGGER
+                .atSevere()
+                .log(
+                    "Whitelist database unavailable at startup, scheduled announcements are disabled: %s",
+                    ex.getMessage()
+                );
+        }
         whitelistCodeService.initialize();
+        announcementQueue.start();
+        announcementScheduler.start();
 
-        this.discordConfig = DiscordConfigLoader.load(getDataDirectory(), LOGGER);
+        whitelistCodeService.configureExpiry(
+            discordConfig.codeTtl(),
+            discordConfig.validatedRetention()
+        );
+        whitelistCodeService.configureBackups(
+            discordConfig.backupInterval(),
+            discordConfig.backupRetention()
+        );
         discordBotService.start(discordConfig);
+        metricsHttpServer.start(discordConfig.metricsPort());
+        maxPlayers = resolveMaxPlayers();
+        joinQueueNotifier.start();
 
         playerLifecycleListener.register();
         shutdownListener.register();
@@ -128,8 +251,9 @@ public final class DiscordCompanion extends JavaPlugin {
     }
 
     private void refreshPresence() {
-        int online = onlinePlayers.size();
+        int online = connectionGate.onlineCount();
         int max = resolveMaxPlayers();
+        maxPlayers = max;
         discordBotService.updatePresence(online, max);
     }
 
@@ -180,6 +304,18 @@ public final class DiscordCompanion extends JavaPlugin {
                     PlayerSetupConnectEvent.class,
                     this::onPlayerSetupConnect
                 );
+            getEventRegistry()
+                .register(
+                    EventPriority.LAST,
+                    PlayerConnectEvent.class,
+                    this::onPlayerConnect
+                );
+            getEventRegistry()
+                .registerGlobal(
+                    EventPriority.LAST,
+                    AddPlayerToWorldEvent.class,
+                    this::onAddPlayerToWorld
+                );
             getEventRegistry()
                 .register(
                     EventPriority.LAST,
@@ -189,55 +325,78 @@ public final class DiscordCompanion extends JavaPlugin {
         }
 
         void onPlayerSetupConnect(PlayerSetupConnectEvent event) {
-            UUID playerUuid = event.getUuid();
-            if (!discordConfig.enableWhitelist()) {
-                if (onlinePlayers.add(playerUuid)) {
-                    refreshPresence();
-                }
-                return;
+            connectionGate.onSetupConnect(
+                event.getUuid(),
+                remoteAddress(event),
+                message -> event.getPacketHandler().disconnect(message)
+            );
+        }
+
+        /**
+         * The client's address from the handler's Netty channel; for QUIC
+         * streams the socket address sits on the parent connection.
+         * {@code null} when the server does not expose it.
+         */
+        private InetAddress remoteAddress(PlayerSetupConnectEvent event) {
+            Object channel = callQuietly(event.getPacketHandler(), "getChannel");
+            Object address = callQuietly(channel, "remoteAddress");
+            if (!(address instanceof InetSocketAddress)) {
+                address = callQuietly(callQuietly(channel, "parent"), "remoteSocketAddress");
             }
-            if (!whitelistProvider.getList().contains(playerUuid)) {
-                String disconnectMessage = buildWhitelistInstructions(playerUuid);
-                PacketHandler packetHandler = event.getPacketHandler();
-                packetHandler.disconnect(disconnectMessage);
-                return;
+            if (address instanceof InetSocketAddress socketAddress) {
+                return socketAddress.getAddress();
+            }
+            if (remoteAddressWarned.compareAndSet(false, true)) {
+                LOGGER
+                    .atWarning()
+                    .log(
+                        "Unable to resolve remote addresses of connecting players; only the global connect budget applies"
+                    );
             }
+            return null;
+        }
 
-            if (onlinePlayers.add(playerUuid)) {
-                refreshPresence();
+        private Object callQuietly(Object target, String methodName) {
+            if (target == null) {
+                return null;
+            }
+            Optional<MethodHandle> method = ReflectionUtil.noArgMethod(
+                target.getClass(),
+                methodName
+            );
+            try {
+                return method.isPresent() ? ReflectionUtil.invoke(method.get(), target) : null;
+            } catch (RuntimeException ex) {
+                return null;
             }
         }
 
+        void onPlayerConnect(PlayerConnectEvent event) {
+            indexPlayer(event.getPlayerRef(), event.getWorld());
+        }
+
+        void onAddPlayerToWorld(AddPlayerToWorldEvent event) {
+            // fires for the initial spawn and for every world change
+            PlayerRef playerRef = event
+                .getHolder()
+                .getComponent(PlayerRef.getComponentType());
+            indexPlayer(playerRef, event.getWorld());
+        }
+
         void onPlayerDisconnect(PlayerDisconnectEvent event) {
             UUID playerUuid = event.getPlayerRef().getUuid();
-            if (onlinePlayers.remove(playerUuid)) {
-                refreshPresence();
-            }
+            playerRegistry.onDisconnect(playerUuid);
+            connectionGate.onDisconnect(playerUuid);
         }
 
-        private String buildWhitelistInstructions(UUID playerUuid) {
-            String guildInstruction = discordConfig.hasGuildId()
-                ? " in the configured Discord server"
-                : " in our Discord server";
-            try {
-                String code = whitelistCodeService.ensureCode(playerUuid);
-                return "Use Discord to run /whitelist " +
-                    code +
-                    " to whitelist yourself" +
-                    guildInstruction +
-                    ".";
-            } catch (RuntimeException ex) {
-                LOGGER
-                    .atWarning()
-                    .log(
-                        "Failed to generate whitelist code for %s: %s",
-                        playerUuid,
-                        ex.getMessage()
-                    );
-            return "We could not generate a whitelist code at this time. Please contact staff so they can assist you with the /whitelist command" +
-                    guildInstruction +
-                    ".";
+        private void indexPlayer(PlayerRef playerRef, World world) {
+            if (playerRef == null) {
+                return;
             }
+            playerRegistry.onWorldJoin(
+                playerRef,
+                world != null ? world.getName() : null
+            );
         }
     }
 
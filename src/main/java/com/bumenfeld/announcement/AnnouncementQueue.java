@@ -0,0 +1,443 @@
+package com.bumenfeld.announcement;
+
+import com.bumenfeld.announcement.GameAnnouncementService.DeliveryReport;
+import com.hypixel.hytale.logger.HytaleLogger;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded, prioritized front for {@link GameAnnouncementService}. Identical
+ * messages inside the dedup window collapse into one delivery, and a single
+ * pacing thread holds an announcement back only while an earlier title is
+ * still showing to one of its recipients. Announcements to disjoint worlds or
+ * groups go out back to back, and nothing waits once the queue is empty.
+ *
+ * <p>A blocked entry keeps its recipients reserved, so a lower priority
+ * announcement only overtakes it when it reaches none of the same players.
+ */
+public final class AnnouncementQueue implements AutoCloseable {
+
+    private static final int DEFAULT_CAPACITY = 32;
+    private static final Duration DEDUP_WINDOW = Duration.ofMinutes(1);
+
+    public enum Priority {
+        HIGH,
+        NORMAL,
+        LOW,
+    }
+
+    private final GameAnnouncementService announcementService;
+    private final HytaleLogger logger;
+    private final int capacity;
+    private final long pacingNanos;
+    private final long dedupWindowNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final PriorityQueue<Pending> pending = new PriorityQueue<>();
+    private final Map<String, Pending> pendingByKey = new HashMap<>();
+    private final Map<String, Long> recentlyAccepted = new HashMap<>();
+    // pacer thread only: when the title each player is watching ends
+    private final Map<UUID, Long> showingUntil = new HashMap<>();
+
+    private long sequence;
+    private long accepted;
+    private long deduplicated;
+    private long rejected;
+    private long delivered;
+    private long totalWaitNanos;
+    private long maxWaitNanos;
+    private int maxDepth;
+    private boolean closed;
+
+    private Thread pacer;
+
+    public AnnouncementQueue(
+        GameAnnouncementService announcementService,
+        HytaleLogger logger
+    ) {
+        this(announcementService, logger, DEFAULT_CAPACITY);
+    }
+
+    public AnnouncementQueue(
+        GameAnnouncementService announcementService,
+        HytaleLogger logger,
+        int capacity
+    ) {
+        this.announcementService = Objects.requireNonNull(
+            announcementService,
+            "announcementService"
+        );
+        this.logger = Objects.requireNonNull(logger, "logger");
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be > 0");
+        }
+        this.capacity = capacity;
+        this.pacingNanos = announcementService.displayDuration().toNanos();
+        this.dedupWindowNanos = DEDUP_WINDOW.toNanos();
+    }
+
+    /** Starts the pacing thread; submissions made before this wait for it. */
+    public synchronized void start() {
+        if (pacer != null) {
+            return;
+        }
+        pacer = new Thread(this::drain, "discord-companion-announcement-queue");
+        pacer.setDaemon(true);
+        pacer.start();
+    }
+
+    public Submission submit(String message, Priority priority) {
+        return submit(message, priority, AnnouncementTarget.all());
+    }
+
+    public Submission submit(
+        String message,
+        Priority priority,
+        AnnouncementTarget target
+    ) {
+        Objects.requireNonNull(message, "message");
+        Objects.requireNonNull(priority, "priority");
+        Objects.requireNonNull(target, "target");
+        return enqueue(message, priority, target, dedupKey(message, target), true);
+    }
+
+    /**
+     * Queues a firing of scheduled announcement {@code scheduleId}. Exempt
+     * from the dedup window, which is as long as the shortest schedule
+     * interval and would otherwise swallow a firing that comes a tick early;
+     * a firing is only merged into the same schedule's still pending one.
+     */
+    public Submission submitScheduled(
+        long scheduleId,
+        String message,
+        Priority priority
+    ) {
+        Objects.requireNonNull(message, "message");
+        Objects.requireNonNull(priority, "priority");
+        return enqueue(
+            message,
+            priority,
+            AnnouncementTarget.all(),
+            "schedule:" + scheduleId,
+            false
+        );
+    }
+
+    private Submission enqueue(
+        String message,
+        Priority priority,
+        AnnouncementTarget target,
+        String key,
+        boolean windowed
+    ) {
+        long now = System.nanoTime();
+
+        lock.lock();
+        try {
+            if (closed) {
+                rejected++;
+                return Submission.rejected(Submission.Status.CLOSED);
+            }
+            Pending queued = pendingByKey.get(key);
+            if (queued != null) {
+                deduplicated++;
+                return new Submission(
+                    Submission.Status.DUPLICATE,
+                    positionOf(queued),
+                    queued.future
+                );
+            }
+            Long lastAccepted = windowed ? recentlyAccepted.get(key) : null;
+            if (lastAccepted != null && now - lastAccepted < dedupWindowNanos) {
+                deduplicated++;
+                return Submission.rejected(Submission.Status.DUPLICATE);
+            }
+            if (pending.size() >= capacity) {
+                rejected++;
+                return Submission.rejected(Submission.Status.FULL);
+            }
+
+            Pending entry = new Pending(message, target, key, priority, sequence++, now);
+            pending.add(entry);
+            pendingByKey.put(key, entry);
+            if (windowed) {
+                recentlyAccepted.put(key, now);
+            }
+            pruneRecent(now);
+            accepted++;
+            maxDepth = Math.max(maxDepth, pending.size());
+            notEmpty.signal();
+            return new Submission(
+                Submission.Status.QUEUED,
+                positionOf(entry),
+                entry.future
+            );
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Metrics metrics() {
+        lock.lock();
+        try {
+            return new Metrics(
+                pending.size(),
+                maxDepth,
+                capacity,
+                accepted,
+                deduplicated,
+                rejected,
+                delivered,
+                Duration.ofNanos(delivered == 0 ? 0 : totalWaitNanos / delivered),
+                Duration.ofNanos(maxWaitNanos)
+            );
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            List<Pending> ordered;
+            lock.lock();
+            try {
+                while (pending.isEmpty() && !closed) {
+                    notEmpty.await();
+                }
+                if (closed) {
+                    return;
+                }
+                ordered = new ArrayList<>(pending);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+            ordered.sort(null);
+
+            long now = System.nanoTime();
+            showingUntil.values().removeIf(until -> until - now <= 0);
+            Set<UUID> busy = new HashSet<>(showingUntil.keySet());
+            Pending next = null;
+            Set<UUID> recipients = Set.of();
+            for (Pending candidate : ordered) {
+                Set<UUID> candidateRecipients = recipientsOf(candidate);
+                if (Collections.disjoint(busy, candidateRecipients)) {
+                    next = candidate;
+                    recipients = candidateRecipients;
+                    break;
+                }
+                busy.addAll(candidateRecipients);
+            }
+            if (next == null) {
+                // everything overlaps a title still on screen
+                if (!awaitTitleEnd(now)) {
+                    return;
+                }
+                continue;
+            }
+
+            lock.lock();
+            try {
+                if (!pending.remove(next)) {
+                    // cleared by close()
+                    continue;
+                }
+                pendingByKey.remove(next.key);
+                long waited = System.nanoTime() - next.enqueuedAt;
+                delivered++;
+                totalWaitNanos += waited;
+                maxWaitNanos = Math.max(maxWaitNanos, waited);
+            } finally {
+                lock.unlock();
+            }
+
+            long shownUntil = System.nanoTime() + pacingNanos;
+            for (UUID recipient : recipients) {
+                showingUntil.put(recipient, shownUntil);
+            }
+            dispatch(next);
+        }
+    }
+
+    private void dispatch(Pending next) {
+        try {
+            announcementService
+                .broadcast(next.message, next.target)
+                .whenComplete((report, failure) -> {
+                    if (failure != null) {
+                        next.future.completeExceptionally(failure);
+                    } else {
+                        next.future.complete(report);
+                    }
+                });
+        } catch (RuntimeException exception) {
+            logger
+                .atWarning()
+                .log("Unable to dispatch queued announcement: %s", exception.getMessage());
+            next.future.completeExceptionally(exception);
+        }
+    }
+
+    private Set<UUID> recipientsOf(Pending entry) {
+        try {
+            return announcementService.recipients(entry.target);
+        } catch (RuntimeException exception) {
+            // broadcast reports the failure; nobody to pace against
+            return Set.of();
+        }
+    }
+
+    /**
+     * Waits until the earliest title on screen ends or a new announcement
+     * arrives. Returns {@code false} once the queue is closed.
+     */
+    private boolean awaitTitleEnd(long now) {
+        long earliest = Long.MAX_VALUE;
+        for (long until : showingUntil.values()) {
+            earliest = Math.min(earliest, until - now);
+        }
+        lock.lock();
+        try {
+            if (!closed) {
+                notEmpty.awaitNanos(earliest);
+            }
+            return !closed;
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int positionOf(Pending entry) {
+        int position = 1;
+        for (Pending other : pending) {
+            if (other.compareTo(entry) < 0) {
+                position++;
+            }
+        }
+        return position;
+    }
+
+    private void pruneRecent(long now) {
+        Iterator<Long> iterator = recentlyAccepted.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next() >= dedupWindowNanos) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static String dedupKey(String message, AnnouncementTarget target) {
+        String normalized =
+            message.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        return target.type() == AnnouncementTarget.Type.ALL
+            ? normalized
+            : target.type() + ":" + target.value().toLowerCase(Locale.ROOT) + ":" + normalized;
+    }
+
+    @Override
+    public synchronized void close() {
+        lock.lock();
+        try {
+            closed = true;
+            for (Pending entry : pending) {
+                entry.future.cancel(false);
+            }
+            pending.clear();
+            pendingByKey.clear();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (pacer != null) {
+            pacer.interrupt();
+        }
+    }
+
+    public record Submission(
+        Status status,
+        int position,
+        CompletableFuture<DeliveryReport> delivery
+    ) {
+        public enum Status {
+            QUEUED,
+            DUPLICATE,
+            FULL,
+            CLOSED,
+        }
+
+        private static Submission rejected(Status status) {
+            return new Submission(status, 0, null);
+        }
+
+        public boolean isQueued() {
+            return delivery != null;
+        }
+    }
+
+    public record Metrics(
+        int depth,
+        int maxDepth,
+        int capacity,
+        long accepted,
+        long deduplicated,
+        long rejected,
+        long delivered,
+        Duration averageWait,
+        Duration maxWait
+    ) {}
+
+    private static final class Pending implements Comparable<Pending> {
+
+        private final String message;
+        private final AnnouncementTarget target;
+        private final String key;
+        private final Priority priority;
+        private final long sequence;
+        private final long enqueuedAt;
+        private final CompletableFuture<DeliveryReport> future = new CompletableFuture<>();
+
+        private Pending(
+            String message,
+            AnnouncementTarget target,
+            String key,
+            Priority priority,
+            long sequence,
+            long enqueuedAt
+        ) {
+            this.message = message;
+            this.target = target;
+            this.key = key;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.enqueuedAt = enqueuedAt;
+        }
+
+        @Override
+        public int compareTo(Pending other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0
+                ? byPriority
+                : Long.compare(sequence, other.sequence);
+        }
+    }
+}
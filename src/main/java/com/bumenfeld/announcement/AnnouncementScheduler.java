@@ -0,0 +1,281 @@
+package com.bumenfeld.announcement;
+
+import com.bumenfeld.announcement.AnnouncementQueue.Submission;
+import com.bumenfeld.database.DatabaseManager;
+import com.bumenfeld.database.DatabaseManager.ScheduledAnnouncement;
+import com.hypixel.hytale.logger.HytaleLogger;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists one-shot and recurring announcements in SQLite and fires them from a
+ * {@link HashedTimerWheel}. All wheel state is confined to the single ticker
+ * thread; callers only touch the database and hand the result over.
+ */
+public final class AnnouncementScheduler implements AutoCloseable {
+
+    private static final long TICK_MILLIS = 1_000L;
+    private static final int WHEEL_SIZE = 512;
+    private static final Duration MINIMUM_INTERVAL = Duration.ofMinutes(1);
+    private static final Duration MISSED_GRACE = Duration.ofMinutes(10);
+
+    private final DatabaseManager databaseManager;
+    private final AnnouncementQueue announcementQueue;
+    private final HytaleLogger logger;
+    private final Map<Long, HashedTimerWheel.Timeout<ScheduledAnnouncement>> armed =
+        new HashMap<>();
+
+    private ScheduledExecutorService ticker;
+    private HashedTimerWheel<ScheduledAnnouncement> wheel;
+
+    public AnnouncementScheduler(
+        DatabaseManager databaseManager,
+        AnnouncementQueue announcementQueue,
+        HytaleLogger logger
+    ) {
+        this.databaseManager = Objects.requireNonNull(
+            databaseManager,
+            "databaseManager"
+        );
+        this.announcementQueue = Objects.requireNonNull(
+            announcementQueue,
+            "announcementQueue"
+        );
+        this.logger = Objects.requireNonNull(logger, "logger");
+    }
+
+    public synchronized void start() {
+        if (ticker != null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        wheel = new HashedTimerWheel<>(TICK_MILLIS, WHEEL_SIZE, now);
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "discord-companion-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.execute(this::recover);
+        ticker.scheduleAtFixedRate(
+            this::tick,
+            TICK_MILLIS,
+            TICK_MILLIS,
+            TimeUnit.MILLISECONDS
+        );
+    }
+
+    public ScheduledAnnouncement schedule(
+        String message,
+        Duration delay,
+        Duration interval,
+        String createdBy
+    ) {
+        Objects.requireNonNull(message, "message");
+        Objects.requireNonNull(delay, "delay");
+        if (delay.isNegative()) {
+            throw new IllegalArgumentException("delay must not be negative");
+        }
+        if (interval != null && interval.compareTo(MINIMUM_INTERVAL) < 0) {
+            throw new IllegalArgumentException(
+                "interval must be at least " + MINIMUM_INTERVAL.toMinutes() + " minute"
+            );
+        }
+
+        ScheduledAnnouncement entry = databaseManager.insertScheduledAnnouncement(
+            message,
+            Instant.now().plus(delay),
+            interval,
+            createdBy
+        );
+        onTicker(() -> arm(entry));
+        logger
+            .atInfo()
+            .log(
+                "Scheduled announcement #%d for %s (interval=%s)",
+                entry.id(),
+                entry.nextRunAt(),
+                interval
+            );
+        return entry;
+    }
+
+    public boolean cancel(long id) {
+        boolean deleted = databaseManager.deleteScheduledAnnouncement(id);
+        onTicker(() -> disarm(id));
+        if (deleted) {
+            logger.atInfo().log("Cancelled scheduled announcement #%d", id);
+        }
+        return deleted;
+    }
+
+    public List<ScheduledAnnouncement> list() {
+        return databaseManager.listScheduledAnnouncements();
+    }
+
+    private void recover() {
+        List<ScheduledAnnouncement> persisted;
+        try {
+            persisted = databaseManager.listScheduledAnnouncements();
+        } catch (RuntimeException exception) {
+            logger
+                .atWarning()
+                .log(
+                    "Unable to load scheduled announcements: %s",
+                    exception.getMessage()
+                );
+            return;
+        }
+
+        Instant now = Instant.now();
+        int missed = 0;
+        for (ScheduledAnnouncement entry : persisted) {
+            if (entry.nextRunAt().isAfter(now)) {
+                arm(entry);
+                continue;
+            }
+            missed++;
+            recoverMissed(entry, now);
+        }
+        logger
+            .atInfo()
+            .log(
+                "Restored %d scheduled announcements (%d missed while offline).",
+                persisted.size(),
+                missed
+            );
+    }
+
+    private void recoverMissed(ScheduledAnnouncement entry, Instant now) {
+        // fire at most once per entry; anything older than the grace window is stale
+        boolean withinGrace =
+            Duration.between(entry.nextRunAt(), now).compareTo(MISSED_GRACE) <= 0;
+        if (withinGrace) {
+            fire(entry);
+            return;
+        }
+        if (!entry.isRecurring()) {
+            logger
+                .atWarning()
+                .log(
+                    "Dropping scheduled announcement #%d, it was due at %s.",
+                    entry.id(),
+                    entry.nextRunAt()
+                );
+            databaseManager.deleteScheduledAnnouncement(entry.id());
+            return;
+        }
+        reschedule(entry, now);
+    }
+
+    private void tick() {
+        try {
+            wheel.advance(System.currentTimeMillis(), this::onExpired);
+        } catch (RuntimeException exception) {
+            logger
+                .atWarning()
+                .log("Announcement scheduler tick failed: %s", exception.getMessage());
+        }
+    }
+
+    private void onExpired(ScheduledAnnouncement entry) {
+        armed.remove(entry.id());
+        try {
+            fire(entry);
+        } catch (RuntimeException exception) {
+            logger
+                .atWarning()
+                .log(
+                    "Unable to fire scheduled announcement #%d: %s",
+                    entry.id(),
+                    exception.getMessage()
+                );
+        }
+    }
+
+    private void fire(ScheduledAnnouncement entry) {
+        // persist the next state before broadcasting so a crash never repeats a one-shot
+        if (entry.isRecurring()) {
+            reschedule(entry, Instant.now());
+        } else {
+            databaseManager.deleteScheduledAnnouncement(entry.id());
+        }
+        Submission submission = announcementQueue.submitScheduled(
+            entry.id(),
+            entry.message(),
+            AnnouncementQueue.Priority.NORMAL
+        );
+        if (!submission.isQueued()) {
+            logger
+                .atWarning()
+                .log(
+                    "Scheduled announcement #%d was not queued (%s).",
+                    entry.id(),
+                    submission.status()
+                );
+        }
+    }
+
+    private void reschedule(ScheduledAnnouncement entry, Instant now) {
+        long intervalMillis = entry.interval().toMillis();
+        long overdue = now.toEpochMilli() - entry.nextRunAt().toEpochMilli();
+        long periods = overdue < 0 ? 1 : overdue / intervalMillis + 1;
+        Instant next = entry.nextRunAt().plusMillis(periods * intervalMillis);
+        if (!databaseManager.updateScheduledNextRun(entry.id(), next)) {
+            // cancelled concurrently
+            return;
+        }
+        arm(
+            new ScheduledAnnouncement(
+                entry.id(),
+                entry.message(),
+                next,
+                entry.interval(),
+                entry.createdBy(),
+                entry.createdAt()
+            )
+        );
+    }
+
+    private void arm(ScheduledAnnouncement entry) {
+        disarm(entry.id());
+        armed.put(
+            entry.id(),
+            wheel.schedule(entry, entry.nextRunAt().toEpochMilli())
+        );
+    }
+
+    private void disarm(long id) {
+        HashedTimerWheel.Timeout<ScheduledAnnouncement> timeout = armed.remove(id);
+        if (timeout != null) {
+            wheel.cancel(timeout);
+        }
+    }
+
+    private synchronized void onTicker(Runnable task) {
+        if (ticker == null) {
+            return;
+        }
+        try {
+            ticker.execute(task);
+        } catch (RejectedExecutionException ignored) {
+            // shutting down, the entry is persisted and restored on next start
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (ticker == null) {
+            return;
+        }
+        ticker.shutdownNow();
+        ticker = null;
+    }
+}
@@ -0,0 +1,45 @@
+package com.bumenfeld.announcement;
+
+import java.util.Locale;
+import java.util.Objects;
+
+/** Audience of an announcement: everyone, one world, a permission group or a permission node. */
+public record AnnouncementTarget(Type type, String value) {
+
+    public enum Type {
+        ALL,
+        WORLD,
+        GROUP,
+        PERMISSION,
+    }
+
+    private static final AnnouncementTarget ALL = new AnnouncementTarget(Type.ALL, null);
+
+    public AnnouncementTarget {
+        Objects.requireNonNull(type, "type");
+        if (type != Type.ALL && (value == null || value.isBlank())) {
+            throw new IllegalArgumentException(type + " target requires a value");
+        }
+        value = type == Type.ALL ? null : value.trim();
+    }
+
+    public static AnnouncementTarget all() {
+        return ALL;
+    }
+
+    public static AnnouncementTarget world(String worldName) {
+        return new AnnouncementTarget(Type.WORLD, worldName);
+    }
+
+    public static AnnouncementTarget group(String group) {
+        return new AnnouncementTarget(Type.GROUP, group);
+    }
+
+    public static AnnouncementTarget permission(String node) {
+        return new AnnouncementTarget(Type.PERMISSION, node);
+    }
+
+    public String describe() {
+        return type == Type.ALL ? "everyone" : type.name().toLowerCase(Locale.ROOT) + " " + value;
+    }
+}
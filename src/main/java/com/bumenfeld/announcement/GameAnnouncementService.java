@@ -1,81 +1,284 @@
 package com.bumenfeld.announcement;
 
+import com.bumenfeld.jfr.AnnouncementFanoutEvent;
+import com.bumenfeld.player.PlayerRegistry;
 import com.hypixel.hytale.logger.HytaleLogger;
 import com.hypixel.hytale.protocol.SoundCategory;
 import com.hypixel.hytale.server.core.Message;
+import com.hypixel.hytale.server.core.permissions.PermissionsModule;
 import com.hypixel.hytale.server.core.universe.PlayerRef;
 import com.hypixel.hytale.server.core.universe.Universe;
 import com.hypixel.hytale.server.core.universe.world.SoundUtil;
+import com.hypixel.hytale.server.core.universe.world.World;
 import com.hypixel.hytale.server.core.util.EventTitleUtil;
 import com.hypixel.hytale.server.core.util.TempAssetIdUtil;
 import java.awt.Color;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-/** Sends announcements via the world event-title system plus a chat message. */
-public final class GameAnnouncementService {
+/**
+ * Sends announcements via the world event-title system plus a chat message.
+ * Fan-out happens off the caller's thread: players are grouped by world and
+ * delivered in small batches on the owning world thread. Players whose world
+ * cannot be resolved are skipped and counted in the {@link DeliveryReport}.
+ */
+public final class GameAnnouncementService implements AutoCloseable {
 
     private static final String ANNOUNCEMENT_SOUND = "SFX_Memories_Unlock_Local";
     private static final Float ANNOUNCEMENT_DURATION = 20.0f;
+    private static final int BATCH_SIZE = 32;
+    private static final int SOUND_UNRESOLVED = Integer.MIN_VALUE;
 
     private final HytaleLogger logger;
+    private final PlayerRegistry playerRegistry;
+    private final ExecutorService dispatcher;
 
-    public GameAnnouncementService(HytaleLogger logger) {
+    private volatile int soundIndex = SOUND_UNRESOLVED;
+
+    public GameAnnouncementService(
+        HytaleLogger logger,
+        PlayerRegistry playerRegistry
+    ) {
         this.logger = Objects.requireNonNull(logger, "logger");
+        this.playerRegistry = Objects.requireNonNull(
+            playerRegistry,
+            "playerRegistry"
+        );
+        this.dispatcher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "discord-companion-announcements");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public CompletableFuture<DeliveryReport> broadcast(String announcement) {
+        return broadcast(announcement, AnnouncementTarget.all());
     }
 
-    public void broadcast(String announcement) {
+    public CompletableFuture<DeliveryReport> broadcast(
+        String announcement,
+        AnnouncementTarget target
+    ) {
+        Objects.requireNonNull(target, "target");
         if (announcement == null || announcement.isBlank()) {
             logger
                 .atWarning()
                 .log("Skipping empty announcement.");
-            return;
+            return CompletableFuture.completedFuture(DeliveryReport.EMPTY);
         }
 
-        Message primary = Message.raw(announcement);
-        Message secondary = Message.raw("SERVER INFO");
-
         try {
-            logger
-                .atInfo()
-                .log("Broadcasting announcement to players: %s", announcement);
-            playAnnouncementSound();
-            EventTitleUtil.showEventTitleToUniverse(
-                primary,
-                secondary,
-                true,
-                null,
-                ANNOUNCEMENT_DURATION,
-                EventTitleUtil.DEFAULT_FADE_DURATION,
-                EventTitleUtil.DEFAULT_FADE_DURATION
+            return CompletableFuture
+                .supplyAsync(() -> dispatch(announcement, target), dispatcher)
+                .thenCompose(future -> future);
+        } catch (RejectedExecutionException exception) {
+            return CompletableFuture.failedFuture(exception);
+        }
+    }
+
+    private CompletableFuture<DeliveryReport> dispatch(
+        String announcement,
+        AnnouncementTarget target
+    ) {
+        logger
+            .atInfo()
+            .log(
+                "Broadcasting announcement to %s: %s",
+                target.describe(),
+                announcement
             );
-            Universe.get().sendMessage(buildStyledChatMessage(announcement));
-            logger
-                .atInfo()
-                .log("Announcement dispatched successfully.");
-        } catch (RuntimeException exception) {
-            logger
-                .atWarning()
-                .log("Unable to dispatch announcement: %s", exception.getMessage());
-            throw exception;
+
+        AnnouncementFanoutEvent trace =
+            AnnouncementFanoutEvent.start(target.describe());
+        Delivery delivery = new Delivery(
+            Message.raw(announcement),
+            Message.raw("SERVER INFO"),
+            buildStyledChatMessage(announcement),
+            resolveAnnouncementSoundIndex()
+        );
+
+        List<CompletableFuture<Void>> batches = new ArrayList<>();
+        for (Map.Entry<World, List<PlayerRef>> entry : selectRecipients(target).entrySet()) {
+            World world = entry.getKey();
+            List<PlayerRef> players = entry.getValue();
+            for (int from = 0; from < players.size(); from += BATCH_SIZE) {
+                List<PlayerRef> batch = players.subList(
+                    from,
+                    Math.min(from + BATCH_SIZE, players.size())
+                );
+                batches.add(submitBatch(world, batch, delivery));
+            }
         }
+
+        return CompletableFuture
+            .allOf(batches.toArray(new CompletableFuture[0]))
+            .thenApply(ignored -> {
+                DeliveryReport report = delivery.report();
+                trace.finish(
+                    batches.size(),
+                    report.delivered(),
+                    report.failed(),
+                    report.skipped()
+                );
+                logger
+                    .atInfo()
+                    .log(
+                        "Announcement dispatched (delivered=%d, failed=%d, skipped=%d).",
+                        report.delivered(),
+                        report.failed(),
+                        report.skipped()
+                    );
+                return report;
+            });
     }
 
-    private void playAnnouncementSound() {
-        int soundIndex = resolveAnnouncementSoundIndex();
-        if (soundIndex < 0) {
+    /** The players {@code target} reaches right now; the queue paces titles per player. */
+    Set<UUID> recipients(AnnouncementTarget target) {
+        Set<UUID> recipients = new HashSet<>();
+        for (List<PlayerRef> players : selectRecipients(target).values()) {
+            for (PlayerRef playerRef : players) {
+                recipients.add(playerRef.getUuid());
+            }
+        }
+        return recipients;
+    }
+
+    private Map<World, List<PlayerRef>> selectRecipients(AnnouncementTarget target) {
+        Map<World, List<PlayerRef>> grouped = new HashMap<>();
+        switch (target.type()) {
+            case ALL -> {
+                Map<UUID, World> worlds = new HashMap<>();
+                for (PlayerRef playerRef : Universe.get().getPlayers()) {
+                    UUID worldUuid = playerRef.getWorldUuid();
+                    World world = worldUuid == null
+                        ? null
+                        : worlds.computeIfAbsent(worldUuid, Universe.get()::getWorld);
+                    grouped.computeIfAbsent(world, ignored -> new ArrayList<>()).add(playerRef);
+                }
+            }
+            case WORLD -> {
+                // the admin's spelling may differ in case from the world's name
+                for (PlayerRef playerRef : playerRegistry.inWorld(target.value())) {
+                    addByRegisteredWorld(grouped, playerRef);
+                }
+            }
+            case GROUP -> {
+                PermissionsModule permissions = PermissionsModule.get();
+                for (PlayerRegistry.Entry entry : playerRegistry.online()) {
+                    UUID playerUuid = entry.playerRef().getUuid();
+                    if (isInGroup(permissions.getGroupsForUser(playerUuid), target.value())) {
+                        addByRegisteredWorld(grouped, entry.playerRef());
+                    }
+                }
+            }
+            case PERMISSION -> {
+                PermissionsModule permissions = PermissionsModule.get();
+                for (PlayerRegistry.Entry entry : playerRegistry.online()) {
+                    UUID playerUuid = entry.playerRef().getUuid();
+                    if (permissions.hasPermission(playerUuid, target.value())) {
+                        addByRegisteredWorld(grouped, entry.playerRef());
+                    }
+                }
+            }
+        }
+        return grouped;
+    }
+
+    private static boolean isInGroup(Set<String> groups, String group) {
+        if (groups == null) {
+            return false;
+        }
+        for (String candidate : groups) {
+            if (candidate.equalsIgnoreCase(group)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addByRegisteredWorld(
+        Map<World, List<PlayerRef>> grouped,
+        PlayerRef playerRef
+    ) {
+        PlayerRegistry.Entry entry = playerRegistry.get(playerRef.getUuid());
+        World world = entry != null && entry.world() != null
+            ? Universe.get().getWorld(entry.world())
+            : null;
+        grouped.computeIfAbsent(world, ignored -> new ArrayList<>()).add(playerRef);
+    }
+
+    private CompletableFuture<Void> submitBatch(
+        World world,
+        List<PlayerRef> batch,
+        Delivery delivery
+    ) {
+        if (world == null) {
+            // between worlds: player state may only be touched from a world thread
+            delivery.skipped.addAndGet(batch.size());
+            return CompletableFuture.completedFuture(null);
+        }
+        try {
+            return CompletableFuture.runAsync(
+                () -> deliverBatch(batch, delivery),
+                world
+            );
+        } catch (RejectedExecutionException exception) {
             logger
                 .atWarning()
-                .log("Could not find sound event id for %s.", ANNOUNCEMENT_SOUND);
-            return;
+                .log(
+                    "World %s rejected announcement batch: %s",
+                    world.getName(),
+                    exception.getMessage()
+                );
+            delivery.failed.addAndGet(batch.size());
+            return CompletableFuture.completedFuture(null);
         }
+    }
 
-        for (PlayerRef playerRef : Universe.get().getPlayers()) {
+    private void deliverBatch(List<PlayerRef> batch, Delivery delivery) {
+        for (PlayerRef playerRef : batch) {
             try {
-                SoundUtil.playSoundEvent2dToPlayer(playerRef, soundIndex, SoundCategory.SFX);
+                if (delivery.soundIndex >= 0) {
+                    SoundUtil.playSoundEvent2dToPlayer(
+                        playerRef,
+                        delivery.soundIndex,
+                        SoundCategory.SFX
+                    );
+                }
+                EventTitleUtil.showEventTitleToPlayer(
+                    playerRef,
+                    delivery.primary,
+                    delivery.secondary,
+                    true,
+                    null,
+                    ANNOUNCEMENT_DURATION,
+                    EventTitleUtil.DEFAULT_FADE_DURATION,
+                    EventTitleUtil.DEFAULT_FADE_DURATION
+                );
+                playerRef.sendMessage(delivery.chat);
+                delivery.delivered.incrementAndGet();
             } catch (RuntimeException exception) {
+                delivery.failed.incrementAndGet();
                 logger
                     .atWarning()
-                .log("Failed to play announcement sound for %s: %s", playerRef, exception.getMessage());
+                    .log(
+                        "Failed to deliver announcement to %s: %s",
+                        playerRef,
+                        exception.getMessage()
+                    );
             }
         }
     }
@@ -95,8 +298,78 @@ public final class GameAnnouncementService {
             );
     }
 
+    /** How long an announcement title stays on screen, including fades. */
+    Duration displayDuration() {
+        float seconds = ANNOUNCEMENT_DURATION + 2 * EventTitleUtil.DEFAULT_FADE_DURATION;
+        return Duration.ofMillis((long) (seconds * 1000L));
+    }
+
     @SuppressWarnings("removal")
     private int resolveAnnouncementSoundIndex() {
-        return TempAssetIdUtil.getSoundEventIndex(ANNOUNCEMENT_SOUND);
+        int cached = soundIndex;
+        if (cached != SOUND_UNRESOLVED) {
+            return cached;
+        }
+        int resolved = TempAssetIdUtil.getSoundEventIndex(ANNOUNCEMENT_SOUND);
+        if (resolved < 0) {
+            // assets may not be loaded yet, retry on the next announcement
+            logger
+                .atWarning()
+                .log("Could not find sound event id for %s.", ANNOUNCEMENT_SOUND);
+            return resolved;
+        }
+        soundIndex = resolved;
+        return resolved;
+    }
+
+    @Override
+    public void close() {
+        dispatcher.shutdown();
+        try {
+            if (!dispatcher.awaitTermination(5, TimeUnit.SECONDS)) {
+                dispatcher.shutdownNow();
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            dispatcher.shutdownNow();
+        }
+    }
+
+    /**
+     * Outcome of a single announcement fan-out.
+     *
+     * @param skipped recipients whose world could not be resolved, typically
+     *     mid-teleport, who were not sent the announcement
+     */
+    public record DeliveryReport(int delivered, int failed, int skipped) {
+
+        static final DeliveryReport EMPTY = new DeliveryReport(0, 0, 0);
+    }
+
+    private static final class Delivery {
+
+        private final Message primary;
+        private final Message secondary;
+        private final Message chat;
+        private final int soundIndex;
+        private final AtomicInteger delivered = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger skipped = new AtomicInteger();
+
+        private Delivery(
+            Message primary,
+            Message secondary,
+            Message chat,
+            int soundIndex
+        ) {
+            this.primary = primary;
+            this.secondary = secondary;
+            this.chat = chat;
+            this.soundIndex = soundIndex;
+        }
+
+        private DeliveryReport report() {
+            return new DeliveryReport(delivered.get(), failed.get(), skipped.get());
+        }
     }
 }
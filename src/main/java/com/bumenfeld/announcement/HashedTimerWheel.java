@@ -0,0 +1,157 @@
+package com.bumenfeld.announcement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timer wheel in the style of Varghese &amp; Lauck. Scheduling and
+ * cancelling are O(1); each {@link #advance(long)} only walks the buckets that
+ * became due since the previous call, so thousands of pending entries do not
+ * cost one scheduled task each.
+ *
+ * <p>Not thread-safe; callers serialize access (see {@link AnnouncementScheduler}).
+ */
+final class HashedTimerWheel<T> {
+
+    private final long tickMillis;
+    private final Bucket<T>[] wheel;
+    private final int mask;
+
+    private long currentTick;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    HashedTimerWheel(long tickMillis, int wheelSize, long startMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tickMillis must be > 0");
+        }
+        if (wheelSize <= 0 || Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("wheelSize must be a power of two");
+        }
+        this.tickMillis = tickMillis;
+        this.wheel = new Bucket[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new Bucket<>();
+        }
+        this.mask = wheelSize - 1;
+        this.currentTick = startMillis / tickMillis;
+    }
+
+    Timeout<T> schedule(T payload, long deadlineMillis) {
+        Objects.requireNonNull(payload, "payload");
+        long deadlineTick = Math.max(
+            currentTick + 1,
+            Math.floorDiv(deadlineMillis + tickMillis - 1, tickMillis)
+        );
+        Timeout<T> timeout = new Timeout<>(payload, deadlineMillis);
+        timeout.remainingRounds = (deadlineTick - currentTick - 1) / wheel.length;
+        timeout.bucket = wheel[(int) (deadlineTick & mask)];
+        timeout.bucket.add(timeout);
+        size++;
+        return timeout;
+    }
+
+    boolean cancel(Timeout<T> timeout) {
+        if (timeout == null || timeout.bucket == null) {
+            return false;
+        }
+        timeout.bucket.remove(timeout);
+        timeout.bucket = null;
+        size--;
+        return true;
+    }
+
+    /**
+     * Advances the wheel to {@code nowMillis}, handing every expired payload to
+     * {@code expired}. The callback may schedule and cancel: a bucket's due
+     * entries are picked before any of them is handed out, so an entry armed
+     * into the bucket being walked waits for its own round.
+     */
+    void advance(long nowMillis, Consumer<T> expired) {
+        long targetTick = nowMillis / tickMillis;
+        List<Timeout<T>> due = new ArrayList<>();
+        while (currentTick < targetTick) {
+            currentTick++;
+            Bucket<T> bucket = wheel[(int) (currentTick & mask)];
+            for (Timeout<T> timeout = bucket.head; timeout != null; timeout = timeout.next) {
+                if (timeout.remainingRounds <= 0) {
+                    due.add(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+            }
+            for (Timeout<T> timeout : due) {
+                if (timeout.bucket != bucket) {
+                    // cancelled by an earlier callback
+                    continue;
+                }
+                bucket.remove(timeout);
+                timeout.bucket = null;
+                size--;
+                expired.accept(timeout.payload);
+            }
+            due.clear();
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    static final class Timeout<T> {
+
+        private final T payload;
+        private final long deadlineMillis;
+        private long remainingRounds;
+        private Bucket<T> bucket;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+
+        private Timeout(T payload, long deadlineMillis) {
+            this.payload = payload;
+            this.deadlineMillis = deadlineMillis;
+        }
+
+        T payload() {
+            return payload;
+        }
+
+        long deadlineMillis() {
+            return deadlineMillis;
+        }
+    }
+
+    private static final class Bucket<T> {
+
+        private Timeout<T> head;
+        private Timeout<T> tail;
+
+        private void add(Timeout<T> timeout) {
+            timeout.prev = tail;
+            timeout.next = null;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        private void remove(Timeout<T> timeout) {
+            if (timeout.prev == null) {
+                head = timeout.next;
+            } else {
+                timeout.prev.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.prev;
+            } else {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+        }
+    }
+}
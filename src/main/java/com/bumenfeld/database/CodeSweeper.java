@@ -0,0 +1,183 @@
+package com.bumenfeld.database;
+
+import com.bumenfeld.metrics.Counter;
+import com.bumenfeld.metrics.LatencyHistogram;
+import com.bumenfeld.metrics.MetricsRegistry;
+import com.hypixel.hytale.logger.HytaleLogger;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps {@code whitelist_codes} from growing without bound. Each run
+ *
+ * <ul>
+ *   <li>deletes unvalidated codes older than the code TTL; the player is
+ *       issued a fresh one on their next connect, and</li>
+ *   <li>moves codes validated longer ago than the retention period into
+ *       {@code whitelist_codes_archive}, where they still count as
+ *       validated for reconciliation,</li>
+ * </ul>
+ *
+ * then hands the freed space back with {@link WhitelistStore#compact}, an
+ * incremental vacuum on SQLite. All three
+ * steps work in batches of {@link #BATCH_SIZE} rows or
+ * {@link #VACUUM_PAGES} pages, each its own short transaction, and pause
+ * between batches so connect-path statements never queue behind a sweep.
+ */
+public final class CodeSweeper implements AutoCloseable {
+
+    private static final long INTERVAL_MINUTES = 10;
+    private static final long INITIAL_DELAY_MINUTES = 1;
+    private static final int BATCH_SIZE = 200;
+    private static final int VACUUM_PAGES = 256;
+    private static final long PAUSE_MILLIS = 5;
+
+    private final WhitelistStore whitelistStore;
+    private final HytaleLogger logger;
+    private final ReentrantLock runLock = new ReentrantLock();
+    private final LatencyHistogram runLatency;
+    private final Counter expiredDeleted;
+    private final Counter validatedArchived;
+
+    private volatile Duration codeTtl;
+    private volatile Duration validatedRetention;
+    private ScheduledExecutorService runner;
+
+    public CodeSweeper(
+        WhitelistStore whitelistStore,
+        HytaleLogger logger,
+        MetricsRegistry metrics
+    ) {
+        this.whitelistStore = Objects.requireNonNull(
+            whitelistStore,
+            "whitelistStore"
+        );
+        this.logger = Objects.requireNonNull(logger, "logger");
+        Objects.requireNonNull(metrics, "metrics");
+        this.runLatency = metrics.histogram(
+            "code_sweep",
+            "CodeSweeper.run latency, batches and pauses included"
+        );
+        this.expiredDeleted = metrics.counter(
+            "codes_expired_deleted",
+            "Unvalidated codes deleted after their TTL"
+        );
+        this.validatedArchived = metrics.counter(
+            "codes_validated_archived",
+            "Validated codes moved to whitelist_codes_archive"
+        );
+    }
+
+    /**
+     * Sets the policy and schedules runs. {@code null} disables the matching
+     * step; with both disabled nothing is scheduled.
+     */
+    public synchronized void start(Duration codeTtl, Duration validatedRetention) {
+        this.codeTtl = codeTtl;
+        this.validatedRetention = validatedRetention;
+        if (runner != null || (codeTtl == null && validatedRetention == null)) {
+            return;
+        }
+        runner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "discord-companion-code-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        runner.scheduleWithFixedDelay(
+            this::runQuietly,
+            INITIAL_DELAY_MINUTES,
+            INTERVAL_MINUTES,
+            TimeUnit.MINUTES
+        );
+    }
+
+    /** Runs one sweep on the calling thread. */
+    public Result run() {
+        runLock.lock();
+        long startedAt = System.nanoTime();
+        try {
+            Instant now = Instant.now();
+            Duration ttl = codeTtl;
+            Duration retention = validatedRetention;
+            int expired = ttl == null
+                ? 0
+                : drain(limit -> whitelistStore.deleteExpiredCodes(now.minus(ttl), limit));
+            expiredDeleted.add(expired);
+            int archived = retention == null
+                ? 0
+                : drain(limit -> whitelistStore.archiveValidatedCodes(now.minus(retention), limit));
+            validatedArchived.add(archived);
+            if (expired > 0 || archived > 0) {
+                compact();
+                logger
+                    .atInfo()
+                    .log(
+                        "Whitelist code sweep: %d expired codes deleted, %d validated codes archived",
+                        expired,
+                        archived
+                    );
+            }
+            return new Result(expired, archived);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return new Result(0, 0);
+        } finally {
+            runLock.unlock();
+            runLatency.recordSince(startedAt);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (runner == null) {
+            return;
+        }
+        runner.shutdownNow();
+        runner = null;
+    }
+
+    private static int drain(Batch batch) throws InterruptedException {
+        int total = 0;
+        while (true) {
+            int rows = batch.run(BATCH_SIZE);
+            total += rows;
+            if (rows < BATCH_SIZE) {
+                return total;
+            }
+            pause();
+        }
+    }
+
+    private void compact() throws InterruptedException {
+        while (whitelistStore.compact(VACUUM_PAGES) > 0) {
+            pause();
+        }
+    }
+
+    private static void pause() throws InterruptedException {
+        // lets queued connect-path statements take the database lock
+        Thread.sleep(PAUSE_MILLIS);
+    }
+
+    private void runQuietly() {
+        try {
+            run();
+        } catch (RuntimeException exception) {
+            logger
+                .atWarning()
+                .log("Whitelist code sweep failed: %s", exception.getMessage());
+        }
+    }
+
+    @FunctionalInterface
+    private interface Batch {
+        int run(int limit);
+    }
+
+    public record Result(int expiredDeleted, int validatedArchived) {}
+}
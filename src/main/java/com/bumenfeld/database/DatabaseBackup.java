@@ -0,0 +1,238 @@
+package com.bumenfeld.database;
+
+import com.bumenfeld.database.DatabaseManager.DatabaseException;
+import com.bumenfeld.metrics.Counter;
+import com.bumenfeld.metrics.LatencyHistogram;
+import com.bumenfeld.metrics.MetricsRegistry;
+import com.hypixel.hytale.logger.HytaleLogger;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Online snapshots of the whitelist store into {@code backups/} in the data
+ * directory. Each snapshot is written to a {@code .partial} file with
+ * {@link WhitelistStore#snapshotTo}, checked with
+ * {@link WhitelistStore#checkSnapshot} ({@code PRAGMA integrity_check} on
+ * SQLite) on the backup thread and only then renamed into place, so every
+ * snapshot in the folder is known to be good. The newest {@code retention}
+ * snapshots are kept. Stores without snapshot support are never backed up.
+ */
+public final class DatabaseBackup implements AutoCloseable {
+
+    private static final String SNAPSHOT_PREFIX = "whitelist_codes-";
+    private static final String PARTIAL_SUFFIX = ".partial";
+    // sorts chronologically by name
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter
+        .ofPattern("yyyyMMdd-HHmmss")
+        .withZone(ZoneOffset.UTC);
+
+    private final WhitelistStore whitelistStore;
+    private final HytaleLogger logger;
+    private final Path backupDirectory;
+    private final ReentrantLock runLock = new ReentrantLock();
+    private final LatencyHistogram backupLatency;
+    private final Counter failedBackups;
+
+    private volatile int retention = 1;
+    private ScheduledExecutorService runner;
+
+    public DatabaseBackup(
+        WhitelistStore whitelistStore,
+        Path backupDirectory,
+        HytaleLogger logger,
+        MetricsRegistry metrics
+    ) {
+        this.whitelistStore = Objects.requireNonNull(
+            whitelistStore,
+            "whitelistStore"
+        );
+        this.backupDirectory = Objects.requireNonNull(
+            backupDirectory,
+            "backupDirectory"
+        );
+        this.logger = Objects.requireNonNull(logger, "logger");
+        Objects.requireNonNull(metrics, "metrics");
+        this.backupLatency = metrics.histogram(
+            "db_backup",
+            "DatabaseBackup.backup latency, snapshot plus integrity check"
+        );
+        this.failedBackups = metrics.counter(
+            "db_backup_failures",
+            "Database backups that failed or did not pass the integrity check"
+        );
+    }
+
+    /**
+     * Starts the backup thread. Snapshots are taken every {@code interval},
+     * or only on request when it is {@code null}.
+     */
+    public synchronized void start(Duration interval, int retention) {
+        if (retention < 1) {
+            throw new IllegalArgumentException("retention must be >= 1");
+        }
+        this.retention = retention;
+        if (runner != null) {
+            return;
+        }
+        if (!whitelistStore.supportsSnapshots()) {
+            logger
+                .atInfo()
+                .log(
+                    "Database backups disabled: %s cannot take snapshots",
+                    whitelistStore.getClass().getSimpleName()
+                );
+            return;
+        }
+        runner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "discord-companion-database-backup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (interval != null) {
+            runner.scheduleWithFixedDelay(
+                this::backupQuietly,
+                interval.toMinutes(),
+                interval.toMinutes(),
+                TimeUnit.MINUTES
+            );
+        }
+    }
+
+    /** Queues a backup on the backup thread, e.g. for the admin command. */
+    public synchronized CompletableFuture<Snapshot> requestBackup() {
+        if (!whitelistStore.supportsSnapshots()) {
+            return CompletableFuture.failedFuture(
+                new UnsupportedOperationException(
+                    "The configured storage backend does not support backups"
+                )
+            );
+        }
+        if (runner == null) {
+            return CompletableFuture.failedFuture(
+                new IllegalStateException("Database backups are not running")
+            );
+        }
+        try {
+            return CompletableFuture.supplyAsync(this::backup, runner);
+        } catch (RejectedExecutionException exception) {
+            return CompletableFuture.failedFuture(exception);
+        }
+    }
+
+    /** Takes, verifies and rotates one snapshot on the calling thread. */
+    public Snapshot backup() {
+        runLock.lock();
+        long startedAt = System.nanoTime();
+        Instant takenAt = Instant.now();
+        Path target = backupDirectory.resolve(
+            SNAPSHOT_PREFIX + TIMESTAMP.format(takenAt) + whitelistStore.snapshotSuffix()
+        );
+        Path partial = target.resolveSibling(target.getFileName() + PARTIAL_SUFFIX);
+        try {
+            Files.createDirectories(backupDirectory);
+            Files.deleteIfExists(partial);
+            whitelistStore.snapshotTo(partial);
+            String integrity = whitelistStore.checkSnapshot(partial);
+            if (!"ok".equals(integrity)) {
+                Files.deleteIfExists(partial);
+                throw new DatabaseException(
+                    "Snapshot " + target.getFileName() + " failed the integrity check: " + integrity,
+                    null
+                );
+            }
+            Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING);
+            int pruned = prune();
+            Snapshot snapshot = new Snapshot(
+                target,
+                takenAt,
+                Files.size(target),
+                pruned,
+                Duration.ofNanos(System.nanoTime() - startedAt)
+            );
+            logger
+                .atInfo()
+                .log(
+                    "Database backup %s written (%d bytes, %d ms, %d old snapshots removed)",
+                    target.getFileName(),
+                    snapshot.sizeBytes(),
+                    snapshot.took().toMillis(),
+                    pruned
+                );
+            backupLatency.recordSince(startedAt);
+            return snapshot;
+        } catch (IOException exception) {
+            failedBackups.increment();
+            throw new DatabaseException("Unable to write database backup", exception);
+        } catch (RuntimeException exception) {
+            failedBackups.increment();
+            throw exception;
+        } finally {
+            runLock.unlock();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (runner == null) {
+            return;
+        }
+        runner.shutdownNow();
+        runner = null;
+    }
+
+    /** Deletes all but the newest {@link #retention} snapshots. */
+    private int prune() throws IOException {
+        List<Path> snapshots = new ArrayList<>();
+        try (
+            DirectoryStream<Path> stream = Files.newDirectoryStream(
+                backupDirectory,
+                SNAPSHOT_PREFIX + "*" + whitelistStore.snapshotSuffix()
+            )
+        ) {
+            stream.forEach(snapshots::add);
+        }
+        snapshots.sort(Comparator.comparing(Path::getFileName).reversed());
+        int pruned = 0;
+        for (int i = retention; i < snapshots.size(); i++) {
+            if (Files.deleteIfExists(snapshots.get(i))) {
+                pruned++;
+            }
+        }
+        return pruned;
+    }
+
+    private void backupQuietly() {
+        try {
+            backup();
+        } catch (RuntimeException exception) {
+            logger
+                .atWarning()
+                .log("Database backup failed: %s", exception.getMessage());
+        }
+    }
+
+    public record Snapshot(
+        Path file,
+        Instant takenAt,
+        long sizeBytes,
+        int pruned,
+        Duration took
+    ) {}
+}
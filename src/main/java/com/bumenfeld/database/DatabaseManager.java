@@ -1,5 +1,8 @@
 package com.bumenfeld.database;
 
+import com.bumenfeld.jfr.DatabaseStatementEvent;
+import com.bumenfeld.metrics.LatencyHistogram;
+import com.bumenfeld.metrics.MetricsRegistry;
 import com.hypixel.hytale.logger.HytaleLogger;
 import java.io.IOException;
 import java.nio.file.Files;
@@ -10,16 +13,32 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import org.sqlite.SQLiteErrorCode;
+import org.sqlite.SQLiteException;
 
-public final class DatabaseManager implements AutoCloseable {
+/**
+ * SQLite {@link WhitelistStore}, and the store for scheduled announcements,
+ * which stay on SQLite whichever whitelist backend is configured.
+ */
+public final class DatabaseManager implements WhitelistStore {
 
     private static final String DEFAULT_DATABASE_NAME = "whitelist_codes.db";
     private static final String JDBC_URL_PREFIX = "jdbc:sqlite:";
@@ -42,6 +61,24 @@ public final class DatabaseManager implements AutoCloseable {
             validated_at = NULL
         """;
 
+    // only replaces a row whose code was already used or has expired, so racing issuers agree on one code
+    private static final String ISSUE_SQL = """
+        INSERT INTO whitelist_codes (player_uuid, whitelist_code, created_at, validated_at)
+        VALUES (?, ?, ?, NULL)
+        ON CONFLICT(player_uuid) DO UPDATE SET
+            whitelist_code = excluded.whitelist_code,
+            created_at = excluded.created_at,
+            validated_at = NULL
+        WHERE whitelist_codes.validated_at IS NOT NULL
+            OR whitelist_codes.created_at < ?
+        """;
+
+    private static final String SELECT_CODE_BY_PLAYER_SQL = """
+        SELECT whitelist_code
+        FROM whitelist_codes
+        WHERE player_uuid = ?
+        """;
+
     private static final String SELECT_BY_PLAYER_SQL = """
         SELECT player_uuid, whitelist_code, created_at, validated_at
         FROM whitelist_codes
@@ -54,17 +91,129 @@ public final class DatabaseManager implements AutoCloseable {
         WHERE whitelist_code = ?
         """;
 
-    private static final String SELECT_ACTIVE_SQL = """
+    // keyset pages over (created_at, player_uuid), served by idx_whitelist_codes_active
+    private static final String SELECT_ACTIVE_AFTER_SQL = """
+        SELECT player_uuid, whitelist_code, created_at, validated_at
+        FROM whitelist_codes
+        WHERE validated_at IS NULL AND (created_at, player_uuid) > (?, ?)
+        ORDER BY created_at ASC, player_uuid ASC
+        LIMIT ?
+        """;
+
+    private static final String SELECT_ACTIVE_BEFORE_SQL = """
         SELECT player_uuid, whitelist_code, created_at, validated_at
         FROM whitelist_codes
+        WHERE validated_at IS NULL AND (created_at, player_uuid) < (?, ?)
+        ORDER BY created_at DESC, player_uuid DESC
+        LIMIT ?
+        """;
+
+    private static final String CREATE_ACTIVE_INDEX_SQL = """
+        CREATE INDEX IF NOT EXISTS idx_whitelist_codes_active
+        ON whitelist_codes (created_at, player_uuid)
         WHERE validated_at IS NULL
-        ORDER BY created_at ASC
+        """;
+
+    // SQLite's default SQLITE_MAX_VARIABLE_NUMBER is 999 before 3.32
+    private static final int IN_LIST_CHUNK = 500;
+
+    // keyset page over both primary keys, so each page is two index range scans
+    private static final String SELECT_VALIDATED_PAGE_SQL = """
+        SELECT player_uuid
+        FROM whitelist_codes
+        WHERE validated_at IS NOT NULL AND player_uuid > ?
+        UNION
+        SELECT player_uuid
+        FROM whitelist_codes_archive
+        WHERE player_uuid > ?
+        ORDER BY player_uuid
+        LIMIT ?
+        """;
+
+    private static final String SELECT_VALIDATED_AMONG_SQL = """
+        SELECT player_uuid
+        FROM whitelist_codes
+        WHERE validated_at IS NOT NULL AND player_uuid IN (%1$s)
+        UNION
+        SELECT player_uuid
+        FROM whitelist_codes_archive
+        WHERE player_uuid IN (%1$s)
+        """;
+
+    private static final String SELECT_VALIDATED_ENTRIES_PAGE_SQL = """
+        SELECT player_uuid, validated_at
+        FROM whitelist_codes
+        WHERE validated_at IS NOT NULL AND player_uuid > ?
+        UNION ALL
+        SELECT player_uuid, validated_at
+        FROM whitelist_codes_archive
+        WHERE player_uuid > ?
+        ORDER BY player_uuid
+        LIMIT ?
+        """;
+
+    // marks a pending code validated too; an already validated row keeps its timestamp
+    private static final String IMPORT_VALIDATED_SQL = """
+        INSERT INTO whitelist_codes (player_uuid, whitelist_code, created_at, validated_at)
+        VALUES (?, ?, ?, ?)
+        ON CONFLICT(player_uuid) DO UPDATE SET
+            validated_at = excluded.validated_at
+        WHERE whitelist_codes.validated_at IS NULL
+        """;
+
+    // validated codes past their retention, moved out of the hot table by the sweeper
+    private static final String CREATE_ARCHIVE_TABLE_SQL = """
+        CREATE TABLE IF NOT EXISTS whitelist_codes_archive (
+            player_uuid TEXT PRIMARY KEY,
+            whitelist_code TEXT NOT NULL,
+            created_at INTEGER NOT NULL,
+            validated_at INTEGER NOT NULL,
+            archived_at INTEGER NOT NULL
+        )
+        """;
+
+    private static final String CREATE_VALIDATED_INDEX_SQL = """
+        CREATE INDEX IF NOT EXISTS idx_whitelist_codes_validated
+        ON whitelist_codes (validated_at)
+        WHERE validated_at IS NOT NULL
+        """;
+
+    private static final String DELETE_EXPIRED_SQL = """
+        DELETE FROM whitelist_codes
+        WHERE player_uuid IN (
+            SELECT player_uuid
+            FROM whitelist_codes
+            WHERE validated_at IS NULL AND created_at < ?
+            ORDER BY created_at
+            LIMIT ?
+        )
+        """;
+
+    private static final String SELECT_ARCHIVABLE_SQL = """
+        SELECT player_uuid
+        FROM whitelist_codes
+        WHERE validated_at IS NOT NULL AND validated_at < ?
+        ORDER BY validated_at
+        LIMIT ?
+        """;
+
+    private static final String ARCHIVE_AMONG_SQL = """
+        INSERT OR REPLACE INTO whitelist_codes_archive
+            (player_uuid, whitelist_code, created_at, validated_at, archived_at)
+        SELECT player_uuid, whitelist_code, created_at, validated_at, ?
+        FROM whitelist_codes
+        WHERE player_uuid IN (%s)
+        """;
+
+    private static final String DELETE_AMONG_SQL = """
+        DELETE FROM whitelist_codes
+        WHERE player_uuid IN (%s)
         """;
 
     private static final String MARK_VALIDATED_SQL = """
         UPDATE whitelist_codes
         SET validated_at = ?
-        WHERE player_uuid = ? AND validated_at IS NULL
+        WHERE player_uuid = ? AND whitelist_code = ? AND validated_at IS NULL
         """;
 
     private static final String DELETE_SQL = """
@@ -72,28 +221,199 @@ public final class DatabaseManager implements AutoCloseable {
         WHERE player_uuid = ?
         """;
 
+    private static final String SELECT_AMONG_SQL = """
+        SELECT player_uuid, whitelist_code, created_at, validated_at
+        FROM whitelist_codes
+        WHERE player_uuid IN (%s)
+        """;
+
+    private static final String DELETE_ARCHIVED_AMONG_SQL = """
+        DELETE FROM whitelist_codes_archive
+        WHERE player_uuid IN (%s)
+        """;
+
+    private static final String DELETE_ARCHIVED_SQL = """
+        DELETE FROM whitelist_codes_archive
+        WHERE player_uuid = ?
+        """;
+
+    private static final String CREATE_SCHEDULED_TABLE_SQL = """
+        CREATE TABLE IF NOT EXISTS scheduled_announcements (
+            id INTEGER PRIMARY KEY AUTOINCREMENT,
+            message TEXT NOT NULL,
+            next_run_at INTEGER NOT NULL,
+            interval_ms INTEGER,
+            created_by TEXT,
+            created_at INTEGER NOT NULL
+        )
+        """;
+
+    private static final String INSERT_SCHEDULED_SQL = """
+        INSERT INTO scheduled_announcements (message, next_run_at, interval_ms, created_by, created_at)
+        VALUES (?, ?, ?, ?, ?)
+        """;
+
+    private static final String SELECT_SCHEDULED_SQL = """
+        SELECT id, message, next_run_at, interval_ms, created_by, created_at
+        FROM scheduled_announcements
+        ORDER BY next_run_at ASC
+        """;
+
+    private static final String UPDATE_SCHEDULED_NEXT_RUN_SQL = """
+        UPDATE scheduled_announcements
+        SET next_run_at = ?
+        WHERE id = ?
+        """;
+
+    private static final String DELETE_SCHEDULED_SQL = """
+        DELETE FROM scheduled_announcements
+        WHERE id = ?
+        """;
+
     private final Path databasePath;
     private final HytaleLogger logger;
     private final ReentrantLock lock = new ReentrantLock();
     private final AtomicBoolean initialized = new AtomicBoolean(false);
+    // guarded by lock: false for files created before incremental vacuum
+    private boolean incrementalVacuum;
+    private final LatencyHistogram lockWait;
+    private final LatencyHistogram upsertLatency;
+    private final LatencyHistogram issueLatency;
+    private final LatencyHistogram findByPlayerLatency;
+    private final LatencyHistogram findByCodeLatency;
+    private final LatencyHistogram listActiveLatency;
+    private final LatencyHistogram streamValidatedLatency;
+    private final LatencyHistogram filterValidatedLatency;
+    private final LatencyHistogram findByPlayersLatency;
+    private final LatencyHistogram deleteAllLatency;
+    private final LatencyHistogram markValidatedLatency;
+    private final LatencyHistogram deleteLatency;
+    private final LatencyHistogram sweepBatchLatency;
+    private final LatencyHistogram vacuumStepLatency;
+    private final LatencyHistogram snapshotLatency;
+    private final LatencyHistogram importBatchLatency;
+    private final LatencyHistogram scheduleInsertLatency;
+    private final LatencyHistogram scheduleListLatency;
+    private final LatencyHistogram scheduleUpdateLatency;
+    private final LatencyHistogram scheduleDeleteLatency;
 
     private Connection connection;
+    private long lastLockWaitNanos;
 
     public DatabaseManager(Path dataDirectory, HytaleLogger logger) {
         this(dataDirectory, DEFAULT_DATABASE_NAME, logger);
     }
 
+    public DatabaseManager(
+        Path dataDirectory,
+        HytaleLogger logger,
+        MetricsRegistry metrics
+    ) {
+        this(dataDirectory, DEFAULT_DATABASE_NAME, logger, metrics);
+    }
+
     public DatabaseManager(
         Path dataDirectory,
         String databaseFileName,
         HytaleLogger logger
+    ) {
+        this(dataDirectory, databaseFileName, logger, new MetricsRegistry());
+    }
+
+    public DatabaseManager(
+        Path dataDirectory,
+        String databaseFileName,
+        HytaleLogger logger,
+        MetricsRegistry metrics
     ) {
         Objects.requireNonNull(dataDirectory, "dataDirectory");
         this.logger = Objects.requireNonNull(logger, "logger");
+        Objects.requireNonNull(metrics, "metrics");
         String resolvedFileName = sanitizeFileName(databaseFileName);
         this.databasePath = dataDirectory.resolve(resolvedFileName);
+        this.lockWait = metrics.histogram(
+            "db_lock_wait",
+            "Time spent waiting for the database lock"
+        );
+        this.upsertLatency = metrics.histogram(
+            "db_upsert",
+            "DatabaseManager.upsertCode latency"
+        );
+        this.issueLatency = metrics.histogram(
+            "db_issue_code",
+            "DatabaseManager.issueCode latency"
+        );
+        this.findByPlayerLatency = metrics.histogram(
+            "db_find_by_player",
+            "DatabaseManager.findByPlayer latency"
+        );
+        this.findByCodeLatency = metrics.histogram(
+            "db_find_by_code",
+            "DatabaseManager.findByCode latency"
+        );
+        this.listActiveLatency = metrics.histogram(
+            "db_list_active",
+            "DatabaseManager.listActiveCodes latency"
+        );
+        this.streamValidatedLatency = metrics.histogram(
+            "db_stream_validated",
+            "DatabaseManager.streamValidatedPlayers latency per page"
+        );
+        this.filterValidatedLatency = metrics.histogram(
+            "db_filter_validated",
+            "DatabaseManager.filterValidated latency per chunk"
+        );
+        this.findByPlayersLatency = metrics.histogram(
+            "db_find_by_players",
+            "DatabaseManager.findByPlayers latency per chunk"
+        );
+        this.deleteAllLatency = metrics.histogram(
+            "db_delete_all",
+            "DatabaseManager.deleteAll latency per chunk"
+        );
+        this.markValidatedLatency = metrics.histogram(
+            "db_mark_validated",
+            "DatabaseManager.markValidated latency"
+        );
+        this.deleteLatency = metrics.histogram(
+            "db_delete",
+            "DatabaseManager.delete latency"
+        );
+        this.sweepBatchLatency = metrics.histogram(
+            "db_sweep_batch",
+            "DatabaseManager.deleteExpiredCodes/archiveValidatedCodes latency per batch"
+        );
+        this.vacuumStepLatency = metrics.histogram(
+            "db_incremental_vacuum",
+            "DatabaseManager.compact latency per incremental vacuum step"
+        );
+        this.importBatchLatency = metrics.histogram(
+            "db_import_batch",
+            "DatabaseManager.importValidated latency per batch"
+        );
+        this.snapshotLatency = metrics.histogram(
+            "db_snapshot",
+            "DatabaseManager.snapshotTo latency"
+        );
+        this.scheduleInsertLatency = metrics.histogram(
+            "db_schedule_insert",
+            "DatabaseManager.insertScheduledAnnouncement latency"
+        );
+        this.scheduleListLatency = metrics.histogram(
+            "db_schedule_list",
+            "DatabaseManager.listScheduledAnnouncements latency"
+        );
+        this.scheduleUpdateLatency = metrics.histogram(
+            "db_schedule_update",
+            "DatabaseManager.updateScheduledNextRun latency"
+        );
+        this.scheduleDeleteLatency = metrics.histogram(
+            "db_schedule_delete",
+            "DatabaseManager.deleteScheduledAnnouncement latency"
+        );
     }
 
+    @Override
     public void initialize() {
         lock.lock();
         try {
@@ -127,6 +447,8 @@ public final class DatabaseManager implements AutoCloseable {
             | IOException
             | ClassNotFoundException exception
         ) {
+            // initialize() is retried while the whitelist store is degraded
+            closeQuietly();
             throw new DatabaseException(
                 "Unable to initialize whitelist database",
                 exception
@@ -136,11 +458,26 @@ public final class DatabaseManager implements AutoCloseable {
         }
     }
 
+    private void closeQuietly() {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+            // already failing; the initialization error is the one worth reporting
+        }
+        connection = null;
+    }
+
+    @Override
     public void upsertCode(UUID playerUuid, String whitelistCode) {
         Objects.requireNonNull(playerUuid, "playerUuid");
         Objects.requireNonNull(whitelistCode, "whitelistCode");
 
-        lock.lock();
+        long startedAt = acquireLock();
+        DatabaseStatementEvent trace =
+            DatabaseStatementEvent.start("upsert_code", lastLockWaitNanos);
         try {
             ensureInitialized();
             try (
@@ -152,7 +489,7 @@ public final class DatabaseManager implements AutoCloseable {
                 statement.setString(1, playerUuid.toString());
                 statement.setString(2, whitelistCode);
                 statement.setLong(3, now);
-                statement.executeUpdate();
+                trace.rows(statement.executeUpdate());
             }
         } catch (SQLException exception) {
             throw new DatabaseException(
@@ -160,14 +497,76 @@ public final class DatabaseManager implements AutoCloseable {
                 exception
             );
         } finally {
+            trace.finish();
             lock.unlock();
+            upsertLatency.recordSince(startedAt);
         }
     }
 
+    @Override
+    public Optional<String> issueCode(
+        UUID playerUuid,
+        String whitelistCode,
+        Instant expiredBefore
+    ) {
+        Objects.requireNonNull(playerUuid, "playerUuid");
+        Objects.requireNonNull(whitelistCode, "whitelistCode");
+
+        long startedAt = acquireLock();
+        DatabaseStatementEvent trace =
+            DatabaseStatementEvent.start("issue_code", lastLockWaitNanos);
+        try {
+            ensureInitialized();
+            try (
+                PreparedStatement statement = connection.prepareStatement(
+                    ISSUE_SQL
+                )
+            ) {
+                statement.setString(1, playerUuid.toString());
+                statement.setString(2, whitelistCode);
+                statement.setLong(3, Instant.now().toEpochMilli());
+                statement.setLong(
+                    4,
+                    expiredBefore == null ? Long.MIN_VALUE : expiredBefore.toEpochMilli()
+                );
+                trace.rows(statement.executeUpdate());
+            } catch (SQLException exception) {
+                if (isUniqueViolation(exception)) {
+                    return Optional.empty();
+                }
+                throw exception;
+            }
+            try (
+                PreparedStatement statement = connection.prepareStatement(
+                    SELECT_CODE_BY_PLAYER_SQL
+                )
+            ) {
+                statement.setString(1, playerUuid.toString());
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    return resultSet.next()
+                        ? Optional.of(resultSet.getString(1))
+                        : Optional.empty();
+                }
+            }
+        } catch (SQLException exception) {
+            throw new DatabaseException(
+                "Unable to issue whitelist code",
+                exception
+            );
+        } finally {
+            trace.finish();
+            lock.unlock();
+            issueLatency.recordSince(startedAt);
+        }
+    }
+
+    @Override
     public Optional<WhitelistCode> findByPlayer(UUID playerUuid) {
         Objects.requireNonNull(playerUuid, "playerUuid");
 
-        lock.lock();
+        long startedAt = acquireLock();
+        DatabaseStatementEvent trace =
+            DatabaseStatementEvent.start("find_by_player", lastLockWaitNanos);
         try {
             ensureInitialized();
             try (
@@ -178,6 +577,7 @@ public final class DatabaseManager implements AutoCloseable {
                 statement.setString(1, playerUuid.toString());
                 try (ResultSet resultSet = statement.executeQuery()) {
                     if (resultSet.next()) {
+                        trace.rows(1);
                         return Optional.of(mapRow(resultSet));
                     }
                 }
@@ -189,14 +589,19 @@ public final class DatabaseManager implements AutoCloseable {
                 exception
             );
         } finally {
+            trace.finish();
             lock.unlock();
+            findByPlayerLatency.recordSince(startedAt);
         }
     }
 
+    @Override
     public Optional<WhitelistCode> findByCode(String whitelistCode) {
         Objects.requireNonNull(whitelistCode, "whitelistCode");
 
-        lock.lock();
+        long startedAt = acquireLock();
+        DatabaseStatementEvent trace =
+            DatabaseStatementEvent.start("find_by_code", lastLockWaitNanos);
         try {
             ensureInitialized();
             try (
@@ -207,6 +612,7 @@ public final class DatabaseManager implements AutoCloseable {
                 statement.setString(1, whitelistCode);
                 try (ResultSet resultSet = statement.executeQuery()) {
                     if (resultSet.next()) {
+                        trace.rows(1);
                         return Optional.of(mapRow(resultSet));
                     }
                 }
@@ -218,42 +624,417 @@ public final class DatabaseManager implements AutoCloseable {
                 exception
             );
         } finally {
+            trace.finish();
             lock.unlock();
+            findByCodeLatency.recordSince(startedAt);
         }
     }
 
-    public List<WhitelistCode> listActiveCodes() {
-        lock.lock();
+    /**
+     * Up to {@code limit} unvalidated codes following {@code after}, oldest
+     * first; {@code null} starts at the oldest code.
+     */
+    @Override
+    public CodePage listActiveCodesAfter(PageKey after, int limit) {
+        return queryActivePage(
+            SELECT_ACTIVE_AFTER_SQL,
+            after == null ? new PageKey(Long.MIN_VALUE, "") : after,
+            limit,
+            false
+        );
+    }
+
+    /**
+     * Up to {@code limit} unvalidated codes preceding {@code before}, still
+     * returned oldest first; {@link CodePage#hasMore()} tells whether even
+     * older codes exist.
+     */
+    @Override
+    public CodePage listActiveCodesBefore(PageKey before, int limit) {
+        Objects.requireNonNull(before, "before");
+        return queryActivePage(SELECT_ACTIVE_BEFORE_SQL, before, limit, true);
+    }
+
+    private CodePage queryActivePage(
+        String sql,
+        PageKey key,
+        int limit,
+        boolean descending
+    ) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be > 0");
+        }
+        long startedAt = acquireLock();
+        DatabaseStatementEvent trace =
+            DatabaseStatementEvent.start("list_active_codes", lastLockWaitNanos);
+        try {
+            ensureInitialized();
+            List<WhitelistCode> results = new ArrayList<>(limit + 1);
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setLong(1, key.createdAtMillis());
+                statement.setString(2, key.playerUuid());
+                // one extra row tells whether another page follows
+                statement.setInt(3, limit + 1);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        results.add(mapRow(resultSet));
+                    }
+                }
+            }
+            trace.rows(results.size());
+            boolean hasMore = results.size() > limit;
+            if (hasMore) {
+                results.remove(results.size() - 1);
+            }
+            if (descending) {
+                Collections.reverse(results);
+            }
+            return new CodePage(results, hasMore);
+        } catch (SQLException exception) {
+            throw new DatabaseException(
+                "Unable to list active whitelist codes",
+                exception
+            );
+        } finally {
+            trace.finish();
+            lock.unlock();
+            listActiveLatency.recordSince(startedAt);
+        }
+    }
+
+    /**
+     * Streams up to {@code limit} validated players ordered by UUID, starting
+     * after {@code after} ({@code null} for the first page), straight from the
+     * result set into {@code sink}. The lock is only held for one page, so a
+     * full scan does not stall the connect path.
+     *
+     * @return the number of players streamed; fewer than {@code limit} means
+     *     the scan is complete
+     */
+    @Override
+    public int streamValidatedPlayers(UUID after, int limit, Consumer<UUID> sink) {
+        Objects.requireNonNull(sink, "sink");
+        long startedAt = acquireLock();
+        DatabaseStatementEvent trace =
+            DatabaseStatementEvent.start("stream_validated_players", lastLockWaitNanos);
         try {
             ensureInitialized();
-            List<WhitelistCode> results = new ArrayList<>();
+            int streamed = 0;
             try (
                 PreparedStatement statement = connection.prepareStatement(
-                    SELECT_ACTIVE_SQL
+                    SELECT_VALIDATED_PAGE_SQL
                 )
             ) {
+                String cursor = after == null ? "" : after.toString();
+                statement.setString(1, cursor);
+                statement.setString(2, cursor);
+                statement.setInt(3, limit);
                 try (ResultSet resultSet = statement.executeQuery()) {
                     while (resultSet.next()) {
-                        results.add(mapRow(resultSet));
+                        sink.accept(UUID.fromString(resultSet.getString(1)));
+                        streamed++;
                     }
                 }
             }
-            return List.copyOf(results);
+            trace.rows(streamed);
+            return streamed;
         } catch (SQLException exception) {
             throw new DatabaseException(
-                "Unable to list active whitelist codes",
+                "Unable to stream validated players",
+                exception
+            );
+        } finally {
+            trace.finish();
+            lock.unlock();
+            streamValidatedLatency.recordSince(startedAt);
+        }
+    }
+
+    /**
+     * Like {@link #streamValidatedPlayers}, with the validation time of each
+     * player, archived codes included.
+     *
+     * @return the number of rows read; fewer than {@code limit} means the
+     *     scan is complete
+     */
+    @Override
+    public int streamValidatedEntries(
+        UUID after,
+        int limit,
+        Consumer<ValidatedEntry> sink
+    ) {
+        Objects.requireNonNull(sink, "sink");
+        long startedAt = acquireLock();
+        DatabaseStatementEvent trace =
+            DatabaseStatementEvent.start("stream_validated_entries", lastLockWaitNanos);
+        try {
+            ensureInitialized();
+            int read = 0;
+            try (
+                PreparedStatement statement = connection.prepareStatement(
+                    SELECT_VALIDATED_ENTRIES_PAGE_SQL
+                )
+            ) {
+                String cursor = after == null ? "" : after.toString();
+                statement.setString(1, cursor);
+                statement.setString(2, cursor);
+                statement.setInt(3, limit);
+                UUID previous = null;
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        read++;
+                        UUID playerUuid = UUID.fromString(resultSet.getString(1));
+                        // revalidated after archiving: listed in both tables, adjacent by order
+                        if (playerUuid.equals(previous)) {
+                            continue;
+                        }
+                        previous = playerUuid;
+                        sink.accept(
+                            new ValidatedEntry(
+                                playerUuid,
+                                Instant.ofEpochMilli(resultSet.getLong(2))
+                            )
+                        );
+                    }
+                }
+            }
+            trace.rows(read);
+            return read;
+        } catch (SQLException exception) {
+            throw new DatabaseException(
+                "Unable to stream validated players",
+                exception
+            );
+        } finally {
+            trace.finish();
+            lock.unlock();
+            streamValidatedLatency.recordSince(startedAt);
+        }
+    }
+
+    /**
+     * Marks every entry validated in one transaction, inserting a row with a
+     * placeholder code for players that never had one.
+     *
+     * @return how many of them were not validated before
+     */
+    @Override
+    public int importValidated(List<ValidatedEntry> entries) {
+        Objects.requireNonNull(entries, "entries");
+        if (entries.isEmpty()) {
+            return 0;
+        }
+        long startedAt = acquireLock();
+        DatabaseStatementEvent trace =
+            DatabaseStatementEvent.start("import_validated", lastLockWaitNanos);
+        try {
+            ensureInitialized();
+            connection.setAutoCommit(false);
+            try (
+                PreparedStatement statement = connection.prepareStatement(
+                    IMPORT_VALIDATED_SQL
+                )
+            ) {
+                for (ValidatedEntry entry : entries) {
+                    long validatedAt = entry.validatedAt().toEpochMilli();
+                    statement.setString(1, entry.playerUuid().toString());
+                    statement.setString(2, IMPORTED_CODE_PREFIX + entry.playerUuid());
+                    statement.setLong(3, validatedAt);
+                    statement.setLong(4, validatedAt);
+                    statement.addBatch();
+                }
+                int changed = 0;
+                for (int rows : statement.executeBatch()) {
+                    changed += Math.max(rows, 0);
+                }
+                connection.commit();
+                trace.rows(changed);
+                return changed;
+            } catch (SQLException exception) {
+                connection.rollback();
+                throw exception;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException exception) {
+            throw new DatabaseException(
+                "Unable to import validated players",
+                exception
+            );
+        } finally {
+            trace.finish();
+            lock.unlock();
+            importBatchLatency.recordSince(startedAt);
+        }
+    }
+
+    /** The subset of {@code playerUuids} that hold a validated code, archived or not. */
+    @Override
+    public Set<UUID> filterValidated(Collection<UUID> playerUuids) {
+        Objects.requireNonNull(playerUuids, "playerUuids");
+        if (playerUuids.isEmpty()) {
+            return Set.of();
+        }
+        String sql = String.format(
+            SELECT_VALIDATED_AMONG_SQL,
+            String.join(", ", Collections.nCopies(playerUuids.size(), "?"))
+        );
+        long startedAt = acquireLock();
+        DatabaseStatementEvent trace =
+            DatabaseStatementEvent.start("filter_validated", lastLockWaitNanos);
+        try {
+            ensureInitialized();
+            Set<UUID> validated = new HashSet<>();
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                // once per table
+                bindUuids(statement, 1, playerUuids);
+                bindUuids(statement, 1 + playerUuids.size(), playerUuids);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        validated.add(UUID.fromString(resultSet.getString(1)));
+                    }
+                }
+            }
+            trace.rows(validated.size());
+            return validated;
+        } catch (SQLException exception) {
+            throw new DatabaseException(
+                "Unable to check validated players",
                 exception
             );
         } finally {
+            trace.finish();
             lock.unlock();
+            filterValidatedLatency.recordSince(startedAt);
+        }
+    }
+
+    /**
+     * {@link #findByPlayer} for many players, one {@code IN} query per
+     * {@value #IN_LIST_CHUNK} of them. The lock is released between chunks.
+     */
+    @Override
+    public Map<UUID, WhitelistCode> findByPlayers(Collection<UUID> playerUuids) {
+        Objects.requireNonNull(playerUuids, "playerUuids");
+        Map<UUID, WhitelistCode> found = new HashMap<>();
+        for (List<UUID> chunk : chunks(playerUuids)) {
+            findAmong(chunk, found);
         }
+        return found;
     }
 
-    public boolean markValidated(UUID playerUuid, Instant validatedAt) {
+    private void findAmong(List<UUID> chunk, Map<UUID, WhitelistCode> found) {
+        String sql = String.format(
+            SELECT_AMONG_SQL,
+            String.join(", ", Collections.nCopies(chunk.size(), "?"))
+        );
+        long startedAt = acquireLock();
+        DatabaseStatementEvent trace =
+            DatabaseStatementEvent.start("find_by_players", lastLockWaitNanos);
+        try {
+            ensureInitialized();
+            int rows = 0;
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                bindUuids(statement, 1, chunk);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        WhitelistCode code = mapRow(resultSet);
+                        found.put(code.playerUuid(), code);
+                        rows++;
+                    }
+                }
+            }
+            trace.rows(rows);
+        } catch (SQLException exception) {
+            throw new DatabaseException(
+                "Unable to fetch whitelist codes by player",
+                exception
+            );
+        } finally {
+            trace.finish();
+            lock.unlock();
+            findByPlayersLatency.recordSince(startedAt);
+        }
+    }
+
+    /**
+     * {@link #delete} for many players, one transaction per
+     * {@value #IN_LIST_CHUNK} of them.
+     */
+    @Override
+    public int deleteAll(Collection<UUID> playerUuids) {
+        Objects.requireNonNull(playerUuids, "playerUuids");
+        int deleted = 0;
+        for (List<UUID> chunk : chunks(playerUuids)) {
+            deleted += deleteAmong(chunk);
+        }
+        return deleted;
+    }
+
+    private int deleteAmong(List<UUID> chunk) {
+        String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+        long startedAt = acquireLock();
+        DatabaseStatementEvent trace =
+            DatabaseStatementEvent.start("delete_all", lastLockWaitNanos);
+        try {
+            ensureInitialized();
+            connection.setAutoCommit(false);
+            try {
+                int rows;
+                try (
+                    PreparedStatement statement = connection.prepareStatement(
+                        String.format(DELETE_AMONG_SQL, placeholders)
+                    )
+                ) {
+                    bindUuids(statement, 1, chunk);
+                    rows = statement.executeUpdate();
+                }
+                try (
+                    PreparedStatement statement = connection.prepareStatement(
+                        String.format(DELETE_ARCHIVED_AMONG_SQL, placeholders)
+                    )
+                ) {
+                    bindUuids(statement, 1, chunk);
+                    rows += statement.executeUpdate();
+                }
+                connection.commit();
+                trace.rows(rows);
+                return rows;
+            } catch (SQLException exception) {
+                connection.rollback();
+                throw exception;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException exception) {
+            throw new DatabaseException(
+                "Unable to delete whitelist codes",
+                exception
+            );
+        } finally {
+            trace.finish();
+            lock.unlock();
+            deleteAllLatency.recordSince(startedAt);
+        }
+    }
+
+    /**
+     * Marks the player's row validated, but only while it still holds
+     * {@code whitelistCode}; a code replaced in the meantime does not count.
+     */
+    @Override
+    public boolean markValidated(
+        UUID playerUuid,
+        String whitelistCode,
+        Instant validatedAt
+    ) {
         Objects.requireNonNull(playerUuid, "playerUuid");
+        Objects.requireNonNull(whitelistCode, "whitelistCode");
         Instant timestamp = validatedAt != null ? validatedAt : Instant.now();
 
-        lock.lock();
+        long startedAt = acquireLock();
+        DatabaseStatementEvent trace =
+            DatabaseStatementEvent.start("mark_validated", lastLockWaitNanos);
         try {
             ensureInitialized();
             try (
@@ -263,7 +1044,10 @@ public final class DatabaseManager implements AutoCloseable {
             ) {
                 statement.setLong(1, timestamp.toEpochMilli());
                 statement.setString(2, playerUuid.toString());
-                return statement.executeUpdate() > 0;
+                statement.setString(3, whitelistCode);
+                int rows = statement.executeUpdate();
+                trace.rows(rows);
+                return rows > 0;
             }
         } catch (SQLException exception) {
             throw new DatabaseException(
@@ -271,31 +1055,421 @@ public final class DatabaseManager implements AutoCloseable {
                 exception
             );
         } finally {
+            trace.finish();
             lock.unlock();
+            markValidatedLatency.recordSince(startedAt);
         }
     }
 
+    @Override
     public boolean delete(UUID playerUuid) {
         Objects.requireNonNull(playerUuid, "playerUuid");
 
-        lock.lock();
+        long startedAt = acquireLock();
+        DatabaseStatementEvent trace =
+            DatabaseStatementEvent.start("delete", lastLockWaitNanos);
+        try {
+            ensureInitialized();
+            int rows;
+            // one transaction, so a crash cannot leave the archived copy behind
+            connection.setAutoCommit(false);
+            try {
+                try (
+                    PreparedStatement statement = connection.prepareStatement(
+                        DELETE_SQL
+                    )
+                ) {
+                    statement.setString(1, playerUuid.toString());
+                    rows = statement.executeUpdate();
+                }
+                try (
+                    PreparedStatement archived = connection.prepareStatement(
+                        DELETE_ARCHIVED_SQL
+                    )
+                ) {
+                    archived.setString(1, playerUuid.toString());
+                    rows += archived.executeUpdate();
+                }
+                connection.commit();
+            } catch (SQLException exception) {
+                connection.rollback();
+                throw exception;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+            trace.rows(rows);
+            return rows > 0;
+        } catch (SQLException exception) {
+            throw new DatabaseException(
+                "Unable to delete whitelist code",
+                exception
+            );
+        } finally {
+            trace.finish();
+            lock.unlock();
+            deleteLatency.recordSince(startedAt);
+        }
+    }
+
+    /**
+     * Deletes up to {@code limit} unvalidated codes created before
+     * {@code cutoff}, oldest first, in one short statement over
+     * {@code idx_whitelist_codes_active}.
+     *
+     * @return the number of codes deleted; fewer than {@code limit} means
+     *     none are left
+     */
+    @Override
+    public int deleteExpiredCodes(Instant cutoff, int limit) {
+        Objects.requireNonNull(cutoff, "cutoff");
+        long startedAt = acquireLock();
+        DatabaseStatementEvent trace =
+            DatabaseStatementEvent.start("delete_expired_codes", lastLockWaitNanos);
         try {
             ensureInitialized();
             try (
                 PreparedStatement statement = connection.prepareStatement(
-                    DELETE_SQL
+                    DELETE_EXPIRED_SQL
                 )
             ) {
-                statement.setString(1, playerUuid.toString());
-                return statement.executeUpdate() > 0;
+                statement.setLong(1, cutoff.toEpochMilli());
+                statement.setInt(2, limit);
+                int rows = statement.executeUpdate();
+                trace.rows(rows);
+                return rows;
             }
         } catch (SQLException exception) {
             throw new DatabaseException(
-                "Unable to delete whitelist code",
+                "Unable to delete expired whitelist codes",
+                exception
+            );
+        } finally {
+            trace.finish();
+            lock.unlock();
+            sweepBatchLatency.recordSince(startedAt);
+        }
+    }
+
+    /**
+     * Moves up to {@code limit} codes validated before {@code cutoff} into
+     * {@code whitelist_codes_archive} in one transaction. Archived players
+     * still count as validated for {@link #streamValidatedPlayers} and
+     * {@link #filterValidated}.
+     *
+     * @return the number of codes archived; fewer than {@code limit} means
+     *     none are left
+     */
+    @Override
+    public int archiveValidatedCodes(Instant cutoff, int limit) {
+        Objects.requireNonNull(cutoff, "cutoff");
+        long startedAt = acquireLock();
+        DatabaseStatementEvent trace =
+            DatabaseStatementEvent.start("archive_validated_codes", lastLockWaitNanos);
+        try {
+            ensureInitialized();
+            List<UUID> batch = new ArrayList<>(limit);
+            try (
+                PreparedStatement statement = connection.prepareStatement(
+                    SELECT_ARCHIVABLE_SQL
+                )
+            ) {
+                statement.setLong(1, cutoff.toEpochMilli());
+                statement.setInt(2, limit);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        batch.add(UUID.fromString(resultSet.getString(1)));
+                    }
+                }
+            }
+            if (batch.isEmpty()) {
+                return 0;
+            }
+            String placeholders = String.join(", ", Collections.nCopies(batch.size(), "?"));
+            connection.setAutoCommit(false);
+            try {
+                try (
+                    PreparedStatement copy = connection.prepareStatement(
+                        String.format(ARCHIVE_AMONG_SQL, placeholders)
+                    )
+                ) {
+                    copy.setLong(1, Instant.now().toEpochMilli());
+                    bindUuids(copy, 2, batch);
+                    copy.executeUpdate();
+                }
+                try (
+                    PreparedStatement remove = connection.prepareStatement(
+                        String.format(DELETE_AMONG_SQL, placeholders)
+                    )
+                ) {
+                    bindUuids(remove, 1, batch);
+                    remove.executeUpdate();
+                }
+                connection.commit();
+            } catch (SQLException exception) {
+                connection.rollback();
+                throw exception;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+            trace.rows(batch.size());
+            return batch.size();
+        } catch (SQLException exception) {
+            throw new DatabaseException(
+                "Unable to archive validated whitelist codes",
+                exception
+            );
+        } finally {
+            trace.finish();
+            lock.unlock();
+            sweepBatchLatency.recordSince(startedAt);
+        }
+    }
+
+    /**
+     * Returns up to {@code pages} free pages to the file system with an
+     * incremental vacuum. A database created without incremental vacuum is
+     * left alone: converting it takes a full {@code VACUUM}, which would hold
+     * the lock for the whole rebuild.
+     *
+     * @return the number of free pages left afterwards
+     */
+    @Override
+    public long compact(int pages) {
+        long startedAt = acquireLock();
+        DatabaseStatementEvent trace =
+            DatabaseStatementEvent.start("incremental_vacuum", lastLockWaitNanos);
+        try {
+            ensureInitialized();
+            try (Statement statement = connection.createStatement()) {
+                if (!incrementalVacuum) {
+                    return 0L;
+                }
+                statement.execute("PRAGMA incremental_vacuum(" + pages + ")");
+                try (ResultSet resultSet = statement.executeQuery("PRAGMA freelist_count")) {
+                    return resultSet.next() ? resultSet.getLong(1) : 0L;
+                }
+            }
+        } catch (SQLException exception) {
+            throw new DatabaseException(
+                "Unable to vacuum whitelist database",
                 exception
             );
         } finally {
+            trace.finish();
             lock.unlock();
+            vacuumStepLatency.recordSince(startedAt);
+        }
+    }
+
+    /**
+     * Writes a consistent copy of the database to {@code target} with
+     * {@code VACUUM INTO}. Runs on its own connection and never takes the
+     * lock: under WAL it only holds a read snapshot, so writers on the main
+     * connection carry on while the copy is made.
+     */
+    @Override
+    public void snapshotTo(Path target) {
+        Objects.requireNonNull(target, "target");
+        ensureInitialized();
+        long startedAt = System.nanoTime();
+        DatabaseStatementEvent trace = DatabaseStatementEvent.start("snapshot", 0L);
+        try (
+            Connection snapshotConnection = DriverManager.getConnection(
+                JDBC_URL_PREFIX + databasePath.toAbsolutePath()
+            );
+            PreparedStatement statement = snapshotConnection.prepareStatement(
+                "VACUUM INTO ?"
+            )
+        ) {
+            statement.setString(1, target.toAbsolutePath().toString());
+            statement.execute();
+        } catch (SQLException exception) {
+            throw new DatabaseException(
+                "Unable to snapshot whitelist database",
+                exception
+            );
+        } finally {
+            trace.finish();
+            snapshotLatency.recordSince(startedAt);
+        }
+    }
+
+    @Override
+    public boolean supportsSnapshots() {
+        return true;
+    }
+
+    @Override
+    public String snapshotSuffix() {
+        return ".db";
+    }
+
+    /** @return the first line of {@code PRAGMA integrity_check}, {@code ok} when healthy */
+    @Override
+    public String checkSnapshot(Path snapshot) {
+        Objects.requireNonNull(snapshot, "snapshot");
+        try (
+            Connection snapshotConnection = DriverManager.getConnection(
+                JDBC_URL_PREFIX + snapshot.toAbsolutePath()
+            );
+            Statement statement = snapshotConnection.createStatement();
+            ResultSet resultSet = statement.executeQuery("PRAGMA integrity_check")
+        ) {
+            return resultSet.next() ? resultSet.getString(1) : "no result";
+        } catch (SQLException exception) {
+            return exception.getMessage();
+        }
+    }
+
+    public Path databasePath() {
+        return databasePath;
+    }
+
+    public ScheduledAnnouncement insertScheduledAnnouncement(
+        String message,
+        Instant nextRunAt,
+        Duration interval,
+        String createdBy
+    ) {
+        Objects.requireNonNull(message, "message");
+        Objects.requireNonNull(nextRunAt, "nextRunAt");
+
+        long startedAt = acquireLock();
+        DatabaseStatementEvent trace =
+            DatabaseStatementEvent.start("insert_scheduled_announcement", lastLockWaitNanos);
+        try {
+            ensureInitialized();
+            Instant createdAt = Instant.now();
+            try (
+                PreparedStatement statement = connection.prepareStatement(
+                    INSERT_SCHEDULED_SQL,
+                    Statement.RETURN_GENERATED_KEYS
+                )
+            ) {
+                statement.setString(1, message);
+                statement.setLong(2, nextRunAt.toEpochMilli());
+                if (interval != null) {
+                    statement.setLong(3, interval.toMillis());
+                } else {
+                    statement.setNull(3, Types.INTEGER);
+                }
+                statement.setString(4, createdBy);
+                statement.setLong(5, createdAt.toEpochMilli());
+                trace.rows(statement.executeUpdate());
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    if (!keys.next()) {
+                        throw new SQLException("No id generated for scheduled announcement");
+                    }
+                    return new ScheduledAnnouncement(
+                        keys.getLong(1),
+                        message,
+                        nextRunAt,
+                        interval,
+                        createdBy,
+                        createdAt
+                    );
+                }
+            }
+        } catch (SQLException exception) {
+            throw new DatabaseException(
+                "Unable to store scheduled announcement",
+                exception
+            );
+        } finally {
+            trace.finish();
+            lock.unlock();
+            scheduleInsertLatency.recordSince(startedAt);
+        }
+    }
+
+    public List<ScheduledAnnouncement> listScheduledAnnouncements() {
+        long startedAt = acquireLock();
+        DatabaseStatementEvent trace =
+            DatabaseStatementEvent.start("list_scheduled_announcements", lastLockWaitNanos);
+        try {
+            ensureInitialized();
+            List<ScheduledAnnouncement> results = new ArrayList<>();
+            try (
+                PreparedStatement statement = connection.prepareStatement(
+                    SELECT_SCHEDULED_SQL
+                )
+            ) {
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        results.add(mapScheduledRow(resultSet));
+                    }
+                }
+            }
+            trace.rows(results.size());
+            return List.copyOf(results);
+        } catch (SQLException exception) {
+            throw new DatabaseException(
+                "Unable to list scheduled announcements",
+                exception
+            );
+        } finally {
+            trace.finish();
+            lock.unlock();
+            scheduleListLatency.recordSince(startedAt);
+        }
+    }
+
+    public boolean updateScheduledNextRun(long id, Instant nextRunAt) {
+        Objects.requireNonNull(nextRunAt, "nextRunAt");
+
+        long startedAt = acquireLock();
+        DatabaseStatementEvent trace =
+            DatabaseStatementEvent.start("update_scheduled_next_run", lastLockWaitNanos);
+        try {
+            ensureInitialized();
+            try (
+                PreparedStatement statement = connection.prepareStatement(
+                    UPDATE_SCHEDULED_NEXT_RUN_SQL
+                )
+            ) {
+                statement.setLong(1, nextRunAt.toEpochMilli());
+                statement.setLong(2, id);
+                int rows = statement.executeUpdate();
+                trace.rows(rows);
+                return rows > 0;
+            }
+        } catch (SQLException exception) {
+            throw new DatabaseException(
+                "Unable to reschedule announcement",
+                exception
+            );
+        } finally {
+            trace.finish();
+            lock.unlock();
+            scheduleUpdateLatency.recordSince(startedAt);
+        }
+    }
+
+    public boolean deleteScheduledAnnouncement(long id) {
+        long startedAt = acquireLock();
+        DatabaseStatementEvent trace =
+            DatabaseStatementEvent.start("delete_scheduled_announcement", lastLockWaitNanos);
+        try {
+            ensureInitialized();
+            try (
+                PreparedStatement statement = connection.prepareStatement(
+                    DELETE_SCHEDULED_SQL
+                )
+            ) {
+                statement.setLong(1, id);
+                int rows = statement.executeUpdate();
+                trace.rows(rows);
+                return rows > 0;
+            }
+        } catch (SQLException exception) {
+            throw new DatabaseException(
+                "Unable to delete scheduled announcement",
+                exception
+            );
+        } finally {
+            trace.finish();
+            lock.unlock();
+            scheduleDeleteLatency.recordSince(startedAt);
         }
     }
 
@@ -325,12 +1499,55 @@ public final class DatabaseManager implements AutoCloseable {
     private void executeInitializationStatements(Connection connection)
         throws SQLException {
         try (Statement statement = connection.createStatement()) {
+            enableIncrementalVacuum(statement);
             statement.execute("PRAGMA journal_mode=WAL");
             statement.execute("PRAGMA foreign_keys = ON");
             statement.execute(CREATE_TABLE_SQL);
+            statement.execute(CREATE_ACTIVE_INDEX_SQL);
+            statement.execute(CREATE_VALIDATED_INDEX_SQL);
+            statement.execute(CREATE_ARCHIVE_TABLE_SQL);
+            statement.execute(CREATE_SCHEDULED_TABLE_SQL);
         }
     }
 
+    /**
+     * Creates new files with {@code auto_vacuum = INCREMENTAL} so the sweeper
+     * can hand pages back without a full {@code VACUUM}; the setting only
+     * takes effect before the first table exists. An older file keeps
+     * {@code auto_vacuum = NONE} and simply reuses its free pages, since
+     * converting it would mean a full rebuild under the lock.
+     */
+    private void enableIncrementalVacuum(Statement statement) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery("PRAGMA auto_vacuum")) {
+            if (resultSet.next() && resultSet.getInt(1) == 2) {
+                incrementalVacuum = true;
+                return;
+            }
+        }
+        try (ResultSet resultSet = statement.executeQuery("SELECT count(*) FROM sqlite_master")) {
+            if (!resultSet.next() || resultSet.getInt(1) == 0) {
+                statement.execute("PRAGMA auto_vacuum = INCREMENTAL");
+                incrementalVacuum = true;
+                return;
+            }
+        }
+        incrementalVacuum = false;
+        logger
+            .atInfo()
+            .log(
+                "%s was created without incremental vacuum; freed pages are reused but not returned to the file system",
+                databasePath.getFileName()
+            );
+    }
+
+    private long acquireLock() {
+        long requestedAt = System.nanoTime();
+        lock.lock();
+        lastLockWaitNanos = System.nanoTime() - requestedAt;
+        lockWait.record(lastLockWaitNanos);
+        return requestedAt;
+    }
+
     private void ensureInitialized() {
         if (!initialized.get()) {
             throw new IllegalStateException(
@@ -339,6 +1556,31 @@ public final class DatabaseManager implements AutoCloseable {
         }
     }
 
+    private static void bindUuids(
+        PreparedStatement statement,
+        int firstIndex,
+        Collection<UUID> playerUuids
+    ) throws SQLException {
+        int index = firstIndex;
+        for (UUID playerUuid : playerUuids) {
+            statement.setString(index++, playerUuid.toString());
+        }
+    }
+
+    private static List<List<UUID>> chunks(Collection<UUID> playerUuids) {
+        List<UUID> distinct = new ArrayList<>(new LinkedHashSet<>(playerUuids));
+        List<List<UUID>> chunks = new ArrayList<>();
+        for (int from = 0; from < distinct.size(); from += IN_LIST_CHUNK) {
+            chunks.add(distinct.subList(from, Math.min(from + IN_LIST_CHUNK, distinct.size())));
+        }
+        return chunks;
+    }
+
+    private static boolean isUniqueViolation(SQLException exception) {
+        return exception instanceof SQLiteException sqliteException &&
+            sqliteException.getResultCode() == SQLiteErrorCode.SQLITE_CONSTRAINT_UNIQUE;
+    }
+
     private static WhitelistCode mapRow(ResultSet resultSet)
         throws SQLException {
         UUID playerUuid = UUID.fromString(resultSet.getString("player_uuid"));
@@ -358,6 +1600,22 @@ public final class DatabaseManager implements AutoCloseable {
         );
     }
 
+    private static ScheduledAnnouncement mapScheduledRow(ResultSet resultSet)
+        throws SQLException {
+        long intervalRaw = resultSet.getLong("interval_ms");
+        Duration interval = resultSet.wasNull() || intervalRaw <= 0
+            ? null
+            : Duration.ofMillis(intervalRaw);
+        return new ScheduledAnnouncement(
+            resultSet.getLong("id"),
+            resultSet.getString("message"),
+            Instant.ofEpochMilli(resultSet.getLong("next_run_at")),
+            interval,
+            resultSet.getString("created_by"),
+            Instant.ofEpochMilli(resultSet.getLong("created_at"))
+        );
+    }
+
     private static String sanitizeFileName(String databaseFileName) {
         if (databaseFileName == null || databaseFileName.isBlank()) {
             return DEFAULT_DATABASE_NAME;
@@ -365,14 +1623,16 @@ public final class DatabaseManager implements AutoCloseable {
         return databaseFileName;
     }
 
-    public record WhitelistCode(
-        UUID playerUuid,
-        String whitelistCode,
-        Instant createdAt,
-        Instant validatedAt
+    public record ScheduledAnnouncement(
+        long id,
+        String message,
+        Instant nextRunAt,
+        Duration interval,
+        String createdBy,
+        Instant createdAt
     ) {
-        public boolean isValidated() {
-            return validatedAt != null;
+        public boolean isRecurring() {
+            return interval != null;
         }
     }
 
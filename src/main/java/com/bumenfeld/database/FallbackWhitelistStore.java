@@ -0,0 +1,822 @@
+package com.bumenfeld.database;
+
+import com.bumenfeld.database.DatabaseManager.DatabaseException;
+import com.bumenfeld.metrics.Counter;
+import com.bumenfeld.metrics.MetricsRegistry;
+import com.hypixel.hytale.logger.HytaleLogger;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Keeps code issuance and validation working while the primary store is
+ * unavailable: it failed to initialize, or SQLite reports it busy, locked,
+ * read-only, full or failing I/O.
+ *
+ * <p>While healthy every call goes straight to the primary. Once it fails,
+ * the store is degraded: the connect-path writes ({@link #upsertCode},
+ * {@link #issueCode}, {@link #markValidated}, {@link #delete}) go to an
+ * {@link InMemoryWhitelistStore} overlay and are appended to a spool file,
+ * forced to disk one operation at a time. Lookups check the overlay first
+ * and then the primary, if it still answers reads. Every
+ * {@link #RETRY_INTERVAL_SECONDS} seconds a background task reopens the
+ * primary, replays the spool in order and switches back.
+ *
+ * <p>The paged, streaming and batch methods throw {@link DatabaseException}
+ * while degraded rather than answer from a partial view, so the sweeper,
+ * reconciler, backups and bulk transfers skip their run instead of acting on
+ * it. A spool left behind by a crash is replayed by {@link #initialize()}.
+ */
+public final class FallbackWhitelistStore implements WhitelistStore {
+
+    public static final String DEFAULT_SPOOL_NAME = "whitelist_codes.spool";
+
+    private static final long RETRY_INTERVAL_SECONDS = 5;
+    private static final String DEGRADED_MESSAGE =
+        "Whitelist database is unavailable; serving codes from memory until it recovers";
+
+    // SQLite primary result codes that mean the database, not the statement, is the problem
+    private static final int SQLITE_BUSY = 5;
+    private static final int SQLITE_LOCKED = 6;
+    private static final int SQLITE_READONLY = 8;
+    private static final int SQLITE_IOERR = 10;
+    private static final int SQLITE_FULL = 13;
+    private static final int SQLITE_CANTOPEN = 14;
+
+    private static final char OP_CODE = 'C';
+    private static final char OP_VALIDATE = 'V';
+    private static final char OP_DELETE = 'D';
+
+    private final WhitelistStore primary;
+    private final Path spoolPath;
+    private final HytaleLogger logger;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Counter degradedEntered;
+    private final Counter spooledOps;
+    private final Counter replayedOps;
+    private final Counter replayConflicts;
+
+    private volatile boolean degraded;
+    // cleared when a degraded read fails, so later ones stop waiting on the primary
+    private volatile boolean primaryReadable;
+    private boolean initialized;
+    private InMemoryWhitelistStore overlay;
+    // players deleted while degraded, hiding whatever the primary still holds for them
+    private final Set<UUID> deletedPlayers = new HashSet<>();
+    // operations since the primary last failed, in spool order
+    private final List<SpoolOp> pending = new ArrayList<>();
+    // replay progress into pending; only the retry thread moves it
+    private int replayed;
+    private FileChannel spool;
+    private String lastRetryFailure;
+    private ScheduledExecutorService retrier;
+
+    public FallbackWhitelistStore(
+        WhitelistStore primary,
+        Path spoolPath,
+        HytaleLogger logger,
+        MetricsRegistry metrics
+    ) {
+        this.primary = Objects.requireNonNull(primary, "primary");
+        this.spoolPath = Objects.requireNonNull(spoolPath, "spoolPath");
+        this.logger = Objects.requireNonNull(logger, "logger");
+        Objects.requireNonNull(metrics, "metrics");
+        this.degradedEntered = metrics.counter(
+            "whitelist_store_degraded_total",
+            "Times the whitelist store fell back to memory"
+        );
+        this.spooledOps = metrics.counter(
+            "whitelist_spooled_ops",
+            "Whitelist writes served from memory and spooled while degraded"
+        );
+        this.replayedOps = metrics.counter(
+            "whitelist_spool_replayed",
+            "Spooled whitelist writes replayed into the database"
+        );
+        this.replayConflicts = metrics.counter(
+            "whitelist_spool_conflicts",
+            "Spooled codes dropped on replay because the database gave them to another player"
+        );
+        metrics.gauge(
+            "whitelist_store_degraded",
+            "1 while whitelist codes are served from memory",
+            () -> degraded ? 1 : 0
+        );
+        metrics.gauge(
+            "whitelist_spool_pending",
+            "Spooled whitelist writes not yet replayed",
+            this::pendingOps
+        );
+    }
+
+    @Override
+    public void initialize() {
+        lock.lock();
+        try {
+            if (initialized) {
+                return;
+            }
+            pending.addAll(readSpool());
+            try {
+                primary.initialize();
+                if (!pending.isEmpty()) {
+                    logger
+                        .atInfo()
+                        .log("Replaying %d whitelist operations from %s", pending.size(), spoolPath);
+                    replayPending();
+                    finishRecovery();
+                }
+            } catch (RuntimeException exception) {
+                // any startup failure counts, not only the result codes checked per call
+                enterDegraded(exception);
+            }
+            initialized = true;
+            retrier = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "discord-companion-whitelist-fallback");
+                thread.setDaemon(true);
+                return thread;
+            });
+            retrier.scheduleWithFixedDelay(
+                this::retryQuietly,
+                RETRY_INTERVAL_SECONDS,
+                RETRY_INTERVAL_SECONDS,
+                TimeUnit.SECONDS
+            );
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void upsertCode(UUID playerUuid, String whitelistCode) {
+        Objects.requireNonNull(playerUuid, "playerUuid");
+        Objects.requireNonNull(whitelistCode, "whitelistCode");
+        route(
+            () -> {
+                primary.upsertCode(playerUuid, whitelistCode);
+                return null;
+            },
+            () -> {
+                checkSpoolable(whitelistCode);
+                Optional<WhitelistCode> holder = visibleByCode(whitelistCode);
+                if (holder.isPresent() && !holder.get().playerUuid().equals(playerUuid)) {
+                    throw new DatabaseException(
+                        "Unable to upsert whitelist code",
+                        new IllegalStateException("whitelist_code is not unique")
+                    );
+                }
+                record(new SpoolOp(OP_CODE, playerUuid, whitelistCode, 0L));
+                return null;
+            }
+        );
+    }
+
+    @Override
+    public Optional<String> issueCode(
+        UUID playerUuid,
+        String whitelistCode,
+        Instant expiredBefore
+    ) {
+        Objects.requireNonNull(playerUuid, "playerUuid");
+        Objects.requireNonNull(whitelistCode, "whitelistCode");
+        return route(
+            () -> primary.issueCode(playerUuid, whitelistCode, expiredBefore),
+            () -> {
+                checkSpoolable(whitelistCode);
+                Optional<WhitelistCode> existing = visibleByPlayer(playerUuid);
+                boolean keep = existing.isPresent() &&
+                    !existing.get().isValidated() &&
+                    (expiredBefore == null || !existing.get().createdAt().isBefore(expiredBefore));
+                if (keep) {
+                    return Optional.of(existing.get().whitelistCode());
+                }
+                Optional<WhitelistCode> holder = visibleByCode(whitelistCode);
+                if (holder.isPresent() && !holder.get().playerUuid().equals(playerUuid)) {
+                    return Optional.empty();
+                }
+                record(new SpoolOp(OP_CODE, playerUuid, whitelistCode, 0L));
+                return Optional.of(whitelistCode);
+            }
+        );
+    }
+
+    @Override
+    public Optional<WhitelistCode> findByPlayer(UUID playerUuid) {
+        Objects.requireNonNull(playerUuid, "playerUuid");
+        return route(
+            () -> primary.findByPlayer(playerUuid),
+            () -> visibleByPlayer(playerUuid)
+        );
+    }
+
+    @Override
+    public Optional<WhitelistCode> findByCode(String whitelistCode) {
+        Objects.requireNonNull(whitelistCode, "whitelistCode");
+        return route(
+            () -> primary.findByCode(whitelistCode),
+            () -> visibleByCode(whitelistCode)
+        );
+    }
+
+    @Override
+    public boolean markValidated(
+        UUID playerUuid,
+        String whitelistCode,
+        Instant validatedAt
+    ) {
+        Objects.requireNonNull(playerUuid, "playerUuid");
+        Objects.requireNonNull(whitelistCode, "whitelistCode");
+        return route(
+            () -> primary.markValidated(playerUuid, whitelistCode, validatedAt),
+            () -> {
+                Optional<WhitelistCode> existing = visibleByPlayer(playerUuid);
+                if (
+                    existing.isEmpty() ||
+                    existing.get().isValidated() ||
+                    !existing.get().whitelistCode().equals(whitelistCode)
+                ) {
+                    return false;
+                }
+                Instant timestamp = validatedAt != null ? validatedAt : Instant.now();
+                record(
+                    new SpoolOp(OP_VALIDATE, playerUuid, whitelistCode, timestamp.toEpochMilli())
+                );
+                return true;
+            }
+        );
+    }
+
+    /**
+     * While degraded the primary's archive is out of sight, so this reports
+     * {@code true} unless the player was already deleted during the outage.
+     */
+    @Override
+    public boolean delete(UUID playerUuid) {
+        Objects.requireNonNull(playerUuid, "playerUuid");
+        return route(
+            () -> primary.delete(playerUuid),
+            () -> {
+                if (deletedPlayers.contains(playerUuid)) {
+                    return false;
+                }
+                record(new SpoolOp(OP_DELETE, playerUuid, "", 0L));
+                return true;
+            }
+        );
+    }
+
+    @Override
+    public CodePage listActiveCodesAfter(PageKey after, int limit) {
+        return healthy(() -> primary.listActiveCodesAfter(after, limit));
+    }
+
+    @Override
+    public CodePage listActiveCodesBefore(PageKey before, int limit) {
+        return healthy(() -> primary.listActiveCodesBefore(before, limit));
+    }
+
+    @Override
+    public int streamValidatedPlayers(UUID after, int limit, Consumer<UUID> sink) {
+        return healthy(() -> primary.streamValidatedPlayers(after, limit, sink));
+    }
+
+    @Override
+    public int streamValidatedEntries(
+        UUID after,
+        int limit,
+        Consumer<ValidatedEntry> sink
+    ) {
+        return healthy(() -> primary.streamValidatedEntries(after, limit, sink));
+    }
+
+    @Override
+    public Set<UUID> filterValidated(Collection<UUID> playerUuids) {
+        return healthy(() -> primary.filterValidated(playerUuids));
+    }
+
+    @Override
+    public Map<UUID, WhitelistCode> findByPlayers(Collection<UUID> playerUuids) {
+        return healthy(() -> primary.findByPlayers(playerUuids));
+    }
+
+    @Override
+    public int importValidated(List<ValidatedEntry> entries) {
+        return healthy(() -> primary.importValidated(entries));
+    }
+
+    @Override
+    public int deleteAll(Collection<UUID> playerUuids) {
+        return healthy(() -> primary.deleteAll(playerUuids));
+    }
+
+    @Override
+    public int deleteExpiredCodes(Instant cutoff, int limit) {
+        return healthy(() -> primary.deleteExpiredCodes(cutoff, limit));
+    }
+
+    @Override
+    public int archiveValidatedCodes(Instant cutoff, int limit) {
+        return healthy(() -> primary.archiveValidatedCodes(cutoff, limit));
+    }
+
+    @Override
+    public long compact(int pages) {
+        return healthy(() -> primary.compact(pages));
+    }
+
+    @Override
+    public boolean supportsSnapshots() {
+        return primary.supportsSnapshots();
+    }
+
+    @Override
+    public String snapshotSuffix() {
+        return primary.snapshotSuffix();
+    }
+
+    @Override
+    public void snapshotTo(Path target) {
+        healthy(() -> {
+            primary.snapshotTo(target);
+            return null;
+        });
+    }
+
+    @Override
+    public String checkSnapshot(Path snapshot) {
+        return primary.checkSnapshot(snapshot);
+    }
+
+    @Override
+    public void close() {
+        ScheduledExecutorService stopped;
+        lock.lock();
+        try {
+            if (!initialized) {
+                return;
+            }
+            initialized = false;
+            stopped = retrier;
+            retrier = null;
+            // the spool stays on disk and is replayed by the next initialize()
+            closeSpool();
+            pending.clear();
+            replayed = 0;
+            deletedPlayers.clear();
+            overlay = null;
+            degraded = false;
+        } finally {
+            lock.unlock();
+        }
+        stopped.shutdownNow();
+        try {
+            // a retry still running would reopen the primary behind our back
+            stopped.awaitTermination(RETRY_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        primary.close();
+    }
+
+    /** Whether codes are currently served from memory. */
+    public boolean isDegraded() {
+        return degraded;
+    }
+
+    public Path spoolPath() {
+        return spoolPath;
+    }
+
+    /**
+     * Runs {@code onPrimary}, falling back to {@code onOverlay} under the
+     * lock once the primary is unavailable, and back again after recovery.
+     */
+    private <T> T route(Supplier<T> onPrimary, Supplier<T> onOverlay) {
+        while (true) {
+            if (!degraded) {
+                try {
+                    return onPrimary.get();
+                } catch (RuntimeException exception) {
+                    if (!isUnavailable(exception)) {
+                        throw exception;
+                    }
+                    lock.lock();
+                    try {
+                        if (!initialized) {
+                            throw exception;
+                        }
+                        enterDegraded(exception);
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            }
+            lock.lock();
+            try {
+                if (degraded) {
+                    return onOverlay.get();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private <T> T healthy(Supplier<T> onPrimary) {
+        if (degraded) {
+            throw new DatabaseException(DEGRADED_MESSAGE, null);
+        }
+        return onPrimary.get();
+    }
+
+    /** Called with the lock held. */
+    private void enterDegraded(RuntimeException cause) {
+        if (degraded) {
+            return;
+        }
+        overlay = new InMemoryWhitelistStore();
+        overlay.initialize();
+        deletedPlayers.clear();
+        for (SpoolOp op : pending) {
+            try {
+                applyToOverlay(op);
+            } catch (DatabaseException exception) {
+                logger
+                    .atWarning()
+                    .log("Skipping spooled operation for %s: %s", op.playerUuid(), describe(exception));
+            }
+        }
+        replayed = 0;
+        lastRetryFailure = null;
+        primaryReadable = true;
+        degraded = true;
+        degradedEntered.increment();
+        logger
+            .atWarning()
+            .log(
+                "Whitelist database unavailable (%s); serving codes from memory and spooling writes to %s",
+                describe(cause),
+                spoolPath
+            );
+    }
+
+    private void retryQuietly() {
+        if (!degraded) {
+            return;
+        }
+        try {
+            retry();
+        } catch (RuntimeException exception) {
+            String failure = describe(exception);
+            // one line per distinct failure, not one every few seconds
+            if (!failure.equals(lastRetryFailure)) {
+                lastRetryFailure = failure;
+                logger
+                    .atWarning()
+                    .log("Whitelist database still unavailable: %s", failure);
+            }
+        }
+    }
+
+    private void retry() {
+        primary.initialize();
+        if (!primaryReadable) {
+            primary.findByPlayer(new UUID(0L, 0L));
+            primaryReadable = true;
+        }
+        // the bulk of the spool without blocking the connect path, the rest under the lock
+        replayPending();
+        lock.lock();
+        try {
+            if (!degraded || !initialized) {
+                return;
+            }
+            replayPending();
+            int total = pending.size();
+            finishRecovery();
+            logger
+                .atInfo()
+                .log("Whitelist database recovered; replayed %d spooled operations", total);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void replayPending() {
+        while (true) {
+            SpoolOp op;
+            lock.lock();
+            try {
+                if (replayed >= pending.size()) {
+                    return;
+                }
+                op = pending.get(replayed);
+            } finally {
+                lock.unlock();
+            }
+            applyToPrimary(op);
+            lock.lock();
+            try {
+                replayed++;
+            } finally {
+                lock.unlock();
+            }
+            replayedOps.increment();
+        }
+    }
+
+    /** Called with the lock held once every pending operation reached the primary. */
+    private void finishRecovery() {
+        closeSpool();
+        try {
+            Files.deleteIfExists(spoolPath);
+        } catch (IOException exception) {
+            // replaying it again later is harmless, every operation is idempotent in order
+            logger
+                .atWarning()
+                .log("Unable to delete whitelist spool %s: %s", spoolPath, exception.getMessage());
+        }
+        pending.clear();
+        replayed = 0;
+        deletedPlayers.clear();
+        overlay = null;
+        degraded = false;
+    }
+
+    private void applyToPrimary(SpoolOp op) {
+        switch (op.type()) {
+            case OP_CODE -> {
+                try {
+                    primary.upsertCode(op.playerUuid(), op.code());
+                } catch (DatabaseException exception) {
+                    if (isUnavailable(exception)) {
+                        throw exception;
+                    }
+                    // handed to someone else before the outage; the player gets a new one on reconnect
+                    replayConflicts.increment();
+                    logger
+                        .atWarning()
+                        .log(
+                            "Dropped spooled code %s for %s: %s",
+                            op.code(),
+                            op.playerUuid(),
+                            describe(exception)
+                        );
+                }
+            }
+            case OP_VALIDATE -> {
+                Instant validatedAt = Instant.ofEpochMilli(op.atMillis());
+                if (!primary.markValidated(op.playerUuid(), op.code(), validatedAt)) {
+                    // the player is already on the whitelist, so the row must say validated
+                    primary.importValidated(
+                        List.of(new ValidatedEntry(op.playerUuid(), validatedAt))
+                    );
+                }
+            }
+            case OP_DELETE -> primary.delete(op.playerUuid());
+            default -> throw new IllegalStateException("Unknown spool operation " + op.type());
+        }
+    }
+
+    private void applyToOverlay(SpoolOp op) {
+        switch (op.type()) {
+            case OP_CODE -> {
+                overlay.upsertCode(op.playerUuid(), op.code());
+                deletedPlayers.remove(op.playerUuid());
+            }
+            case OP_VALIDATE -> {
+                if (overlay.findByPlayer(op.playerUuid()).isEmpty()) {
+                    // issued before the outage; bring it over so the overlay answers for the player
+                    overlay.upsertCode(op.playerUuid(), op.code());
+                }
+                overlay.markValidated(
+                    op.playerUuid(),
+                    op.code(),
+                    Instant.ofEpochMilli(op.atMillis())
+                );
+            }
+            case OP_DELETE -> {
+                overlay.delete(op.playerUuid());
+                deletedPlayers.add(op.playerUuid());
+            }
+            default -> throw new IllegalStateException("Unknown spool operation " + op.type());
+        }
+    }
+
+    /** Applies {@code op} to the overlay, then makes it durable. Called with the lock held. */
+    private void record(SpoolOp op) {
+        applyToOverlay(op);
+        pending.add(op);
+        spooledOps.increment();
+        try {
+            if (spool == null) {
+                Path parent = spoolPath.getParent();
+                if (parent != null) {
+                    Files.createDirectories(parent);
+                }
+                spool = FileChannel.open(
+                    spoolPath,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND
+                );
+            }
+            ByteBuffer line = ByteBuffer.wrap(op.encode().getBytes(StandardCharsets.UTF_8));
+            while (line.hasRemaining()) {
+                spool.write(line);
+            }
+            spool.force(false);
+        } catch (IOException exception) {
+            // most likely the same full disk; keep serving from memory, a crash now loses it
+            logger
+                .atWarning()
+                .log(
+                    "Unable to spool whitelist operation to %s, it is held in memory only: %s",
+                    spoolPath,
+                    exception.getMessage()
+                );
+        }
+    }
+
+    private List<SpoolOp> readSpool() {
+        if (!Files.isRegularFile(spoolPath)) {
+            return List.of();
+        }
+        String content;
+        try {
+            content = Files.readString(spoolPath, StandardCharsets.UTF_8);
+        } catch (IOException exception) {
+            throw new DatabaseException("Unable to read whitelist spool", exception);
+        }
+        List<SpoolOp> ops = new ArrayList<>();
+        int start = 0;
+        while (start < content.length()) {
+            int end = content.indexOf('\n', start);
+            if (end < 0) {
+                logger
+                    .atWarning()
+                    .log("Ignoring incomplete last line of whitelist spool %s", spoolPath);
+                break;
+            }
+            String line = content.substring(start, end);
+            start = end + 1;
+            try {
+                ops.add(SpoolOp.decode(line));
+            } catch (IllegalArgumentException exception) {
+                logger
+                    .atWarning()
+                    .log("Ignoring damaged whitelist spool line '%s'", line);
+            }
+        }
+        return ops;
+    }
+
+    private void closeSpool() {
+        if (spool == null) {
+            return;
+        }
+        try {
+            spool.close();
+        } catch (IOException exception) {
+            logger
+                .atWarning()
+                .log("Failed to close whitelist spool cleanly: %s", exception.getMessage());
+        }
+        spool = null;
+    }
+
+    /** The player's row as the primary will hold it after replay. Called with the lock held. */
+    private Optional<WhitelistCode> visibleByPlayer(UUID playerUuid) {
+        Optional<WhitelistCode> overlaid = overlay.findByPlayer(playerUuid);
+        if (overlaid.isPresent() || deletedPlayers.contains(playerUuid)) {
+            return overlaid;
+        }
+        return readPrimary(() -> primary.findByPlayer(playerUuid));
+    }
+
+    /** Called with the lock held. */
+    private Optional<WhitelistCode> visibleByCode(String whitelistCode) {
+        Optional<WhitelistCode> overlaid = overlay.findByCode(whitelistCode);
+        if (overlaid.isPresent()) {
+            return overlaid;
+        }
+        // a primary row is stale once the overlay replaced or deleted that player's code
+        return readPrimary(() -> primary.findByCode(whitelistCode))
+            .filter(row ->
+                !deletedPlayers.contains(row.playerUuid()) &&
+                overlay.findByPlayer(row.playerUuid()).isEmpty()
+            );
+    }
+
+    private Optional<WhitelistCode> readPrimary(Supplier<Optional<WhitelistCode>> read) {
+        if (!primaryReadable) {
+            return Optional.empty();
+        }
+        try {
+            return read.get();
+        } catch (RuntimeException exception) {
+            primaryReadable = false;
+            return Optional.empty();
+        }
+    }
+
+    private int pendingOps() {
+        lock.lock();
+        try {
+            return pending.size() - replayed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void checkSpoolable(String whitelistCode) {
+        if (whitelistCode.indexOf('\n') >= 0 || whitelistCode.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("whitelistCode must not contain line breaks");
+        }
+    }
+
+    /** Whether {@code failure} means the database itself is unusable rather than the statement. */
+    static boolean isUnavailable(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (
+                cause instanceof SQLException sqlException &&
+                isUnavailableCode(sqlException.getErrorCode() & 0xFF)
+            ) {
+                return true;
+            }
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // constraint and syntax errors are the caller's problem, not the database's
+    private static boolean isUnavailableCode(int resultCode) {
+        return switch (resultCode) {
+            case SQLITE_BUSY,
+                SQLITE_LOCKED,
+                SQLITE_READONLY,
+                SQLITE_IOERR,
+                SQLITE_FULL,
+                SQLITE_CANTOPEN -> true;
+            default -> false;
+        };
+    }
+
+    private static String describe(Throwable failure) {
+        Throwable root = failure;
+        while (root.getCause() != null) {
+            root = root.getCause();
+        }
+        return root == failure
+            ? String.valueOf(failure.getMessage())
+            : failure.getMessage() + ": " + root.getMessage();
+    }
+
+    /** One spooled write: {@code type TAB millis TAB player TAB code}, code last so it may hold tabs. */
+    private record SpoolOp(char type, UUID playerUuid, String code, long atMillis) {
+
+        String encode() {
+            return type + "\t" + atMillis + "\t" + playerUuid + "\t" + code + "\n";
+        }
+
+        static SpoolOp decode(String line) {
+            String[] fields = line.split("\t", 4);
+            if (fields.length != 4 || fields[0].length() != 1) {
+                throw new IllegalArgumentException("malformed spool line");
+            }
+            char type = fields[0].charAt(0);
+            if (type != OP_CODE && type != OP_VALIDATE && type != OP_DELETE) {
+                throw new IllegalArgumentException("unknown spool operation");
+            }
+            return new SpoolOp(
+                type,
+                UUID.fromString(fields[2]),
+                fields[3],
+                Long.parseLong(fields[1])
+            );
+        }
+    }
+}
@@ -0,0 +1,526 @@
+package com.bumenfeld.database;
+
+import com.bumenfeld.database.DatabaseManager.DatabaseException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * {@link WhitelistStore} held entirely on the heap, for tests, benchmarks and
+ * servers that rebuild the whitelist from elsewhere. Nothing is persisted;
+ * the data survives {@link #close()} and a later {@link #initialize()} but
+ * not a restart.
+ *
+ * <p>Mirrors the SQLite schema: a hot table with a unique code per row, its
+ * two partial indexes as sorted maps, and an archive keyed by player. One
+ * lock guards everything, like the single SQLite connection does.
+ */
+public final class InMemoryWhitelistStore implements WhitelistStore {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<UUID, WhitelistCode> byPlayer = new HashMap<>();
+    private final Map<String, UUID> byCode = new HashMap<>();
+    // idx_whitelist_codes_active
+    private final NavigableMap<PageKey, WhitelistCode> active = new TreeMap<>(PAGE_ORDER);
+    // idx_whitelist_codes_validated, and the primary key order of the validated rows
+    private final NavigableMap<PageKey, WhitelistCode> validatedByTime = new TreeMap<>(PAGE_ORDER);
+    private final NavigableMap<String, WhitelistCode> validatedByPlayer = new TreeMap<>();
+    private final NavigableMap<String, WhitelistCode> archive = new TreeMap<>();
+
+    private boolean initialized;
+
+    @Override
+    public void initialize() {
+        lock.lock();
+        try {
+            initialized = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void upsertCode(UUID playerUuid, String whitelistCode) {
+        Objects.requireNonNull(playerUuid, "playerUuid");
+        Objects.requireNonNull(whitelistCode, "whitelistCode");
+        lock.lock();
+        try {
+            ensureInitialized();
+            if (heldByOther(playerUuid, whitelistCode)) {
+                throw new DatabaseException(
+                    "Unable to upsert whitelist code",
+                    new IllegalStateException("whitelist_code is not unique")
+                );
+            }
+            put(new WhitelistCode(playerUuid, whitelistCode, now(), null));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<String> issueCode(
+        UUID playerUuid,
+        String whitelistCode,
+        Instant expiredBefore
+    ) {
+        Objects.requireNonNull(playerUuid, "playerUuid");
+        Objects.requireNonNull(whitelistCode, "whitelistCode");
+        lock.lock();
+        try {
+            ensureInitialized();
+            WhitelistCode existing = byPlayer.get(playerUuid);
+            boolean keep = existing != null &&
+                !existing.isValidated() &&
+                (expiredBefore == null || !existing.createdAt().isBefore(expiredBefore));
+            if (keep) {
+                return Optional.of(existing.whitelistCode());
+            }
+            if (heldByOther(playerUuid, whitelistCode)) {
+                return Optional.empty();
+            }
+            put(new WhitelistCode(playerUuid, whitelistCode, now(), null));
+            return Optional.of(whitelistCode);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<WhitelistCode> findByPlayer(UUID playerUuid) {
+        Objects.requireNonNull(playerUuid, "playerUuid");
+        lock.lock();
+        try {
+            ensureInitialized();
+            return Optional.ofNullable(byPlayer.get(playerUuid));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<WhitelistCode> findByCode(String whitelistCode) {
+        Objects.requireNonNull(whitelistCode, "whitelistCode");
+        lock.lock();
+        try {
+            ensureInitialized();
+            UUID playerUuid = byCode.get(whitelistCode);
+            return playerUuid == null ? Optional.empty() : Optional.of(byPlayer.get(playerUuid));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean markValidated(
+        UUID playerUuid,
+        String whitelistCode,
+        Instant validatedAt
+    ) {
+        Objects.requireNonNull(playerUuid, "playerUuid");
+        Objects.requireNonNull(whitelistCode, "whitelistCode");
+        Instant timestamp = validatedAt != null ? truncate(validatedAt) : now();
+        lock.lock();
+        try {
+            ensureInitialized();
+            WhitelistCode existing = byPlayer.get(playerUuid);
+            if (
+                existing == null ||
+                existing.isValidated() ||
+                !existing.whitelistCode().equals(whitelistCode)
+            ) {
+                return false;
+            }
+            put(
+                new WhitelistCode(
+                    playerUuid,
+                    existing.whitelistCode(),
+                    existing.createdAt(),
+                    timestamp
+                )
+            );
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean delete(UUID playerUuid) {
+        Objects.requireNonNull(playerUuid, "playerUuid");
+        lock.lock();
+        try {
+            ensureInitialized();
+            return removeEverywhere(playerUuid) > 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public CodePage listActiveCodesAfter(PageKey after, int limit) {
+        checkLimit(limit);
+        lock.lock();
+        try {
+            ensureInitialized();
+            NavigableMap<PageKey, WhitelistCode> tail = after == null
+                ? active
+                : active.tailMap(after, false);
+            return page(tail.values().iterator(), limit, false);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public CodePage listActiveCodesBefore(PageKey before, int limit) {
+        Objects.requireNonNull(before, "before");
+        checkLimit(limit);
+        lock.lock();
+        try {
+            ensureInitialized();
+            return page(
+                active.headMap(before, false).descendingMap().values().iterator(),
+                limit,
+                true
+            );
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int streamValidatedPlayers(UUID after, int limit, Consumer<UUID> sink) {
+        Objects.requireNonNull(sink, "sink");
+        lock.lock();
+        try {
+            ensureInitialized();
+            // UNION: a player in both tables is one row
+            ValidatedMerge merge = new ValidatedMerge(after);
+            int streamed = 0;
+            String previous = null;
+            while (streamed < limit && merge.hasNext()) {
+                WhitelistCode row = merge.next();
+                String key = row.playerUuid().toString();
+                if (key.equals(previous)) {
+                    continue;
+                }
+                previous = key;
+                sink.accept(row.playerUuid());
+                streamed++;
+            }
+            return streamed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int streamValidatedEntries(
+        UUID after,
+        int limit,
+        Consumer<ValidatedEntry> sink
+    ) {
+        Objects.requireNonNull(sink, "sink");
+        lock.lock();
+        try {
+            ensureInitialized();
+            // UNION ALL: both rows count towards the limit, only the first is passed on
+            ValidatedMerge merge = new ValidatedMerge(after);
+            int read = 0;
+            UUID previous = null;
+            while (read < limit && merge.hasNext()) {
+                WhitelistCode row = merge.next();
+                read++;
+                if (row.playerUuid().equals(previous)) {
+                    continue;
+                }
+                previous = row.playerUuid();
+                sink.accept(new ValidatedEntry(row.playerUuid(), row.validatedAt()));
+            }
+            return read;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Set<UUID> filterValidated(Collection<UUID> playerUuids) {
+        Objects.requireNonNull(playerUuids, "playerUuids");
+        lock.lock();
+        try {
+            ensureInitialized();
+            Set<UUID> validated = new HashSet<>();
+            for (UUID playerUuid : playerUuids) {
+                String key = playerUuid.toString();
+                if (validatedByPlayer.containsKey(key) || archive.containsKey(key)) {
+                    validated.add(playerUuid);
+                }
+            }
+            return validated;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Map<UUID, WhitelistCode> findByPlayers(Collection<UUID> playerUuids) {
+        Objects.requireNonNull(playerUuids, "playerUuids");
+        lock.lock();
+        try {
+            ensureInitialized();
+            Map<UUID, WhitelistCode> found = new HashMap<>();
+            for (UUID playerUuid : playerUuids) {
+                WhitelistCode code = byPlayer.get(playerUuid);
+                if (code != null) {
+                    found.put(playerUuid, code);
+                }
+            }
+            return found;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int importValidated(List<ValidatedEntry> entries) {
+        Objects.requireNonNull(entries, "entries");
+        lock.lock();
+        try {
+            ensureInitialized();
+            int changed = 0;
+            for (ValidatedEntry entry : entries) {
+                Instant validatedAt = truncate(entry.validatedAt());
+                WhitelistCode existing = byPlayer.get(entry.playerUuid());
+                if (existing == null) {
+                    put(
+                        new WhitelistCode(
+                            entry.playerUuid(),
+                            IMPORTED_CODE_PREFIX + entry.playerUuid(),
+                            validatedAt,
+                            validatedAt
+                        )
+                    );
+                    changed++;
+                } else if (!existing.isValidated()) {
+                    put(
+                        new WhitelistCode(
+                            existing.playerUuid(),
+                            existing.whitelistCode(),
+                            existing.createdAt(),
+                            validatedAt
+                        )
+                    );
+                    changed++;
+                }
+            }
+            return changed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int deleteAll(Collection<UUID> playerUuids) {
+        Objects.requireNonNull(playerUuids, "playerUuids");
+        lock.lock();
+        try {
+            ensureInitialized();
+            int deleted = 0;
+            for (UUID playerUuid : new HashSet<>(playerUuids)) {
+                deleted += removeEverywhere(playerUuid);
+            }
+            return deleted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int deleteExpiredCodes(Instant cutoff, int limit) {
+        Objects.requireNonNull(cutoff, "cutoff");
+        lock.lock();
+        try {
+            ensureInitialized();
+            List<WhitelistCode> expired = new ArrayList<>();
+            for (WhitelistCode code : active.values()) {
+                if (expired.size() >= limit || !code.createdAt().isBefore(cutoff)) {
+                    break;
+                }
+                expired.add(code);
+            }
+            expired.forEach(code -> remove(code.playerUuid()));
+            return expired.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int archiveValidatedCodes(Instant cutoff, int limit) {
+        Objects.requireNonNull(cutoff, "cutoff");
+        lock.lock();
+        try {
+            ensureInitialized();
+            List<WhitelistCode> archivable = new ArrayList<>();
+            for (WhitelistCode code : validatedByTime.values()) {
+                if (archivable.size() >= limit || !code.validatedAt().isBefore(cutoff)) {
+                    break;
+                }
+                archivable.add(code);
+            }
+            for (WhitelistCode code : archivable) {
+                remove(code.playerUuid());
+                archive.put(code.playerUuid().toString(), code);
+            }
+            return archivable.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            initialized = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void put(WhitelistCode code) {
+        remove(code.playerUuid());
+        byPlayer.put(code.playerUuid(), code);
+        byCode.put(code.whitelistCode(), code.playerUuid());
+        if (code.isValidated()) {
+            validatedByTime.put(validatedKey(code), code);
+            validatedByPlayer.put(code.playerUuid().toString(), code);
+        } else {
+            active.put(code.pageKey(), code);
+        }
+    }
+
+    private WhitelistCode remove(UUID playerUuid) {
+        WhitelistCode code = byPlayer.remove(playerUuid);
+        if (code == null) {
+            return null;
+        }
+        byCode.remove(code.whitelistCode());
+        if (code.isValidated()) {
+            validatedByTime.remove(validatedKey(code));
+            validatedByPlayer.remove(playerUuid.toString());
+        } else {
+            active.remove(code.pageKey());
+        }
+        return code;
+    }
+
+    /** @return the number of rows removed, hot and archived */
+    private int removeEverywhere(UUID playerUuid) {
+        int rows = remove(playerUuid) != null ? 1 : 0;
+        if (archive.remove(playerUuid.toString()) != null) {
+            rows++;
+        }
+        return rows;
+    }
+
+    private boolean heldByOther(UUID playerUuid, String whitelistCode) {
+        UUID holder = byCode.get(whitelistCode);
+        return holder != null && !holder.equals(playerUuid);
+    }
+
+    private void ensureInitialized() {
+        if (!initialized) {
+            throw new IllegalStateException(
+                "InMemoryWhitelistStore has not been initialized"
+            );
+        }
+    }
+
+    private static CodePage page(
+        Iterator<WhitelistCode> codes,
+        int limit,
+        boolean descending
+    ) {
+        List<WhitelistCode> results = new ArrayList<>(limit);
+        while (results.size() < limit && codes.hasNext()) {
+            results.add(codes.next());
+        }
+        boolean hasMore = codes.hasNext();
+        if (descending) {
+            Collections.reverse(results);
+        }
+        return new CodePage(results, hasMore);
+    }
+
+    private static PageKey validatedKey(WhitelistCode code) {
+        return new PageKey(code.validatedAt().toEpochMilli(), code.playerUuid().toString());
+    }
+
+    private static void checkLimit(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be > 0");
+        }
+    }
+
+    private static Instant now() {
+        return Instant.ofEpochMilli(System.currentTimeMillis());
+    }
+
+    // what an INTEGER millisecond column hands back
+    private static Instant truncate(Instant instant) {
+        return Instant.ofEpochMilli(instant.toEpochMilli());
+    }
+
+    /** Validated hot rows and archived rows merged in player order, hot row first on a tie. */
+    private final class ValidatedMerge {
+
+        private final Iterator<WhitelistCode> hot;
+        private final Iterator<WhitelistCode> archived;
+        private WhitelistCode nextHot;
+        private WhitelistCode nextArchived;
+
+        private ValidatedMerge(UUID after) {
+            String cursor = after == null ? "" : after.toString();
+            this.hot = validatedByPlayer.tailMap(cursor, false).values().iterator();
+            this.archived = archive.tailMap(cursor, false).values().iterator();
+            this.nextHot = hot.hasNext() ? hot.next() : null;
+            this.nextArchived = archived.hasNext() ? archived.next() : null;
+        }
+
+        boolean hasNext() {
+            return nextHot != null || nextArchived != null;
+        }
+
+        WhitelistCode next() {
+            boolean takeHot = nextArchived == null || (
+                nextHot != null &&
+                nextHot.playerUuid().toString().compareTo(nextArchived.playerUuid().toString()) <= 0
+            );
+            WhitelistCode row;
+            if (takeHot) {
+                row = nextHot;
+                nextHot = hot.hasNext() ? hot.next() : null;
+            } else {
+                row = nextArchived;
+                nextArchived = archived.hasNext() ? archived.next() : null;
+            }
+            return row;
+        }
+    }
+}
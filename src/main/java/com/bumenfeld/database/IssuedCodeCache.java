@@ -0,0 +1,193 @@
+package com.bumenfeld.database;
+
+import com.bumenfeld.metrics.Counter;
+import com.bumenfeld.metrics.MetricsRegistry;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Unvalidated codes recently returned by
+ * {@link WhitelistCodeService#ensureCode}, so a rejected player stuck in a
+ * reconnect loop is answered without touching the store. Entries live for a
+ * short TTL, and once the cache is full the oldest go first; with one TTL
+ * for every entry, insertion order is also expiry order.
+ *
+ * <p>Validation and revocation {@link #invalidate} the player. A lookup
+ * that read the store before an invalidation must not put its stale answer
+ * back, so {@link #put} only stores while {@link #version()} still has the
+ * value the caller took before its read. Other writers (bulk imports, the
+ * sweeper) are covered by the TTL and the expiry check in {@link #get}.
+ */
+public final class IssuedCodeCache {
+
+    public static final Duration DEFAULT_TTL = Duration.ofSeconds(60);
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // insertion order, so the eldest entry is the next to expire
+    private final LinkedHashMap<UUID, Entry> entries = new LinkedHashMap<>();
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    // bumped by every invalidation
+    private long version;
+
+    public IssuedCodeCache(MetricsRegistry metrics) {
+        this(DEFAULT_TTL, DEFAULT_MAX_ENTRIES, metrics);
+    }
+
+    public IssuedCodeCache(Duration ttl, int maxEntries, MetricsRegistry metrics) {
+        Objects.requireNonNull(ttl, "ttl");
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("ttl must be positive");
+        }
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be > 0");
+        }
+        Objects.requireNonNull(metrics, "metrics");
+        this.ttlNanos = ttl.toNanos();
+        this.maxEntries = maxEntries;
+        this.hits = metrics.counter(
+            "code_cache_hits",
+            "ensureCode calls answered from the issued-code cache"
+        );
+        this.misses = metrics.counter(
+            "code_cache_misses",
+            "ensureCode calls that had to read the whitelist store"
+        );
+        this.evictions = metrics.counter(
+            "code_cache_evictions",
+            "Issued-code cache entries dropped because the cache was full"
+        );
+        metrics.gauge(
+            "code_cache_hit_ratio_percent",
+            "Share of ensureCode calls answered from the issued-code cache",
+            this::hitRatioPercent
+        );
+        metrics.gauge(
+            "code_cache_entries",
+            "Players in the issued-code cache",
+            this::size
+        );
+    }
+
+    /** Taken before reading the store and handed back to {@link #put}. */
+    public long version() {
+        lock.lock();
+        try {
+            return version;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param expiredBefore codes created before this no longer count, as in
+     *     {@link WhitelistStore#issueCode(UUID, String, Instant)}
+     * @return the player's cached code, or {@code null}
+     */
+    public String get(UUID playerUuid, Instant expiredBefore) {
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            Entry entry = entries.get(playerUuid);
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            if (
+                now - entry.cachedAtNanos() >= ttlNanos ||
+                (expiredBefore != null && entry.createdAt().isBefore(expiredBefore))
+            ) {
+                entries.remove(playerUuid);
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry.code();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Caches {@code code} unless the player was invalidated since
+     * {@code observedVersion} was taken.
+     */
+    public void put(
+        UUID playerUuid,
+        String code,
+        Instant createdAt,
+        long observedVersion
+    ) {
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            if (observedVersion != version) {
+                return;
+            }
+            // re-inserted at the tail so insertion order stays expiry order
+            entries.remove(playerUuid);
+            entries.put(playerUuid, new Entry(code, createdAt, now));
+            Iterator<Map.Entry<UUID, Entry>> eldest = entries.entrySet().iterator();
+            while (eldest.hasNext()) {
+                Entry head = eldest.next().getValue();
+                boolean expired = now - head.cachedAtNanos() >= ttlNanos;
+                if (!expired && entries.size() <= maxEntries) {
+                    break;
+                }
+                eldest.remove();
+                if (!expired) {
+                    evictions.increment();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidate(UUID playerUuid) {
+        lock.lock();
+        try {
+            version++;
+            entries.remove(playerUuid);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            version++;
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long hitRatioPercent() {
+        long hitCount = hits.value();
+        long total = hitCount + misses.value();
+        return total == 0 ? 0 : hitCount * 100 / total;
+    }
+
+    private record Entry(String code, Instant createdAt, long cachedAtNanos) {}
+}
@@ -0,0 +1,1773 @@
+package com.bumenfeld.database;
+
+import com.bumenfeld.database.DatabaseManager.DatabaseException;
+import com.bumenfeld.metrics.LatencyHistogram;
+import com.bumenfeld.metrics.MetricsRegistry;
+import com.bumenfeld.util.UuidIntMap;
+import com.hypixel.hytale.logger.HytaleLogger;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * {@link WhitelistStore} kept in a memory-mapped, append-only log of
+ * fixed-width records, with primitive hash indexes on player and code that
+ * are rebuilt when the log is opened. Lookups never leave the heap and a
+ * write is one 64-byte copy into the mapping, so the connect path costs far
+ * less than a SQLite transaction.
+ *
+ * <p>Every change appends a record holding the whole row after it, and
+ * replaying the log from the start rebuilds the table. Records carry a
+ * CRC32C; {@link #initialize()} truncates the log at the first record that is
+ * torn or missing, so a crash loses only writes that never reached the disk.
+ * Writes reach the page cache at once and survive a JVM crash; they are
+ * forced to disk every second and on {@link #close()}, so a power loss can
+ * lose up to a second of them.
+ *
+ * <p>Superseded records are dropped by a compaction on the maintenance
+ * thread that copies the live records into a new file and renames it over
+ * the log, holding the lock only to copy records appended meanwhile. The
+ * rename needs a file system that allows replacing an open file; where it
+ * fails the log simply stays uncompacted. A single mapping limits the log to
+ * 2 GiB, about 33 million records. Codes are limited to
+ * {@value #MAX_CODE_BYTES} UTF-8 bytes; {@link #IMPORTED_CODE_PREFIX}
+ * placeholders are stored as a flag and derived from the player.
+ */
+public final class MappedLogWhitelistStore implements WhitelistStore {
+
+    public static final String DEFAULT_LOG_NAME = "whitelist_codes.log";
+    public static final int MAX_CODE_BYTES = 24;
+
+    // the header fills the first record slot; little-endian, the native order of the usual hosts
+    private static final int RECORD_SIZE = 64;
+    private static final long MAGIC = 0x574C5F434F444553L; // "WL_CODES" as a long
+    private static final int VERSION = 1;
+
+    // record layout; the checksum covers every byte after it
+    private static final int CHECKSUM = 0;
+    private static final int TYPE = 4;
+    private static final int CODE_LENGTH = 5;
+    private static final int MSB = 8;
+    private static final int LSB = 16;
+    private static final int CREATED_AT = 24;
+    private static final int VALIDATED_AT = 32;
+    private static final int CODE = 40;
+
+    // the hot row as it is after the change
+    private static final byte PUT = 1;
+    // the hot row is gone, e.g. expired
+    private static final byte REMOVE = 2;
+    // the hot row moved to the archive
+    private static final byte ARCHIVE = 3;
+    // both the hot and the archived row are gone
+    private static final byte DELETE = 4;
+
+    private static final long NOT_VALIDATED = Long.MIN_VALUE;
+    private static final int IMPORTED_CODE = 0xFF;
+    private static final int INITIAL_CAPACITY = 16_384;
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE / RECORD_SIZE - 1;
+    private static final int SCAN_CHUNK = 1_024;
+    private static final int MIN_VIEW_DELTA = 4_096;
+    private static final long SYNC_INTERVAL_MILLIS = 1_000L;
+    private static final long COMPACTION_INTERVAL_SECONDS = 30L;
+    private static final int COMPACTION_MIN_DEAD_RECORDS = 65_536;
+    private static final String COMPACTION_SUFFIX = ".compact";
+
+    private final Path logPath;
+    private final HytaleLogger logger;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ReentrantLock compactionLock = new ReentrantLock();
+    private final LatencyHistogram replayLatency;
+    private final LatencyHistogram compactionLatency;
+    private final LatencyHistogram snapshotLatency;
+
+    private Segment segment;
+    private ScheduledExecutorService maintenance;
+
+    public MappedLogWhitelistStore(Path logPath, HytaleLogger logger) {
+        this(logPath, logger, new MetricsRegistry());
+    }
+
+    public MappedLogWhitelistStore(
+        Path logPath,
+        HytaleLogger logger,
+        MetricsRegistry metrics
+    ) {
+        this.logPath = Objects.requireNonNull(logPath, "logPath");
+        this.logger = Objects.requireNonNull(logger, "logger");
+        Objects.requireNonNull(metrics, "metrics");
+        this.replayLatency = metrics.histogram(
+            "log_replay",
+            "MappedLogWhitelistStore.initialize latency, recovery plus index rebuild"
+        );
+        this.compactionLatency = metrics.histogram(
+            "log_compaction",
+            "MappedLogWhitelistStore compaction latency"
+        );
+        this.snapshotLatency = metrics.histogram(
+            "log_snapshot",
+            "MappedLogWhitelistStore.snapshotTo latency"
+        );
+        metrics.gauge(
+            "log_dead_records",
+            "Superseded records in the whitelist log awaiting compaction",
+            this::deadRecords
+        );
+    }
+
+    @Override
+    public void initialize() {
+        lock.lock();
+        try {
+            if (segment != null) {
+                return;
+            }
+            long startedAt = System.nanoTime();
+            Path parent = logPath.getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            // left behind by a compaction that was cut short
+            Files.deleteIfExists(compactionPath());
+            segment = Segment.open(logPath, logger);
+            replayLatency.recordSince(startedAt);
+            logger
+                .atInfo()
+                .log(
+                    "Whitelist log ready at %s (%d live of %d records, %d ms)",
+                    logPath.toAbsolutePath(),
+                    segment.liveRecords(),
+                    segment.records,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt)
+                );
+            maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "discord-companion-whitelist-log");
+                thread.setDaemon(true);
+                return thread;
+            });
+            maintenance.scheduleWithFixedDelay(
+                this::syncQuietly,
+                SYNC_INTERVAL_MILLIS,
+                SYNC_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS
+            );
+            maintenance.scheduleWithFixedDelay(
+                this::compactQuietly,
+                COMPACTION_INTERVAL_SECONDS,
+                COMPACTION_INTERVAL_SECONDS,
+                TimeUnit.SECONDS
+            );
+        } catch (IOException exception) {
+            throw new DatabaseException(
+                "Unable to initialize whitelist log",
+                exception
+            );
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void upsertCode(UUID playerUuid, String whitelistCode) {
+        Objects.requireNonNull(playerUuid, "playerUuid");
+        Objects.requireNonNull(whitelistCode, "whitelistCode");
+        byte[] code = encodeCode(playerUuid, whitelistCode);
+        lock.lock();
+        try {
+            ensureInitialized();
+            if (heldByOther(playerUuid, whitelistCode)) {
+                throw new DatabaseException(
+                    "Unable to upsert whitelist code",
+                    new IllegalStateException("whitelist_code is not unique")
+                );
+            }
+            segment.append(
+                PUT,
+                playerUuid,
+                code,
+                System.currentTimeMillis(),
+                NOT_VALIDATED
+            );
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<String> issueCode(
+        UUID playerUuid,
+        String whitelistCode,
+        Instant expiredBefore
+    ) {
+        Objects.requireNonNull(playerUuid, "playerUuid");
+        Objects.requireNonNull(whitelistCode, "whitelistCode");
+        byte[] code = encodeCode(playerUuid, whitelistCode);
+        lock.lock();
+        try {
+            ensureInitialized();
+            int existing = segment.hotRecord(playerUuid);
+            boolean keep = existing >= 0 &&
+                segment.validatedAt(existing) == NOT_VALIDATED &&
+                (
+                    expiredBefore == null ||
+                    !Instant.ofEpochMilli(segment.createdAt(existing)).isBefore(expiredBefore)
+                );
+            if (keep) {
+                return Optional.of(segment.code(existing));
+            }
+            if (heldByOther(playerUuid, whitelistCode)) {
+                return Optional.empty();
+            }
+            segment.append(
+                PUT,
+                playerUuid,
+                code,
+                System.currentTimeMillis(),
+                NOT_VALIDATED
+            );
+            return Optional.of(whitelistCode);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<WhitelistCode> findByPlayer(UUID playerUuid) {
+        Objects.requireNonNull(playerUuid, "playerUuid");
+        lock.lock();
+        try {
+            ensureInitialized();
+            int record = segment.hotRecord(playerUuid);
+            return record < 0 ? Optional.empty() : Optional.of(segment.row(record));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<WhitelistCode> findByCode(String whitelistCode) {
+        Objects.requireNonNull(whitelistCode, "whitelistCode");
+        byte[] code = whitelistCode.getBytes(StandardCharsets.UTF_8);
+        lock.lock();
+        try {
+            ensureInitialized();
+            int record = segment.codes.find(code);
+            return record < 0 ? Optional.empty() : Optional.of(segment.row(record));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean markValidated(
+        UUID playerUuid,
+        String whitelistCode,
+        Instant validatedAt
+    ) {
+        Objects.requireNonNull(playerUuid, "playerUuid");
+        Objects.requireNonNull(whitelistCode, "whitelistCode");
+        long timestamp = validatedAt != null
+            ? validatedAt.toEpochMilli()
+            : System.currentTimeMillis();
+        byte[] code = whitelistCode.getBytes(StandardCharsets.UTF_8);
+        lock.lock();
+        try {
+            ensureInitialized();
+            int existing = segment.hotRecord(playerUuid);
+            if (
+                existing < 0 ||
+                segment.validatedAt(existing) != NOT_VALIDATED ||
+                !segment.codeEquals(existing, code)
+            ) {
+                return false;
+            }
+            segment.appendFrom(existing, PUT, timestamp);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean delete(UUID playerUuid) {
+        Objects.requireNonNull(playerUuid, "playerUuid");
+        lock.lock();
+        try {
+            ensureInitialized();
+            return deleteEverywhere(playerUuid) > 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public CodePage listActiveCodesAfter(PageKey after, int limit) {
+        checkLimit(limit);
+        lock.lock();
+        try {
+            ensureInitialized();
+            Segment.Cursor cursor = segment.active.ascending(
+                after == null ? null : pageKey(after)
+            );
+            return page(cursor, limit, false);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public CodePage listActiveCodesBefore(PageKey before, int limit) {
+        Objects.requireNonNull(before, "before");
+        checkLimit(limit);
+        lock.lock();
+        try {
+            ensureInitialized();
+            return page(segment.active.descending(pageKey(before)), limit, true);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int streamValidatedPlayers(UUID after, int limit, Consumer<UUID> sink) {
+        Objects.requireNonNull(sink, "sink");
+        lock.lock();
+        try {
+            ensureInitialized();
+            // UNION: a player in both tables is one row
+            ValidatedMerge merge = new ValidatedMerge(segment, after);
+            int streamed = 0;
+            int previous = -1;
+            while (streamed < limit && merge.hasNext()) {
+                int record = merge.next();
+                if (previous >= 0 && segment.samePlayer(record, previous)) {
+                    continue;
+                }
+                previous = record;
+                sink.accept(segment.player(record));
+                streamed++;
+            }
+            return streamed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int streamValidatedEntries(
+        UUID after,
+        int limit,
+        Consumer<ValidatedEntry> sink
+    ) {
+        Objects.requireNonNull(sink, "sink");
+        lock.lock();
+        try {
+            ensureInitialized();
+            // UNION ALL: both rows count towards the limit, only the first is passed on
+            ValidatedMerge merge = new ValidatedMerge(segment, after);
+            int read = 0;
+            int previous = -1;
+            while (read < limit && merge.hasNext()) {
+                int record = merge.next();
+                read++;
+                if (previous >= 0 && segment.samePlayer(record, previous)) {
+                    continue;
+                }
+                previous = record;
+                sink.accept(
+                    new ValidatedEntry(
+                        segment.player(record),
+                        Instant.ofEpochMilli(segment.validatedAt(record))
+                    )
+                );
+            }
+            return read;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Set<UUID> filterValidated(Collection<UUID> playerUuids) {
+        Objects.requireNonNull(playerUuids, "playerUuids");
+        lock.lock();
+        try {
+            ensureInitialized();
+            Set<UUID> validated = new HashSet<>();
+            for (UUID playerUuid : playerUuids) {
+                int hot = segment.hotRecord(playerUuid);
+                if (
+                    (hot >= 0 && segment.validatedAt(hot) != NOT_VALIDATED) ||
+                    segment.archivedRecord(playerUuid) >= 0
+                ) {
+                    validated.add(playerUuid);
+                }
+            }
+            return validated;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Map<UUID, WhitelistCode> findByPlayers(Collection<UUID> playerUuids) {
+        Objects.requireNonNull(playerUuids, "playerUuids");
+        lock.lock();
+        try {
+            ensureInitialized();
+            Map<UUID, WhitelistCode> found = new HashMap<>();
+            for (UUID playerUuid : playerUuids) {
+                int record = segment.hotRecord(playerUuid);
+                if (record >= 0) {
+                    found.put(playerUuid, segment.row(record));
+                }
+            }
+            return found;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int importValidated(List<ValidatedEntry> entries) {
+        Objects.requireNonNull(entries, "entries");
+        lock.lock();
+        try {
+            ensureInitialized();
+            int changed = 0;
+            for (ValidatedEntry entry : entries) {
+                long validatedAt = entry.validatedAt().toEpochMilli();
+                int existing = segment.hotRecord(entry.playerUuid());
+                if (existing < 0) {
+                    segment.append(PUT, entry.playerUuid(), null, validatedAt, validatedAt);
+                    changed++;
+                } else if (segment.validatedAt(existing) == NOT_VALIDATED) {
+                    segment.appendFrom(existing, PUT, validatedAt);
+                    changed++;
+                }
+            }
+            return changed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int deleteAll(Collection<UUID> playerUuids) {
+        Objects.requireNonNull(playerUuids, "playerUuids");
+        lock.lock();
+        try {
+            ensureInitialized();
+            int deleted = 0;
+            for (UUID playerUuid : new LinkedHashSet<>(playerUuids)) {
+                deleted += deleteEverywhere(playerUuid);
+            }
+            return deleted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int deleteExpiredCodes(Instant cutoff, int limit) {
+        Objects.requireNonNull(cutoff, "cutoff");
+        lock.lock();
+        try {
+            ensureInitialized();
+            List<UUID> expired = new ArrayList<>();
+            Segment.Cursor cursor = segment.active.ascending(null);
+            int record;
+            while (expired.size() < limit && (record = cursor.next()) >= 0) {
+                if (!Instant.ofEpochMilli(segment.createdAt(record)).isBefore(cutoff)) {
+                    break;
+                }
+                expired.add(segment.player(record));
+            }
+            for (UUID playerUuid : expired) {
+                segment.append(REMOVE, playerUuid, new byte[0], 0L, NOT_VALIDATED);
+            }
+            return expired.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int archiveValidatedCodes(Instant cutoff, int limit) {
+        Objects.requireNonNull(cutoff, "cutoff");
+        lock.lock();
+        try {
+            ensureInitialized();
+            List<Integer> archivable = new ArrayList<>();
+            Segment.Cursor cursor = segment.validatedByTime.ascending(null);
+            int record;
+            while (archivable.size() < limit && (record = cursor.next()) >= 0) {
+                if (!Instant.ofEpochMilli(segment.validatedAt(record)).isBefore(cutoff)) {
+                    break;
+                }
+                archivable.add(record);
+            }
+            for (int archived : archivable) {
+                segment.appendFrom(archived, ARCHIVE, segment.validatedAt(archived));
+            }
+            return archivable.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Compacts the log now if at least half of it is superseded records.
+     * {@code pages} is ignored: one compaction does the whole job.
+     *
+     * @return always {@code 0}
+     */
+    @Override
+    public long compact(int pages) {
+        lock.lock();
+        try {
+            ensureInitialized();
+        } finally {
+            lock.unlock();
+        }
+        compactIfWorthwhile();
+        return 0L;
+    }
+
+    @Override
+    public boolean supportsSnapshots() {
+        return true;
+    }
+
+    @Override
+    public String snapshotSuffix() {
+        return ".log";
+    }
+
+    /**
+     * Writes the live records to {@code target} as a compacted log. Only
+     * collecting the record numbers holds the lock; the copy is made from
+     * the part of the mapping that appends never touch again.
+     */
+    @Override
+    public void snapshotTo(Path target) {
+        Objects.requireNonNull(target, "target");
+        long startedAt = System.nanoTime();
+        ByteBuffer source;
+        int[] live;
+        lock.lock();
+        try {
+            ensureInitialized();
+            source = segment.buffer;
+            live = segment.liveRecordsInLogOrder();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writeRecords(source, live, target);
+        } catch (IOException exception) {
+            throw new DatabaseException(
+                "Unable to snapshot whitelist log",
+                exception
+            );
+        } finally {
+            snapshotLatency.recordSince(startedAt);
+        }
+    }
+
+    /** @return {@code ok} when the header and every record check out */
+    @Override
+    public String checkSnapshot(Path snapshot) {
+        Objects.requireNonNull(snapshot, "snapshot");
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            String headerProblem = checkHeader(channel);
+            if (headerProblem != null) {
+                return headerProblem;
+            }
+            Scan scan = scanRecords(channel);
+            if (scan.problem() != null) {
+                return scan.problem();
+            }
+            if (channel.size() != offset(scan.records())) {
+                return "unexpected bytes after record " + scan.records();
+            }
+            return "ok";
+        } catch (IOException exception) {
+            return exception.getMessage();
+        }
+    }
+
+    @Override
+    public void close() {
+        ScheduledExecutorService stopped;
+        lock.lock();
+        try {
+            if (segment == null) {
+                return;
+            }
+            stopped = maintenance;
+            maintenance = null;
+            try {
+                segment.close();
+            } catch (IOException exception) {
+                logger
+                    .atWarning()
+                    .log("Failed to close whitelist log cleanly: %s", exception.getMessage());
+            }
+            segment = null;
+        } finally {
+            lock.unlock();
+        }
+        stopped.shutdownNow();
+    }
+
+    public Path logPath() {
+        return logPath;
+    }
+
+    /** @return the number of rows removed, hot and archived */
+    private int deleteEverywhere(UUID playerUuid) {
+        int rows = (segment.hotRecord(playerUuid) >= 0 ? 1 : 0) +
+            (segment.archivedRecord(playerUuid) >= 0 ? 1 : 0);
+        if (rows > 0) {
+            segment.append(DELETE, playerUuid, new byte[0], 0L, NOT_VALIDATED);
+        }
+        return rows;
+    }
+
+    private boolean heldByOther(UUID playerUuid, String whitelistCode) {
+        int holder = segment.codes.find(whitelistCode.getBytes(StandardCharsets.UTF_8));
+        return holder >= 0 && !segment.player(holder).equals(playerUuid);
+    }
+
+    private void ensureInitialized() {
+        if (segment == null) {
+            throw new IllegalStateException(
+                "MappedLogWhitelistStore has not been initialized"
+            );
+        }
+    }
+
+    private long deadRecords() {
+        lock.lock();
+        try {
+            return segment == null ? 0L : segment.records - segment.liveRecords();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Forces the records appended since the last sync; the lock is held only to read the range. */
+    private void syncQuietly() {
+        MappedByteBuffer buffer;
+        int from;
+        int to;
+        lock.lock();
+        try {
+            if (segment == null || segment.syncedRecords == segment.records) {
+                return;
+            }
+            buffer = segment.buffer;
+            from = segment.syncedRecords;
+            to = segment.records;
+            segment.syncedRecords = to;
+        } finally {
+            lock.unlock();
+        }
+        try {
+            buffer.force(offset(from), (to - from) * RECORD_SIZE);
+        } catch (RuntimeException exception) {
+            logger
+                .atWarning()
+                .log("Failed to sync whitelist log: %s", exception.getMessage());
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            compactIfWorthwhile();
+        } catch (RuntimeException exception) {
+            logger
+                .atWarning()
+                .log("Whitelist log compaction failed: %s", exception.getMessage());
+        }
+    }
+
+    /**
+     * Copies the live records into {@link #compactionPath()} without the
+     * lock, then under it appends whatever was written meanwhile and renames
+     * the copy over the log. Record numbers change, so the copy gets its own
+     * indexes, rebuilt from the new file before the swap.
+     */
+    private boolean compactIfWorthwhile() {
+        if (!compactionLock.tryLock()) {
+            return false;
+        }
+        try {
+            Segment source;
+            ByteBuffer sourceBuffer;
+            int end;
+            int[] live;
+            lock.lock();
+            try {
+                if (segment == null) {
+                    return false;
+                }
+                int dead = segment.records - segment.liveRecords();
+                if (dead < COMPACTION_MIN_DEAD_RECORDS || dead < segment.liveRecords()) {
+                    return false;
+                }
+                source = segment;
+                sourceBuffer = segment.buffer;
+                end = segment.records;
+                live = segment.liveRecordsInLogOrder();
+            } finally {
+                lock.unlock();
+            }
+
+            long startedAt = System.nanoTime();
+            Path temporary = compactionPath();
+            Segment compacted = null;
+            try {
+                writeRecords(sourceBuffer, live, temporary);
+                compacted = Segment.open(temporary, logger);
+                lock.lock();
+                try {
+                    if (segment != source) {
+                        // closed, and maybe reopened, meanwhile
+                        return false;
+                    }
+                    for (int record = end; record < source.records; record++) {
+                        compacted.appendCopy(source.buffer, record);
+                    }
+                    compacted.force();
+                    Files.move(
+                        temporary,
+                        logPath,
+                        StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING
+                    );
+                    segment = compacted;
+                    compacted = null;
+                    closeQuietly(source);
+                } finally {
+                    lock.unlock();
+                }
+                logger
+                    .atInfo()
+                    .log(
+                        "Compacted whitelist log from %d to %d records in %d ms",
+                        end,
+                        live.length,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt)
+                    );
+                compactionLatency.recordSince(startedAt);
+                return true;
+            } catch (IOException exception) {
+                throw new DatabaseException(
+                    "Unable to compact whitelist log",
+                    exception
+                );
+            } finally {
+                if (compacted != null) {
+                    closeQuietly(compacted);
+                    deleteQuietly(temporary);
+                }
+            }
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    private Path compactionPath() {
+        return logPath.resolveSibling(logPath.getFileName() + COMPACTION_SUFFIX);
+    }
+
+    private void closeQuietly(Segment segment) {
+        try {
+            segment.close();
+        } catch (IOException exception) {
+            logger
+                .atWarning()
+                .log("Failed to close whitelist log copy: %s", exception.getMessage());
+        }
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException exception) {
+            logger
+                .atWarning()
+                .log("Failed to delete %s: %s", path, exception.getMessage());
+        }
+    }
+
+    private static CodePage page(Segment.Cursor cursor, int limit, boolean descending) {
+        List<WhitelistCode> results = new ArrayList<>(limit);
+        int record;
+        while (results.size() < limit && (record = cursor.next()) >= 0) {
+            results.add(cursor.row(record));
+        }
+        boolean hasMore = cursor.next() >= 0;
+        if (descending) {
+            Collections.reverse(results);
+        }
+        return new CodePage(results, hasMore);
+    }
+
+    // a cursor string that is not a UUID, such as "", sorts before every player
+    private static Key pageKey(PageKey pageKey) {
+        try {
+            UUID playerUuid = UUID.fromString(pageKey.playerUuid());
+            return new Key(
+                pageKey.createdAtMillis(),
+                playerUuid.getMostSignificantBits(),
+                playerUuid.getLeastSignificantBits(),
+                false
+            );
+        } catch (IllegalArgumentException exception) {
+            return new Key(pageKey.createdAtMillis(), 0L, 0L, true);
+        }
+    }
+
+    private static byte[] encodeCode(UUID playerUuid, String whitelistCode) {
+        if (whitelistCode.equals(IMPORTED_CODE_PREFIX + playerUuid)) {
+            return null;
+        }
+        byte[] code = whitelistCode.getBytes(StandardCharsets.UTF_8);
+        if (code.length > MAX_CODE_BYTES) {
+            throw new IllegalArgumentException(
+                "Whitelist codes are limited to " + MAX_CODE_BYTES + " bytes in the whitelist log"
+            );
+        }
+        return code;
+    }
+
+    private static byte[] importedCode(long msb, long lsb) {
+        return (IMPORTED_CODE_PREFIX + new UUID(msb, lsb)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** @return the player an {@link #IMPORTED_CODE_PREFIX} placeholder names, or {@code null} */
+    private static UUID importedPlayer(byte[] code) {
+        int prefix = IMPORTED_CODE_PREFIX.length();
+        if (code.length != prefix + 36) {
+            return null;
+        }
+        String text = new String(code, StandardCharsets.UTF_8);
+        if (!text.startsWith(IMPORTED_CODE_PREFIX)) {
+            return null;
+        }
+        try {
+            UUID playerUuid = UUID.fromString(text.substring(prefix));
+            return playerUuid.toString().equals(text.substring(prefix)) ? playerUuid : null;
+        } catch (IllegalArgumentException exception) {
+            return null;
+        }
+    }
+
+    private static void checkLimit(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be > 0");
+        }
+    }
+
+    private static int offset(int record) {
+        return (record + 1) * RECORD_SIZE;
+    }
+
+    private static ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putLong(0, MAGIC);
+        header.putInt(8, VERSION);
+        header.putInt(12, RECORD_SIZE);
+        return header;
+    }
+
+    /** @return why the file is not a whitelist log, or {@code null} */
+    private static String checkHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        if (readFully(channel, header, 0L) < RECORD_SIZE) {
+            return "the header is incomplete";
+        }
+        if (header.getLong(0) != MAGIC) {
+            return "not a whitelist log";
+        }
+        if (header.getInt(8) != VERSION || header.getInt(12) != RECORD_SIZE) {
+            return "unsupported whitelist log version " + header.getInt(8);
+        }
+        return null;
+    }
+
+    /**
+     * Counts the intact records after the header. The log ends at the first
+     * all-zero record, the unwritten part of the mapping, or at the first
+     * damaged one, which {@link Scan#problem()} then describes.
+     */
+    private static Scan scanRecords(FileChannel channel) throws IOException {
+        CRC32C checksum = new CRC32C();
+        ByteBuffer chunk = ByteBuffer
+            .allocate(RECORD_SIZE * SCAN_CHUNK)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        int records = 0;
+        while (true) {
+            chunk.clear();
+            int read = readFully(channel, chunk, offset(records));
+            int whole = read / RECORD_SIZE;
+            for (int i = 0; i < whole; i++) {
+                int base = i * RECORD_SIZE;
+                if (chunk.get(base + TYPE) == 0) {
+                    return new Scan(records, null);
+                }
+                String problem = checkRecord(chunk, base, checksum);
+                if (problem != null) {
+                    return new Scan(records, "record " + records + " " + problem);
+                }
+                if (++records == MAX_CAPACITY) {
+                    return new Scan(records, null);
+                }
+            }
+            if (whole < SCAN_CHUNK) {
+                return new Scan(
+                    records,
+                    read % RECORD_SIZE == 0 ? null : "record " + records + " is incomplete"
+                );
+            }
+        }
+    }
+
+    private static String checkRecord(ByteBuffer chunk, int base, CRC32C checksum) {
+        checksum.reset();
+        checksum.update(chunk.array(), base + TYPE, RECORD_SIZE - TYPE);
+        if ((int) checksum.getValue() != chunk.getInt(base + CHECKSUM)) {
+            return "has a bad checksum";
+        }
+        byte type = chunk.get(base + TYPE);
+        if (type < PUT || type > DELETE) {
+            return "has unknown type " + type;
+        }
+        int codeLength = chunk.get(base + CODE_LENGTH) & 0xFF;
+        if (codeLength > MAX_CODE_BYTES && codeLength != IMPORTED_CODE) {
+            return "has a bad code length " + codeLength;
+        }
+        return null;
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer target, long position)
+        throws IOException {
+        int total = 0;
+        while (target.hasRemaining()) {
+            int read = channel.read(target, position + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            channel.write(source);
+        }
+    }
+
+    /** Writes a header and {@code records}, read from {@code source}, as a new log at {@code target}. */
+    private static void writeRecords(ByteBuffer source, int[] records, Path target)
+        throws IOException {
+        try (
+            FileChannel channel = FileChannel.open(
+                target,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE
+            )
+        ) {
+            ByteBuffer batch = ByteBuffer.allocate(RECORD_SIZE * SCAN_CHUNK);
+            batch.put(header());
+            for (int record : records) {
+                if (!batch.hasRemaining()) {
+                    batch.flip();
+                    writeFully(channel, batch);
+                    batch.clear();
+                }
+                batch.put(batch.position(), source, offset(record), RECORD_SIZE);
+                batch.position(batch.position() + RECORD_SIZE);
+            }
+            batch.flip();
+            writeFully(channel, batch);
+            channel.force(true);
+        }
+    }
+
+    private record Scan(int records, String problem) {}
+
+    /**
+     * Position in a sorted view: the order column ({@code 0} for views in
+     * player order), then the player. {@code beforeAllPlayers} sorts the key
+     * ahead of every player with the same order value.
+     */
+    private record Key(long order, long msb, long lsb, boolean beforeAllPlayers) {}
+
+    /** Validated hot rows and archived rows merged in player order, hot row first on a tie. */
+    private static final class ValidatedMerge {
+
+        private final Segment segment;
+        private final Segment.Cursor hot;
+        private final Segment.Cursor archived;
+        private int nextHot;
+        private int nextArchived;
+
+        private ValidatedMerge(Segment segment, UUID after) {
+            Key key = after == null
+                ? null
+                : new Key(0L, after.getMostSignificantBits(), after.getLeastSignificantBits(), false);
+            this.segment = segment;
+            this.hot = segment.validatedByPlayer.ascending(key);
+            this.archived = segment.archivedByPlayer.ascending(key);
+            this.nextHot = hot.next();
+            this.nextArchived = archived.next();
+        }
+
+        boolean hasNext() {
+            return nextHot >= 0 || nextArchived >= 0;
+        }
+
+        int next() {
+            boolean takeHot = nextArchived < 0 || (
+                nextHot >= 0 && segment.comparePlayers(nextHot, nextArchived) <= 0
+            );
+            int record;
+            if (takeHot) {
+                record = nextHot;
+                nextHot = hot.next();
+            } else {
+                record = nextArchived;
+                nextArchived = archived.next();
+            }
+            return record;
+        }
+    }
+
+    /**
+     * One mapped log file and the indexes rebuilt from it. Records are
+     * numbered from zero after the header and never change once written, so
+     * the indexes hold record numbers and read everything else from the
+     * mapping. Guarded by the store lock.
+     */
+    private static final class Segment {
+
+        private final FileChannel channel;
+        private final CRC32C checksum = new CRC32C();
+        private final byte[] scratch = new byte[RECORD_SIZE];
+        private final ByteBuffer scratchBuffer = ByteBuffer
+            .wrap(scratch)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        private final UuidIntMap hot = new UuidIntMap();
+        private final UuidIntMap archived = new UuidIntMap();
+        private final CodeIndex codes = new CodeIndex();
+        // idx_whitelist_codes_active
+        private final View active = new View(CREATED_AT, hot);
+        // idx_whitelist_codes_validated, and the primary key order of the validated rows
+        private final View validatedByTime = new View(VALIDATED_AT, hot);
+        private final View validatedByPlayer = new View(-1, hot);
+        private final View archivedByPlayer = new View(-1, archived);
+
+        private MappedByteBuffer buffer;
+        private int capacity;
+        private int records;
+        private int syncedRecords;
+        private boolean replaying;
+
+        private Segment(FileChannel channel, int records) throws IOException {
+            this.channel = channel;
+            this.records = records;
+            this.syncedRecords = records;
+            this.capacity = INITIAL_CAPACITY;
+            while (capacity <= records && capacity < MAX_CAPACITY) {
+                capacity = (int) Math.min(capacity * 2L, MAX_CAPACITY);
+            }
+            this.buffer = map(channel, capacity);
+        }
+
+        /**
+         * Opens the log at {@code path}, creating it when missing, cuts it
+         * back to its last intact record and replays it.
+         */
+        static Segment open(Path path, HytaleLogger logger) throws IOException {
+            FileChannel channel = FileChannel.open(
+                path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE
+            );
+            try {
+                int records = 0;
+                if (channel.size() < RECORD_SIZE) {
+                    channel.truncate(0L);
+                    channel.write(header(), 0L);
+                } else {
+                    String headerProblem = checkHeader(channel);
+                    if (headerProblem != null) {
+                        throw new DatabaseException(path + ": " + headerProblem, null);
+                    }
+                    Scan scan = scanRecords(channel);
+                    records = scan.records();
+                    if (scan.problem() != null) {
+                        logger
+                            .atWarning()
+                            .log(
+                                "Whitelist log %s: %s; truncating it after %d intact records",
+                                path,
+                                scan.problem(),
+                                records
+                            );
+                    }
+                    // also drops stale records behind a gap the OS never wrote back
+                    if (channel.size() > offset(records)) {
+                        channel.truncate(offset(records));
+                    }
+                }
+                Segment segment = new Segment(channel, records);
+                segment.replay();
+                return segment;
+            } catch (IOException | RuntimeException exception) {
+                channel.close();
+                throw exception;
+            }
+        }
+
+        private void replay() {
+            replaying = true;
+            for (int record = 0; record < records; record++) {
+                apply(record);
+            }
+            replaying = false;
+            active.merge();
+            validatedByTime.merge();
+            validatedByPlayer.merge();
+            archivedByPlayer.merge();
+        }
+
+        /** Appends a record; a {@code null} code stores the imported placeholder. */
+        int append(byte type, UUID playerUuid, byte[] code, long createdAt, long validatedAt) {
+            Arrays.fill(scratch, (byte) 0);
+            scratchBuffer.put(TYPE, type);
+            scratchBuffer.put(CODE_LENGTH, (byte) (code == null ? IMPORTED_CODE : code.length));
+            scratchBuffer.putLong(MSB, playerUuid.getMostSignificantBits());
+            scratchBuffer.putLong(LSB, playerUuid.getLeastSignificantBits());
+            scratchBuffer.putLong(CREATED_AT, createdAt);
+            scratchBuffer.putLong(VALIDATED_AT, validatedAt);
+            if (code != null) {
+                scratchBuffer.put(CODE, code);
+            }
+            return write();
+        }
+
+        /** Appends a copy of {@code record} with another type and validation time. */
+        int appendFrom(int record, byte type, long validatedAt) {
+            buffer.get(offset(record), scratch);
+            scratchBuffer.put(TYPE, type);
+            scratchBuffer.putLong(VALIDATED_AT, validatedAt);
+            return write();
+        }
+
+        /** Appends {@code record} of another log unchanged. */
+        void appendCopy(ByteBuffer source, int record) {
+            source.get(offset(record), scratch);
+            ensureCapacity();
+            buffer.put(offset(records), scratch);
+            apply(records++);
+        }
+
+        private int write() {
+            checksum.reset();
+            checksum.update(scratch, TYPE, RECORD_SIZE - TYPE);
+            scratchBuffer.putInt(CHECKSUM, (int) checksum.getValue());
+            ensureCapacity();
+            int record = records;
+            buffer.put(offset(record), scratch);
+            records++;
+            apply(record);
+            return record;
+        }
+
+        private void ensureCapacity() {
+            if (records < capacity) {
+                return;
+            }
+            if (capacity == MAX_CAPACITY) {
+                throw new DatabaseException(
+                    "The whitelist log is full at " + MAX_CAPACITY + " records",
+                    null
+                );
+            }
+            try {
+                capacity = (int) Math.min(capacity * 2L, MAX_CAPACITY);
+                buffer = map(channel, capacity);
+            } catch (IOException exception) {
+                throw new DatabaseException("Unable to grow whitelist log", exception);
+            }
+        }
+
+        private static MappedByteBuffer map(FileChannel channel, int capacity) throws IOException {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0L, offset(capacity));
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            return mapped;
+        }
+
+        private void apply(int record) {
+            long msb = msb(record);
+            long lsb = lsb(record);
+            switch (buffer.get(offset(record) + TYPE)) {
+                case PUT -> {
+                    removeHot(msb, lsb);
+                    hot.put(msb, lsb, record);
+                    codes.put(record);
+                    if (validatedAt(record) == NOT_VALIDATED) {
+                        active.add(record);
+                    } else {
+                        validatedByTime.add(record);
+                        validatedByPlayer.add(record);
+                    }
+                }
+                case REMOVE -> removeHot(msb, lsb);
+                case ARCHIVE -> {
+                    removeHot(msb, lsb);
+                    archived.put(msb, lsb, record);
+                    archivedByPlayer.add(record);
+                }
+                case DELETE -> {
+                    removeHot(msb, lsb);
+                    archived.remove(msb, lsb);
+                }
+                default -> throw new IllegalStateException(
+                    "Unknown whitelist log record type at " + record
+                );
+            }
+        }
+
+        private void removeHot(long msb, long lsb) {
+            int previous = hot.remove(msb, lsb);
+            if (previous >= 0) {
+                codes.remove(previous);
+            }
+        }
+
+        void force() {
+            buffer.force(offset(syncedRecords), (records - syncedRecords) * RECORD_SIZE);
+            syncedRecords = records;
+        }
+
+        void close() throws IOException {
+            try {
+                buffer.force();
+            } finally {
+                channel.close();
+            }
+        }
+
+        int liveRecords() {
+            return hot.size() + archived.size();
+        }
+
+        /** Ascending record numbers, so a replay of just these rebuilds the same table. */
+        int[] liveRecordsInLogOrder() {
+            int[] live = new int[liveRecords()];
+            int[] size = {0};
+            hot.forEach((msb, lsb, record) -> live[size[0]++] = record);
+            archived.forEach((msb, lsb, record) -> live[size[0]++] = record);
+            Arrays.sort(live);
+            return live;
+        }
+
+        int hotRecord(UUID playerUuid) {
+            return hot.get(playerUuid.getMostSignificantBits(), playerUuid.getLeastSignificantBits());
+        }
+
+        int archivedRecord(UUID playerUuid) {
+            return archived.get(playerUuid.getMostSignificantBits(), playerUuid.getLeastSignificantBits());
+        }
+
+        long msb(int record) {
+            return buffer.getLong(offset(record) + MSB);
+        }
+
+        long lsb(int record) {
+            return buffer.getLong(offset(record) + LSB);
+        }
+
+        long createdAt(int record) {
+            return buffer.getLong(offset(record) + CREATED_AT);
+        }
+
+        long validatedAt(int record) {
+            return buffer.getLong(offset(record) + VALIDATED_AT);
+        }
+
+        UUID player(int record) {
+            return new UUID(msb(record), lsb(record));
+        }
+
+        boolean samePlayer(int record, int other) {
+            return msb(record) == msb(other) && lsb(record) == lsb(other);
+        }
+
+        // unsigned halves compare like the hex strings SQLite orders by
+        int comparePlayers(int record, int other) {
+            int compared = Long.compareUnsigned(msb(record), msb(other));
+            return compared != 0 ? compared : Long.compareUnsigned(lsb(record), lsb(other));
+        }
+
+        byte[] codeBytes(int record) {
+            int length = buffer.get(offset(record) + CODE_LENGTH) & 0xFF;
+            if (length == IMPORTED_CODE) {
+                return importedCode(msb(record), lsb(record));
+            }
+            byte[] code = new byte[length];
+            buffer.get(offset(record) + CODE, code);
+            return code;
+        }
+
+        String code(int record) {
+            return new String(codeBytes(record), StandardCharsets.UTF_8);
+        }
+
+        boolean codeEquals(int record, byte[] code) {
+            int length = buffer.get(offset(record) + CODE_LENGTH) & 0xFF;
+            if (length == IMPORTED_CODE) {
+                return Arrays.equals(importedCode(msb(record), lsb(record)), code);
+            }
+            if (length != code.length) {
+                return false;
+            }
+            int base = offset(record) + CODE;
+            for (int i = 0; i < length; i++) {
+                if (buffer.get(base + i) != code[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        WhitelistCode row(int record) {
+            UUID playerUuid = player(record);
+            long validatedAt = validatedAt(record);
+            return new WhitelistCode(
+                playerUuid,
+                code(record),
+                Instant.ofEpochMilli(createdAt(record)),
+                validatedAt == NOT_VALIDATED ? null : Instant.ofEpochMilli(validatedAt)
+            );
+        }
+
+        /**
+         * Open-addressing index from code to the hot record holding it. Slots
+         * keep the code's hash next to the record number, so a probe only
+         * reads the mapping for a likely match.
+         */
+        private final class CodeIndex {
+
+            private int[] hashes = new int[16];
+            private int[] values = filled(16);
+            private int mask = 15;
+            private int size;
+
+            int find(byte[] code) {
+                int hash = queryHash(code);
+                int slot = hash & mask;
+                while (values[slot] >= 0) {
+                    if (hashes[slot] == hash && codeEquals(values[slot], code)) {
+                        return values[slot];
+                    }
+                    slot = (slot + 1) & mask;
+                }
+                return -1;
+            }
+
+            void put(int record) {
+                if ((size + 1) * 2L > mask + 1) {
+                    resize((mask + 1) * 2);
+                }
+                int hash = hash(record);
+                int slot = hash & mask;
+                while (values[slot] >= 0) {
+                    if (hashes[slot] == hash && codeEquals(values[slot], codeBytes(record))) {
+                        values[slot] = record;
+                        return;
+                    }
+                    slot = (slot + 1) & mask;
+                }
+                hashes[slot] = hash;
+                values[slot] = record;
+                size++;
+            }
+
+            void remove(int record) {
+                int hole = hash(record) & mask;
+                while (values[hole] != record) {
+                    if (values[hole] < 0) {
+                        return;
+                    }
+                    hole = (hole + 1) & mask;
+                }
+                // backward-shift deletion, as in UuidIntMap
+                int next = hole;
+                while (true) {
+                    next = (next + 1) & mask;
+                    if (values[next] < 0) {
+                        break;
+                    }
+                    int home = hashes[next] & mask;
+                    boolean reachable = hole <= next
+                        ? hole < home && home <= next
+                        : hole < home || home <= next;
+                    if (!reachable) {
+                        hashes[hole] = hashes[next];
+                        values[hole] = values[next];
+                        hole = next;
+                    }
+                }
+                values[hole] = -1;
+                size--;
+            }
+
+            private void resize(int capacity) {
+                int[] oldHashes = hashes;
+                int[] oldValues = values;
+                hashes = new int[capacity];
+                values = filled(capacity);
+                mask = capacity - 1;
+                for (int slot = 0; slot < oldValues.length; slot++) {
+                    if (oldValues[slot] < 0) {
+                        continue;
+                    }
+                    int target = oldHashes[slot] & mask;
+                    while (values[target] >= 0) {
+                        target = (target + 1) & mask;
+                    }
+                    hashes[target] = oldHashes[slot];
+                    values[target] = oldValues[slot];
+                }
+            }
+
+            private static int[] filled(int capacity) {
+                int[] values = new int[capacity];
+                Arrays.fill(values, -1);
+                return values;
+            }
+
+            // imported placeholders hash by player, so they are never spelled out
+            private int hash(int record) {
+                int base = offset(record);
+                int length = buffer.get(base + CODE_LENGTH) & 0xFF;
+                if (length == IMPORTED_CODE) {
+                    return importedHash(msb(record), lsb(record));
+                }
+                int hash = 0x811c9dc5;
+                for (int i = 0; i < length; i++) {
+                    hash = (hash ^ (buffer.get(base + CODE + i) & 0xFF)) * 0x01000193;
+                }
+                return mix(hash);
+            }
+
+            private static int queryHash(byte[] code) {
+                UUID importedFor = importedPlayer(code);
+                if (importedFor != null) {
+                    return importedHash(
+                        importedFor.getMostSignificantBits(),
+                        importedFor.getLeastSignificantBits()
+                    );
+                }
+                int hash = 0x811c9dc5;
+                for (byte b : code) {
+                    hash = (hash ^ (b & 0xFF)) * 0x01000193;
+                }
+                return mix(hash);
+            }
+
+            private static int importedHash(long msb, long lsb) {
+                return mix((int) (msb ^ (msb >>> 32) ^ lsb ^ (lsb >>> 32)) ^ IMPORTED_CODE);
+            }
+
+            // murmur3 fmix32; FNV-1a alone leaves the low bits clustered
+            private static int mix(int hash) {
+                hash ^= hash >>> 16;
+                hash *= 0x85ebca6b;
+                hash ^= hash >>> 13;
+                hash *= 0xc2b2ae35;
+                return hash ^ (hash >>> 16);
+            }
+        }
+
+        /**
+         * Records sorted by an order column and then player, as a sorted
+         * base array plus a small unsorted delta of recent appends. Entries
+         * are not removed when a row changes; a record is live while it is
+         * still the one {@code owner} maps its player to, and dead ones are
+         * skipped by cursors and dropped when the delta is merged into the
+         * base.
+         */
+        private final class View {
+
+            private final int orderOffset;
+            private final UuidIntMap owner;
+            private int[] base = new int[0];
+            private int baseSize;
+            private int[] delta = new int[16];
+            private int deltaSize;
+            private boolean deltaSorted = true;
+
+            View(int orderOffset, UuidIntMap owner) {
+                this.orderOffset = orderOffset;
+                this.owner = owner;
+            }
+
+            void add(int record) {
+                if (deltaSize == delta.length) {
+                    delta = Arrays.copyOf(delta, deltaSize * 2);
+                }
+                delta[deltaSize++] = record;
+                deltaSorted = false;
+                if (!replaying && deltaSize > Math.max(MIN_VIEW_DELTA, baseSize / 4)) {
+                    merge();
+                }
+            }
+
+            void merge() {
+                sortDelta();
+                int[] merged = new int[baseSize + deltaSize];
+                int size = 0;
+                int i = 0;
+                int j = 0;
+                while (i < baseSize || j < deltaSize) {
+                    int next = j == deltaSize || (i < baseSize && compare(base[i], delta[j]) <= 0)
+                        ? base[i++]
+                        : delta[j++];
+                    if (live(next)) {
+                        merged[size++] = next;
+                    }
+                }
+                base = merged;
+                baseSize = size;
+                deltaSize = 0;
+                if (delta.length > MIN_VIEW_DELTA) {
+                    delta = new int[16];
+                }
+            }
+
+            /** Live records after {@code key} in ascending order; {@code null} starts at the first. */
+            Cursor ascending(Key key) {
+                sortDelta();
+                return new Cursor(
+                    this,
+                    key == null ? 0 : upperBound(base, baseSize, key),
+                    key == null ? 0 : upperBound(delta, deltaSize, key),
+                    false
+                );
+            }
+
+            /** Live records before {@code key} in descending order. */
+            Cursor descending(Key key) {
+                sortDelta();
+                return new Cursor(
+                    this,
+                    lowerBound(base, baseSize, key) - 1,
+                    lowerBound(delta, deltaSize, key) - 1,
+                    true
+                );
+            }
+
+            boolean live(int record) {
+                return owner.get(msb(record), lsb(record)) == record;
+            }
+
+            private long order(int record) {
+                return orderOffset < 0 ? 0L : buffer.getLong(offset(record) + orderOffset);
+            }
+
+            // total: equal rows of dead records fall back to the record number
+            int compare(int record, int other) {
+                int compared = Long.compare(order(record), order(other));
+                if (compared == 0) {
+                    compared = comparePlayers(record, other);
+                }
+                return compared != 0 ? compared : Integer.compare(record, other);
+            }
+
+            private int compareToKey(int record, Key key) {
+                int compared = Long.compare(order(record), key.order());
+                if (compared != 0) {
+                    return compared;
+                }
+                if (key.beforeAllPlayers()) {
+                    return 1;
+                }
+                compared = Long.compareUnsigned(msb(record), key.msb());
+                return compared != 0 ? compared : Long.compareUnsigned(lsb(record), key.lsb());
+            }
+
+            /** First index whose record sorts after {@code key}. */
+            private int upperBound(int[] records, int size, Key key) {
+                int low = 0;
+                int high = size;
+                while (low < high) {
+                    int middle = (low + high) >>> 1;
+                    if (compareToKey(records[middle], key) <= 0) {
+                        low = middle + 1;
+                    } else {
+                        high = middle;
+                    }
+                }
+                return low;
+            }
+
+            /** First index whose record does not sort before {@code key}. */
+            private int lowerBound(int[] records, int size, Key key) {
+                int low = 0;
+                int high = size;
+                while (low < high) {
+                    int middle = (low + high) >>> 1;
+                    if (compareToKey(records[middle], key) < 0) {
+                        low = middle + 1;
+                    } else {
+                        high = middle;
+                    }
+                }
+                return low;
+            }
+
+            private void sortDelta() {
+                if (deltaSorted) {
+                    return;
+                }
+                // compare keys copied out of the mapping, three reads per side otherwise
+                long[] keys = new long[deltaSize * 3];
+                int[] order = new int[deltaSize];
+                for (int i = 0; i < deltaSize; i++) {
+                    keys[i * 3] = order(delta[i]);
+                    keys[i * 3 + 1] = msb(delta[i]);
+                    keys[i * 3 + 2] = lsb(delta[i]);
+                    order[i] = i;
+                }
+                // bottom-up merge sort; appends mostly arrive in order, so sorted runs are skipped
+                int[] runs = new int[deltaSize];
+                for (int width = 1; width < deltaSize; width *= 2) {
+                    for (int low = 0; low < deltaSize - width; low += 2 * width) {
+                        int middle = low + width;
+                        int high = Math.min(low + 2 * width, deltaSize);
+                        if (compareKeys(keys, order[middle - 1], order[middle]) <= 0) {
+                            continue;
+                        }
+                        System.arraycopy(order, low, runs, low, high - low);
+                        int i = low;
+                        int j = middle;
+                        int k = low;
+                        while (i < middle && j < high) {
+                            order[k++] = compareKeys(keys, runs[i], runs[j]) <= 0 ? runs[i++] : runs[j++];
+                        }
+                        while (i < middle) {
+                            order[k++] = runs[i++];
+                        }
+                        while (j < high) {
+                            order[k++] = runs[j++];
+                        }
+                    }
+                }
+                int[] sorted = new int[delta.length];
+                for (int i = 0; i < deltaSize; i++) {
+                    sorted[i] = delta[order[i]];
+                }
+                delta = sorted;
+                deltaSorted = true;
+            }
+
+            // as compare(), on the copied keys of two delta positions
+            private int compareKeys(long[] keys, int left, int right) {
+                int compared = Long.compare(keys[left * 3], keys[right * 3]);
+                if (compared == 0) {
+                    compared = Long.compareUnsigned(keys[left * 3 + 1], keys[right * 3 + 1]);
+                }
+                if (compared == 0) {
+                    compared = Long.compareUnsigned(keys[left * 3 + 2], keys[right * 3 + 2]);
+                }
+                return compared != 0 ? compared : Integer.compare(delta[left], delta[right]);
+            }
+        }
+
+        /** Walks a {@link View}'s base and delta together; the view must not change meanwhile. */
+        final class Cursor {
+
+            private final View view;
+            private final boolean descending;
+            private int baseIndex;
+            private int deltaIndex;
+
+            private Cursor(View view, int baseIndex, int deltaIndex, boolean descending) {
+                this.view = view;
+                this.baseIndex = baseIndex;
+                this.deltaIndex = deltaIndex;
+                this.descending = descending;
+            }
+
+            /** @return the next live record, or {@code -1} */
+            int next() {
+                int step = descending ? -1 : 1;
+                while (true) {
+                    boolean hasBase = descending ? baseIndex >= 0 : baseIndex < view.baseSize;
+                    boolean hasDelta = descending ? deltaIndex >= 0 : deltaIndex < view.deltaSize;
+                    if (!hasBase && !hasDelta) {
+                        return -1;
+                    }
+                    boolean takeBase = !hasDelta;
+                    if (hasBase && hasDelta) {
+                        int compared = view.compare(view.base[baseIndex], view.delta[deltaIndex]);
+                        takeBase = descending ? compared >= 0 : compared <= 0;
+                    }
+                    int record;
+                    if (takeBase) {
+                        record = view.base[baseIndex];
+                        baseIndex += step;
+                    } else {
+                        record = view.delta[deltaIndex];
+                        deltaIndex += step;
+                    }
+                    if (view.live(record)) {
+                        return record;
+                    }
+                }
+            }
+
+            WhitelistCode row(int record) {
+                return Segment.this.row(record);
+            }
+        }
+    }
+}
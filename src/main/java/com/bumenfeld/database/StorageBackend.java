@@ -0,0 +1,69 @@
+package com.bumenfeld.database;
+
+import com.bumenfeld.metrics.MetricsRegistry;
+import com.hypixel.hytale.logger.HytaleLogger;
+import java.util.Locale;
+import java.util.Objects;
+
+/** The {@link WhitelistStore} selected by {@code storage-backend} in {@code discord.yml}. */
+public enum StorageBackend {
+    /**
+     * {@link DatabaseManager}; durable, backed up, the default. Wrapped in a
+     * {@link FallbackWhitelistStore} so codes keep working while SQLite is
+     * unavailable.
+     */
+    SQLITE,
+    /** {@link InMemoryWhitelistStore}; lost on restart, for tests and throwaway servers. */
+    MEMORY,
+    /** {@link MappedLogWhitelistStore}; a memory-mapped log next to the database, the cheapest connect path. */
+    MAPPED;
+
+    /** Parses a config value case-insensitively; {@code null} means {@link #SQLITE}. */
+    public static StorageBackend fromConfig(String value) {
+        if (value == null) {
+            return SQLITE;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException exception) {
+            throw new IllegalArgumentException(
+                "Unknown storage backend '" + value + "'; expected sqlite, memory or mapped",
+                exception
+            );
+        }
+    }
+
+    /**
+     * Creates the store for this backend. {@code databaseManager} backs
+     * {@link #SQLITE}; it keeps scheduled announcements either way.
+     */
+    public WhitelistStore open(
+        DatabaseManager databaseManager,
+        HytaleLogger logger,
+        MetricsRegistry metrics
+    ) {
+        Objects.requireNonNull(databaseManager, "databaseManager");
+        return switch (this) {
+            case SQLITE -> new FallbackWhitelistStore(
+                databaseManager,
+                databaseManager
+                    .databasePath()
+                    .resolveSibling(FallbackWhitelistStore.DEFAULT_SPOOL_NAME),
+                logger,
+                metrics
+            );
+            case MEMORY -> new InMemoryWhitelistStore();
+            case MAPPED -> new MappedLogWhitelistStore(
+                databaseManager
+                    .databasePath()
+                    .resolveSibling(MappedLogWhitelistStore.DEFAULT_LOG_NAME),
+                logger,
+                metrics
+            );
+        };
+    }
+
+    public String configName() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -2,17 +2,26 @@ package com.bumenfeld.database;
 
 import com.hypixel.hytale.logger.HytaleLogger;
 import com.hypixel.hytale.server.core.modules.accesscontrol.provider.HytaleWhitelistProvider;
+import java.nio.file.Path;
 import java.security.SecureRandom;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import com.bumenfeld.database.DatabaseManager.DatabaseException;
-import com.bumenfeld.database.DatabaseManager.WhitelistCode;
-import com.bumenfeld.util.ReflectionUtil;
+import com.bumenfeld.database.WhitelistStore.CodePage;
+import com.bumenfeld.database.WhitelistStore.PageKey;
+import com.bumenfeld.database.WhitelistStore.WhitelistCode;
+import com.bumenfeld.jfr.CodeIssuanceEvent;
+import com.bumenfeld.metrics.Counter;
+import com.bumenfeld.metrics.LatencyHistogram;
+import com.bumenfeld.metrics.MetricsRegistry;
 
 public final class WhitelistCodeService implements AutoCloseable {
 
@@ -21,67 +30,300 @@ public final class WhitelistCodeService implements AutoCloseable {
     private static final int DEFAULT_CODE_LENGTH = 6;
     private static final int MAX_GENERATION_ATTEMPTS = 32;
     private static final SecureRandom RANDOM = new SecureRandom();
+    private static final String BACKUP_DIRECTORY = "backups";
 
-    private final DatabaseManager databaseManager;
-    private final HytaleWhitelistProvider whitelistProvider;
+    private final WhitelistStore whitelistStore;
     private final HytaleLogger logger;
+    private final WhitelistWriter whitelistWriter;
+    private final WhitelistMirror whitelistMirror;
+    private final WhitelistReconciler whitelistReconciler;
+    private final CodeSweeper codeSweeper;
+    private final DatabaseBackup databaseBackup;
+    private final WhitelistTransfer whitelistTransfer;
+    // answers reconnect loops of rejected players without a store read
+    private final IssuedCodeCache codeCache;
+    // keeps "mark validated + whitelist add" and "delete + whitelist remove" from interleaving
+    private final ReentrantLock whitelistMutation = new ReentrantLock();
+    private final LatencyHistogram ensureCodeLatency;
+    private final LatencyHistogram validateCodeLatency;
+    private final Counter codesIssued;
+    private final Counter codesValidated;
+    private final Counter expiredRejected;
+    // null until configureExpiry; unvalidated codes never expire without it
+    private volatile Duration codeTtl;
+    private volatile Consumer<UUID> unlinkListener = playerUuid -> {};
 
     public WhitelistCodeService(
         DatabaseManager databaseManager,
         HytaleWhitelistProvider whitelistProvider,
         HytaleLogger logger
     ) {
-        this.databaseManager = Objects.requireNonNull(
+        this(databaseManager, whitelistProvider, logger, new MetricsRegistry());
+    }
+
+    public WhitelistCodeService(
+        DatabaseManager databaseManager,
+        HytaleWhitelistProvider whitelistProvider,
+        HytaleLogger logger,
+        MetricsRegistry metrics
+    ) {
+        this(
             databaseManager,
-            "databaseManager"
-        );
-        this.whitelistProvider = Objects.requireNonNull(
+            databaseManager.databasePath().getParent(),
             whitelistProvider,
-            "whitelistProvider"
+            logger,
+            metrics
+        );
+    }
+
+    /**
+     * @param dataDirectory where backups, imports and exports go, next to the
+     *     SQLite file when that is the store
+     */
+    public WhitelistCodeService(
+        WhitelistStore whitelistStore,
+        Path dataDirectory,
+        HytaleWhitelistProvider whitelistProvider,
+        HytaleLogger logger,
+        MetricsRegistry metrics
+    ) {
+        this.whitelistStore = Objects.requireNonNull(
+            whitelistStore,
+            "whitelistStore"
         );
+        Objects.requireNonNull(dataDirectory, "dataDirectory");
+        Objects.requireNonNull(whitelistProvider, "whitelistProvider");
         this.logger = Objects.requireNonNull(logger, "logger");
+        Objects.requireNonNull(metrics, "metrics");
+        this.whitelistWriter = new WhitelistWriter(whitelistProvider, logger, metrics);
+        this.whitelistMirror = new WhitelistMirror(
+            whitelistProvider,
+            whitelistWriter::pendingChanges,
+            logger,
+            metrics
+        );
+        this.whitelistReconciler = new WhitelistReconciler(
+            whitelistStore,
+            whitelistMirror,
+            whitelistWriter,
+            whitelistMutation,
+            playerUuid -> unlinkListener.accept(playerUuid),
+            logger,
+            metrics
+        );
+        this.whitelistTransfer = new WhitelistTransfer(
+            whitelistStore,
+            dataDirectory,
+            whitelistMirror,
+            whitelistWriter,
+            whitelistMutation,
+            logger,
+            metrics
+        );
+        this.codeSweeper = new CodeSweeper(whitelistStore, logger, metrics);
+        this.databaseBackup = new DatabaseBackup(
+            whitelistStore,
+            dataDirectory.resolve(BACKUP_DIRECTORY),
+            logger,
+            metrics
+        );
+        this.codeCache = new IssuedCodeCache(metrics);
+        this.ensureCodeLatency = metrics.histogram(
+            "ensure_code",
+            "WhitelistCodeService.ensureCode latency"
+        );
+        this.validateCodeLatency = metrics.histogram(
+            "validate_code",
+            "WhitelistCodeService.validateCode latency"
+        );
+        this.codesIssued = metrics.counter(
+            "codes_issued",
+            "Whitelist codes generated"
+        );
+        this.codesValidated = metrics.counter(
+            "codes_validated",
+            "Whitelist codes successfully validated"
+        );
+        this.expiredRejected = metrics.counter(
+            "codes_expired_rejected",
+            "Validation attempts refused because the code had expired"
+        );
     }
 
     public void initialize() {
-        databaseManager.initialize();
+        whitelistStore.initialize();
+        whitelistWriter.start();
+        whitelistMirror.start();
+        // repair drift left by a crash before the first player connects
+        try {
+            whitelistReconciler.run(false);
+        } catch (RuntimeException exception) {
+            // e.g. the store came up degraded; the scheduled run catches up
+            logger
+                .atWarning()
+                .log("Startup whitelist reconciliation skipped: %s", exception.getMessage());
+        }
+        whitelistReconciler.start();
+        whitelistTransfer.start();
+    }
+
+    /**
+     * Sets how long an unvalidated code stays usable and how long validated
+     * codes stay in the hot table, then starts the {@link CodeSweeper}.
+     * {@code null} disables either limit.
+     */
+    public void configureExpiry(Duration codeTtl, Duration validatedRetention) {
+        this.codeTtl = codeTtl;
+        codeSweeper.start(codeTtl, validatedRetention);
+    }
+
+    /**
+     * Starts {@link DatabaseBackup}: a snapshot every {@code interval}
+     * ({@code null} for on-demand only), keeping the newest {@code retention}.
+     */
+    public void configureBackups(Duration interval, int retention) {
+        databaseBackup.start(interval, retention);
+    }
+
+    /**
+     * Called, outside all locks, with each player whose code is revoked or
+     * whose whitelist entry the reconciler removed for lacking one, so state
+     * tied to the validation (the Discord link) goes with it.
+     */
+    public void setUnlinkListener(Consumer<UUID> listener) {
+        this.unlinkListener = Objects.requireNonNull(listener, "listener");
+    }
+
+    /** Takes a verified database snapshot on the backup thread. */
+    public CompletableFuture<DatabaseBackup.Snapshot> backupDatabase() {
+        return databaseBackup.requestBackup();
+    }
+
+    /**
+     * Reconciles {@code whitelist_codes} with the Hytale whitelist on the
+     * reconciler thread; see {@link WhitelistReconciler}.
+     */
+    public CompletableFuture<WhitelistReconciler.Report> reconcileWhitelist(
+        boolean removeUnlinked
+    ) {
+        return whitelistReconciler.requestRun(removeUnlinked);
     }
 
     public String ensureCode(UUID playerUuid) {
         Objects.requireNonNull(playerUuid, "playerUuid");
-        Optional<WhitelistCode> existing = databaseManager.findByPlayer(
+        long startedAt = System.nanoTime();
+        CodeIssuanceEvent trace = CodeIssuanceEvent.start();
+        try {
+            return ensureCodeInternal(playerUuid, trace);
+        } finally {
+            ensureCodeLatency.recordSince(startedAt);
+        }
+    }
+
+    private String ensureCodeInternal(UUID playerUuid, CodeIssuanceEvent trace) {
+        Instant expiredBefore = expiryCutoff();
+        String cached = codeCache.get(playerUuid, expiredBefore);
+        if (cached != null) {
+            trace.finish(playerUuid, true);
+            return cached;
+        }
+
+        long cacheVersion = codeCache.version();
+        Optional<WhitelistCode> existing = whitelistStore.findByPlayer(
             playerUuid
         );
-        if (existing.isPresent() && !existing.get().isValidated()) {
+        if (
+            existing.isPresent() &&
+            !existing.get().isValidated() &&
+            !isExpired(existing.get(), expiredBefore)
+        ) {
+            codeCache.put(
+                playerUuid,
+                existing.get().whitelistCode(),
+                existing.get().createdAt(),
+                cacheVersion
+            );
+            trace.finish(playerUuid, true);
             return existing.get().whitelistCode();
         }
 
-        String code = generateUniqueCode();
-        databaseManager.upsertCode(playerUuid, code);
-        logger
-            .atInfo()
-            .log("Issued whitelist code %s for player %s", code, playerUuid);
-        return code;
+        // no later than the stored createdAt, so the cached copy never outlives the code
+        Instant issuedAt = Instant.now();
+        for (int attempt = 0; attempt < MAX_GENERATION_ATTEMPTS; attempt++) {
+            String candidate = generateUniqueCode();
+            Optional<String> stored = whitelistStore.issueCode(
+                playerUuid,
+                candidate,
+                expiredBefore
+            );
+            if (stored.isEmpty()) {
+                // another player claimed the same code between the check and the insert
+                continue;
+            }
+            String code = stored.get();
+            boolean reused = !code.equals(candidate);
+            trace.finish(playerUuid, reused);
+            if (reused) {
+                // issued concurrently; only the row knows when, and this race is rare
+                whitelistStore
+                    .findByPlayer(playerUuid)
+                    .filter(current -> !current.isValidated() && current.whitelistCode().equals(code))
+                    .ifPresent(current ->
+                        codeCache.put(playerUuid, code, current.createdAt(), cacheVersion)
+                    );
+            } else {
+                codeCache.put(playerUuid, code, issuedAt, cacheVersion);
+                codesIssued.increment();
+                logger
+                    .atInfo()
+                    .log("Issued whitelist code %s for player %s", code, playerUuid);
+            }
+            return code;
+        }
+        throw new DatabaseException(
+            "Unable to generate unique whitelist code",
+            null
+        );
     }
 
     public Optional<WhitelistCode> findByPlayer(UUID playerUuid) {
         Objects.requireNonNull(playerUuid, "playerUuid");
-        return databaseManager.findByPlayer(playerUuid);
+        return whitelistStore.findByPlayer(playerUuid);
     }
 
     public Optional<WhitelistCode> findByCode(String whitelistCode) {
         Objects.requireNonNull(whitelistCode, "whitelistCode");
-        return databaseManager.findByCode(normalizeCode(whitelistCode));
+        return whitelistStore.findByCode(normalizeCode(whitelistCode));
     }
 
     public List<WhitelistCode> listActiveCodes() {
-        return databaseManager.listActiveCodes();
+        return whitelistStore.listActiveCodes();
+    }
+
+    /** @see WhitelistStore#listActiveCodesAfter */
+    public CodePage listActiveCodesAfter(PageKey after, int limit) {
+        return whitelistStore.listActiveCodesAfter(after, limit);
+    }
+
+    /** @see WhitelistStore#listActiveCodesBefore */
+    public CodePage listActiveCodesBefore(PageKey before, int limit) {
+        return whitelistStore.listActiveCodesBefore(before, limit);
     }
 
     public ValidateResult validateCode(String whitelistCode) {
         Objects.requireNonNull(whitelistCode, "whitelistCode");
+        long startedAt = System.nanoTime();
+        try {
+            return validateCodeInternal(whitelistCode);
+        } finally {
+            validateCodeLatency.recordSince(startedAt);
+        }
+    }
+
+    private ValidateResult validateCodeInternal(String whitelistCode) {
         String normalized = normalizeCode(whitelistCode);
 
-        Optional<WhitelistCode> lookup = databaseManager.findByCode(normalized);
+        Optional<WhitelistCode> lookup = whitelistStore.findByCode(normalized);
         if (lookup.isEmpty()) {
             return ValidateResult.notFound();
         }
@@ -92,20 +334,33 @@ public final class WhitelistCodeService implements AutoCloseable {
         if (record.isValidated()) {
             return ValidateResult.alreadyValidated(playerUuid);
         }
-
-        if (!databaseManager.markValidated(playerUuid, Instant.now())) {
-            return ValidateResult.error(
-                playerUuid,
-                "Unable to mark whitelist code as validated"
-            );
+        if (isExpired(record, expiryCutoff())) {
+            // the sweeper deletes it later; reconnecting issues a new code
+            expiredRejected.increment();
+            return ValidateResult.notFound();
         }
 
         boolean added;
+        whitelistMutation.lock();
         try {
-            Set<UUID> whitelist = whitelistProvider.getList();
-            added = whitelist.add(playerUuid);
-        } catch (UnsupportedOperationException exception) {
-            added = addToWhitelistBackingSet(playerUuid, exception);
+            boolean marked = whitelistStore.markValidated(playerUuid, normalized, Instant.now());
+            // either way the cached code is used up or stale
+            codeCache.invalidate(playerUuid);
+            if (!marked) {
+                // lost a race: validated concurrently, or revoked/reissued since the lookup
+                return whitelistStore
+                    .findByCode(normalized)
+                    .filter(WhitelistCode::isValidated)
+                    .map(current -> ValidateResult.alreadyValidated(playerUuid))
+                    .orElseGet(ValidateResult::notFound);
+            }
+
+            added = !whitelistMirror.contains(playerUuid);
+            // applied to the provider and saved by the writer's next batch
+            whitelistWriter.add(playerUuid);
+            whitelistMirror.added(playerUuid);
+        } finally {
+            whitelistMutation.unlock();
         }
 
         logger
@@ -117,14 +372,27 @@ public final class WhitelistCodeService implements AutoCloseable {
                 !added
             );
 
+        codesValidated.increment();
         return ValidateResult.success(playerUuid, added);
     }
 
     public boolean revoke(UUID playerUuid, boolean removeFromWhitelist) {
         Objects.requireNonNull(playerUuid, "playerUuid");
-        boolean deleted = databaseManager.delete(playerUuid);
+        boolean deleted;
+        whitelistMutation.lock();
+        try {
+            deleted = whitelistStore.delete(playerUuid);
+            codeCache.invalidate(playerUuid);
+            if (deleted && removeFromWhitelist) {
+                removeFromWhitelist(playerUuid);
+            }
+        } finally {
+            whitelistMutation.unlock();
+        }
+        if (deleted) {
+            unlinkListener.accept(playerUuid);
+        }
         if (deleted && removeFromWhitelist) {
-            removeFromWhitelist(playerUuid);
             logger
                 .atInfo()
                 .log("Removed %s from whitelist and cleared code", playerUuid);
@@ -139,87 +407,45 @@ public final class WhitelistCodeService implements AutoCloseable {
         return deleted;
     }
 
+    /** Answered from the {@link WhitelistMirror}; safe to call on the connect path. */
     public boolean isWhitelisted(UUID playerUuid) {
-        return whitelistProvider.getList().contains(playerUuid);
+        return whitelistMirror.contains(playerUuid);
     }
 
-    private boolean addToWhitelistBackingSet(
-        UUID playerUuid,
-        UnsupportedOperationException cause
-    ) {
-        Set<UUID> mutableSet = resolveMutableWhitelistSet();
-        if (mutableSet == null) {
-            throw new IllegalStateException(
-                "Whitelist provider returned an unmodifiable set and no mutable backing field could be resolved",
-                cause
-            );
-        }
-
-        logger
-            .atWarning()
-            .log(
-                "Whitelist provider returned an unmodifiable whitelist set; mutating backing set directly."
-            );
-        return mutableSet.add(playerUuid);
+    public WhitelistMirror whitelistMirror() {
+        return whitelistMirror;
     }
 
-    private void removeFromWhitelist(UUID playerUuid) {
-        try {
-            whitelistProvider.getList().remove(playerUuid);
-        } catch (UnsupportedOperationException exception) {
-            Set<UUID> mutableSet = resolveMutableWhitelistSet();
-            if (mutableSet == null) {
-                throw new IllegalStateException(
-                    "Whitelist provider returned an unmodifiable set and no mutable backing field could be resolved",
-                    exception
-                );
-            }
-
-            logger
-                .atWarning()
-                .log(
-                    "Whitelist provider returned an unmodifiable whitelist set; mutating backing set directly."
-                );
-            mutableSet.remove(playerUuid);
-        }
+    /** Bulk import and export; see {@link WhitelistTransfer}. */
+    public WhitelistTransfer whitelistTransfer() {
+        return whitelistTransfer;
     }
 
-    @SuppressWarnings("unchecked")
-    private Set<UUID> resolveMutableWhitelistSet() {
-        String[] candidates = {
-            "whitelist",
-            "mutableWhitelist",
-            "mutableList",
-            "list",
-            "backingWhitelist",
-        };
-
-        for (String field : candidates) {
-            Set<?> candidate = ReflectionUtil.getPublic(
-                Set.class,
-                whitelistProvider,
-                field
-            );
-            if (candidate != null) {
-                try {
-                    return (Set<UUID>) candidate;
-                } catch (ClassCastException ignored) {
-                    // continue searching
-                }
-            }
-        }
-        return null;
+    private void removeFromWhitelist(UUID playerUuid) {
+        whitelistWriter.remove(playerUuid);
+        whitelistMirror.removed(playerUuid);
     }
 
     @Override
     public void close() throws DatabaseException {
-        databaseManager.close();
+        whitelistTransfer.close();
+        databaseBackup.close();
+        codeSweeper.close();
+        whitelistReconciler.close();
+        whitelistMirror.close();
+        whitelistWriter.close();
+        try {
+            whitelistStore.close();
+        } finally {
+            // after the close, so a lookup that read the open store cannot repopulate it
+            codeCache.clear();
+        }
     }
 
-    private String generateUniqueCode() {
+    String generateUniqueCode() {
         for (int attempt = 0; attempt < MAX_GENERATION_ATTEMPTS; attempt++) {
             String candidate = generateRandomCode(DEFAULT_CODE_LENGTH);
-            if (databaseManager.findByCode(candidate).isEmpty()) {
+            if (whitelistStore.findByCode(candidate).isEmpty()) {
                 return candidate;
             }
         }
@@ -229,6 +455,15 @@ public final class WhitelistCodeService implements AutoCloseable {
         );
     }
 
+    private Instant expiryCutoff() {
+        Duration ttl = codeTtl;
+        return ttl == null ? null : Instant.now().minus(ttl);
+    }
+
+    private static boolean isExpired(WhitelistCode record, Instant expiredBefore) {
+        return expiredBefore != null && record.createdAt().isBefore(expiredBefore);
+    }
+
     private static String normalizeCode(String value) {
         return value.trim().toUpperCase(Locale.ROOT);
     }
@@ -0,0 +1,235 @@
+package com.bumenfeld.database;
+
+import com.bumenfeld.metrics.Counter;
+import com.bumenfeld.metrics.LatencyHistogram;
+import com.bumenfeld.metrics.MetricsRegistry;
+import com.bumenfeld.util.UuidHashSet;
+import com.hypixel.hytale.logger.HytaleLogger;
+import com.hypixel.hytale.server.core.modules.accesscontrol.provider.HytaleWhitelistProvider;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Plugin-owned copy of the Hytale whitelist for the connect path. Reads go to
+ * a published {@link UuidHashSet} snapshot without locking; the provider's own
+ * set, whose synchronization we do not control, is only touched by the
+ * periodic reconciliation.
+ *
+ * <p>{@link WhitelistCodeService} reports its own additions and removals as it
+ * queues them on the {@link WhitelistWriter}. Changes made behind our back (console commands,
+ * other plugins) are picked up by {@link #reconcile()} within
+ * {@link #RECONCILE_INTERVAL_SECONDS}.
+ */
+public final class WhitelistMirror implements AutoCloseable {
+
+    private static final long RECONCILE_INTERVAL_SECONDS = 30;
+    private static final int SNAPSHOT_ATTEMPTS = 3;
+
+    private final HytaleWhitelistProvider whitelistProvider;
+    private final Supplier<Map<UUID, Boolean>> pendingChanges;
+    private final HytaleLogger logger;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Counter drift;
+    private final LatencyHistogram reconcileLatency;
+
+    private volatile UuidHashSet snapshot = UuidHashSet.empty();
+    private ScheduledExecutorService reconciler;
+
+    public WhitelistMirror(
+        HytaleWhitelistProvider whitelistProvider,
+        HytaleLogger logger,
+        MetricsRegistry metrics
+    ) {
+        this(whitelistProvider, Map::of, logger, metrics);
+    }
+
+    /**
+     * @param pendingChanges changes queued for the provider but possibly not
+     *     applied yet ({@code true} = add); overlaid on every reconciliation
+     *     only, lookups rely on {@link #added}/{@link #removed}
+     */
+    public WhitelistMirror(
+        HytaleWhitelistProvider whitelistProvider,
+        Supplier<Map<UUID, Boolean>> pendingChanges,
+        HytaleLogger logger,
+        MetricsRegistry metrics
+    ) {
+        this.whitelistProvider = Objects.requireNonNull(
+            whitelistProvider,
+            "whitelistProvider"
+        );
+        this.pendingChanges = Objects.requireNonNull(pendingChanges, "pendingChanges");
+        this.logger = Objects.requireNonNull(logger, "logger");
+        Objects.requireNonNull(metrics, "metrics");
+        this.drift = metrics.counter(
+            "whitelist_mirror_drift",
+            "Entries the mirror disagreed with the provider on"
+        );
+        this.reconcileLatency = metrics.histogram(
+            "whitelist_reconcile",
+            "WhitelistMirror.reconcile latency"
+        );
+        metrics.gauge(
+            "whitelist_mirror_size",
+            "Players in the whitelist mirror",
+            () -> snapshot.size()
+        );
+    }
+
+    /** Loads the mirror and keeps reconciling it in the background until {@link #close()}. */
+    public synchronized void start() {
+        if (reconciler != null) {
+            return;
+        }
+        reconcile();
+        reconciler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "discord-companion-whitelist-mirror");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reconciler.scheduleWithFixedDelay(
+            this::reconcileQuietly,
+            RECONCILE_INTERVAL_SECONDS,
+            RECONCILE_INTERVAL_SECONDS,
+            TimeUnit.SECONDS
+        );
+    }
+
+    /**
+     * Lock-free. Queued changes are already in the snapshot, since callers
+     * report them as they enqueue; a player whitelisted outside the plugin is
+     * admitted once {@link #reconcile()} has seen them.
+     */
+    public boolean contains(UUID playerUuid) {
+        return snapshot.contains(playerUuid);
+    }
+
+    /** Records a provider addition made or queued by the caller. */
+    public void added(UUID playerUuid) {
+        writeLock.lock();
+        try {
+            snapshot = snapshot.with(playerUuid);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** Records a batch of additions with a single copy of the table. */
+    public void addedAll(Collection<UUID> playerUuids) {
+        writeLock.lock();
+        try {
+            snapshot = snapshot.withAll(playerUuids);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** Records a provider removal made or queued by the caller. */
+    public void removed(UUID playerUuid) {
+        writeLock.lock();
+        try {
+            snapshot = snapshot.without(playerUuid);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public int size() {
+        return snapshot.size();
+    }
+
+    /** Visits the current snapshot; changes published meanwhile are not seen. */
+    public void forEach(Consumer<UUID> action) {
+        snapshot.forEach(action);
+    }
+
+    /**
+     * Rebuilds the mirror from the provider plus the writer's queued changes.
+     * Holding the write lock while copying means an {@link #added}/
+     * {@link #removed} racing the copy is applied on top of the new snapshot
+     * rather than lost.
+     */
+    public void reconcile() {
+        long startedAt = System.nanoTime();
+        writeLock.lock();
+        try {
+            Set<UUID> current = new HashSet<>(copyProviderList());
+            pendingChanges.get().forEach((playerUuid, add) -> {
+                if (add) {
+                    current.add(playerUuid);
+                } else {
+                    current.remove(playerUuid);
+                }
+            });
+            UuidHashSet previous = snapshot;
+            UuidHashSet rebuilt = UuidHashSet.of(current);
+            int appeared = 0;
+            for (UUID playerUuid : current) {
+                if (!previous.contains(playerUuid)) {
+                    appeared++;
+                }
+            }
+            int disappeared = previous.size() - (rebuilt.size() - appeared);
+            snapshot = rebuilt;
+            if (appeared + disappeared > 0 && previous.size() > 0) {
+                drift.add(appeared + disappeared);
+                logger
+                    .atInfo()
+                    .log(
+                        "Whitelist mirror reconciled: %d added, %d removed outside the plugin",
+                        appeared,
+                        disappeared
+                    );
+            }
+        } finally {
+            writeLock.unlock();
+            reconcileLatency.recordSince(startedAt);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (reconciler == null) {
+            return;
+        }
+        reconciler.shutdownNow();
+        reconciler = null;
+    }
+
+    private void reconcileQuietly() {
+        try {
+            reconcile();
+        } catch (RuntimeException exception) {
+            logger
+                .atWarning()
+                .log("Whitelist mirror reconciliation failed: %s", exception.getMessage());
+        }
+    }
+
+    private List<UUID> copyProviderList() {
+        Set<UUID> list = whitelistProvider.getList();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return new ArrayList<>(list);
+            } catch (ConcurrentModificationException exception) {
+                // the provider is not ours to lock; retry a mutation-free copy
+                if (attempt >= SNAPSHOT_ATTEMPTS) {
+                    throw exception;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package com.bumenfeld.database;
+
+import com.bumenfeld.metrics.Counter;
+import com.bumenfeld.metrics.LatencyHistogram;
+import com.bumenfeld.metrics.MetricsRegistry;
+import com.hypixel.hytale.logger.HytaleLogger;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Compares {@code whitelist_codes} with the Hytale whitelist in both
+ * directions and repairs the drift crashes and manual edits leave behind.
+ *
+ * <ul>
+ *   <li>Validated rows missing from the whitelist are re-added through the
+ *       {@link WhitelistWriter}, {@link #REPAIR_BATCH} at a time.</li>
+ *   <li>Whitelist entries without a validated row are reported. They may
+ *       have been added by staff outside Discord, so they are only removed
+ *       when an admin asks for it.</li>
+ * </ul>
+ *
+ * Rows are streamed a page at a time and the whitelist is checked in chunks,
+ * so a run needs a fixed amount of memory regardless of table size. Runs
+ * every {@link #INTERVAL_MINUTES} minutes once started and on demand through
+ * {@link #requestRun(boolean)}.
+ */
+public final class WhitelistReconciler implements AutoCloseable {
+
+    private static final long INTERVAL_MINUTES = 15;
+    private static final int PAGE_SIZE = 500;
+    private static final int REPAIR_BATCH = 500;
+    private static final int SAMPLE_SIZE = 10;
+
+    private final WhitelistStore whitelistStore;
+    private final WhitelistMirror whitelistMirror;
+    private final WhitelistWriter whitelistWriter;
+    private final ReentrantLock whitelistMutation;
+    private final Consumer<UUID> unlinkListener;
+    private final HytaleLogger logger;
+    // scheduled and on-demand runs never overlap
+    private final ReentrantLock runLock = new ReentrantLock();
+    private final LatencyHistogram runLatency;
+    private final Counter missingRepaired;
+    private final Counter unlinkedFound;
+
+    private ScheduledExecutorService runner;
+
+    public WhitelistReconciler(
+        WhitelistStore whitelistStore,
+        WhitelistMirror whitelistMirror,
+        WhitelistWriter whitelistWriter,
+        ReentrantLock whitelistMutation,
+        Consumer<UUID> unlinkListener,
+        HytaleLogger logger,
+        MetricsRegistry metrics
+    ) {
+        this.whitelistStore = Objects.requireNonNull(
+            whitelistStore,
+            "whitelistStore"
+        );
+        this.whitelistMirror = Objects.requireNonNull(
+            whitelistMirror,
+            "whitelistMirror"
+        );
+        this.whitelistWriter = Objects.requireNonNull(
+            whitelistWriter,
+            "whitelistWriter"
+        );
+        this.whitelistMutation = Objects.requireNonNull(
+            whitelistMutation,
+            "whitelistMutation"
+        );
+        this.unlinkListener = Objects.requireNonNull(unlinkListener, "unlinkListener");
+        this.logger = Objects.requireNonNull(logger, "logger");
+        Objects.requireNonNull(metrics, "metrics");
+        this.runLatency = metrics.histogram(
+            "whitelist_db_reconcile",
+            "WhitelistReconciler.run latency"
+        );
+        this.missingRepaired = metrics.counter(
+            "whitelist_missing_repaired",
+            "Validated players re-added to the whitelist by reconciliation"
+        );
+        this.unlinkedFound = metrics.counter(
+            "whitelist_unlinked_found",
+            "Whitelist entries without a validated code seen by reconciliation"
+        );
+    }
+
+    public synchronized void start() {
+        if (runner != null) {
+            return;
+        }
+        runner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "discord-companion-whitelist-reconciler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        runner.scheduleWithFixedDelay(
+            this::runQuietly,
+            INTERVAL_MINUTES,
+            INTERVAL_MINUTES,
+            TimeUnit.MINUTES
+        );
+    }
+
+    /** Queues a run on the reconciler thread, e.g. for the admin command. */
+    public synchronized CompletableFuture<Report> requestRun(boolean removeUnlinked) {
+        if (runner == null) {
+            return CompletableFuture.failedFuture(
+                new IllegalStateException("Whitelist reconciler is not running")
+            );
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> run(removeUnlinked), runner);
+        } catch (RejectedExecutionException exception) {
+            return CompletableFuture.failedFuture(exception);
+        }
+    }
+
+    /** Runs one reconciliation on the calling thread. */
+    public Report run(boolean removeUnlinked) {
+        runLock.lock();
+        long startedAt = System.nanoTime();
+        try {
+            // bring the mirror in line with the provider so both passes compare against it
+            whitelistMirror.reconcile();
+            Report report = compare(removeUnlinked, startedAt);
+            if (report.hasDrift()) {
+                logger
+                    .atInfo()
+                    .log(
+                        "Whitelist reconciliation: %d validated rows, %d whitelist entries, %d missing (%d re-added), %d without a validated code (%d removed)",
+                        report.validatedRows(),
+                        report.whitelistEntries(),
+                        report.missingFromWhitelist(),
+                        report.missingRepaired(),
+                        report.unlinkedEntries(),
+                        report.unlinkedRemoved()
+                    );
+            }
+            return report;
+        } finally {
+            runLock.unlock();
+            runLatency.recordSince(startedAt);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (runner == null) {
+            return;
+        }
+        runner.shutdownNow();
+        runner = null;
+    }
+
+    private Report compare(boolean removeUnlinked, long startedAt) {
+        // database -> whitelist
+        List<UUID> missingSample = new ArrayList<>();
+        List<UUID> repairs = new ArrayList<>(REPAIR_BATCH);
+        int validatedRows = 0;
+        int repaired = 0;
+        int missing = 0;
+        UUID after = null;
+        while (true) {
+            List<UUID> page = new ArrayList<>(PAGE_SIZE);
+            int streamed = whitelistStore.streamValidatedPlayers(after, PAGE_SIZE, page::add);
+            for (UUID playerUuid : page) {
+                if (whitelistMirror.contains(playerUuid)) {
+                    continue;
+                }
+                missing++;
+                sample(missingSample, playerUuid);
+                repairs.add(playerUuid);
+                if (repairs.size() >= REPAIR_BATCH) {
+                    repaired += repairMissing(repairs);
+                }
+            }
+            validatedRows += streamed;
+            if (streamed < PAGE_SIZE) {
+                break;
+            }
+            after = page.get(page.size() - 1);
+        }
+        repaired += repairMissing(repairs);
+
+        // whitelist -> database, over the mirror snapshot taken above
+        UnlinkedScan unlinked = new UnlinkedScan(removeUnlinked);
+        whitelistMirror.forEach(unlinked::accept);
+        unlinked.finish();
+
+        return new Report(
+            validatedRows,
+            unlinked.entries,
+            missing,
+            repaired,
+            unlinked.count,
+            unlinked.removed,
+            List.copyOf(missingSample),
+            List.copyOf(unlinked.sample),
+            Duration.ofNanos(System.nanoTime() - startedAt)
+        );
+    }
+
+    /** @return how many of {@code repairs} were re-added */
+    private int repairMissing(List<UUID> repairs) {
+        if (repairs.isEmpty()) {
+            return 0;
+        }
+        whitelistMutation.lock();
+        try {
+            // a revoke since the page was read must not be undone
+            List<UUID> stillValidated = new ArrayList<>(whitelistStore.filterValidated(repairs));
+            whitelistWriter.addAll(stillValidated);
+            whitelistMirror.addedAll(stillValidated);
+            missingRepaired.add(stillValidated.size());
+            return stillValidated.size();
+        } finally {
+            whitelistMutation.unlock();
+            repairs.clear();
+        }
+    }
+
+    private static void sample(List<UUID> sample, UUID playerUuid) {
+        if (sample.size() < SAMPLE_SIZE) {
+            sample.add(playerUuid);
+        }
+    }
+
+    private void runQuietly() {
+        try {
+            run(false);
+        } catch (RuntimeException exception) {
+            logger
+                .atWarning()
+                .log("Whitelist reconciliation failed: %s", exception.getMessage());
+        }
+    }
+
+    /** Checks whitelist entries against the database one chunk at a time. */
+    private final class UnlinkedScan {
+
+        private final boolean remove;
+        private final List<UUID> chunk = new ArrayList<>(PAGE_SIZE);
+        private final List<UUID> sample = new ArrayList<>();
+        private int entries;
+        private int count;
+        private int removed;
+
+        private UnlinkedScan(boolean remove) {
+            this.remove = remove;
+        }
+
+        void accept(UUID playerUuid) {
+            entries++;
+            chunk.add(playerUuid);
+            if (chunk.size() >= PAGE_SIZE) {
+                checkChunk();
+            }
+        }
+
+        void finish() {
+            checkChunk();
+        }
+
+        private void checkChunk() {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            Set<UUID> validated = whitelistStore.filterValidated(chunk);
+            List<UUID> unlinked = new ArrayList<>();
+            for (UUID playerUuid : chunk) {
+                if (!validated.contains(playerUuid)) {
+                    unlinked.add(playerUuid);
+                    sample(sample, playerUuid);
+                }
+            }
+            count += unlinked.size();
+            unlinkedFound.add(unlinked.size());
+            chunk.clear();
+            if (remove && !unlinked.isEmpty()) {
+                removeUnlinked(unlinked);
+            }
+        }
+
+        private void removeUnlinked(List<UUID> candidates) {
+            List<UUID> removedNow = new ArrayList<>(candidates.size());
+            whitelistMutation.lock();
+            try {
+                // skip anyone who validated a code since the chunk was checked
+                Set<UUID> validatedSince = whitelistStore.filterValidated(candidates);
+                for (UUID playerUuid : candidates) {
+                    if (!validatedSince.contains(playerUuid)) {
+                        whitelistWriter.remove(playerUuid);
+                        whitelistMirror.removed(playerUuid);
+                        removedNow.add(playerUuid);
+                    }
+                }
+            } finally {
+                whitelistMutation.unlock();
+            }
+            removed += removedNow.size();
+            removedNow.forEach(unlinkListener);
+        }
+    }
+
+    public record Report(
+        int validatedRows,
+        int whitelistEntries,
+        int missingFromWhitelist,
+        int missingRepaired,
+        int unlinkedEntries,
+        int unlinkedRemoved,
+        List<UUID> missingSample,
+        List<UUID> unlinkedSample,
+        Duration took
+    ) {
+        public boolean hasDrift() {
+            return missingFromWhitelist > 0 || unlinkedEntries > 0;
+        }
+    }
+}
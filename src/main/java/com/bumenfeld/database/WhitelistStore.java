@@ -0,0 +1,252 @@
+package com.bumenfeld.database;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Storage for whitelist codes behind {@link WhitelistCodeService} and its
+ * background components. {@link DatabaseManager} is the SQLite
+ * implementation, {@link MappedLogWhitelistStore} a memory-mapped log and
+ * {@link InMemoryWhitelistStore} keeps everything on the heap;
+ * {@code storage-backend} in {@code discord.yml} picks one.
+ * {@link FallbackWhitelistStore} covers for SQLite while it is unavailable.
+ *
+ * <p>Implementations are thread-safe, and every method except
+ * {@link #initialize()} and {@link #close()} throws
+ * {@link IllegalStateException} while the store is not initialized.
+ * Timestamps are kept at millisecond precision. Player UUIDs are ordered by
+ * their string form, the order SQLite compares them in.
+ */
+public interface WhitelistStore extends AutoCloseable {
+
+    /** Placeholder code of rows created by {@link #importValidated}; lower case so no normalized input matches it. */
+    String IMPORTED_CODE_PREFIX = "imported:";
+
+    /** Order of {@link PageKey}s, and so of active codes: oldest first, ties broken by player. */
+    Comparator<PageKey> PAGE_ORDER = Comparator
+        .comparingLong(PageKey::createdAtMillis)
+        .thenComparing(PageKey::playerUuid);
+
+    void initialize();
+
+    /** Stores {@code whitelistCode} as the player's unvalidated code, replacing any row they had. */
+    void upsertCode(UUID playerUuid, String whitelistCode);
+
+    /**
+     * Stores {@code whitelistCode} for the player unless they already hold an
+     * unvalidated code, and returns whichever code is stored afterwards.
+     * Returns empty when {@code whitelistCode} belongs to another player.
+     */
+    default Optional<String> issueCode(UUID playerUuid, String whitelistCode) {
+        return issueCode(playerUuid, whitelistCode, null);
+    }
+
+    /**
+     * As {@link #issueCode(UUID, String)}, but an unvalidated code created
+     * before {@code expiredBefore} is replaced as well; {@code null} keeps
+     * every unvalidated code.
+     */
+    Optional<String> issueCode(UUID playerUuid, String whitelistCode, Instant expiredBefore);
+
+    Optional<WhitelistCode> findByPlayer(UUID playerUuid);
+
+    Optional<WhitelistCode> findByCode(String whitelistCode);
+
+    /**
+     * Marks the player's row validated, but only while it still holds
+     * {@code whitelistCode}; a code replaced in the meantime does not count.
+     * {@code null} means now.
+     */
+    boolean markValidated(UUID playerUuid, String whitelistCode, Instant validatedAt);
+
+    /** Removes the player's code, archived or not. */
+    boolean delete(UUID playerUuid);
+
+    /**
+     * Up to {@code limit} unvalidated codes following {@code after}, oldest
+     * first; {@code null} starts at the oldest code.
+     */
+    CodePage listActiveCodesAfter(PageKey after, int limit);
+
+    /**
+     * Up to {@code limit} unvalidated codes preceding {@code before}, still
+     * returned oldest first; {@link CodePage#hasMore()} tells whether even
+     * older codes exist.
+     */
+    CodePage listActiveCodesBefore(PageKey before, int limit);
+
+    /**
+     * Hands every unvalidated code to {@code sink}, oldest first, one page
+     * at a time. Codes added behind the cursor meanwhile are not visited.
+     *
+     * @return the number of codes streamed
+     */
+    default int streamActiveCodes(Consumer<WhitelistCode> sink) {
+        Objects.requireNonNull(sink, "sink");
+        int streamed = 0;
+        PageKey after = null;
+        while (true) {
+            CodePage page = listActiveCodesAfter(after, 500);
+            page.codes().forEach(sink);
+            streamed += page.codes().size();
+            if (!page.hasMore()) {
+                return streamed;
+            }
+            after = page.lastKey();
+        }
+    }
+
+    /** Every unvalidated code, oldest first; prefer {@link #streamActiveCodes} for large tables. */
+    default List<WhitelistCode> listActiveCodes() {
+        List<WhitelistCode> results = new ArrayList<>();
+        streamActiveCodes(results::add);
+        return results;
+    }
+
+    /**
+     * Streams up to {@code limit} validated players, archived ones included,
+     * ordered by UUID and starting after {@code after} ({@code null} for the
+     * first page).
+     *
+     * @return the number of rows read; fewer than {@code limit} means the
+     *     scan is complete
+     */
+    int streamValidatedPlayers(UUID after, int limit, Consumer<UUID> sink);
+
+    /** Like {@link #streamValidatedPlayers}, with the validation time of each player. */
+    int streamValidatedEntries(UUID after, int limit, Consumer<ValidatedEntry> sink);
+
+    /** The subset of {@code playerUuids} that hold a validated code, archived or not. */
+    Set<UUID> filterValidated(Collection<UUID> playerUuids);
+
+    /** {@link #findByPlayer} for many players at once; players without a row are absent. */
+    Map<UUID, WhitelistCode> findByPlayers(Collection<UUID> playerUuids);
+
+    /**
+     * Marks every entry validated in one batch, inserting a row with an
+     * {@link #IMPORTED_CODE_PREFIX} code for players that never had one.
+     *
+     * @return how many of them were not validated before
+     */
+    int importValidated(List<ValidatedEntry> entries);
+
+    /**
+     * {@link #delete} for many players in one batch.
+     *
+     * @return the number of codes removed, archived ones included
+     */
+    int deleteAll(Collection<UUID> playerUuids);
+
+    /**
+     * Deletes up to {@code limit} unvalidated codes created before
+     * {@code cutoff}, oldest first.
+     *
+     * @return the number deleted; fewer than {@code limit} means none are left
+     */
+    int deleteExpiredCodes(Instant cutoff, int limit);
+
+    /**
+     * Moves up to {@code limit} codes validated before {@code cutoff} out of
+     * the working set, oldest first. Archived players still count as
+     * validated.
+     *
+     * @return the number archived; fewer than {@code limit} means none are left
+     */
+    int archiveValidatedCodes(Instant cutoff, int limit);
+
+    /**
+     * Gives back up to {@code pages} units of space freed by deletions.
+     *
+     * @return how much reclaimable space is left, {@code 0} when done
+     */
+    default long compact(int pages) {
+        return 0L;
+    }
+
+    /** Whether {@link #snapshotTo} is supported. */
+    default boolean supportsSnapshots() {
+        return false;
+    }
+
+    /** File name suffix of snapshots written by {@link #snapshotTo}. */
+    default String snapshotSuffix() {
+        return ".snapshot";
+    }
+
+    /** Writes a consistent copy of the store to {@code target} without pausing writers for long. */
+    default void snapshotTo(Path target) {
+        throw new UnsupportedOperationException(
+            getClass().getSimpleName() + " does not support snapshots"
+        );
+    }
+
+    /** Checks a file written by {@link #snapshotTo}; returns {@code ok} when it is intact. */
+    default String checkSnapshot(Path snapshot) {
+        throw new UnsupportedOperationException(
+            getClass().getSimpleName() + " does not support snapshots"
+        );
+    }
+
+    @Override
+    void close();
+
+    record WhitelistCode(
+        UUID playerUuid,
+        String whitelistCode,
+        Instant createdAt,
+        Instant validatedAt
+    ) {
+        public boolean isValidated() {
+            return validatedAt != null;
+        }
+
+        public PageKey pageKey() {
+            return new PageKey(createdAt.toEpochMilli(), playerUuid.toString());
+        }
+    }
+
+    record ValidatedEntry(UUID playerUuid, Instant validatedAt) {
+
+        public ValidatedEntry {
+            Objects.requireNonNull(playerUuid, "playerUuid");
+            Objects.requireNonNull(validatedAt, "validatedAt");
+        }
+    }
+
+    /** Keyset position of an active code: its creation time, ties broken by player. */
+    record PageKey(long createdAtMillis, String playerUuid) {
+
+        public PageKey {
+            Objects.requireNonNull(playerUuid, "playerUuid");
+        }
+    }
+
+    /**
+     * One keyset page, oldest first. {@code hasMore} refers to the direction
+     * the page was read in.
+     */
+    record CodePage(List<WhitelistCode> codes, boolean hasMore) {
+
+        public CodePage {
+            codes = List.copyOf(codes);
+        }
+
+        public PageKey firstKey() {
+            return codes.isEmpty() ? null : codes.get(0).pageKey();
+        }
+
+        public PageKey lastKey() {
+            return codes.isEmpty() ? null : codes.get(codes.size() - 1).pageKey();
+        }
+    }
+}
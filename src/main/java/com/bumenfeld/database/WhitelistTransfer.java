@@ -0,0 +1,535 @@
+package com.bumenfeld.database;
+
+import com.bumenfeld.database.WhitelistStore.ValidatedEntry;
+import com.bumenfeld.metrics.Counter;
+import com.bumenfeld.metrics.LatencyHistogram;
+import com.bumenfeld.metrics.MetricsRegistry;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.hypixel.hytale.logger.HytaleLogger;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Bulk import and export of whitelisted players as CSV or JSON.
+ *
+ * <p>Imports are parsed as a stream and applied {@link #BATCH_SIZE} players
+ * at a time: one {@link WhitelistStore#importValidated} batch, then
+ * one {@link WhitelistWriter#addAll} so the whitelist is saved once per
+ * batch rather than once per player. Exports page through validated players
+ * with {@link WhitelistStore#streamValidatedEntries}. Either way memory use
+ * does not grow with the file, and {@link Progress} is reported after every
+ * batch.
+ *
+ * <p>Accepted input, one player per row or element:
+ * <ul>
+ *   <li>CSV with an optional header; the {@code player_uuid} (or
+ *       {@code uuid}) column, else the first, holds the UUID and an optional
+ *       {@code validated_at} column an ISO-8601 instant.</li>
+ *   <li>A JSON array of UUID strings or of objects with the same fields.</li>
+ * </ul>
+ * Exports use the same fields, so an export can be imported elsewhere.
+ * Transfers run one at a time on their own thread.
+ */
+public final class WhitelistTransfer implements AutoCloseable {
+
+    private static final int BATCH_SIZE = 1_000;
+    private static final int EXPORT_PAGE_SIZE = 1_000;
+    private static final String IMPORT_DIRECTORY = "imports";
+    private static final String EXPORT_DIRECTORY = "exports";
+    private static final String UUID_FIELD = "player_uuid";
+    private static final String UUID_FIELD_ALIAS = "uuid";
+    private static final String VALIDATED_AT_FIELD = "validated_at";
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter
+        .ofPattern("yyyyMMdd-HHmmss")
+        .withZone(ZoneOffset.UTC);
+
+    private final WhitelistStore whitelistStore;
+    private final WhitelistMirror whitelistMirror;
+    private final WhitelistWriter whitelistWriter;
+    private final ReentrantLock whitelistMutation;
+    private final HytaleLogger logger;
+    private final Path importDirectory;
+    private final Path exportDirectory;
+    private final LatencyHistogram importLatency;
+    private final LatencyHistogram exportLatency;
+    private final Counter playersImported;
+    private final Counter rowsRejected;
+    private final Counter playersExported;
+
+    private ExecutorService runner;
+
+    public WhitelistTransfer(
+        WhitelistStore whitelistStore,
+        Path dataDirectory,
+        WhitelistMirror whitelistMirror,
+        WhitelistWriter whitelistWriter,
+        ReentrantLock whitelistMutation,
+        HytaleLogger logger,
+        MetricsRegistry metrics
+    ) {
+        this.whitelistStore = Objects.requireNonNull(
+            whitelistStore,
+            "whitelistStore"
+        );
+        this.whitelistMirror = Objects.requireNonNull(
+            whitelistMirror,
+            "whitelistMirror"
+        );
+        this.whitelistWriter = Objects.requireNonNull(
+            whitelistWriter,
+            "whitelistWriter"
+        );
+        this.whitelistMutation = Objects.requireNonNull(
+            whitelistMutation,
+            "whitelistMutation"
+        );
+        this.logger = Objects.requireNonNull(logger, "logger");
+        Objects.requireNonNull(dataDirectory, "dataDirectory");
+        Objects.requireNonNull(metrics, "metrics");
+        this.importDirectory = dataDirectory.resolve(IMPORT_DIRECTORY);
+        this.exportDirectory = dataDirectory.resolve(EXPORT_DIRECTORY);
+        this.importLatency = metrics.histogram(
+            "whitelist_import",
+            "WhitelistTransfer import latency per file"
+        );
+        this.exportLatency = metrics.histogram(
+            "whitelist_export",
+            "WhitelistTransfer export latency per file"
+        );
+        this.playersImported = metrics.counter(
+            "whitelist_players_imported",
+            "Players newly validated by bulk import"
+        );
+        this.rowsRejected = metrics.counter(
+            "whitelist_import_rejected",
+            "Bulk import rows without a usable UUID"
+        );
+        this.playersExported = metrics.counter(
+            "whitelist_players_exported",
+            "Players written by bulk export"
+        );
+    }
+
+    public synchronized void start() {
+        if (runner != null) {
+            return;
+        }
+        runner = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "discord-companion-whitelist-transfer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** Imports {@code fileName} from the {@code imports/} folder next to the database. */
+    public CompletableFuture<Progress> requestImport(
+        String fileName,
+        Consumer<Progress> progress
+    ) {
+        Path file;
+        try {
+            file = resolveImportFile(fileName);
+        } catch (IllegalArgumentException exception) {
+            return CompletableFuture.failedFuture(exception);
+        }
+        return submit(() -> {
+            try (InputStream input = Files.newInputStream(file)) {
+                return importFrom(input, Format.forFileName(fileName), progress);
+            } catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        });
+    }
+
+    /**
+     * Imports from {@code input}, e.g. a Discord attachment, on the transfer
+     * thread. {@code input} is closed once done.
+     */
+    public CompletableFuture<Progress> requestImport(
+        CompletableFuture<InputStream> input,
+        Format format,
+        Consumer<Progress> progress
+    ) {
+        return input.thenCompose(stream ->
+            submit(() -> {
+                try (InputStream opened = stream) {
+                    return importFrom(opened, format, progress);
+                } catch (IOException exception) {
+                    throw new UncheckedIOException(exception);
+                }
+            })
+        );
+    }
+
+    /** Writes every validated player to a new file in {@code exports/}. */
+    public CompletableFuture<Export> requestExport(
+        Format format,
+        Consumer<Progress> progress
+    ) {
+        return submit(() -> {
+            Path file = exportDirectory.resolve(
+                "whitelist-" + FILE_TIMESTAMP.format(Instant.now()) + format.extension()
+            );
+            try {
+                Files.createDirectories(exportDirectory);
+                try (Writer output = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                    return new Export(file, exportTo(output, format, progress));
+                }
+            } catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        });
+    }
+
+    /** Runs an import on the calling thread. */
+    public Progress importFrom(
+        InputStream input,
+        Format format,
+        Consumer<Progress> progress
+    ) throws IOException {
+        Objects.requireNonNull(input, "input");
+        Objects.requireNonNull(format, "format");
+        Objects.requireNonNull(progress, "progress");
+        ImportBatcher batcher = new ImportBatcher(progress);
+        switch (format) {
+            case CSV -> readCsv(input, batcher);
+            case JSON -> readJson(input, batcher);
+        }
+        Progress result = batcher.finish();
+        importLatency.recordSince(batcher.startedAt);
+        logger
+            .atInfo()
+            .log(
+                "Whitelist import finished: %d rows read, %d newly whitelisted, %d rejected in %d ms (%.0f rows/s)",
+                result.read(),
+                result.applied(),
+                result.rejected(),
+                result.elapsed().toMillis(),
+                result.perSecond()
+            );
+        return result;
+    }
+
+    /** Runs an export on the calling thread. */
+    public Progress exportTo(
+        Writer output,
+        Format format,
+        Consumer<Progress> progress
+    ) throws IOException {
+        Objects.requireNonNull(output, "output");
+        Objects.requireNonNull(format, "format");
+        Objects.requireNonNull(progress, "progress");
+        long startedAt = System.nanoTime();
+        JsonGenerator json = null;
+        if (format == Format.JSON) {
+            json = JSON.createGenerator(output);
+            json.writeStartArray();
+        } else {
+            output.write(UUID_FIELD + "," + VALIDATED_AT_FIELD + "\n");
+        }
+
+        long written = 0;
+        UUID after = null;
+        while (true) {
+            List<ValidatedEntry> page = new ArrayList<>(EXPORT_PAGE_SIZE);
+            int read = whitelistStore.streamValidatedEntries(after, EXPORT_PAGE_SIZE, page::add);
+            for (ValidatedEntry entry : page) {
+                if (json != null) {
+                    json.writeStartObject();
+                    json.writeStringField(UUID_FIELD, entry.playerUuid().toString());
+                    json.writeStringField(VALIDATED_AT_FIELD, entry.validatedAt().toString());
+                    json.writeEndObject();
+                } else {
+                    output.write(entry.playerUuid() + "," + entry.validatedAt() + "\n");
+                }
+            }
+            written += page.size();
+            playersExported.add(page.size());
+            progress.accept(
+                new Progress(written, written, 0, Duration.ofNanos(System.nanoTime() - startedAt))
+            );
+            if (read < EXPORT_PAGE_SIZE) {
+                break;
+            }
+            after = page.get(page.size() - 1).playerUuid();
+        }
+
+        if (json != null) {
+            json.writeEndArray();
+            json.flush();
+        }
+        output.flush();
+        exportLatency.recordSince(startedAt);
+        Progress result = new Progress(written, written, 0, Duration.ofNanos(System.nanoTime() - startedAt));
+        logger
+            .atInfo()
+            .log(
+                "Whitelist export finished: %d players in %d ms (%.0f rows/s)",
+                written,
+                result.elapsed().toMillis(),
+                result.perSecond()
+            );
+        return result;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (runner == null) {
+            return;
+        }
+        runner.shutdownNow();
+        runner = null;
+    }
+
+    private synchronized <T> CompletableFuture<T> submit(Supplier<T> task) {
+        if (runner == null) {
+            return CompletableFuture.failedFuture(
+                new IllegalStateException("Whitelist transfers are not running")
+            );
+        }
+        try {
+            return CompletableFuture.supplyAsync(task, runner);
+        } catch (RejectedExecutionException exception) {
+            return CompletableFuture.failedFuture(exception);
+        }
+    }
+
+    private Path resolveImportFile(String fileName) {
+        Objects.requireNonNull(fileName, "fileName");
+        Path file = importDirectory.resolve(fileName).normalize();
+        if (!file.startsWith(importDirectory.normalize())) {
+            throw new IllegalArgumentException("Import files must be inside " + IMPORT_DIRECTORY + "/");
+        }
+        if (!Files.isRegularFile(file)) {
+            throw new IllegalArgumentException("No file " + fileName + " in " + IMPORT_DIRECTORY + "/");
+        }
+        return file;
+    }
+
+    private static void readCsv(InputStream input, ImportBatcher batcher) throws IOException {
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(input, StandardCharsets.UTF_8)
+        );
+        int uuidColumn = 0;
+        int validatedColumn = -1;
+        boolean first = true;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String trimmed = line.strip();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            String[] columns = trimmed.split(",", -1);
+            if (first) {
+                first = false;
+                int headerUuid = indexOf(columns, UUID_FIELD, UUID_FIELD_ALIAS);
+                if (headerUuid >= 0) {
+                    uuidColumn = headerUuid;
+                    validatedColumn = indexOf(columns, VALIDATED_AT_FIELD);
+                    continue;
+                }
+            }
+            batcher.accept(
+                column(columns, uuidColumn),
+                validatedColumn >= 0 ? column(columns, validatedColumn) : null
+            );
+        }
+    }
+
+    private static void readJson(InputStream input, ImportBatcher batcher) throws IOException {
+        try (JsonParser parser = JSON.createParser(input)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("JSON import must be an array");
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+                if (token == JsonToken.VALUE_STRING) {
+                    batcher.accept(parser.getText(), null);
+                } else if (token == JsonToken.START_OBJECT) {
+                    String uuid = null;
+                    String validatedAt = null;
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String field = parser.getCurrentName();
+                        JsonToken value = parser.nextToken();
+                        if (value.isScalarValue() && (UUID_FIELD.equals(field) || UUID_FIELD_ALIAS.equals(field))) {
+                            uuid = parser.getText();
+                        } else if (value.isScalarValue() && VALIDATED_AT_FIELD.equals(field)) {
+                            validatedAt = parser.getText();
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                    batcher.accept(uuid, validatedAt);
+                } else {
+                    parser.skipChildren();
+                    batcher.accept(null, null);
+                }
+            }
+        }
+    }
+
+    private static int indexOf(String[] columns, String... names) {
+        for (int i = 0; i < columns.length; i++) {
+            String column = unquote(columns[i]).toLowerCase(Locale.ROOT);
+            for (String name : names) {
+                if (name.equals(column)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static String column(String[] columns, int index) {
+        return index < columns.length ? unquote(columns[index]) : null;
+    }
+
+    private static String unquote(String value) {
+        String trimmed = value.strip();
+        if (trimmed.length() >= 2 && trimmed.startsWith("\"") && trimmed.endsWith("\"")) {
+            return trimmed.substring(1, trimmed.length() - 1).strip();
+        }
+        return trimmed;
+    }
+
+    /** Collects parsed rows and applies them {@link #BATCH_SIZE} at a time. */
+    private final class ImportBatcher {
+
+        private final Consumer<Progress> progress;
+        private final long startedAt = System.nanoTime();
+        private final List<ValidatedEntry> batch = new ArrayList<>(BATCH_SIZE);
+        private final Instant importedAt = Instant.now();
+        private long read;
+        private long applied;
+        private long rejected;
+
+        private ImportBatcher(Consumer<Progress> progress) {
+            this.progress = progress;
+        }
+
+        void accept(String uuid, String validatedAt) {
+            read++;
+            ValidatedEntry entry = parse(uuid, validatedAt);
+            if (entry == null) {
+                rejected++;
+                rowsRejected.increment();
+                return;
+            }
+            batch.add(entry);
+            if (batch.size() >= BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        Progress finish() {
+            flush();
+            return snapshot();
+        }
+
+        private ValidatedEntry parse(String uuid, String validatedAt) {
+            if (uuid == null || uuid.isBlank()) {
+                return null;
+            }
+            try {
+                Instant at = validatedAt == null || validatedAt.isBlank()
+                    ? importedAt
+                    : Instant.parse(validatedAt.strip());
+                return new ValidatedEntry(UUID.fromString(uuid.strip()), at);
+            } catch (IllegalArgumentException | DateTimeParseException exception) {
+                return null;
+            }
+        }
+
+        private void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            List<UUID> players = new ArrayList<>(batch.size());
+            for (ValidatedEntry entry : batch) {
+                players.add(entry.playerUuid());
+            }
+            int changed;
+            whitelistMutation.lock();
+            try {
+                changed = whitelistStore.importValidated(batch);
+                // players validated before may still be missing from the whitelist
+                whitelistWriter.addAll(players);
+                whitelistMirror.addedAll(players);
+            } finally {
+                whitelistMutation.unlock();
+            }
+            applied += changed;
+            playersImported.add(changed);
+            batch.clear();
+            progress.accept(snapshot());
+        }
+
+        private Progress snapshot() {
+            return new Progress(read, applied, rejected, Duration.ofNanos(System.nanoTime() - startedAt));
+        }
+    }
+
+    public enum Format {
+        CSV(".csv"),
+        JSON(".json");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        public String extension() {
+            return extension;
+        }
+
+        /** JSON for {@code .json} files, CSV for anything else. */
+        public static Format forFileName(String fileName) {
+            return fileName != null && fileName.toLowerCase(Locale.ROOT).endsWith(JSON.extension)
+                ? JSON
+                : CSV;
+        }
+    }
+
+    /**
+     * Running totals of a transfer. For an export {@code read} and
+     * {@code applied} are both the number of players written.
+     */
+    public record Progress(long read, long applied, long rejected, Duration elapsed) {
+
+        public double perSecond() {
+            long millis = Math.max(1L, elapsed.toMillis());
+            return read * 1000.0 / millis;
+        }
+    }
+
+    public record Export(Path file, Progress progress) {}
+}
@@ -0,0 +1,339 @@
+package com.bumenfeld.database;
+
+import com.bumenfeld.metrics.Counter;
+import com.bumenfeld.metrics.LatencyHistogram;
+import com.bumenfeld.metrics.MetricsRegistry;
+import com.bumenfeld.util.ReflectionUtil;
+import com.hypixel.hytale.logger.HytaleLogger;
+import com.hypixel.hytale.server.core.modules.accesscontrol.provider.HytaleWhitelistProvider;
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The only code that mutates the Hytale whitelist. Additions and removals are
+ * queued, coalesced per player and applied in one batch at most every
+ * {@link #FLUSH_INTERVAL_MILLIS}, followed by a single save of the provider's
+ * file, so a burst of validations costs one write instead of one per player.
+ * {@link #close()} flushes whatever is still queued.
+ *
+ * <p>Entries stay visible through {@link #pendingChanges()} until they have
+ * been applied, which lets {@link WhitelistMirror} reconcile without losing a
+ * queued change.
+ */
+public final class WhitelistWriter implements AutoCloseable {
+
+    private static final long FLUSH_INTERVAL_MILLIS = 1_000L;
+    private static final String[] BACKING_SET_FIELDS = {
+        "whitelist",
+        "mutableWhitelist",
+        "mutableList",
+        "list",
+        "backingWhitelist",
+    };
+    private static final String[] SAVE_METHODS = { "syncSave", "save" };
+    // resolved once per provider class instead of reflecting on every flush
+    private static final ClassValue<Optional<MethodHandle>> BACKING_SET_GETTERS =
+        new ClassValue<>() {
+            @Override
+            protected Optional<MethodHandle> computeValue(Class<?> providerClass) {
+                return resolveBackingSetGetter(providerClass);
+            }
+        };
+    private static final ClassValue<Optional<MethodHandle>> SAVE_HANDLES =
+        new ClassValue<>() {
+            @Override
+            protected Optional<MethodHandle> computeValue(Class<?> providerClass) {
+                for (String method : SAVE_METHODS) {
+                    Optional<MethodHandle> handle = ReflectionUtil.noArgMethod(providerClass, method);
+                    if (handle.isPresent()) {
+                        return handle;
+                    }
+                }
+                return Optional.empty();
+            }
+        };
+
+    private final HytaleWhitelistProvider whitelistProvider;
+    private final HytaleLogger logger;
+    // true = add, false = remove; the latest request per player wins
+    private final Map<UUID, Boolean> pending = new LinkedHashMap<>();
+    private final ReentrantLock pendingLock = new ReentrantLock();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean backingSetWarningLogged = new AtomicBoolean();
+    private final AtomicBoolean missingSaveWarningLogged = new AtomicBoolean();
+    private final LatencyHistogram flushLatency;
+    private final Counter appliedChanges;
+    private final Counter failedFlushes;
+
+    private ScheduledExecutorService flusher;
+
+    public WhitelistWriter(
+        HytaleWhitelistProvider whitelistProvider,
+        HytaleLogger logger,
+        MetricsRegistry metrics
+    ) {
+        this.whitelistProvider = Objects.requireNonNull(
+            whitelistProvider,
+            "whitelistProvider"
+        );
+        this.logger = Objects.requireNonNull(logger, "logger");
+        Objects.requireNonNull(metrics, "metrics");
+        this.flushLatency = metrics.histogram(
+            "whitelist_flush",
+            "WhitelistWriter.flush latency, apply plus save"
+        );
+        this.appliedChanges = metrics.counter(
+            "whitelist_changes_applied",
+            "Whitelist additions and removals written to the provider"
+        );
+        this.failedFlushes = metrics.counter(
+            "whitelist_flush_failures",
+            "Whitelist flushes that failed and were retried"
+        );
+        metrics.gauge(
+            "whitelist_pending_changes",
+            "Whitelist changes queued for the next flush",
+            this::pendingCount
+        );
+    }
+
+    public synchronized void start() {
+        if (flusher != null) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "discord-companion-whitelist-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(
+            this::flushQuietly,
+            FLUSH_INTERVAL_MILLIS,
+            FLUSH_INTERVAL_MILLIS,
+            TimeUnit.MILLISECONDS
+        );
+    }
+
+    public void add(UUID playerUuid) {
+        enqueue(playerUuid, true);
+    }
+
+    public void addAll(List<UUID> playerUuids) {
+        pendingLock.lock();
+        try {
+            for (UUID playerUuid : playerUuids) {
+                queue(playerUuid, true);
+            }
+        } finally {
+            pendingLock.unlock();
+        }
+    }
+
+    public void remove(UUID playerUuid) {
+        enqueue(playerUuid, false);
+    }
+
+    /** Queued and in-flight changes; {@code true} marks an addition. */
+    public Map<UUID, Boolean> pendingChanges() {
+        pendingLock.lock();
+        try {
+            return Map.copyOf(pending);
+        } finally {
+            pendingLock.unlock();
+        }
+    }
+
+    /**
+     * Applies every queued change to the provider and saves it once. A
+     * failed flush leaves the changes queued for the next attempt.
+     */
+    public void flush() {
+        flushLock.lock();
+        long startedAt = System.nanoTime();
+        try {
+            Map<UUID, Boolean> batch;
+            pendingLock.lock();
+            try {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = new LinkedHashMap<>(pending);
+            } finally {
+                pendingLock.unlock();
+            }
+
+            try {
+                applyTo(whitelistProvider.getList(), batch);
+            } catch (UnsupportedOperationException exception) {
+                applyTo(mutableWhitelistSet(exception), batch);
+            }
+            save();
+
+            pendingLock.lock();
+            try {
+                // a change re-queued with a different direction since the copy stays queued
+                batch.forEach(pending::remove);
+            } finally {
+                pendingLock.unlock();
+            }
+            appliedChanges.add(batch.size());
+            flushLatency.recordSince(startedAt);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (flusher != null) {
+                flusher.shutdown();
+                try {
+                    flusher.awaitTermination(5, TimeUnit.SECONDS);
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                }
+                flusher = null;
+            }
+        }
+        flush();
+    }
+
+    private void enqueue(UUID playerUuid, boolean add) {
+        pendingLock.lock();
+        try {
+            queue(playerUuid, add);
+        } finally {
+            pendingLock.unlock();
+        }
+    }
+
+    /** Caller holds {@code pendingLock}. */
+    private void queue(UUID playerUuid, boolean add) {
+        Objects.requireNonNull(playerUuid, "playerUuid");
+        // re-insert so the batch applies changes in the order they were made
+        pending.remove(playerUuid);
+        pending.put(playerUuid, add);
+    }
+
+    private long pendingCount() {
+        pendingLock.lock();
+        try {
+            return pending.size();
+        } finally {
+            pendingLock.unlock();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException exception) {
+            failedFlushes.increment();
+            logger
+                .atWarning()
+                .log("Failed to write whitelist changes, will retry: %s", exception.getMessage());
+        }
+    }
+
+    private static void applyTo(Set<UUID> whitelist, Map<UUID, Boolean> batch) {
+        batch.forEach((playerUuid, add) -> {
+            if (add) {
+                whitelist.add(playerUuid);
+            } else {
+                whitelist.remove(playerUuid);
+            }
+        });
+    }
+
+    private void save() {
+        Optional<MethodHandle> save = SAVE_HANDLES.get(whitelistProvider.getClass());
+        if (save.isEmpty()) {
+            if (missingSaveWarningLogged.compareAndSet(false, true)) {
+                logger
+                    .atWarning()
+                    .log(
+                        "Whitelist provider %s has none of %s; leaving persistence to the provider.",
+                        whitelistProvider.getClass().getName(),
+                        Arrays.toString(SAVE_METHODS)
+                    );
+            }
+            return;
+        }
+        ReflectionUtil.invoke(save.get(), whitelistProvider);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<UUID> mutableWhitelistSet(UnsupportedOperationException cause) {
+        Class<?> providerClass = whitelistProvider.getClass();
+        Object backingSet = BACKING_SET_GETTERS
+            .get(providerClass)
+            .map(getter -> ReflectionUtil.get(getter, whitelistProvider))
+            .orElse(null);
+        if (!(backingSet instanceof Set<?>)) {
+            throw new IllegalStateException(
+                String.format(
+                    "Whitelist provider %s returned an unmodifiable set and none of the fields %s holds a mutable Set (declared fields: %s)",
+                    providerClass.getName(),
+                    Arrays.toString(BACKING_SET_FIELDS),
+                    describeFields(providerClass)
+                ),
+                cause
+            );
+        }
+        if (backingSetWarningLogged.compareAndSet(false, true)) {
+            logger
+                .atWarning()
+                .log(
+                    "Whitelist provider returned an unmodifiable whitelist set; mutating backing set directly."
+                );
+        }
+        return (Set<UUID>) backingSet;
+    }
+
+    private static Optional<MethodHandle> resolveBackingSetGetter(Class<?> providerClass) {
+        for (String field : BACKING_SET_FIELDS) {
+            Optional<MethodHandle> getter = ReflectionUtil.fieldGetter(providerClass, field);
+            if (getter.isPresent() && declaresSet(providerClass, field)) {
+                return getter;
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static boolean declaresSet(Class<?> providerClass, String fieldName) {
+        for (Class<?> type = providerClass; type != null; type = type.getSuperclass()) {
+            try {
+                Class<?> fieldType = type.getDeclaredField(fieldName).getType();
+                return Set.class.isAssignableFrom(fieldType) || fieldType.isAssignableFrom(Set.class);
+            } catch (NoSuchFieldException ignored) {
+                // declared further up
+            }
+        }
+        return false;
+    }
+
+    private static String describeFields(Class<?> providerClass) {
+        List<String> fields = new ArrayList<>();
+        for (Class<?> type = providerClass; type != null; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                fields.add(field.getType().getSimpleName() + " " + field.getName());
+            }
+        }
+        return fields.toString();
+    }
+}
@@ -2,11 +2,26 @@ package com.bumenfeld.discord;
 
 import com.hypixel.hytale.logger.HytaleLogger;
 import com.hypixel.hytale.server.core.HytaleServerConfig;
-import com.bumenfeld.announcement.GameAnnouncementService;
+import com.bumenfeld.announcement.AnnouncementScheduler;
+import com.bumenfeld.announcement.AnnouncementTarget;
+import com.bumenfeld.announcement.AnnouncementQueue;
+import com.bumenfeld.announcement.AnnouncementQueue.Priority;
+import com.bumenfeld.announcement.AnnouncementQueue.Submission;
+import com.bumenfeld.database.DatabaseManager.ScheduledAnnouncement;
 import com.bumenfeld.database.WhitelistCodeService;
 import com.bumenfeld.database.WhitelistCodeService.ValidateResult;
+import com.bumenfeld.database.WhitelistReconciler;
+import com.bumenfeld.database.WhitelistStore.CodePage;
+import com.bumenfeld.database.WhitelistStore.PageKey;
+import com.bumenfeld.database.WhitelistStore.WhitelistCode;
+import com.bumenfeld.database.WhitelistTransfer;
+import com.bumenfeld.jfr.DiscordRestEvent;
 import com.bumenfeld.localization.LocalizationService;
+import com.bumenfeld.metrics.Counter;
+import com.bumenfeld.metrics.LatencyHistogram;
+import com.bumenfeld.metrics.MetricsRegistry;
 import java.awt.Color;
+import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -16,28 +31,43 @@ import java.time.Duration;
 import java.time.OffsetDateTime;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.JDABuilder;
 import net.dv8tion.jda.api.OnlineStatus;
+import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.Activity;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.Message.Attachment;
 import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
+import net.dv8tion.jda.api.events.interaction.component.ButtonInteractionEvent;
 import net.dv8tion.jda.api.events.session.ReadyEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import net.dv8tion.jda.api.interactions.commands.OptionMapping;
 import net.dv8tion.jda.api.interactions.commands.OptionType;
 import net.dv8tion.jda.api.interactions.commands.build.CommandData;
 import net.dv8tion.jda.api.interactions.commands.build.Commands;
+import net.dv8tion.jda.api.interactions.commands.build.OptionData;
 import net.dv8tion.jda.api.interactions.commands.build.SubcommandData;
+import net.dv8tion.jda.api.interactions.components.buttons.Button;
 import net.dv8tion.jda.api.requests.GatewayIntent;
 import net.dv8tion.jda.api.exceptions.ErrorResponseException;
+import net.dv8tion.jda.api.exceptions.RateLimitedException;
 import net.dv8tion.jda.api.requests.ErrorResponse;
 import net.dv8tion.jda.api.requests.RestAction;
+import net.dv8tion.jda.api.utils.FileUpload;
 import net.dv8tion.jda.api.utils.MemberCachePolicy;
 import net.dv8tion.jda.api.utils.cache.CacheFlag;
 import org.jetbrains.annotations.NotNull;
@@ -48,33 +78,90 @@ public final class DiscordBotService implements AutoCloseable {
 
     private final HytaleLogger logger;
     private final WhitelistCodeService whitelistCodeService;
-    private final GameAnnouncementService announcementService;
+    private final AnnouncementQueue announcementQueue;
+    private final AnnouncementScheduler announcementScheduler;
     private final LocalizationService localizationService;
+    private final MetricsRegistry metrics;
+    private final LatencyHistogram presenceLatency;
+    private final LatencyHistogram embedLatency;
+    private final Counter embedFailures;
+    private final UnaryOperator<JDABuilder> builderCustomizer;
 
     private volatile DiscordConfig configuration = DiscordConfig.defaults();
     private volatile JDA jda;
     private volatile String resolvedServerName;
     private final Path statusMessageIdFile;
+    private final DiscordLinks discordLinks;
     private volatile Long statusMessageId;
     private static final Color STATUS_ONLINE = new Color(67, 181, 129);
     private static final Color STATUS_OFFLINE = new Color(206, 67, 52);
+    private static final String ROUTE_CREATE_MESSAGE = "POST /channels/{channel.id}/messages";
+    private static final String ROUTE_EDIT_MESSAGE = "PATCH /channels/{channel.id}/messages/{message.id}";
+    private static final String ROUTE_DELETE_MESSAGE = "DELETE /channels/{channel.id}/messages/{message.id}";
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
 
     public DiscordBotService(
         HytaleLogger logger,
         WhitelistCodeService whitelistCodeService,
-        GameAnnouncementService announcementService,
+        AnnouncementQueue announcementQueue,
+        AnnouncementScheduler announcementScheduler,
         LocalizationService localizationService,
+        MetricsRegistry metrics,
         Path dataDirectory
+    ) {
+        this(
+            logger,
+            whitelistCodeService,
+            announcementQueue,
+            announcementScheduler,
+            localizationService,
+            metrics,
+            dataDirectory,
+            UnaryOperator.identity()
+        );
+    }
+
+    /**
+     * @param builderCustomizer applied to the JDA builder right before login;
+     *     the load-test harness uses it to point REST and the gateway at a
+     *     local stand-in instead of discord.com
+     */
+    public DiscordBotService(
+        HytaleLogger logger,
+        WhitelistCodeService whitelistCodeService,
+        AnnouncementQueue announcementQueue,
+        AnnouncementScheduler announcementScheduler,
+        LocalizationService localizationService,
+        MetricsRegistry metrics,
+        Path dataDirectory,
+        UnaryOperator<JDABuilder> builderCustomizer
     ) {
         this.logger = Objects.requireNonNull(logger, "logger");
         this.whitelistCodeService = Objects.requireNonNull(
             whitelistCodeService,
             "whitelistCodeService"
         );
-        this.announcementService =
-            Objects.requireNonNull(announcementService, "announcementService");
+        this.announcementQueue =
+            Objects.requireNonNull(announcementQueue, "announcementQueue");
+        this.announcementScheduler =
+            Objects.requireNonNull(announcementScheduler, "announcementScheduler");
         this.localizationService =
             Objects.requireNonNull(localizationService, "localizationService");
+        this.metrics = Objects.requireNonNull(metrics, "metrics");
+        this.builderCustomizer =
+            Objects.requireNonNull(builderCustomizer, "builderCustomizer");
+        this.presenceLatency = metrics.histogram(
+            "presence_update",
+            "DiscordBotService.updatePresence latency"
+        );
+        this.embedLatency = metrics.histogram(
+            "status_embed_update",
+            "Status embed send/edit round trip"
+        );
+        this.embedFailures = metrics.counter(
+            "status_embed_failures",
+            "Failed status embed sends or edits"
+        );
         Objects.requireNonNull(dataDirectory, "dataDirectory");
         this.statusMessageIdFile =
             dataDirectory.resolve("discord-status-message-id.txt");
@@ -88,6 +175,8 @@ public final class DiscordBotService implements AutoCloseable {
                     exception.getMessage()
                 );
         }
+        this.discordLinks =
+            new DiscordLinks(dataDirectory.resolve("discord-links.txt"), logger);
     }
 
     public synchronized void start(DiscordConfig config) {
@@ -133,13 +222,16 @@ public final class DiscordBotService implements AutoCloseable {
                 new DiscordEventListener(
                     configuration,
                     whitelistCodeService,
-                    announcementService,
+                    announcementQueue,
+                    announcementScheduler,
+                    discordLinks,
+                    metrics,
                     logger
                 )
                 )
                 .setAutoReconnect(true);
 
-            JDA instance = builder.build();
+            JDA instance = builderCustomizer.apply(builder).build();
             instance.awaitReady();
 
             jda = instance;
@@ -175,7 +267,21 @@ public final class DiscordBotService implements AutoCloseable {
         return configuration;
     }
 
+    /** Players whose code was validated from a known Discord account. */
+    public DiscordLinks links() {
+        return discordLinks;
+    }
+
     public void updatePresence(int onlinePlayers, int maxPlayers) {
+        long startedAt = System.nanoTime();
+        try {
+            updatePresenceInternal(onlinePlayers, maxPlayers);
+        } finally {
+            presenceLatency.recordSince(startedAt);
+        }
+    }
+
+    private void updatePresenceInternal(int onlinePlayers, int maxPlayers) {
         DiscordMessages messages = resolveMessages();
         JDA instance = jda;
         if (instance == null) {
@@ -185,7 +291,8 @@ public final class DiscordBotService implements AutoCloseable {
             String presenceText = formatPresenceDescription(
                 messages,
                 onlinePlayers,
-                maxPlayers
+                maxPlayers,
+                configuration.maxPlayers()
             );
             instance
                 .getPresence()
@@ -269,18 +376,26 @@ public final class DiscordBotService implements AutoCloseable {
         );
         Long messageId = statusMessageId;
         RestAction<Message> action;
+        DiscordRestEvent trace;
 
         if (messageId != null) {
             action = channel.editMessageEmbedsById(messageId, embed);
+            trace = DiscordRestEvent.start(ROUTE_EDIT_MESSAGE);
         } else {
             action = channel.sendMessageEmbeds(embed);
+            trace = DiscordRestEvent.start(ROUTE_CREATE_MESSAGE);
         }
 
+        long startedAt = System.nanoTime();
         if (waitForCompletion) {
             try {
                 Message message = action.complete();
+                embedLatency.recordSince(startedAt);
+                trace.succeeded();
                 setStatusMessageId(message.getIdLong());
             } catch (RuntimeException failure) {
+                embedFailures.increment();
+                traceFailure(trace, failure);
                 logger
                     .atWarning()
                     .log(
@@ -293,8 +408,14 @@ public final class DiscordBotService implements AutoCloseable {
         }
 
         action.queue(
-            message -> setStatusMessageId(message.getIdLong()),
+            message -> {
+                embedLatency.recordSince(startedAt);
+                trace.succeeded();
+                setStatusMessageId(message.getIdLong());
+            },
             failure -> {
+                embedFailures.increment();
+                traceFailure(trace, failure);
                 logger
                     .atWarning()
                     .log(
@@ -337,7 +458,7 @@ public final class DiscordBotService implements AutoCloseable {
         return "Server Status";
     }
 
-    private static MessageEmbed createStatusEmbed(
+    static MessageEmbed createStatusEmbed(
         int onlinePlayers,
         int maxPlayers,
         boolean online,
@@ -400,11 +521,16 @@ public final class DiscordBotService implements AutoCloseable {
             clearStatusMessageId();
             return;
         }
+        DiscordRestEvent trace = DiscordRestEvent.start(ROUTE_DELETE_MESSAGE);
         channel
             .deleteMessageById(statusMessageId)
             .queue(
-                ignored -> clearStatusMessageId(),
+                ignored -> {
+                    trace.succeeded();
+                    clearStatusMessageId();
+                },
                 failure -> {
+                    traceFailure(trace, failure);
                     logger
                         .atWarning()
                         .log(
@@ -474,12 +600,36 @@ public final class DiscordBotService implements AutoCloseable {
         return false;
     }
 
+    /** Ends {@code trace} with the HTTP status and Discord error code behind {@code failure}. */
+    static void traceFailure(DiscordRestEvent trace, Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ErrorResponseException responseException) {
+                trace.failed(
+                    responseException.getResponse() != null ? responseException.getResponse().code : 0,
+                    responseException.getErrorCode(),
+                    responseException.getErrorResponse().name()
+                );
+                return;
+            }
+            if (cause instanceof RateLimitedException) {
+                trace.failed(HTTP_TOO_MANY_REQUESTS, 0, cause.getClass().getSimpleName());
+                return;
+            }
+        }
+        trace.failed(0, 0, failure.getClass().getSimpleName());
+    }
+
     private void sendNewStatusEmbed(TextChannel channel, MessageEmbed embed) {
+        DiscordRestEvent trace = DiscordRestEvent.start(ROUTE_CREATE_MESSAGE);
         channel
             .sendMessageEmbeds(embed)
             .queue(
-                message -> setStatusMessageId(message.getIdLong()),
+                message -> {
+                    trace.succeeded();
+                    setStatusMessageId(message.getIdLong());
+                },
                 failure -> {
+                    traceFailure(trace, failure);
                     logger
                         .atWarning()
                         .log(
@@ -495,14 +645,15 @@ public final class DiscordBotService implements AutoCloseable {
         return localizationService.getMessages(configuration.effectiveLanguage());
     }
 
-    private String formatPresenceDescription(
+    static String formatPresenceDescription(
         DiscordMessages messages,
         int onlinePlayers,
-        int maxPlayers
+        int maxPlayers,
+        int configuredMaxPlayers
     ) {
         int resolvedMax = maxPlayers;
         if (resolvedMax <= 0) {
-            resolvedMax = configuration.maxPlayers();
+            resolvedMax = configuredMaxPlayers;
         }
         String template = messages.presenceFormat();
         return template
@@ -560,16 +711,26 @@ public final class DiscordBotService implements AutoCloseable {
     private static final class DiscordEventListener extends ListenerAdapter {
 
         private static final String NEW_LINE = "\n";
+        private static final int CODE_PAGE_SIZE = 10;
+        private static final long PROGRESS_EDIT_MILLIS = 2_000L;
+        // whitelist-admin:list:<after|before>:<createdAtMillis>:<playerUuid>
+        private static final String CODE_PAGE_BUTTON = "whitelist-admin:list:";
 
         private final DiscordConfig config;
         private final WhitelistCodeService whitelistCodeService;
-        private final GameAnnouncementService announcementService;
+        private final AnnouncementQueue announcementQueue;
+        private final AnnouncementScheduler announcementScheduler;
+        private final DiscordLinks discordLinks;
+        private final MetricsRegistry metrics;
         private final HytaleLogger logger;
 
         private DiscordEventListener(
             DiscordConfig config,
             WhitelistCodeService whitelistCodeService,
-            GameAnnouncementService announcementService,
+            AnnouncementQueue announcementQueue,
+            AnnouncementScheduler announcementScheduler,
+            DiscordLinks discordLinks,
+            MetricsRegistry metrics,
             HytaleLogger logger
         ) {
             this.config = Objects.requireNonNull(config, "config");
@@ -577,10 +738,16 @@ public final class DiscordBotService implements AutoCloseable {
                 whitelistCodeService,
                 "whitelistCodeService"
             );
-            this.announcementService = Objects.requireNonNull(
-                announcementService,
-                "announcementService"
+            this.announcementQueue = Objects.requireNonNull(
+                announcementQueue,
+                "announcementQueue"
+            );
+            this.announcementScheduler = Objects.requireNonNull(
+                announcementScheduler,
+                "announcementScheduler"
             );
+            this.discordLinks = Objects.requireNonNull(discordLinks, "discordLinks");
+            this.metrics = Objects.requireNonNull(metrics, "metrics");
             this.logger = Objects.requireNonNull(logger, "logger");
         }
 
@@ -599,14 +766,131 @@ public final class DiscordBotService implements AutoCloseable {
             CommandData announcementCommand = Commands.slash(
                 "announcement",
                 "Broadcast a message to connected players"
+            ).addOptions(
+                new OptionData(
+                    OptionType.STRING,
+                    "message",
+                    "The announcement text to deliver",
+                    true
+                ),
+                new OptionData(
+                    OptionType.STRING,
+                    "priority",
+                    "Queue priority (defaults to normal)",
+                    false
+                )
+                    .addChoice("high", Priority.HIGH.name())
+                    .addChoice("normal", Priority.NORMAL.name())
+                    .addChoice("low", Priority.LOW.name()),
+                new OptionData(
+                    OptionType.STRING,
+                    "world",
+                    "Only deliver to players in this world",
+                    false
+                ),
+                new OptionData(
+                    OptionType.STRING,
+                    "group",
+                    "Only deliver to players in this permission group",
+                    false
+                ),
+                new OptionData(
+                    OptionType.STRING,
+                    "permission",
+                    "Only deliver to players holding this permission",
+                    false
+                )
+            );
+
+            CommandData queueCommand = Commands.slash(
+                "announcement-queue",
+                "Show announcement queue depth and wait times"
+            );
+
+            CommandData scheduleCommand = Commands.slash(
+                "announcement-schedule",
+                "Manage scheduled and recurring announcements"
+            ).addSubcommands(
+                new SubcommandData("create", "Schedule an announcement")
+                    .addOption(
+                        OptionType.STRING,
+                        "message",
+                        "The announcement text to deliver",
+                        true
+                    )
+                    .addOption(
+                        OptionType.INTEGER,
+                        "in-minutes",
+                        "Minutes until the first delivery",
+                        true
+                    )
+                    .addOption(
+                        OptionType.INTEGER,
+                        "repeat-minutes",
+                        "Repeat every N minutes (omit for a one-shot)",
+                        false
+                    ),
+                new SubcommandData("list", "List pending scheduled announcements"),
+                new SubcommandData("cancel", "Cancel a scheduled announcement")
+                    .addOption(
+                        OptionType.INTEGER,
+                        "id",
+                        "The id shown by /announcement-schedule list",
+                        true
+                    )
+            );
+
+            CommandData metricsCommand = Commands.slash(
+                "metrics",
+                "Show plugin latency and counter metrics"
+            );
+
+            CommandData whitelistSyncCommand = Commands.slash(
+                "whitelist-sync",
+                "Reconcile the Hytale whitelist with validated codes"
             ).addOption(
-                OptionType.STRING,
-                "message",
-                "The announcement text to deliver",
-                true
+                OptionType.BOOLEAN,
+                "remove-unlinked",
+                "Also remove whitelisted players without a validated code",
+                false
             );
 
-            List<CommandData> commands = List.of(whitelistCommand, announcementCommand);
+            CommandData whitelistAdminCommand = Commands.slash(
+                "whitelist-admin",
+                "Inspect, back up, import and export whitelist codes"
+            ).addSubcommands(
+                new SubcommandData("list", "Page through codes that have not been validated yet"),
+                new SubcommandData("backup", "Take an online snapshot of the whitelist database"),
+                new SubcommandData("import", "Whitelist every player in a CSV or JSON file")
+                    .addOption(
+                        OptionType.ATTACHMENT,
+                        "file",
+                        "CSV or JSON file of player UUIDs",
+                        false
+                    )
+                    .addOption(
+                        OptionType.STRING,
+                        "path",
+                        "File name inside the imports/ folder on the server",
+                        false
+                    ),
+                new SubcommandData("export", "Export every whitelisted player")
+                    .addOptions(
+                        new OptionData(OptionType.STRING, "format", "File format", false)
+                            .addChoice("CSV", "csv")
+                            .addChoice("JSON", "json")
+                    )
+            );
+
+            List<CommandData> commands = List.of(
+                whitelistCommand,
+                announcementCommand,
+                queueCommand,
+                scheduleCommand,
+                metricsCommand,
+                whitelistSyncCommand,
+                whitelistAdminCommand
+            );
 
             if (config.hasGuildId()) {
                 String guildId = config.guildId();
@@ -662,12 +946,25 @@ public final class DiscordBotService implements AutoCloseable {
                     handleValidate(event, code);
                 }
                 case "announcement" -> handleAnnouncement(event);
+                case "announcement-queue" -> handleQueueStatus(event);
+                case "announcement-schedule" -> handleSchedule(event);
+                case "metrics" -> handleMetrics(event);
+                case "whitelist-sync" -> handleWhitelistSync(event);
+                case "whitelist-admin" -> handleWhitelistAdmin(event);
                 default -> {
                     // Ignore other commands
                 }
             }
         }
 
+        @Override
+        public void onButtonInteraction(@NotNull ButtonInteractionEvent event) {
+            String componentId = event.getComponentId();
+            if (componentId.startsWith(CODE_PAGE_BUTTON)) {
+                handleCodePageButton(event, componentId.substring(CODE_PAGE_BUTTON.length()));
+            }
+        }
+
         private void handleAnnouncement(SlashCommandInteractionEvent event) {
             if (!config.enableAnnouncements()) {
                 event
@@ -699,21 +996,709 @@ public final class DiscordBotService implements AutoCloseable {
                 return;
             }
 
+            OptionMapping priorityOption = event.getOption("priority");
+            Priority priority = priorityOption != null
+                ? Priority.valueOf(priorityOption.getAsString())
+                : Priority.NORMAL;
+
+            AnnouncementTarget target = resolveTarget(event);
+            if (target == null) {
+                event
+                    .reply("Choose at most one of world, group or permission.")
+                    .setEphemeral(true)
+                    .queue();
+                return;
+            }
+
+            Submission submission = announcementQueue.submit(
+                message,
+                priority,
+                target
+            );
+            switch (submission.status()) {
+                case FULL -> {
+                    event
+                        .reply("The announcement queue is full, try again shortly.")
+                        .setEphemeral(true)
+                        .queue();
+                    return;
+                }
+                case CLOSED -> {
+                    event
+                        .reply("Unable to send announcement, see server logs.")
+                        .setEphemeral(true)
+                        .queue();
+                    return;
+                }
+                case DUPLICATE -> {
+                    if (!submission.isQueued()) {
+                        event
+                            .reply("That announcement was sent moments ago.")
+                            .setEphemeral(true)
+                            .queue();
+                        return;
+                    }
+                }
+                default -> {
+                    // queued, fall through to the delivery report
+                }
+            }
+
+            event
+                .reply(
+                    "Announcement queued at position " +
+                        submission.position() +
+                        (submission.status() == Submission.Status.DUPLICATE
+                            ? " (identical announcement already pending)."
+                            : ".")
+                )
+                .setEphemeral(true)
+                .queue();
+            submission
+                .delivery()
+                .whenComplete((report, failure) -> {
+                    if (failure != null) {
+                        logger
+                            .atWarning()
+                            .log(
+                                "Failed to deliver announcement: %s",
+                                failure.getMessage()
+                            );
+                        event
+                            .getHook()
+                            .editOriginal("Unable to send announcement, see server logs.")
+                            .queue();
+                        return;
+                    }
+                    event
+                        .getHook()
+                        .editOriginal(
+                            "Announcement sent to the Hytale server (" +
+                                report.delivered() +
+                                " delivered, " +
+                                report.failed() +
+                                " failed" +
+                                (report.skipped() > 0
+                                    ? ", " + report.skipped() + " skipped between worlds"
+                                    : "") +
+                                ")."
+                        )
+                        .queue();
+                });
+        }
+
+        private AnnouncementTarget resolveTarget(SlashCommandInteractionEvent event) {
+            OptionMapping world = event.getOption("world");
+            OptionMapping group = event.getOption("group");
+            OptionMapping permission = event.getOption("permission");
+            int provided = (world != null ? 1 : 0) +
+                (group != null ? 1 : 0) +
+                (permission != null ? 1 : 0);
+            if (provided > 1) {
+                return null;
+            }
+            if (world != null) {
+                return AnnouncementTarget.world(world.getAsString());
+            }
+            if (group != null) {
+                return AnnouncementTarget.group(group.getAsString());
+            }
+            if (permission != null) {
+                return AnnouncementTarget.permission(permission.getAsString());
+            }
+            return AnnouncementTarget.all();
+        }
+
+        private void handleQueueStatus(SlashCommandInteractionEvent event) {
+            if (!isAuthorized(event.getMember())) {
+                event
+                    .reply("You are not permitted to view the announcement queue.")
+                    .setEphemeral(true)
+                    .queue();
+                return;
+            }
+            AnnouncementQueue.Metrics metrics = announcementQueue.metrics();
+            String text = "Depth: " +
+                metrics.depth() +
+                "/" +
+                metrics.capacity() +
+                " (peak " +
+                metrics.maxDepth() +
+                ")" +
+                NEW_LINE +
+                "Accepted: " +
+                metrics.accepted() +
+                ", deduplicated: " +
+                metrics.deduplicated() +
+                ", rejected: " +
+                metrics.rejected() +
+                NEW_LINE +
+                "Delivered: " +
+                metrics.delivered() +
+                ", avg wait: " +
+                metrics.averageWait().toSeconds() +
+                "s, max wait: " +
+                metrics.maxWait().toSeconds() +
+                "s";
+            event.reply(text).setEphemeral(true).queue();
+        }
+
+        private void handleSchedule(SlashCommandInteractionEvent event) {
+            if (!config.enableAnnouncements()) {
+                event
+                    .reply("Announcements are disabled on this server.")
+                    .setEphemeral(true)
+                    .queue();
+                return;
+            }
+            if (!isAuthorized(event.getMember())) {
+                event
+                    .reply(
+                        "You are not permitted to manage announcements."
+                    )
+                    .setEphemeral(true)
+                    .queue();
+                return;
+            }
+
+            String subcommand = Objects.requireNonNullElse(
+                event.getSubcommandName(),
+                ""
+            );
             try {
-                announcementService.broadcast(message);
+                switch (subcommand) {
+                    case "create" -> handleScheduleCreate(event);
+                    case "list" -> handleScheduleList(event);
+                    case "cancel" -> {
+                        long id = Objects.requireNonNull(
+                            event.getOption("id"),
+                            "id option"
+                        ).getAsLong();
+                        boolean cancelled = announcementScheduler.cancel(id);
+                        event
+                            .reply(
+                                cancelled
+                                    ? "Scheduled announcement #" + id + " cancelled."
+                                    : "No scheduled announcement #" + id + " found."
+                            )
+                            .setEphemeral(true)
+                            .queue();
+                    }
+                    default -> event
+                        .reply("Unknown subcommand.")
+                        .setEphemeral(true)
+                        .queue();
+                }
+            } catch (RuntimeException ex) {
+                logger
+                    .atWarning()
+                    .log("Failed to manage scheduled announcement: %s", ex.getMessage());
+                event
+                    .reply("Unable to manage scheduled announcements, see server logs.")
+                    .setEphemeral(true)
+                    .queue();
+            }
+        }
+
+        private void handleScheduleCreate(SlashCommandInteractionEvent event) {
+            String message = Objects.requireNonNull(
+                event.getOption("message"),
+                "message option"
+            ).getAsString().trim();
+            long inMinutes = Objects.requireNonNull(
+                event.getOption("in-minutes"),
+                "in-minutes option"
+            ).getAsLong();
+            OptionMapping repeatOption = event.getOption("repeat-minutes");
+            Duration interval = repeatOption != null
+                ? Duration.ofMinutes(repeatOption.getAsLong())
+                : null;
+
+            if (message.isEmpty() || inMinutes < 0) {
                 event
-                    .reply("Announcement sent to the Hytale server.")
+                    .reply("Provide a message and a non-negative delay.")
                     .setEphemeral(true)
                     .queue();
+                return;
+            }
+
+            ScheduledAnnouncement entry;
+            try {
+                entry = announcementScheduler.schedule(
+                    message,
+                    Duration.ofMinutes(inMinutes),
+                    interval,
+                    event.getUser().getId()
+                );
+            } catch (IllegalArgumentException ex) {
+                event.reply(ex.getMessage()).setEphemeral(true).queue();
+                return;
+            }
+            event
+                .reply(
+                    "Scheduled announcement #" +
+                        entry.id() +
+                        " for <t:" +
+                        entry.nextRunAt().getEpochSecond() +
+                        ":R>" +
+                        (entry.isRecurring()
+                            ? ", repeating every " + entry.interval().toMinutes() + " minutes."
+                            : ".")
+                )
+                .setEphemeral(true)
+                .queue();
+        }
+
+        private void handleScheduleList(SlashCommandInteractionEvent event) {
+            List<ScheduledAnnouncement> entries = announcementScheduler.list();
+            if (entries.isEmpty()) {
+                event
+                    .reply("There are no scheduled announcements.")
+                    .setEphemeral(true)
+                    .queue();
+                return;
+            }
+            StringBuilder builder = new StringBuilder();
+            for (ScheduledAnnouncement entry : entries) {
+                String line = "#" +
+                    entry.id() +
+                    " <t:" +
+                    entry.nextRunAt().getEpochSecond() +
+                    ":R>" +
+                    (entry.isRecurring()
+                        ? " (every " + entry.interval().toMinutes() + "m)"
+                        : "") +
+                    ": " +
+                    entry.message() +
+                    NEW_LINE;
+                if (builder.length() + line.length() > Message.MAX_CONTENT_LENGTH) {
+                    break;
+                }
+                builder.append(line);
+            }
+            event.reply(builder.toString()).setEphemeral(true).queue();
+        }
+
+        private void handleMetrics(SlashCommandInteractionEvent event) {
+            if (!isAdmin(event.getMember())) {
+                event
+                    .reply("You are not permitted to view plugin metrics.")
+                    .setEphemeral(true)
+                    .queue();
+                return;
+            }
+            StringBuilder builder = new StringBuilder("```").append(NEW_LINE);
+            for (String line : metrics.summaryLines()) {
+                // leave room for the closing fence
+                if (builder.length() + line.length() + 8 > Message.MAX_CONTENT_LENGTH) {
+                    break;
+                }
+                builder.append(line).append(NEW_LINE);
+            }
+            builder.append("```");
+            event.reply(builder.toString()).setEphemeral(true).queue();
+        }
+
+        private void handleWhitelistSync(SlashCommandInteractionEvent event) {
+            if (!isAdmin(event.getMember())) {
+                event
+                    .reply("You are not permitted to reconcile the whitelist.")
+                    .setEphemeral(true)
+                    .queue();
+                return;
+            }
+            OptionMapping removeOption = event.getOption("remove-unlinked");
+            boolean removeUnlinked = removeOption != null && removeOption.getAsBoolean();
+
+            event.deferReply(true).queue();
+            whitelistCodeService
+                .reconcileWhitelist(removeUnlinked)
+                .whenComplete((report, failure) -> {
+                    if (failure != null) {
+                        logger
+                            .atWarning()
+                            .log(
+                                "Whitelist reconciliation requested by %s failed: %s",
+                                event.getUser().getId(),
+                                failure.getMessage()
+                            );
+                        event
+                            .getHook()
+                            .editOriginal("Unable to reconcile the whitelist, see server logs.")
+                            .queue();
+                        return;
+                    }
+                    event.getHook().editOriginal(formatReconcileReport(report)).queue();
+                });
+        }
+
+        private static String formatReconcileReport(WhitelistReconciler.Report report) {
+            StringBuilder builder = new StringBuilder()
+                .append("Whitelist reconciled in ")
+                .append(report.took().toMillis())
+                .append(" ms: ")
+                .append(report.validatedRows())
+                .append(" validated codes, ")
+                .append(report.whitelistEntries())
+                .append(" whitelist entries.")
+                .append(NEW_LINE)
+                .append("Missing from the whitelist: ")
+                .append(report.missingFromWhitelist())
+                .append(" (re-added ")
+                .append(report.missingRepaired())
+                .append(")");
+            appendSample(builder, report.missingSample());
+            builder
+                .append(NEW_LINE)
+                .append("Whitelisted without a validated code: ")
+                .append(report.unlinkedEntries())
+                .append(" (removed ")
+                .append(report.unlinkedRemoved())
+                .append(")");
+            appendSample(builder, report.unlinkedSample());
+            if (builder.length() > Message.MAX_CONTENT_LENGTH) {
+                builder.setLength(Message.MAX_CONTENT_LENGTH);
+            }
+            return builder.toString();
+        }
+
+        private static void appendSample(StringBuilder builder, List<UUID> sample) {
+            for (UUID playerUuid : sample) {
+                builder.append(NEW_LINE).append("- `").append(playerUuid).append('`');
+            }
+        }
+
+        private void handleWhitelistAdmin(SlashCommandInteractionEvent event) {
+            if (!isAdmin(event.getMember())) {
+                event
+                    .reply("You are not permitted to use whitelist admin commands.")
+                    .setEphemeral(true)
+                    .queue();
+                return;
+            }
+            String subcommand = Objects.requireNonNullElse(
+                event.getSubcommandName(),
+                ""
+            );
+            switch (subcommand) {
+                case "list" -> handleCodeList(event);
+                case "backup" -> handleBackup(event);
+                case "import" -> handleImport(event);
+                case "export" -> handleExport(event);
+                default -> event
+                    .reply("Unknown subcommand.")
+                    .setEphemeral(true)
+                    .queue();
+            }
+        }
+
+        private void handleCodeList(SlashCommandInteractionEvent event) {
+            CodePage page;
+            try {
+                page = whitelistCodeService.listActiveCodesAfter(null, CODE_PAGE_SIZE);
+            } catch (RuntimeException ex) {
+                logger
+                    .atWarning()
+                    .log("Failed to list whitelist codes: %s", ex.getMessage());
+                event
+                    .reply("Unable to list whitelist codes, see server logs.")
+                    .setEphemeral(true)
+                    .queue();
+                return;
+            }
+            event
+                .reply(formatCodePage(page))
+                .setEphemeral(true)
+                .addActionRow(codePageButtons(page, false, page.hasMore()))
+                .queue();
+        }
+
+        private void handleBackup(SlashCommandInteractionEvent event) {
+            event.deferReply(true).queue();
+            whitelistCodeService
+                .backupDatabase()
+                .whenComplete((snapshot, failure) -> {
+                    if (failure != null) {
+                        logger
+                            .atWarning()
+                            .log(
+                                "Database backup requested by %s failed: %s",
+                                event.getUser().getId(),
+                                failure.getMessage()
+                            );
+                        event
+                            .getHook()
+                            .editOriginal("Unable to back up the whitelist database, see server logs.")
+                            .queue();
+                        return;
+                    }
+                    event
+                        .getHook()
+                        .editOriginal(
+                            "Backup `" +
+                                snapshot.file().getFileName() +
+                                "` written and verified (" +
+                                snapshot.sizeBytes() / 1024 +
+                                " KiB, " +
+                                snapshot.took().toMillis() +
+                                " ms); " +
+                                snapshot.pruned() +
+                                " older snapshots removed."
+                        )
+                        .queue();
+                });
+        }
+
+        private void handleImport(SlashCommandInteractionEvent event) {
+            OptionMapping fileOption = event.getOption("file");
+            OptionMapping pathOption = event.getOption("path");
+            if ((fileOption == null) == (pathOption == null)) {
+                event
+                    .reply("Attach a file or name one in the imports/ folder, not both.")
+                    .setEphemeral(true)
+                    .queue();
+                return;
+            }
+            event.deferReply(true).queue();
+            Consumer<WhitelistTransfer.Progress> progress = throttledProgress(event, "Importing");
+            CompletableFuture<WhitelistTransfer.Progress> result;
+            if (fileOption != null) {
+                Attachment attachment = fileOption.getAsAttachment();
+                result = whitelistCodeService
+                    .whitelistTransfer()
+                    .requestImport(
+                        attachment.getProxy().download(),
+                        WhitelistTransfer.Format.forFileName(attachment.getFileName()),
+                        progress
+                    );
+            } else {
+                result = whitelistCodeService
+                    .whitelistTransfer()
+                    .requestImport(pathOption.getAsString(), progress);
+            }
+            result.whenComplete((done, failure) -> {
+                if (failure != null) {
+                    logger
+                        .atWarning()
+                        .log(
+                            "Whitelist import requested by %s failed: %s",
+                            event.getUser().getId(),
+                            failure.getMessage()
+                        );
+                    event
+                        .getHook()
+                        .editOriginal("Whitelist import failed: " + rootMessage(failure))
+                        .queue();
+                    return;
+                }
+                event
+                    .getHook()
+                    .editOriginal(
+                        "Import finished: " +
+                            formatProgress(done) +
+                            ", " +
+                            done.applied() +
+                            " newly whitelisted, " +
+                            done.rejected() +
+                            " rows rejected."
+                    )
+                    .queue();
+            });
+        }
+
+        private void handleExport(SlashCommandInteractionEvent event) {
+            OptionMapping formatOption = event.getOption("format");
+            WhitelistTransfer.Format format = formatOption != null &&
+                "json".equals(formatOption.getAsString())
+                ? WhitelistTransfer.Format.JSON
+                : WhitelistTransfer.Format.CSV;
+            event.deferReply(true).queue();
+            whitelistCodeService
+                .whitelistTransfer()
+                .requestExport(format, throttledProgress(event, "Exporting"))
+                .whenComplete((export, failure) -> {
+                    if (failure != null) {
+                        logger
+                            .atWarning()
+                            .log(
+                                "Whitelist export requested by %s failed: %s",
+                                event.getUser().getId(),
+                                failure.getMessage()
+                            );
+                        event
+                            .getHook()
+                            .editOriginal("Whitelist export failed, see server logs.")
+                            .queue();
+                        return;
+                    }
+                    String summary = "Export finished: " +
+                        formatProgress(export.progress()) +
+                        ", written to `" +
+                        export.file().getFileName() +
+                        "`.";
+                    File file = export.file().toFile();
+                    long maxFileSize = event.getGuild() != null
+                        ? event.getGuild().getMaxFileSize()
+                        : 0L;
+                    if (file.length() > maxFileSize) {
+                        event
+                            .getHook()
+                            .editOriginal(summary + " Too large to attach; fetch it from the exports/ folder.")
+                            .queue();
+                        return;
+                    }
+                    event
+                        .getHook()
+                        .editOriginal(summary)
+                        .setFiles(FileUpload.fromData(file))
+                        .queue();
+                });
+        }
+
+        /** Edits the deferred reply with transfer progress at most every {@link #PROGRESS_EDIT_MILLIS}. */
+        private static Consumer<WhitelistTransfer.Progress> throttledProgress(
+            SlashCommandInteractionEvent event,
+            String verb
+        ) {
+            AtomicLong lastEdit = new AtomicLong(System.nanoTime());
+            return progress -> {
+                long now = System.nanoTime();
+                long last = lastEdit.get();
+                if (
+                    now - last < TimeUnit.MILLISECONDS.toNanos(PROGRESS_EDIT_MILLIS) ||
+                    !lastEdit.compareAndSet(last, now)
+                ) {
+                    return;
+                }
+                event
+                    .getHook()
+                    .editOriginal(verb + "... " + formatProgress(progress))
+                    .queue();
+            };
+        }
+
+        private static String formatProgress(WhitelistTransfer.Progress progress) {
+            return String.format(
+                Locale.ROOT,
+                "%d rows in %.1f s (%.0f rows/s)",
+                progress.read(),
+                progress.elapsed().toMillis() / 1000.0,
+                progress.perSecond()
+            );
+        }
+
+        private static String rootMessage(Throwable failure) {
+            Throwable cause = failure;
+            while (cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            return cause.getMessage();
+        }
+
+        private void handleCodePageButton(ButtonInteractionEvent event, String target) {
+            if (!isAdmin(event.getMember())) {
+                event
+                    .reply("You are not permitted to inspect whitelist codes.")
+                    .setEphemeral(true)
+                    .queue();
+                return;
+            }
+            String[] parts = target.split(":", 3);
+            PageKey key;
+            try {
+                key = new PageKey(Long.parseLong(parts[1]), parts[2]);
+            } catch (RuntimeException ex) {
+                event.reply("This page is no longer available.").setEphemeral(true).queue();
+                return;
+            }
+            boolean forward = "after".equals(parts[0]);
+            CodePage page;
+            try {
+                // one page per click; hasMore only speaks for the direction read
+                page = forward
+                    ? whitelistCodeService.listActiveCodesAfter(key, CODE_PAGE_SIZE)
+                    : whitelistCodeService.listActiveCodesBefore(key, CODE_PAGE_SIZE);
             } catch (RuntimeException ex) {
                 logger
                     .atWarning()
-                    .log("Failed to deliver announcement: %s", ex.getMessage());
+                    .log("Failed to list whitelist codes: %s", ex.getMessage());
                 event
-                    .reply("Unable to send announcement, see server logs.")
+                    .reply("Unable to list whitelist codes, see server logs.")
                     .setEphemeral(true)
                     .queue();
+                return;
+            }
+            boolean hasPrevious = forward || page.hasMore();
+            boolean hasNext = forward ? page.hasMore() : true;
+            event
+                .editMessage(formatCodePage(page))
+                .setActionRow(codePageButtons(page, hasPrevious, hasNext))
+                .queue();
+        }
+
+        private static String formatCodePage(CodePage page) {
+            if (page.codes().isEmpty()) {
+                return "There are no unvalidated whitelist codes on this page.";
+            }
+            StringBuilder builder = new StringBuilder();
+            for (WhitelistCode code : page.codes()) {
+                String line = "`" +
+                    code.whitelistCode() +
+                    "` <t:" +
+                    code.createdAt().getEpochSecond() +
+                    ":R> `" +
+                    code.playerUuid() +
+                    "`" +
+                    NEW_LINE;
+                if (builder.length() + line.length() > Message.MAX_CONTENT_LENGTH) {
+                    break;
+                }
+                builder.append(line);
             }
+            return builder.toString();
+        }
+
+        private static List<Button> codePageButtons(
+            CodePage page,
+            boolean hasPrevious,
+            boolean hasNext
+        ) {
+            PageKey first = page.firstKey();
+            PageKey last = page.lastKey();
+            Button previous = first == null
+                ? Button.secondary(CODE_PAGE_BUTTON + "before:0:", "Previous").asDisabled()
+                : Button
+                    .secondary(codePageButtonId("before", first), "Previous")
+                    .withDisabled(!hasPrevious);
+            Button next = last == null
+                ? Button.secondary(CODE_PAGE_BUTTON + "after:0:", "Next").asDisabled()
+                : Button
+                    .secondary(codePageButtonId("after", last), "Next")
+                    .withDisabled(!hasNext);
+            return List.of(previous, next);
+        }
+
+        private static String codePageButtonId(String direction, PageKey key) {
+            return CODE_PAGE_BUTTON +
+                direction +
+                ":" +
+                key.createdAtMillis() +
+                ":" +
+                key.playerUuid();
+        }
+
+        private boolean isAdmin(Member member) {
+            if (member == null) {
+                return false;
+            }
+            String requiredRole = config.effectiveAdminRoleId();
+            if (requiredRole == null) {
+                return member.hasPermission(Permission.ADMINISTRATOR);
+            }
+            return member
+                .getRoles()
+                .stream()
+                .anyMatch(role -> requiredRole.equals(role.getId()));
         }
 
         private boolean isAuthorized(Member member) {
@@ -741,6 +1726,11 @@ public final class DiscordBotService implements AutoCloseable {
 
             switch (result.getStatus()) {
                 case SUCCESS -> {
+                    result
+                        .getPlayerUuid()
+                        .ifPresent(playerUuid ->
+                            discordLinks.link(playerUuid, event.getUser().getIdLong())
+                        );
                     StringBuilder builder = new StringBuilder("✅ Success! ");
                     builder
                         .append(event.getUser().getAsMention())
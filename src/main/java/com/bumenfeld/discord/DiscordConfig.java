@@ -1,5 +1,7 @@
 package com.bumenfeld.discord;
 
+import com.bumenfeld.database.StorageBackend;
+import java.time.Duration;
 import java.util.Objects;
 
 public record DiscordConfig(
@@ -12,10 +14,31 @@ public record DiscordConfig(
     String announcementRoleId,
     boolean enableStatusEmbed,
     boolean enableWhitelist,
-    boolean enableAnnouncements
+    boolean enableAnnouncements,
+    String adminRoleId,
+    int metricsPort,
+    int codeTtlMinutes,
+    int archiveValidatedAfterDays,
+    int backupIntervalHours,
+    int backupRetention,
+    StorageBackend storageBackend,
+    int connectAttemptsPerAddressPerMinute,
+    int connectAttemptsPerSecond,
+    int maxPendingCodesPerAddress,
+    boolean enableJoinQueue,
+    int joinQueueHoldSeconds,
+    JoinQueueNotifications joinQueueNotifications
 ) {
 
     private static final String DEFAULT_LANGUAGE = "en";
+    public static final int DEFAULT_CODE_TTL_MINUTES = 24 * 60;
+    public static final int DEFAULT_ARCHIVE_VALIDATED_AFTER_DAYS = 90;
+    public static final int DEFAULT_BACKUP_INTERVAL_HOURS = 24;
+    public static final int DEFAULT_BACKUP_RETENTION = 7;
+    public static final int DEFAULT_CONNECT_ATTEMPTS_PER_ADDRESS_PER_MINUTE = 10;
+    public static final int DEFAULT_CONNECT_ATTEMPTS_PER_SECOND = 50;
+    public static final int DEFAULT_MAX_PENDING_CODES_PER_ADDRESS = 3;
+    public static final int DEFAULT_JOIN_QUEUE_HOLD_SECONDS = 60;
     private static final DiscordConfig DEFAULT =
         new DiscordConfig(
             null,
@@ -27,7 +50,20 @@ public record DiscordConfig(
             null,
             true,
             true,
-            true
+            true,
+            null,
+            0,
+            DEFAULT_CODE_TTL_MINUTES,
+            DEFAULT_ARCHIVE_VALIDATED_AFTER_DAYS,
+            DEFAULT_BACKUP_INTERVAL_HOURS,
+            DEFAULT_BACKUP_RETENTION,
+            StorageBackend.SQLITE,
+            DEFAULT_CONNECT_ATTEMPTS_PER_ADDRESS_PER_MINUTE,
+            DEFAULT_CONNECT_ATTEMPTS_PER_SECOND,
+            DEFAULT_MAX_PENDING_CODES_PER_ADDRESS,
+            false,
+            DEFAULT_JOIN_QUEUE_HOLD_SECONDS,
+            JoinQueueNotifications.DM
         );
 
     public DiscordConfig {
@@ -36,9 +72,41 @@ public record DiscordConfig(
         statusChannelId = normalize(statusChannelId);
         language = normalize(language);
         announcementRoleId = normalize(announcementRoleId);
+        adminRoleId = normalize(adminRoleId);
+        storageBackend = storageBackend == null ? StorageBackend.SQLITE : storageBackend;
+        joinQueueNotifications = joinQueueNotifications == null
+            ? JoinQueueNotifications.DM
+            : joinQueueNotifications;
         if (maxPlayers < 0) {
             throw new IllegalArgumentException("maxPlayers must be >= 0");
         }
+        if (metricsPort < 0 || metricsPort > 65535) {
+            throw new IllegalArgumentException("metricsPort must be between 0 and 65535");
+        }
+        if (codeTtlMinutes < 0) {
+            throw new IllegalArgumentException("codeTtlMinutes must be >= 0");
+        }
+        if (archiveValidatedAfterDays < 0) {
+            throw new IllegalArgumentException("archiveValidatedAfterDays must be >= 0");
+        }
+        if (backupIntervalHours < 0) {
+            throw new IllegalArgumentException("backupIntervalHours must be >= 0");
+        }
+        if (backupRetention < 1) {
+            throw new IllegalArgumentException("backupRetention must be >= 1");
+        }
+        if (connectAttemptsPerAddressPerMinute < 0) {
+            throw new IllegalArgumentException("connectAttemptsPerAddressPerMinute must be >= 0");
+        }
+        if (connectAttemptsPerSecond < 0) {
+            throw new IllegalArgumentException("connectAttemptsPerSecond must be >= 0");
+        }
+        if (maxPendingCodesPerAddress < 0) {
+            throw new IllegalArgumentException("maxPendingCodesPerAddress must be >= 0");
+        }
+        if (joinQueueHoldSeconds < 1) {
+            throw new IllegalArgumentException("joinQueueHoldSeconds must be >= 1");
+        }
     }
 
     public boolean enableStatusEmbed() {
@@ -75,6 +143,37 @@ public record DiscordConfig(
         return announcementRoleId;
     }
 
+    /** Role allowed to run admin commands; falls back to the announcement role. */
+    public String effectiveAdminRoleId() {
+        return adminRoleId != null ? adminRoleId : announcementRoleId;
+    }
+
+    public boolean hasMetricsEndpoint() {
+        return metricsPort > 0;
+    }
+
+    /** How long an unvalidated code stays usable; {@code null} when codes never expire. */
+    public Duration codeTtl() {
+        return codeTtlMinutes > 0 ? Duration.ofMinutes(codeTtlMinutes) : null;
+    }
+
+    /** Age after which validated codes are archived; {@code null} keeps them in place. */
+    public Duration validatedRetention() {
+        return archiveValidatedAfterDays > 0
+            ? Duration.ofDays(archiveValidatedAfterDays)
+            : null;
+    }
+
+    /** Time between scheduled backups; {@code null} for on-demand only. */
+    public Duration backupInterval() {
+        return backupIntervalHours > 0 ? Duration.ofHours(backupIntervalHours) : null;
+    }
+
+    /** How long a freed slot waits for the head of the join queue to reconnect. */
+    public Duration joinQueueHold() {
+        return Duration.ofSeconds(joinQueueHoldSeconds);
+    }
+
     public static DiscordConfig defaults() {
         return DEFAULT;
     }
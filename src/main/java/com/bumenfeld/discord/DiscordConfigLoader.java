@@ -1,5 +1,6 @@
 package com.bumenfeld.discord;
 
+import com.bumenfeld.database.StorageBackend;
 import com.hypixel.hytale.logger.HytaleLogger;
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.error.YAMLException;
@@ -32,6 +33,19 @@ public final class DiscordConfigLoader {
         enable-status-embed: true
         enable-whitelist: true
         enable-announcements: true
+        admin-role-id: ""
+        metrics-port: 0
+        code-ttl-minutes: 1440
+        archive-validated-after-days: 90
+        backup-interval-hours: 24
+        backup-retention: 7
+        storage-backend: "sqlite"
+        connect-attempts-per-address-per-minute: 10
+        connect-attempts-per-second: 50
+        max-pending-codes-per-address: 3
+        enable-join-queue: false
+        join-queue-hold-seconds: 60
+        join-queue-notifications: "dm"
         """;
 
     private DiscordConfigLoader() {
@@ -269,6 +283,58 @@ public final class DiscordConfigLoader {
             readOptionalBoolean(rawConfig, "enable-whitelist");
         Boolean enableAnnouncementsValue =
             readOptionalBoolean(rawConfig, "enable-announcements");
+        String adminRoleId = readOptionalString(rawConfig, "admin-role-id");
+        Integer metricsPortValue =
+            readOptionalInteger(rawConfig, "metrics-port");
+        int metricsPort = metricsPortValue == null ? 0 : metricsPortValue;
+        Integer codeTtlValue =
+            readOptionalInteger(rawConfig, "code-ttl-minutes");
+        int codeTtlMinutes = codeTtlValue == null
+            ? DiscordConfig.DEFAULT_CODE_TTL_MINUTES
+            : codeTtlValue;
+        Integer archiveAfterValue =
+            readOptionalInteger(rawConfig, "archive-validated-after-days");
+        int archiveValidatedAfterDays = archiveAfterValue == null
+            ? DiscordConfig.DEFAULT_ARCHIVE_VALIDATED_AFTER_DAYS
+            : archiveAfterValue;
+        Integer backupIntervalValue =
+            readOptionalInteger(rawConfig, "backup-interval-hours");
+        int backupIntervalHours = backupIntervalValue == null
+            ? DiscordConfig.DEFAULT_BACKUP_INTERVAL_HOURS
+            : backupIntervalValue;
+        Integer backupRetentionValue =
+            readOptionalInteger(rawConfig, "backup-retention");
+        int backupRetention = backupRetentionValue == null
+            ? DiscordConfig.DEFAULT_BACKUP_RETENTION
+            : backupRetentionValue;
+        StorageBackend storageBackend = StorageBackend.fromConfig(
+            readOptionalString(rawConfig, "storage-backend")
+        );
+        Integer addressAttemptsValue =
+            readOptionalInteger(rawConfig, "connect-attempts-per-address-per-minute");
+        int connectAttemptsPerAddressPerMinute = addressAttemptsValue == null
+            ? DiscordConfig.DEFAULT_CONNECT_ATTEMPTS_PER_ADDRESS_PER_MINUTE
+            : addressAttemptsValue;
+        Integer globalAttemptsValue =
+            readOptionalInteger(rawConfig, "connect-attempts-per-second");
+        int connectAttemptsPerSecond = globalAttemptsValue == null
+            ? DiscordConfig.DEFAULT_CONNECT_ATTEMPTS_PER_SECOND
+            : globalAttemptsValue;
+        Integer pendingCodesValue =
+            readOptionalInteger(rawConfig, "max-pending-codes-per-address");
+        int maxPendingCodesPerAddress = pendingCodesValue == null
+            ? DiscordConfig.DEFAULT_MAX_PENDING_CODES_PER_ADDRESS
+            : pendingCodesValue;
+        Boolean enableJoinQueueValue =
+            readOptionalBoolean(rawConfig, "enable-join-queue");
+        Integer joinQueueHoldValue =
+            readOptionalInteger(rawConfig, "join-queue-hold-seconds");
+        int joinQueueHoldSeconds = joinQueueHoldValue == null
+            ? DiscordConfig.DEFAULT_JOIN_QUEUE_HOLD_SECONDS
+            : joinQueueHoldValue;
+        JoinQueueNotifications joinQueueNotifications = JoinQueueNotifications.fromConfig(
+            readOptionalString(rawConfig, "join-queue-notifications")
+        );
 
         boolean enableStatusEmbed =
             enableStatusEmbedValue == null ? true : enableStatusEmbedValue;
@@ -278,6 +344,8 @@ public final class DiscordConfigLoader {
             enableAnnouncementsValue == null
                 ? true
                 : enableAnnouncementsValue;
+        boolean enableJoinQueue =
+            enableJoinQueueValue == null ? false : enableJoinQueueValue;
 
         return new DiscordConfig(
             token,
@@ -289,7 +357,20 @@ public final class DiscordConfigLoader {
             announcementRoleId,
             enableStatusEmbed,
             enableWhitelist,
-            enableAnnouncements
+            enableAnnouncements,
+            adminRoleId,
+            metricsPort,
+            codeTtlMinutes,
+            archiveValidatedAfterDays,
+            backupIntervalHours,
+            backupRetention,
+            storageBackend,
+            connectAttemptsPerAddressPerMinute,
+            connectAttemptsPerSecond,
+            maxPendingCodesPerAddress,
+            enableJoinQueue,
+            joinQueueHoldSeconds,
+            joinQueueNotifications
         );
     }
 }
@@ -0,0 +1,119 @@
+package com.bumenfeld.discord;
+
+import com.hypixel.hytale.logger.HytaleLogger;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Objects;
+import java.util.OptionalLong;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The Discord account that validated each player's whitelist code, so the
+ * bot can reach the player there, e.g. with their join queue position.
+ * Kept as {@code <player uuid>\t<discord user id>} lines in a small file
+ * next to the status message reference and rewritten on each new or removed
+ * link; validations and revocations are rare enough that this never shows up.
+ */
+public final class DiscordLinks {
+
+    private final Path file;
+    private final HytaleLogger logger;
+    private final Map<UUID, Long> links = new ConcurrentHashMap<>();
+
+    public DiscordLinks(Path file, HytaleLogger logger) {
+        this.file = Objects.requireNonNull(file, "file");
+        this.logger = Objects.requireNonNull(logger, "logger");
+        load();
+    }
+
+    public OptionalLong discordUserId(UUID playerUuid) {
+        Long userId = links.get(playerUuid);
+        return userId != null ? OptionalLong.of(userId) : OptionalLong.empty();
+    }
+
+    /** Records that {@code discordUserId} validated {@code playerUuid}'s code. */
+    public void link(UUID playerUuid, long discordUserId) {
+        Objects.requireNonNull(playerUuid, "playerUuid");
+        Long previous = links.put(playerUuid, discordUserId);
+        if (previous == null || previous != discordUserId) {
+            save();
+        }
+    }
+
+    /** Forgets {@code playerUuid}'s link, e.g. once their code is revoked. */
+    public void unlink(UUID playerUuid) {
+        if (links.remove(playerUuid) != null) {
+            save();
+        }
+    }
+
+    public int size() {
+        return links.size();
+    }
+
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                int tab = line.indexOf('\t');
+                if (tab < 0) {
+                    continue;
+                }
+                try {
+                    links.put(
+                        UUID.fromString(line.substring(0, tab)),
+                        Long.parseLong(line.substring(tab + 1).trim())
+                    );
+                } catch (IllegalArgumentException exception) {
+                    logger
+                        .atWarning()
+                        .log("Skipping malformed Discord link line: %s", line);
+                }
+            }
+        } catch (IOException exception) {
+            logger
+                .atWarning()
+                .log(
+                    "Unable to read Discord links from %s: %s",
+                    file,
+                    exception.getMessage()
+                );
+        }
+    }
+
+    private synchronized void save() {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<UUID, Long> entry : links.entrySet()) {
+                    writer.write(entry.getKey().toString());
+                    writer.write('\t');
+                    writer.write(Long.toString(entry.getValue()));
+                    writer.write('\n');
+                }
+            }
+            Files.move(
+                temp,
+                file,
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE
+            );
+        } catch (IOException exception) {
+            logger
+                .atWarning()
+                .log(
+                    "Unable to persist Discord links to %s: %s",
+                    file,
+                    exception.getMessage()
+                );
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.bumenfeld.discord;
+
+import java.util.Locale;
+
+/** How queued players hear about their position, {@code join-queue-notifications} in {@code discord.yml}. */
+public enum JoinQueueNotifications {
+    /** Only the disconnect message shows the position. */
+    NONE,
+    /** A direct message to each player whose Discord account validated their code. */
+    DM,
+    /** One embed listing the queue in the status channel. */
+    CHANNEL;
+
+    /** Parses a config value case-insensitively; {@code null} means {@link #DM}. */
+    public static JoinQueueNotifications fromConfig(String value) {
+        if (value == null) {
+            return DM;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException exception) {
+            throw new IllegalArgumentException(
+                "Unknown join queue notification mode '" + value + "'; expected none, dm or channel",
+                exception
+            );
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.bumenfeld.discord;
+
+import com.bumenfeld.jfr.DiscordRestEvent;
+import com.bumenfeld.metrics.Counter;
+import com.bumenfeld.metrics.MetricsRegistry;
+import com.bumenfeld.player.JoinQueue;
+import com.hypixel.hytale.logger.HytaleLogger;
+import java.awt.Color;
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
+import net.dv8tion.jda.api.exceptions.ErrorResponseException;
+import net.dv8tion.jda.api.requests.ErrorResponse;
+import net.dv8tion.jda.api.requests.RestAction;
+
+/**
+ * Tells queued players their position on Discord, as selected by
+ * {@code join-queue-notifications}. The queue is polled every
+ * {@link #FLUSH_INTERVAL_MILLIS} rather than pushed, so a burst of joins
+ * and leaves costs one embed edit, and a player gets at most one DM per
+ * {@link #DM_MIN_INTERVAL_MILLIS} however often their position moves. Only
+ * the message that a slot is held for them skips that wait. At most
+ * {@link #MAX_DMS_PER_FLUSH} DMs go out per poll, head of the queue first;
+ * the rest follow on later polls.
+ *
+ * <p>DMs reach players whose code was validated from a linked account
+ * (see {@link DiscordLinks}); the channel embed lists everyone, mentioning
+ * linked players. All state is confined to the poll thread.
+ */
+public final class JoinQueueNotifier implements AutoCloseable {
+
+    static final long FLUSH_INTERVAL_MILLIS = 5_000L;
+    static final long DM_MIN_INTERVAL_MILLIS = 60_000L;
+    static final int MAX_DMS_PER_FLUSH = 5;
+    private static final int EMBED_ROWS = 20;
+    private static final Color QUEUE_COLOR = new Color(88, 101, 242);
+    private static final String ROUTE_CREATE_DM = "POST /users/@me/channels";
+    private static final String ROUTE_CREATE_MESSAGE = "POST /channels/{channel.id}/messages";
+    private static final String ROUTE_EDIT_MESSAGE = "PATCH /channels/{channel.id}/messages/{message.id}";
+    private static final String ROUTE_DELETE_MESSAGE = "DELETE /channels/{channel.id}/messages/{message.id}";
+
+    private final DiscordBotService discordBotService;
+    private final Supplier<JoinQueue.Snapshot> queue;
+    private final Supplier<DiscordConfig> configuration;
+    private final HytaleLogger logger;
+    private final Counter directMessages;
+    private final Counter directMessageFailures;
+    private final Counter embedUpdates;
+    // last DM per player: the position it announced and when
+    private final Map<UUID, Notified> notified = new HashMap<>();
+    private long embedVersion = -1;
+    // written by REST callbacks
+    private volatile Long queueMessageId;
+
+    private ScheduledExecutorService runner;
+
+    /**
+     * @param queue the current queue; called once per poll and expected to
+     *     hand freed slots to the head first
+     */
+    public JoinQueueNotifier(
+        DiscordBotService discordBotService,
+        Supplier<JoinQueue.Snapshot> queue,
+        Supplier<DiscordConfig> configuration,
+        MetricsRegistry metrics,
+        HytaleLogger logger
+    ) {
+        this.discordBotService =
+            Objects.requireNonNull(discordBotService, "discordBotService");
+        this.queue = Objects.requireNonNull(queue, "queue");
+        this.configuration = Objects.requireNonNull(configuration, "configuration");
+        this.logger = Objects.requireNonNull(logger, "logger");
+        Objects.requireNonNull(metrics, "metrics");
+        this.directMessages = metrics.counter(
+            "join_queue_dms_sent",
+            "Join queue position DMs delivered"
+        );
+        this.directMessageFailures = metrics.counter(
+            "join_queue_dm_failures",
+            "Join queue position DMs Discord refused, mostly closed DMs"
+        );
+        this.embedUpdates = metrics.counter(
+            "join_queue_embed_updates",
+            "Join queue embed sends, edits and deletions"
+        );
+    }
+
+    public synchronized void start() {
+        if (runner != null) {
+            return;
+        }
+        runner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "discord-companion-join-queue");
+            thread.setDaemon(true);
+            return thread;
+        });
+        runner.scheduleWithFixedDelay(
+            this::flushQuietly,
+            FLUSH_INTERVAL_MILLIS,
+            FLUSH_INTERVAL_MILLIS,
+            TimeUnit.MILLISECONDS
+        );
+    }
+
+    @Override
+    public synchronized void close() {
+        if (runner != null) {
+            runner.shutdownNow();
+            runner = null;
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException ex) {
+            logger
+                .atWarning()
+                .log("Join queue notification failed: %s", ex.getMessage());
+        }
+    }
+
+    private void flush() {
+        DiscordConfig config = configuration.get();
+        if (!config.enableJoinQueue()) {
+            return;
+        }
+        // polled even without Discord so held slots are handed on in time
+        JoinQueue.Snapshot snapshot = queue.get();
+        Optional<JDA> jda = discordBotService.getJda();
+        if (jda.isEmpty()) {
+            return;
+        }
+        switch (config.joinQueueNotifications()) {
+            case DM -> sendDirectMessages(jda.get(), snapshot, config);
+            case CHANNEL -> updateEmbed(jda.get(), snapshot, config);
+            case NONE -> {}
+        }
+    }
+
+    private void sendDirectMessages(JDA jda, JoinQueue.Snapshot snapshot, DiscordConfig config) {
+        long now = System.currentTimeMillis();
+        Set<UUID> queued = new HashSet<>();
+        int sent = 0;
+        for (JoinQueue.Waiting waiting : snapshot.players()) {
+            queued.add(waiting.playerUuid());
+            if (sent >= MAX_DMS_PER_FLUSH) {
+                continue;
+            }
+            OptionalLong userId = discordBotService.links().discordUserId(waiting.playerUuid());
+            if (userId.isEmpty()) {
+                continue;
+            }
+            Notified last = notified.get(waiting.playerUuid());
+            if (last != null && last.position() == waiting.position()) {
+                continue;
+            }
+            if (
+                !waiting.slotReady() &&
+                last != null &&
+                now - last.sentAtMillis() < DM_MIN_INTERVAL_MILLIS
+            ) {
+                continue;
+            }
+            sendDirectMessage(jda, userId.getAsLong(), directMessageText(waiting, config));
+            notified.put(waiting.playerUuid(), new Notified(waiting.position(), now));
+            sent++;
+        }
+        // left, joined or gave up: a later queue visit starts over
+        notified.keySet().retainAll(queued);
+    }
+
+    private void sendDirectMessage(JDA jda, long userId, String text) {
+        DiscordRestEvent trace = DiscordRestEvent.start(ROUTE_CREATE_DM);
+        jda
+            .openPrivateChannelById(userId)
+            .flatMap(channel -> channel.sendMessage(text))
+            .queue(
+                message -> {
+                    trace.succeeded();
+                    directMessages.increment();
+                },
+                failure -> {
+                    DiscordBotService.traceFailure(trace, failure);
+                    directMessageFailures.increment();
+                    if (!isClosedDirectMessages(failure)) {
+                        logger
+                            .atWarning()
+                            .log(
+                                "Unable to send join queue position to Discord user %s: %s",
+                                userId,
+                                failure.getMessage()
+                            );
+                    }
+                }
+            );
+    }
+
+    private static String directMessageText(JoinQueue.Waiting waiting, DiscordConfig config) {
+        if (waiting.slotReady()) {
+            return "A slot is free for you on the server. Connect within " +
+                config.joinQueueHoldSeconds() +
+                " seconds to take it.";
+        }
+        return "The server is full. You are number " +
+            waiting.position() +
+            " in the join queue; you will get a message here when a slot is held for you.";
+    }
+
+    private static boolean isClosedDirectMessages(Throwable failure) {
+        return failure instanceof ErrorResponseException responseException &&
+            responseException.getErrorResponse() == ErrorResponse.CANNOT_SEND_TO_USER;
+    }
+
+    private void updateEmbed(JDA jda, JoinQueue.Snapshot snapshot, DiscordConfig config) {
+        if (snapshot.version() == embedVersion || !config.hasStatusChannel()) {
+            return;
+        }
+        TextChannel channel = jda.getTextChannelById(config.statusChannelId());
+        if (channel == null) {
+            return;
+        }
+        embedVersion = snapshot.version();
+        Long messageId = queueMessageId;
+        if (snapshot.players().isEmpty()) {
+            if (messageId != null) {
+                deleteEmbed(channel, messageId);
+            }
+            return;
+        }
+        MessageEmbed embed = createQueueEmbed(snapshot);
+        RestAction<Message> action;
+        DiscordRestEvent trace;
+        if (messageId != null) {
+            action = channel.editMessageEmbedsById(messageId, embed);
+            trace = DiscordRestEvent.start(ROUTE_EDIT_MESSAGE);
+        } else {
+            action = channel.sendMessageEmbeds(embed);
+            trace = DiscordRestEvent.start(ROUTE_CREATE_MESSAGE);
+        }
+        action.queue(
+            message -> {
+                trace.succeeded();
+                embedUpdates.increment();
+                queueMessageId = message.getIdLong();
+            },
+            failure -> {
+                DiscordBotService.traceFailure(trace, failure);
+                logger
+                    .atWarning()
+                    .log(
+                        "Unable to update join queue embed: %s",
+                        failure.getMessage()
+                    );
+                // post a fresh message on the next poll
+                queueMessageId = null;
+                embedVersion = -1;
+            }
+        );
+    }
+
+    private void deleteEmbed(TextChannel channel, long messageId) {
+        DiscordRestEvent trace = DiscordRestEvent.start(ROUTE_DELETE_MESSAGE);
+        queueMessageId = null;
+        channel
+            .deleteMessageById(messageId)
+            .queue(
+                ignored -> {
+                    trace.succeeded();
+                    embedUpdates.increment();
+                },
+                failure -> DiscordBotService.traceFailure(trace, failure)
+            );
+    }
+
+    private MessageEmbed createQueueEmbed(JoinQueue.Snapshot snapshot) {
+        EmbedBuilder builder = new EmbedBuilder();
+        builder.setTitle("Join Queue");
+        StringBuilder rows = new StringBuilder();
+        int shown = 0;
+        for (JoinQueue.Waiting waiting : snapshot.players()) {
+            if (shown++ == EMBED_ROWS) {
+                rows.append("…and ").append(snapshot.players().size() - EMBED_ROWS).append(" more");
+                break;
+            }
+            OptionalLong userId = discordBotService.links().discordUserId(waiting.playerUuid());
+            String who = userId.isPresent() ? "<@" + userId.getAsLong() + ">" : "a player";
+            if (waiting.slotReady()) {
+                rows.append("Slot held for ").append(who);
+            } else {
+                rows.append('#').append(waiting.position()).append(' ').append(who);
+            }
+            rows.append('\n');
+        }
+        builder.setDescription(rows.toString());
+        builder.addField("Waiting", String.valueOf(snapshot.players().size()), true);
+        builder.setColor(QUEUE_COLOR);
+        builder.setTimestamp(OffsetDateTime.now());
+        builder.setFooter("Last update");
+        return builder.build();
+    }
+
+    private record Notified(int position, long sentAtMillis) {}
+}
@@ -0,0 +1,51 @@
+package com.bumenfeld.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** Fan-out of a single announcement across the owning world threads. */
+@Name("com.bumenfeld.AnnouncementFanout")
+@Label("Announcement Fan-out")
+@Category({ "Discord Companion", "Announcements" })
+@Description("Delivery of one announcement to its recipients")
+@StackTrace(false)
+public final class AnnouncementFanoutEvent extends Event {
+
+    @Label("Target")
+    String target;
+
+    @Label("Batches")
+    int batches;
+
+    @Label("Delivered")
+    int delivered;
+
+    @Label("Failed")
+    int failed;
+
+    @Label("Skipped")
+    @Description("Recipients between worlds, left out rather than messaged off their world thread")
+    int skipped;
+
+    public static AnnouncementFanoutEvent start(String target) {
+        AnnouncementFanoutEvent event = new AnnouncementFanoutEvent();
+        event.target = target;
+        event.begin();
+        return event;
+    }
+
+    public void finish(int batches, int delivered, int failed, int skipped) {
+        if (!shouldCommit()) {
+            return;
+        }
+        this.batches = batches;
+        this.delivered = delivered;
+        this.failed = failed;
+        this.skipped = skipped;
+        commit();
+    }
+}
@@ -0,0 +1,40 @@
+package com.bumenfeld.jfr;
+
+import java.util.UUID;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** A call to {@code WhitelistCodeService.ensureCode}. */
+@Name("com.bumenfeld.CodeIssuance")
+@Label("Whitelist Code Issuance")
+@Category({ "Discord Companion", "Whitelist" })
+@Description("Lookup or generation of a whitelist code for a player")
+@StackTrace(false)
+public final class CodeIssuanceEvent extends Event {
+
+    @Label("Player UUID")
+    String playerUuid;
+
+    @Label("Reused Existing Code")
+    boolean reused;
+
+    public static CodeIssuanceEvent start() {
+        CodeIssuanceEvent event = new CodeIssuanceEvent();
+        event.begin();
+        return event;
+    }
+
+    public void finish(UUID playerUuid, boolean reused) {
+        if (!shouldCommit()) {
+            return;
+        }
+        // formatted only when recorded, so a disabled recorder allocates nothing
+        this.playerUuid = playerUuid.toString();
+        this.reused = reused;
+        commit();
+    }
+}
@@ -0,0 +1,49 @@
+package com.bumenfeld.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * One {@code DatabaseManager} statement. The event duration covers execution
+ * while holding the lock; time spent waiting for the lock is a separate field.
+ */
+@Name("com.bumenfeld.DatabaseStatement")
+@Label("Database Statement")
+@Category({ "Discord Companion", "Database" })
+@Description("SQLite statement executed by the whitelist database")
+@StackTrace(false)
+public final class DatabaseStatementEvent extends Event {
+
+    @Label("Statement")
+    String statement;
+
+    @Label("Rows")
+    int rows;
+
+    @Label("Lock Wait")
+    @Timespan(Timespan.NANOSECONDS)
+    long lockWait;
+
+    public static DatabaseStatementEvent start(String statement, long lockWaitNanos) {
+        DatabaseStatementEvent event = new DatabaseStatementEvent();
+        event.statement = statement;
+        event.lockWait = lockWaitNanos;
+        event.begin();
+        return event;
+    }
+
+    public void rows(int rows) {
+        this.rows = rows;
+    }
+
+    public void finish() {
+        if (shouldCommit()) {
+            commit();
+        }
+    }
+}
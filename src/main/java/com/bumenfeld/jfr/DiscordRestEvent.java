@@ -0,0 +1,64 @@
+package com.bumenfeld.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** A Discord REST action issued by the bot, from queueing to its callback. */
+@Name("com.bumenfeld.DiscordRest")
+@Label("Discord REST Action")
+@Category({ "Discord Companion", "Discord" })
+@Description("Round trip of a Discord REST action")
+@StackTrace(false)
+public final class DiscordRestEvent extends Event {
+
+    @Label("Route")
+    String route;
+
+    @Label("HTTP Status")
+    @Description("Response status, 429 when JDA gave up on a rate limit; 0 on success or without a response")
+    int httpStatus;
+
+    @Label("Discord Error Code")
+    @Description("JSON error code from the response body, 0 when there is none")
+    int errorCode;
+
+    @Label("Failure")
+    String failure;
+
+    @Label("Success")
+    boolean success;
+
+    public static DiscordRestEvent start(String route) {
+        DiscordRestEvent event = new DiscordRestEvent();
+        event.route = route;
+        event.begin();
+        return event;
+    }
+
+    public void succeeded() {
+        if (!shouldCommit()) {
+            return;
+        }
+        this.success = true;
+        commit();
+    }
+
+    /**
+     * @param failure short description, e.g. the {@code ErrorResponse} name
+     *     or the exception type
+     */
+    public void failed(int httpStatus, int errorCode, String failure) {
+        if (!shouldCommit()) {
+            return;
+        }
+        this.success = false;
+        this.httpStatus = httpStatus;
+        this.errorCode = errorCode;
+        this.failure = failure;
+        commit();
+    }
+}
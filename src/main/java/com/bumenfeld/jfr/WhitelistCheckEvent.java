@@ -0,0 +1,43 @@
+package com.bumenfeld.jfr;
+
+import java.util.UUID;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** Connect-time whitelist check performed in {@code onPlayerSetupConnect}. */
+@Name("com.bumenfeld.WhitelistCheck")
+@Label("Whitelist Check")
+@Category({ "Discord Companion", "Whitelist" })
+@Description("Whitelist decision for a connecting player")
+@StackTrace(false)
+public final class WhitelistCheckEvent extends Event {
+
+    @Label("Player UUID")
+    String playerUuid;
+
+    @Label("Whitelisted")
+    boolean whitelisted;
+
+    @Label("Whitelist Enforced")
+    boolean enforced;
+
+    public static WhitelistCheckEvent start() {
+        WhitelistCheckEvent event = new WhitelistCheckEvent();
+        event.begin();
+        return event;
+    }
+
+    public void finish(UUID playerUuid, boolean whitelisted, boolean enforced) {
+        if (!shouldCommit()) {
+            return;
+        }
+        this.playerUuid = playerUuid.toString();
+        this.whitelisted = whitelisted;
+        this.enforced = enforced;
+        commit();
+    }
+}
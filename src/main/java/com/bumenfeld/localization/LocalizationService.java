@@ -3,10 +3,10 @@ package com.bumenfeld.localization;
 import com.hypixel.hytale.logger.HytaleLogger;
 import com.bumenfeld.discord.DiscordMessages;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.JarURLConnection;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
@@ -16,7 +16,6 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Enumeration;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
@@ -24,8 +23,6 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -34,6 +31,7 @@ public final class LocalizationService {
 
     private static final String LOCALIZATION_DIR = "localization";
     private static final String DEFAULT_LANGUAGE = "en";
+    private static final String LOCALE_INDEX = "/locales/index.list";
     private static final String DEFAULT_PRESENCE_FORMAT =
         "Players {online}/{max}";
     private static final String DEFAULT_JSON = """
@@ -55,6 +53,7 @@ public final class LocalizationService {
         this.logger = Objects.requireNonNull(logger, "logger");
         Objects.requireNonNull(dataDirectory, "dataDirectory");
 
+        long startedAt = System.nanoTime();
         this.localizationDir = dataDirectory.resolve(LOCALIZATION_DIR);
         try {
             Files.createDirectories(localizationDir);
@@ -66,7 +65,14 @@ public final class LocalizationService {
         }
 
         ensureDefaultLocale();
-        ensureBundledLocales();
+        int bundled = ensureBundledLocales();
+        logger
+            .atInfo()
+            .log(
+                "Localization ready in %d ms (%d bundled locales).",
+                (System.nanoTime() - startedAt) / 1_000_000L,
+                bundled
+            );
     }
 
     public DiscordMessages getMessages(String language) {
@@ -104,7 +110,7 @@ public final class LocalizationService {
         }
     }
 
-    private Map<String, String> parseJson(String content) {
+    static Map<String, String> parseJson(String content) {
         Matcher matcher = ENTRY_PATTERN.matcher(content);
         Map<String, String> entries = new ConcurrentHashMap<>();
         while (matcher.find()) {
@@ -116,7 +122,7 @@ public final class LocalizationService {
         return entries;
     }
 
-    private String unescape(String value) {
+    private static String unescape(String value) {
         StringBuilder builder = new StringBuilder(value.length());
         for (int i = 0; i < value.length(); i++) {
             char ch = value.charAt(i);
@@ -144,8 +150,9 @@ public final class LocalizationService {
         }
     }
 
-    private void ensureBundledLocales() {
-        for (Map.Entry<String, String> entry : discoverBundledLocales().entrySet()) {
+    private int ensureBundledLocales() {
+        Map<String, String> bundled = discoverBundledLocales();
+        for (Map.Entry<String, String> entry : bundled.entrySet()) {
             String language = entry.getKey();
             Path localeFile = localizationDir.resolve(language + ".json");
             if (Files.exists(localeFile)) {
@@ -153,6 +160,7 @@ public final class LocalizationService {
             }
             createBundledLocale(localeFile, language, entry.getValue());
         }
+        return bundled.size();
     }
 
     private void createDefaultLocale(Path file) {
@@ -207,35 +215,26 @@ public final class LocalizationService {
     }
 
     private List<String> locateLocaleResources() {
-        List<String> resources = new ArrayList<>();
+        List<String> resources = readLocaleIndex();
+        if (resources != null) {
+            return resources;
+        }
+
+        // no generated index (e.g. running from an IDE), fall back to the exploded resources
+        resources = new ArrayList<>();
         URL localesUrl = LocalizationService.class.getResource("/locales/");
-        if (localesUrl == null) {
+        if (localesUrl == null || !"file".equals(localesUrl.getProtocol())) {
+            logger
+                .atWarning()
+                .log("Bundled locale index %s is missing.", LOCALE_INDEX);
             return resources;
         }
         try {
-            String protocol = localesUrl.getProtocol();
-            if ("file".equals(protocol)) {
-                Path dir = Paths.get(localesUrl.toURI());
-                try (DirectoryStream<Path> stream =
-                    Files.newDirectoryStream(dir, "*.properties")) {
-                    for (Path entry : stream) {
-                        resources.add("locales/" + entry.getFileName().toString());
-                    }
-                }
-            } else if ("jar".equals(protocol)) {
-                JarURLConnection connection =
-                    (JarURLConnection) localesUrl.openConnection();
-                try (JarFile jarFile = connection.getJarFile()) {
-                    Enumeration<JarEntry> entries = jarFile.entries();
-                    while (entries.hasMoreElements()) {
-                        JarEntry jarEntry = entries.nextElement();
-                        String name = jarEntry.getName();
-                        if (!jarEntry.isDirectory()
-                            && name.startsWith("locales/")
-                            && name.endsWith(".properties")) {
-                            resources.add(name);
-                        }
-                    }
+            Path dir = Paths.get(localesUrl.toURI());
+            try (DirectoryStream<Path> stream =
+                Files.newDirectoryStream(dir, "*.properties")) {
+                for (Path entry : stream) {
+                    resources.add("locales/" + entry.getFileName().toString());
                 }
             }
         } catch (IOException | URISyntaxException exception) {
@@ -249,6 +248,36 @@ public final class LocalizationService {
         return resources;
     }
 
+    /** Reads the locale list generated by the {@code generateLocaleIndex} Gradle task. */
+    private List<String> readLocaleIndex() {
+        try (InputStream stream =
+            LocalizationService.class.getResourceAsStream(LOCALE_INDEX)) {
+            if (stream == null) {
+                return null;
+            }
+            List<String> resources = new ArrayList<>();
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(stream, StandardCharsets.UTF_8)
+            );
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String name = line.trim();
+                if (!name.isEmpty() && name.endsWith(".properties")) {
+                    resources.add("locales/" + name);
+                }
+            }
+            return resources;
+        } catch (IOException exception) {
+            logger
+                .atWarning()
+                .log(
+                    "Unable to read bundled locale index: %s",
+                    exception.getMessage()
+                );
+            return null;
+        }
+    }
+
     private Map<String, String> readBundledLocale(String resourcePath) {
         try (InputStream stream =
             LocalizationService.class.getResourceAsStream(resourcePath)) {
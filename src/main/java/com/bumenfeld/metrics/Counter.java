@@ -0,0 +1,36 @@
+package com.bumenfeld.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** Monotonic counter backed by a {@link LongAdder}. */
+public final class Counter {
+
+    private final String name;
+    private final String help;
+    private final LongAdder value = new LongAdder();
+
+    Counter(String name, String help) {
+        this.name = name;
+        this.help = help;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public String help() {
+        return help;
+    }
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long delta) {
+        value.add(delta);
+    }
+
+    public long value() {
+        return value.sum();
+    }
+}
@@ -0,0 +1,33 @@
+package com.bumenfeld.metrics;
+
+import java.util.function.LongSupplier;
+
+/** Point-in-time value sampled on read. */
+public final class Gauge {
+
+    private final String name;
+    private final String help;
+    private final LongSupplier supplier;
+
+    Gauge(String name, String help, LongSupplier supplier) {
+        this.name = name;
+        this.help = help;
+        this.supplier = supplier;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public String help() {
+        return help;
+    }
+
+    public long value() {
+        try {
+            return supplier.getAsLong();
+        } catch (RuntimeException exception) {
+            return -1L;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.bumenfeld.metrics;
+
+import com.hypixel.hytale.logger.HytaleLogger;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/** Serves {@link MetricsRegistry} in Prometheus text format on the loopback interface only. */
+public final class MetricsHttpServer implements AutoCloseable {
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final MetricsRegistry registry;
+    private final HytaleLogger logger;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public MetricsHttpServer(MetricsRegistry registry, HytaleLogger logger) {
+        this.registry = Objects.requireNonNull(registry, "registry");
+        this.logger = Objects.requireNonNull(logger, "logger");
+    }
+
+    public synchronized void start(int port) {
+        close();
+        if (port <= 0) {
+            return;
+        }
+        try {
+            HttpServer created = HttpServer.create(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                0
+            );
+            created.createContext("/metrics", this::handle);
+            executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "discord-companion-metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+            created.setExecutor(executor);
+            created.start();
+            server = created;
+            logger
+                .atInfo()
+                .log("Metrics endpoint listening on http://127.0.0.1:%d/metrics", port);
+        } catch (IOException exception) {
+            logger
+                .atWarning()
+                .log(
+                    "Unable to start metrics endpoint on port %d: %s",
+                    port,
+                    exception.getMessage()
+                );
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = registry.toPrometheusText().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.bumenfeld.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+
+/**
+ * Holds the plugin's counters, gauges and latency histograms. Instruments are
+ * registered once and kept in fields by their owners, so the hot path is a
+ * single adder or array increment.
+ */
+public final class MetricsRegistry {
+
+    private static final String PREFIX = "discord_companion_";
+    private static final Pattern VALID_NAME = Pattern.compile("[a-z_][a-z0-9_]*");
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+
+    public Counter counter(String name, String help) {
+        return counters.computeIfAbsent(validate(name), key -> new Counter(key, help));
+    }
+
+    public Gauge gauge(String name, String help, LongSupplier supplier) {
+        Objects.requireNonNull(supplier, "supplier");
+        Gauge gauge = new Gauge(validate(name), help, supplier);
+        gauges.put(gauge.name(), gauge);
+        return gauge;
+    }
+
+    public LatencyHistogram histogram(String name, String help) {
+        return histograms.computeIfAbsent(
+            validate(name),
+            key -> new LatencyHistogram(key, help)
+        );
+    }
+
+    /** Renders every instrument in the Prometheus text exposition format (version 0.0.4). */
+    public String toPrometheusText() {
+        StringBuilder builder = new StringBuilder(4096);
+        for (Counter counter : counters.values()) {
+            String name = PREFIX + counter.name() + "_total";
+            header(builder, name, counter.help(), "counter");
+            builder.append(name).append(' ').append(counter.value()).append('\n');
+        }
+        for (Gauge gauge : gauges.values()) {
+            String name = PREFIX + gauge.name();
+            header(builder, name, gauge.help(), "gauge");
+            builder.append(name).append(' ').append(gauge.value()).append('\n');
+        }
+        for (LatencyHistogram histogram : histograms.values()) {
+            String name = PREFIX + histogram.name() + "_seconds";
+            header(builder, name, histogram.help(), "summary");
+            for (double quantile : QUANTILES) {
+                builder
+                    .append(name)
+                    .append("{quantile=\"")
+                    .append(quantile)
+                    .append("\"} ")
+                    .append(seconds(histogram.quantileNanos(quantile)))
+                    .append('\n');
+            }
+            builder
+                .append(name)
+                .append("_sum ")
+                .append(seconds(histogram.sumNanos()))
+                .append('\n');
+            builder
+                .append(name)
+                .append("_count ")
+                .append(histogram.count())
+                .append('\n');
+        }
+        return builder.toString();
+    }
+
+    /** Short human-readable summary used by the Discord {@code /metrics} command. */
+    public List<String> summaryLines() {
+        List<String> lines = new ArrayList<>();
+        for (Counter counter : counters.values()) {
+            lines.add(counter.name() + ": " + counter.value());
+        }
+        for (Gauge gauge : gauges.values()) {
+            lines.add(gauge.name() + ": " + gauge.value());
+        }
+        for (LatencyHistogram histogram : histograms.values()) {
+            if (histogram.count() == 0) {
+                continue;
+            }
+            lines.add(
+                String.format(
+                    Locale.ROOT,
+                    "%s: n=%d p50=%s p99=%s p99.9=%s max=%s",
+                    histogram.name(),
+                    histogram.count(),
+                    millis(histogram.quantileNanos(0.5)),
+                    millis(histogram.quantileNanos(0.99)),
+                    millis(histogram.quantileNanos(0.999)),
+                    millis(histogram.maxNanos())
+                )
+            );
+        }
+        return lines;
+    }
+
+    private static void header(
+        StringBuilder builder,
+        String name,
+        String help,
+        String type
+    ) {
+        if (help != null && !help.isBlank()) {
+            builder
+                .append("# HELP ")
+                .append(name)
+                .append(' ')
+                .append(help.replace("\\", "\\\\").replace("\n", "\\n"))
+                .append('\n');
+        }
+        builder.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.2fms", nanos / 1_000_000.0);
+    }
+
+    private static String validate(String name) {
+        Objects.requireNonNull(name, "name");
+        if (!VALID_NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid metric name: " + name);
+        }
+        return name;
+    }
+}
@@ -0,0 +1,260 @@
+package com.bumenfeld.player;
+
+import com.bumenfeld.discord.DiscordConfig;
+import com.bumenfeld.metrics.Counter;
+import com.bumenfeld.metrics.MetricsRegistry;
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Budget for connection attempts by players who are not whitelisted, checked
+ * by {@link ConnectionGate} before it issues a code. A flood of random UUIDs
+ * otherwise turns every attempt into a store write.
+ *
+ * <ul>
+ *   <li>Each remote address has a token bucket of
+ *       {@code connect-attempts-per-address-per-minute}, and all addresses
+ *       share one of {@code connect-attempts-per-second}; both allow a burst
+ *       of one interval's worth.</li>
+ *   <li>An address may have at most {@code max-pending-codes-per-address}
+ *       players waiting to validate a code. A player stops counting once
+ *       whitelisted, or after the code TTL.</li>
+ * </ul>
+ *
+ * Limits are read from the configuration on every call. An attempt without
+ * an address is only held to the global bucket. At most
+ * {@link #MAX_TRACKED_ADDRESSES} addresses are tracked; beyond that idle
+ * ones are dropped, by at most one sweep per {@link #IDLE_SWEEP_INTERVAL},
+ * and until a sweep frees room new addresses get the global bucket only.
+ */
+public final class ConnectAdmission {
+
+    static final int MAX_TRACKED_ADDRESSES = 65_536;
+    // how long a pending code counts when codes never expire
+    private static final Duration UNLIMITED_CODE_TTL_HOLD = Duration.ofDays(1);
+    // a sweep walks every tracked address, so a flood of new ones must not run it per attempt
+    private static final Duration IDLE_SWEEP_INTERVAL = Duration.ofSeconds(1);
+
+    public enum Verdict {
+        ADMITTED,
+        ADDRESS_RATE,
+        GLOBAL_RATE,
+        PENDING_CODES,
+    }
+
+    private final ConcurrentHashMap<InetAddress, AddressState> addresses =
+        new ConcurrentHashMap<>();
+    private final TokenBucket global = new TokenBucket();
+    private final AtomicLong lastSweepAt =
+        new AtomicLong(System.nanoTime() - IDLE_SWEEP_INTERVAL.toNanos());
+    private final Counter addressRateRejections;
+    private final Counter globalRateRejections;
+    private final Counter pendingCodeRejections;
+
+    public ConnectAdmission(MetricsRegistry metrics) {
+        Objects.requireNonNull(metrics, "metrics");
+        this.addressRateRejections = metrics.counter(
+            "connect_rejected_address_rate",
+            "Connection attempts refused by the per-address budget"
+        );
+        this.globalRateRejections = metrics.counter(
+            "connect_rejected_global_rate",
+            "Connection attempts refused by the global budget"
+        );
+        this.pendingCodeRejections = metrics.counter(
+            "connect_rejected_pending_codes",
+            "Connection attempts refused because the address has too many unvalidated codes"
+        );
+        metrics.gauge(
+            "connect_tracked_addresses",
+            "Remote addresses with connect budget state",
+            addresses::size
+        );
+    }
+
+    /**
+     * Charges one attempt by {@code playerUuid} from {@code address}
+     * ({@code null} when unknown) and tells whether it may go on to code
+     * issuance.
+     *
+     * @param whitelisted whether a player has validated since getting a code
+     */
+    public Verdict tryAdmit(
+        InetAddress address,
+        UUID playerUuid,
+        DiscordConfig config,
+        Predicate<UUID> whitelisted
+    ) {
+        long now = System.nanoTime();
+        AddressState state = address == null ? null : stateFor(address, now);
+        Charge charge = null;
+        if (state != null) {
+            charge = state.tryAdmit(playerUuid, config, whitelisted, now);
+            if (charge.verdict() == Verdict.ADDRESS_RATE) {
+                addressRateRejections.increment();
+                return charge.verdict();
+            }
+            if (charge.verdict() == Verdict.PENDING_CODES) {
+                pendingCodeRejections.increment();
+                return charge.verdict();
+            }
+        }
+        int perSecond = config.connectAttemptsPerSecond();
+        if (
+            perSecond > 0 &&
+            !global.tryAcquire(perSecond, perSecond / (double) TimeUnit.SECONDS.toNanos(1), now)
+        ) {
+            if (state != null) {
+                // a storm elsewhere must not use up this address's budget
+                state.refund(playerUuid, charge);
+            }
+            globalRateRejections.increment();
+            return Verdict.GLOBAL_RATE;
+        }
+        return Verdict.ADMITTED;
+    }
+
+    private AddressState stateFor(InetAddress address, long now) {
+        AddressState state = addresses.get(address);
+        if (state != null) {
+            return state;
+        }
+        if (addresses.size() >= MAX_TRACKED_ADDRESSES) {
+            long lastSweep = lastSweepAt.get();
+            if (
+                now - lastSweep < IDLE_SWEEP_INTERVAL.toNanos() ||
+                !lastSweepAt.compareAndSet(lastSweep, now)
+            ) {
+                // swept recently or by another thread right now
+                return null;
+            }
+            addresses.entrySet().removeIf(entry -> entry.getValue().isIdle(now));
+            if (addresses.size() >= MAX_TRACKED_ADDRESSES) {
+                return null;
+            }
+        }
+        return addresses.computeIfAbsent(address, key -> new AddressState());
+    }
+
+    private static long pendingHoldNanos(DiscordConfig config) {
+        Duration ttl = config.codeTtl();
+        return (ttl != null ? ttl : UNLIMITED_CODE_TTL_HOLD).toNanos();
+    }
+
+    /** Refilling token bucket; the rate is passed in so configuration changes apply at once. */
+    static final class TokenBucket {
+
+        private double tokens = -1;
+        private long refilledAt;
+
+        synchronized boolean tryAcquire(double capacity, double tokensPerNano, long now) {
+            refill(capacity, tokensPerNano, now);
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+
+        /** Gives back a token taken by {@link #tryAcquire}. */
+        synchronized void refund(double capacity) {
+            if (tokens >= 0) {
+                tokens = Math.min(capacity, tokens + 1);
+            }
+        }
+
+        /** Whether the bucket would be full by now, i.e. dropping it loses nothing. */
+        synchronized boolean isFull(double capacity, double tokensPerNano, long now) {
+            return tokens < 0 || tokens + (now - refilledAt) * tokensPerNano >= capacity;
+        }
+
+        private void refill(double capacity, double tokensPerNano, long now) {
+            if (tokens < 0) {
+                // created full
+                tokens = capacity;
+            } else {
+                tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+            }
+            refilledAt = now;
+        }
+    }
+
+    private static final class AddressState {
+
+        private final TokenBucket bucket = new TokenBucket();
+        // players from this address holding a code, oldest first, with when it was issued
+        private final LinkedHashMap<UUID, Long> pending = new LinkedHashMap<>();
+        // the per-minute limit last applied, so isIdle can judge the bucket
+        private int perMinute;
+        private long pendingHoldNanos;
+
+        /**
+         * Takes a token and, when admitted, reserves the player's pending slot
+         * in the same step, so concurrent attempts cannot both see room.
+         */
+        synchronized Charge tryAdmit(
+            UUID playerUuid,
+            DiscordConfig config,
+            Predicate<UUID> whitelisted,
+            long now
+        ) {
+            perMinute = config.connectAttemptsPerAddressPerMinute();
+            pendingHoldNanos = pendingHoldNanos(config);
+            boolean tookToken = perMinute > 0;
+            if (tookToken && !bucket.tryAcquire(perMinute, tokensPerNano(perMinute), now)) {
+                return new Charge(Verdict.ADDRESS_RATE, false, false);
+            }
+            int maxPending = config.maxPendingCodesPerAddress();
+            if (maxPending <= 0 || pending.containsKey(playerUuid)) {
+                return new Charge(Verdict.ADMITTED, tookToken, false);
+            }
+            if (pending.size() >= maxPending) {
+                // full: forget players who validated or whose code has expired, then look again
+                Iterator<Map.Entry<UUID, Long>> entries = pending.entrySet().iterator();
+                while (entries.hasNext()) {
+                    Map.Entry<UUID, Long> entry = entries.next();
+                    if (now - entry.getValue() >= pendingHoldNanos || whitelisted.test(entry.getKey())) {
+                        entries.remove();
+                    }
+                }
+                if (pending.size() >= maxPending) {
+                    return new Charge(Verdict.PENDING_CODES, tookToken, false);
+                }
+            }
+            pending.put(playerUuid, now);
+            return new Charge(Verdict.ADMITTED, tookToken, true);
+        }
+
+        /** Undoes an admitted {@link #tryAdmit} that the global budget then refused. */
+        synchronized void refund(UUID playerUuid, Charge charge) {
+            if (charge.tookToken()) {
+                bucket.refund(perMinute);
+            }
+            if (charge.reservedPending()) {
+                pending.remove(playerUuid);
+            }
+        }
+
+        synchronized boolean isIdle(long now) {
+            pending.values().removeIf(issuedAt -> now - issuedAt >= pendingHoldNanos);
+            return pending.isEmpty() &&
+                (perMinute <= 0 || bucket.isFull(perMinute, tokensPerNano(perMinute), now));
+        }
+
+        private static double tokensPerNano(int perMinute) {
+            return perMinute / (double) TimeUnit.MINUTES.toNanos(1);
+        }
+    }
+
+    /** What {@link AddressState#tryAdmit} took, so a global refusal can give it back. */
+    private record Charge(Verdict verdict, boolean tookToken, boolean reservedPending) {}
+}
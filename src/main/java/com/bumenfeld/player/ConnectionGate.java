@@ -0,0 +1,245 @@
+package com.bumenfeld.player;
+
+import com.bumenfeld.database.WhitelistCodeService;
+import com.bumenfeld.discord.DiscordConfig;
+import com.bumenfeld.jfr.WhitelistCheckEvent;
+import com.bumenfeld.metrics.Counter;
+import com.bumenfeld.metrics.LatencyHistogram;
+import com.bumenfeld.metrics.MetricsRegistry;
+import com.hypixel.hytale.logger.HytaleLogger;
+import java.net.InetAddress;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Whitelist decision for a connecting player plus the online set it feeds.
+ * Kept free of Hytale event types so the join path can be driven directly,
+ * e.g. by the join-storm harness; {@code DiscordCompanion} adapts the setup
+ * and disconnect events onto it.
+ *
+ * <p>Players who are not whitelisted pass {@link ConnectAdmission} before a
+ * code is issued for them; over budget they get a fixed message instead.
+ * Admitted players who find the server full wait in the {@link JoinQueue}
+ * and are told their position.
+ */
+public final class ConnectionGate {
+
+    public static final String RATE_LIMITED_MESSAGE =
+        "Too many connection attempts. Please wait a minute before trying again.";
+    public static final String PENDING_CODES_MESSAGE =
+        "Too many players from your network are waiting to validate a whitelist code. Validate one in Discord, then try again.";
+    private static final String QUEUED_MESSAGE_PREFIX = "The server is full. You are number ";
+
+    private final WhitelistCodeService whitelistCodeService;
+    private final Supplier<DiscordConfig> configuration;
+    private final Runnable onlineCountChanged;
+    private final IntSupplier maxPlayers;
+    private final HytaleLogger logger;
+    private final Set<UUID> onlinePlayers = ConcurrentHashMap.newKeySet();
+    private final ConnectAdmission admission;
+    private final JoinQueue joinQueue;
+    private final LatencyHistogram setupConnectLatency;
+    private final Counter whitelistRejections;
+
+    /** Without a known capacity, so nobody is ever queued. */
+    public ConnectionGate(
+        WhitelistCodeService whitelistCodeService,
+        Supplier<DiscordConfig> configuration,
+        Runnable onlineCountChanged,
+        MetricsRegistry metrics,
+        HytaleLogger logger
+    ) {
+        this(
+            whitelistCodeService,
+            configuration,
+            onlineCountChanged,
+            () -> 0,
+            metrics,
+            logger
+        );
+    }
+
+    /**
+     * @param maxPlayers server capacity, read on every connect and
+     *     disconnect; {@code 0} when unknown, which disables the queue
+     */
+    public ConnectionGate(
+        WhitelistCodeService whitelistCodeService,
+        Supplier<DiscordConfig> configuration,
+        Runnable onlineCountChanged,
+        IntSupplier maxPlayers,
+        MetricsRegistry metrics,
+        HytaleLogger logger
+    ) {
+        this.whitelistCodeService =
+            Objects.requireNonNull(whitelistCodeService, "whitelistCodeService");
+        this.configuration = Objects.requireNonNull(configuration, "configuration");
+        this.onlineCountChanged =
+            Objects.requireNonNull(onlineCountChanged, "onlineCountChanged");
+        this.maxPlayers = Objects.requireNonNull(maxPlayers, "maxPlayers");
+        this.logger = Objects.requireNonNull(logger, "logger");
+        Objects.requireNonNull(metrics, "metrics");
+        this.admission = new ConnectAdmission(metrics);
+        this.joinQueue = new JoinQueue(metrics);
+        this.setupConnectLatency = metrics.histogram(
+            "player_setup_connect",
+            "onPlayerSetupConnect handler latency"
+        );
+        this.whitelistRejections = metrics.counter(
+            "whitelist_rejections",
+            "Connections refused because the player is not whitelisted"
+        );
+    }
+
+    /**
+     * Admits or refuses {@code playerUuid}. A refused player is handed to
+     * {@code disconnect} together with the instructions for getting a code.
+     *
+     * @return whether the player was admitted
+     */
+    public boolean onSetupConnect(UUID playerUuid, Consumer<String> disconnect) {
+        return onSetupConnect(playerUuid, null, disconnect);
+    }
+
+    /**
+     * As {@link #onSetupConnect(UUID, Consumer)}, charging the attempt to
+     * {@code remoteAddress}; {@code null} when it is not known.
+     */
+    public boolean onSetupConnect(
+        UUID playerUuid,
+        InetAddress remoteAddress,
+        Consumer<String> disconnect
+    ) {
+        long startedAt = System.nanoTime();
+        try {
+            return handleSetupConnect(playerUuid, remoteAddress, disconnect);
+        } finally {
+            setupConnectLatency.recordSince(startedAt);
+        }
+    }
+
+    private boolean handleSetupConnect(
+        UUID playerUuid,
+        InetAddress remoteAddress,
+        Consumer<String> disconnect
+    ) {
+        WhitelistCheckEvent trace = WhitelistCheckEvent.start();
+        DiscordConfig config = configuration.get();
+        if (!config.enableWhitelist()) {
+            trace.finish(playerUuid, true, false);
+            return admitOrQueue(playerUuid, config, disconnect);
+        }
+        boolean whitelisted = whitelistCodeService.isWhitelisted(playerUuid);
+        trace.finish(playerUuid, whitelisted, true);
+        if (!whitelisted) {
+            whitelistRejections.increment();
+            ConnectAdmission.Verdict verdict = admission.tryAdmit(
+                remoteAddress,
+                playerUuid,
+                config,
+                whitelistCodeService::isWhitelisted
+            );
+            disconnect.accept(
+                switch (verdict) {
+                    case ADMITTED -> buildWhitelistInstructions(playerUuid, config);
+                    case ADDRESS_RATE, GLOBAL_RATE -> RATE_LIMITED_MESSAGE;
+                    case PENDING_CODES -> PENDING_CODES_MESSAGE;
+                }
+            );
+            return false;
+        }
+
+        return admitOrQueue(playerUuid, config, disconnect);
+    }
+
+    private boolean admitOrQueue(
+        UUID playerUuid,
+        DiscordConfig config,
+        Consumer<String> disconnect
+    ) {
+        if (config.enableJoinQueue() && !onlinePlayers.contains(playerUuid)) {
+            int position = joinQueue.tryEnter(
+                playerUuid,
+                onlinePlayers.size(),
+                maxPlayers.getAsInt(),
+                config.joinQueueHold()
+            );
+            if (position > 0) {
+                disconnect.accept(
+                    QUEUED_MESSAGE_PREFIX +
+                        position +
+                        " in the queue. Reconnect within " +
+                        JoinQueue.STALE_AFTER.toMinutes() +
+                        " minutes to keep your place; a free slot is held for " +
+                        config.joinQueueHoldSeconds() +
+                        " seconds."
+                );
+                return false;
+            }
+        }
+        markOnline(playerUuid);
+        return true;
+    }
+
+    public void onDisconnect(UUID playerUuid) {
+        if (onlinePlayers.remove(playerUuid)) {
+            DiscordConfig config = configuration.get();
+            if (config.enableJoinQueue()) {
+                // hold the slot for the head of the queue
+                joinQueue.refresh(
+                    onlinePlayers.size(),
+                    maxPlayers.getAsInt(),
+                    config.joinQueueHold()
+                );
+            }
+            onlineCountChanged.run();
+        }
+    }
+
+    /** The join queue after handing out any slots freed since the last call. */
+    public JoinQueue.Snapshot joinQueueSnapshot() {
+        DiscordConfig config = configuration.get();
+        joinQueue.refresh(onlinePlayers.size(), maxPlayers.getAsInt(), config.joinQueueHold());
+        return joinQueue.snapshot();
+    }
+
+    public int onlineCount() {
+        return onlinePlayers.size();
+    }
+
+    private void markOnline(UUID playerUuid) {
+        if (onlinePlayers.add(playerUuid)) {
+            onlineCountChanged.run();
+        }
+    }
+
+    private String buildWhitelistInstructions(UUID playerUuid, DiscordConfig config) {
+        String guildInstruction = config.hasGuildId()
+            ? " in the configured Discord server"
+            : " in our Discord server";
+        try {
+            String code = whitelistCodeService.ensureCode(playerUuid);
+            return "Use Discord to run /whitelist " +
+                code +
+                " to whitelist yourself" +
+                guildInstruction +
+                ".";
+        } catch (RuntimeException ex) {
+            logger
+                .atWarning()
+                .log(
+                    "Failed to generate whitelist code for %s: %s",
+                    playerUuid,
+                    ex.getMessage()
+                );
+            return "We could not generate a whitelist code at this time. Please contact staff so they can assist you with the /whitelist command" +
+                guildInstruction +
+                ".";
+        }
+    }
+}
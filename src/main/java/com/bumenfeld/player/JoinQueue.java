@@ -0,0 +1,224 @@
+package com.bumenfeld.player;
+
+import com.bumenfeld.metrics.Counter;
+import com.bumenfeld.metrics.MetricsRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Players admitted by the whitelist who found the server full, in the
+ * order they first tried. A player keeps their ticket across reconnects,
+ * so their position only ever moves forward.
+ *
+ * <p>Whenever a slot is free the oldest waiting player gets it reserved
+ * for {@code hold}; everybody else, queued or not, is turned away until it
+ * is claimed or the hold runs out. Reserved players therefore always sit
+ * ahead of waiting ones. A waiting player who has not tried again for
+ * {@link #STALE_AFTER} loses their place.
+ *
+ * <p>Positions are counted by walking the queue, which is fine for the few
+ * hundred players a full server is likely to hold back.
+ */
+public final class JoinQueue {
+
+    public static final Duration STALE_AFTER = Duration.ofMinutes(5);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // by ticket, i.e. by first attempt
+    private final TreeMap<Long, Entry> order = new TreeMap<>();
+    private final Map<UUID, Entry> byPlayer = new HashMap<>();
+    private final Counter queued;
+    private final Counter admittedFromQueue;
+    private final Counter expired;
+    private long nextTicket;
+    private int reserved;
+    // bumped whenever a position or reservation changes
+    private long version;
+
+    public JoinQueue(MetricsRegistry metrics) {
+        Objects.requireNonNull(metrics, "metrics");
+        this.queued = metrics.counter(
+            "join_queue_entered",
+            "Players queued because the server was full"
+        );
+        this.admittedFromQueue = metrics.counter(
+            "join_queue_admitted",
+            "Queued players who claimed a reserved slot"
+        );
+        this.expired = metrics.counter(
+            "join_queue_expired",
+            "Queued players dropped for not reconnecting or not claiming their slot"
+        );
+        metrics.gauge("join_queue_size", "Players in the join queue", this::size);
+    }
+
+    /**
+     * Admits {@code playerUuid} or queues them.
+     *
+     * @param maxPlayers server capacity; {@code 0} or less admits everyone
+     * @return {@code 0} when admitted, otherwise the player's 1-based
+     *     position among waiting players
+     */
+    public int tryEnter(
+        UUID playerUuid,
+        int onlinePlayers,
+        int maxPlayers,
+        Duration hold
+    ) {
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            refresh(onlinePlayers, maxPlayers, hold, now);
+            Entry entry = byPlayer.get(playerUuid);
+            if (maxPlayers <= 0) {
+                if (entry != null) {
+                    remove(entry);
+                }
+                return 0;
+            }
+            if (entry != null && entry.reserved) {
+                remove(entry);
+                admittedFromQueue.increment();
+                return 0;
+            }
+            if (entry == null) {
+                // after refresh a free slot means nobody is waiting
+                if (freeSlots(onlinePlayers, maxPlayers) > 0) {
+                    return 0;
+                }
+                entry = new Entry(playerUuid, nextTicket++);
+                order.put(entry.ticket, entry);
+                byPlayer.put(playerUuid, entry);
+                queued.increment();
+                version++;
+            }
+            entry.lastSeen = now;
+            return order.headMap(entry.ticket).size() - reserved + 1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reserves freed slots for the head of the queue and drops stale
+     * entries. Called when a player leaves and before every snapshot.
+     */
+    public void refresh(int onlinePlayers, int maxPlayers, Duration hold) {
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            refresh(onlinePlayers, maxPlayers, hold, now);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Everyone queued, head first; reserved players come before waiting ones. */
+    public Snapshot snapshot() {
+        lock.lock();
+        try {
+            List<Waiting> players = new ArrayList<>(order.size());
+            int position = 0;
+            for (Entry entry : order.values()) {
+                boolean slotReady = entry.reserved;
+                players.add(new Waiting(entry.playerUuid, slotReady ? 0 : ++position, slotReady));
+            }
+            return new Snapshot(version, List.copyOf(players));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return order.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void refresh(int onlinePlayers, int maxPlayers, Duration hold, long now) {
+        long holdNanos = hold.toNanos();
+        long staleNanos = STALE_AFTER.toNanos();
+        Iterator<Entry> entries = order.values().iterator();
+        while (entries.hasNext()) {
+            Entry entry = entries.next();
+            boolean lapsed = entry.reserved
+                ? now - entry.reservedAt >= holdNanos
+                : now - entry.lastSeen >= staleNanos;
+            if (lapsed) {
+                entries.remove();
+                byPlayer.remove(entry.playerUuid);
+                if (entry.reserved) {
+                    reserved--;
+                }
+                expired.increment();
+                version++;
+            }
+        }
+        if (maxPlayers <= 0) {
+            // capacity unknown: tryEnter admits everyone and the rest go stale
+            return;
+        }
+        int free = freeSlots(onlinePlayers, maxPlayers);
+        // reserved entries form the head, so waiting ones are reached in order
+        for (Entry entry : order.values()) {
+            if (free <= 0) {
+                break;
+            }
+            if (!entry.reserved) {
+                entry.reserved = true;
+                entry.reservedAt = now;
+                reserved++;
+                version++;
+                free--;
+            }
+        }
+    }
+
+    private void remove(Entry entry) {
+        order.remove(entry.ticket);
+        byPlayer.remove(entry.playerUuid);
+        if (entry.reserved) {
+            reserved--;
+        }
+        version++;
+    }
+
+    private int freeSlots(int onlinePlayers, int maxPlayers) {
+        return maxPlayers - onlinePlayers - reserved;
+    }
+
+    /**
+     * @param position 1-based among waiting players; {@code 0} once a slot
+     *     is held for the player
+     */
+    public record Waiting(UUID playerUuid, int position, boolean slotReady) {}
+
+    /** The queue at one point; {@code version} changes whenever it does. */
+    public record Snapshot(long version, List<Waiting> players) {}
+
+    private static final class Entry {
+
+        private final UUID playerUuid;
+        private final long ticket;
+        private long lastSeen;
+        private boolean reserved;
+        // System.nanoTime() when the slot was reserved, which may be negative
+        private long reservedAt;
+
+        private Entry(UUID playerUuid, long ticket) {
+            this.playerUuid = playerUuid;
+            this.ticket = ticket;
+        }
+    }
+}
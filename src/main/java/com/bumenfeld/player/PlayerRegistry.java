@@ -0,0 +1,120 @@
+package com.bumenfeld.player;
+
+import com.hypixel.hytale.server.core.universe.PlayerRef;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Incrementally maintained index of online players by world. Updated from the
+ * lifecycle events in {@code DiscordCompanion} so that targeted lookups never
+ * have to scan the whole universe. Permission groups are not indexed: no event
+ * reports a rank change, so they are resolved when an announcement is sent.
+ */
+public final class PlayerRegistry {
+
+    private final Map<UUID, Entry> players = new ConcurrentHashMap<>();
+    private final Map<String, Set<UUID>> byWorld = new ConcurrentHashMap<>();
+
+    /** Records that {@code playerRef} entered {@code worldName}, replacing any previous world. */
+    public void onWorldJoin(PlayerRef playerRef, String worldName) {
+        Objects.requireNonNull(playerRef, "playerRef");
+        UUID playerUuid = playerRef.getUuid();
+        Entry next = new Entry(playerRef, worldName);
+        Entry previous = players.put(playerUuid, next);
+        if (previous != null) {
+            unindex(playerUuid, previous);
+        }
+        index(playerUuid, next);
+    }
+
+    public void onDisconnect(UUID playerUuid) {
+        Entry previous = players.remove(playerUuid);
+        if (previous != null) {
+            unindex(playerUuid, previous);
+        }
+    }
+
+    public List<PlayerRef> inWorld(String worldName) {
+        return resolve(byWorld.get(normalize(worldName)));
+    }
+
+    public Collection<Entry> online() {
+        return players.values();
+    }
+
+    public Entry get(UUID playerUuid) {
+        return players.get(playerUuid);
+    }
+
+    public int size() {
+        return players.size();
+    }
+
+    private List<PlayerRef> resolve(Set<UUID> members) {
+        if (members == null || members.isEmpty()) {
+            return List.of();
+        }
+        List<PlayerRef> resolved = new ArrayList<>(members.size());
+        for (UUID member : members) {
+            Entry entry = players.get(member);
+            if (entry != null) {
+                resolved.add(entry.playerRef());
+            }
+        }
+        return resolved;
+    }
+
+    private void index(UUID playerUuid, Entry entry) {
+        String worldKey = normalize(entry.world());
+        if (worldKey != null) {
+            addMember(byWorld, worldKey, playerUuid);
+        }
+    }
+
+    private void unindex(UUID playerUuid, Entry entry) {
+        String worldKey = normalize(entry.world());
+        if (worldKey != null) {
+            removeMember(byWorld, worldKey, playerUuid);
+        }
+    }
+
+    private static void addMember(
+        Map<String, Set<UUID>> index,
+        String key,
+        UUID playerUuid
+    ) {
+        // mutate inside compute so a concurrent removeMember cannot drop the set under us
+        index.compute(key, (ignored, members) -> {
+            Set<UUID> target = members != null ? members : ConcurrentHashMap.newKeySet();
+            target.add(playerUuid);
+            return target;
+        });
+    }
+
+    private static void removeMember(
+        Map<String, Set<UUID>> index,
+        String key,
+        UUID playerUuid
+    ) {
+        index.computeIfPresent(key, (ignored, members) -> {
+            members.remove(playerUuid);
+            return members.isEmpty() ? null : members;
+        });
+    }
+
+    private static String normalize(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    public record Entry(PlayerRef playerRef, String world) {}
+}
@@ -1,9 +1,33 @@
 package com.bumenfeld.util;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 public final class ReflectionUtil {
 
+    // field lookups are resolved once per (class, name); misses are cached too
+    private static final ClassValue<Map<String, Optional<MethodHandle>>> FIELD_GETTERS =
+        new ClassValue<>() {
+            @Override
+            protected Map<String, Optional<MethodHandle>> computeValue(Class<?> type) {
+                return new ConcurrentHashMap<>();
+            }
+        };
+    private static final ClassValue<Map<String, Optional<MethodHandle>>> METHODS =
+        new ClassValue<>() {
+            @Override
+            protected Map<String, Optional<MethodHandle>> computeValue(Class<?> type) {
+                return new ConcurrentHashMap<>();
+            }
+        };
+
     private ReflectionUtil() {
         // utility class
     }
@@ -13,14 +37,98 @@ public final class ReflectionUtil {
         Object object,
         String fieldName
     ) {
-        try {
-            Field field = object.getClass().getDeclaredField(fieldName);
-            field.setAccessible(true);
-            @SuppressWarnings("unchecked")
-            T value = (T) field.get(object);
-            return value;
-        } catch (NoSuchFieldException | IllegalAccessException e) {
+        Optional<MethodHandle> getter = fieldGetter(object.getClass(), fieldName);
+        if (getter.isEmpty()) {
             return null;
         }
+        Object value = get(getter.get(), object);
+        return classZ.isInstance(value) ? classZ.cast(value) : null;
+    }
+
+    /** Reads a field through a getter from {@link #fieldGetter}. */
+    public static Object get(MethodHandle getter, Object object) {
+        return invoke(getter, object);
+    }
+
+    /**
+     * Calls a handle from {@link #fieldGetter} or {@link #noArgMethod} on
+     * {@code object}; a {@code void} method yields {@code null}.
+     */
+    public static Object invoke(MethodHandle handle, Object object) {
+        try {
+            return (Object) handle.invokeExact(object);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Reflective call failed", e);
+        }
+    }
+
+    /**
+     * Instance field {@code fieldName} declared on {@code owner} or one of its
+     * superclasses, as a cached getter of type {@code (Object)Object}. Empty
+     * when there is no such field or it cannot be made accessible.
+     */
+    public static Optional<MethodHandle> fieldGetter(Class<?> owner, String fieldName) {
+        return FIELD_GETTERS
+            .get(owner)
+            .computeIfAbsent(fieldName, name -> resolveFieldGetter(owner, name));
+    }
+
+    /**
+     * Parameterless instance method {@code methodName} declared on
+     * {@code owner} or one of its superclasses, as a cached handle of type
+     * {@code (Object)Object}.
+     */
+    public static Optional<MethodHandle> noArgMethod(Class<?> owner, String methodName) {
+        return METHODS
+            .get(owner)
+            .computeIfAbsent(methodName, name -> resolveNoArgMethod(owner, name));
+    }
+
+    private static Optional<MethodHandle> resolveNoArgMethod(Class<?> owner, String methodName) {
+        for (Class<?> type = owner; type != null; type = type.getSuperclass()) {
+            try {
+                Method method = type.getDeclaredMethod(methodName);
+                if (Modifier.isStatic(method.getModifiers())) {
+                    return Optional.empty();
+                }
+                method.setAccessible(true);
+                return Optional.of(
+                    MethodHandles
+                        .lookup()
+                        .unreflect(method)
+                        .asType(MethodType.methodType(Object.class, Object.class))
+                );
+            } catch (NoSuchMethodException ignored) {
+                // keep walking up the hierarchy
+            } catch (IllegalAccessException | RuntimeException e) {
+                return Optional.empty();
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static Optional<MethodHandle> resolveFieldGetter(Class<?> owner, String fieldName) {
+        for (Class<?> type = owner; type != null; type = type.getSuperclass()) {
+            try {
+                Field field = type.getDeclaredField(fieldName);
+                if (Modifier.isStatic(field.getModifiers())) {
+                    return Optional.empty();
+                }
+                field.setAccessible(true);
+                return Optional.of(
+                    MethodHandles
+                        .lookup()
+                        .unreflectGetter(field)
+                        .asType(MethodType.methodType(Object.class, Object.class))
+                );
+            } catch (NoSuchFieldException ignored) {
+                // keep walking up the hierarchy
+            } catch (IllegalAccessException | RuntimeException e) {
+                return Optional.empty();
+            }
+        }
+        return Optional.empty();
     }
 }
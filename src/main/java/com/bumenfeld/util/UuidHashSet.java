@@ -0,0 +1,228 @@
+package com.bumenfeld.util;
+
+import java.util.Collection;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Immutable open-addressing set of UUIDs stored as two primitive longs per
+ * slot, probed linearly. Lookups touch one contiguous {@code long[]} with no
+ * boxing or {@code equals} calls, so they are safe to run lock-free from any
+ * thread; writers build a new instance with {@link #with(UUID)} or
+ * {@link #without(UUID)} and publish it.
+ *
+ * <p>The all-zero slot marks "empty", so the nil UUID is tracked by a flag.
+ */
+public final class UuidHashSet {
+
+    private static final int MIN_CAPACITY = 16;
+    private static final UuidHashSet EMPTY = new UuidHashSet(new long[MIN_CAPACITY * 2], 0, false);
+
+    // msb at 2 * slot, lsb at 2 * slot + 1
+    private final long[] slots;
+    private final int mask;
+    private final int size;
+    private final boolean containsNil;
+
+    private UuidHashSet(long[] slots, int size, boolean containsNil) {
+        this.slots = slots;
+        this.mask = slots.length / 2 - 1;
+        this.size = size;
+        this.containsNil = containsNil;
+    }
+
+    public static UuidHashSet empty() {
+        return EMPTY;
+    }
+
+    public static UuidHashSet of(Collection<UUID> uuids) {
+        Objects.requireNonNull(uuids, "uuids");
+        long[] slots = new long[capacityFor(uuids.size()) * 2];
+        int size = 0;
+        boolean containsNil = false;
+        for (UUID uuid : uuids) {
+            long msb = uuid.getMostSignificantBits();
+            long lsb = uuid.getLeastSignificantBits();
+            if ((msb | lsb) == 0) {
+                if (!containsNil) {
+                    containsNil = true;
+                    size++;
+                }
+            } else if (insert(slots, msb, lsb)) {
+                size++;
+            }
+        }
+        return new UuidHashSet(slots, size, containsNil);
+    }
+
+    public boolean contains(UUID uuid) {
+        return contains(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    public boolean contains(long msb, long lsb) {
+        if ((msb | lsb) == 0) {
+            return containsNil;
+        }
+        int slot = hash(msb, lsb) & mask;
+        while (true) {
+            long slotMsb = slots[slot * 2];
+            long slotLsb = slots[slot * 2 + 1];
+            if (slotMsb == msb && slotLsb == lsb) {
+                return true;
+            }
+            if ((slotMsb | slotLsb) == 0) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Visits every member in table order; the set cannot change underneath. */
+    public void forEach(Consumer<UUID> action) {
+        if (containsNil) {
+            action.accept(new UUID(0L, 0L));
+        }
+        for (int slot = 0; slot <= mask; slot++) {
+            long msb = slots[slot * 2];
+            long lsb = slots[slot * 2 + 1];
+            if ((msb | lsb) != 0) {
+                action.accept(new UUID(msb, lsb));
+            }
+        }
+    }
+
+    /** @return this set when {@code uuid} is already present, otherwise a copy including it */
+    public UuidHashSet with(UUID uuid) {
+        if (contains(uuid)) {
+            return this;
+        }
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        if ((msb | lsb) == 0) {
+            return new UuidHashSet(slots, size + 1, true);
+        }
+        int capacity = capacityFor(size + 1);
+        long[] copy = capacity == mask + 1 ? slots.clone() : rehash(capacity);
+        insert(copy, msb, lsb);
+        return new UuidHashSet(copy, size + 1, containsNil);
+    }
+
+    /** Bulk variant of {@link #with(UUID)} that copies the table once. */
+    public UuidHashSet withAll(Collection<UUID> uuids) {
+        Objects.requireNonNull(uuids, "uuids");
+        if (uuids.isEmpty()) {
+            return this;
+        }
+        long[] copy = rehash(capacityFor(size + uuids.size()));
+        int newSize = size;
+        boolean newContainsNil = containsNil;
+        for (UUID uuid : uuids) {
+            long msb = uuid.getMostSignificantBits();
+            long lsb = uuid.getLeastSignificantBits();
+            if ((msb | lsb) == 0) {
+                if (!newContainsNil) {
+                    newContainsNil = true;
+                    newSize++;
+                }
+            } else if (insert(copy, msb, lsb)) {
+                newSize++;
+            }
+        }
+        return new UuidHashSet(copy, newSize, newContainsNil);
+    }
+
+    /** @return this set when {@code uuid} is absent, otherwise a copy without it */
+    public UuidHashSet without(UUID uuid) {
+        if (!contains(uuid)) {
+            return this;
+        }
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        if ((msb | lsb) == 0) {
+            return new UuidHashSet(slots, size - 1, false);
+        }
+        long[] copy = slots.clone();
+        int copyMask = copy.length / 2 - 1;
+        int hole = hash(msb, lsb) & copyMask;
+        while (copy[hole * 2] != msb || copy[hole * 2 + 1] != lsb) {
+            hole = (hole + 1) & copyMask;
+        }
+        // backward-shift deletion keeps every remaining probe chain unbroken
+        int next = hole;
+        while (true) {
+            next = (next + 1) & copyMask;
+            long nextMsb = copy[next * 2];
+            long nextLsb = copy[next * 2 + 1];
+            if ((nextMsb | nextLsb) == 0) {
+                break;
+            }
+            int home = hash(nextMsb, nextLsb) & copyMask;
+            boolean reachable = hole <= next
+                ? hole < home && home <= next
+                : hole < home || home <= next;
+            if (!reachable) {
+                copy[hole * 2] = nextMsb;
+                copy[hole * 2 + 1] = nextLsb;
+                hole = next;
+            }
+        }
+        copy[hole * 2] = 0L;
+        copy[hole * 2 + 1] = 0L;
+        return new UuidHashSet(copy, size - 1, containsNil);
+    }
+
+    private long[] rehash(int capacity) {
+        long[] resized = new long[capacity * 2];
+        for (int slot = 0; slot <= mask; slot++) {
+            long msb = slots[slot * 2];
+            long lsb = slots[slot * 2 + 1];
+            if ((msb | lsb) != 0) {
+                insert(resized, msb, lsb);
+            }
+        }
+        return resized;
+    }
+
+    private static boolean insert(long[] slots, long msb, long lsb) {
+        int tableMask = slots.length / 2 - 1;
+        int slot = hash(msb, lsb) & tableMask;
+        while (true) {
+            long slotMsb = slots[slot * 2];
+            long slotLsb = slots[slot * 2 + 1];
+            if ((slotMsb | slotLsb) == 0) {
+                slots[slot * 2] = msb;
+                slots[slot * 2 + 1] = lsb;
+                return true;
+            }
+            if (slotMsb == msb && slotLsb == lsb) {
+                return false;
+            }
+            slot = (slot + 1) & tableMask;
+        }
+    }
+
+    /** Power of two keeping the load factor at or below one half. */
+    private static int capacityFor(int entries) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < entries * 2L) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int hash(long msb, long lsb) {
+        // murmur3 fmix64; version/variant bits make raw UUID halves poor hashes
+        long h = msb ^ Long.rotateLeft(lsb, 32);
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
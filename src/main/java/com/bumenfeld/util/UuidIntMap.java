@@ -0,0 +1,175 @@
+package com.bumenfeld.util;
+
+import java.util.Arrays;
+
+/**
+ * Mutable open-addressing map from UUID to a non-negative {@code int}, with
+ * the two halves of each key in a primitive {@code long[]} like
+ * {@link UuidHashSet}. Probing is linear and removal shifts entries back, so
+ * there are no tombstones. Not thread-safe; the owner guards it.
+ *
+ * <p>A negative value marks an empty slot, so every key including the nil
+ * UUID can be stored.
+ */
+public final class UuidIntMap {
+
+    public static final int ABSENT = -1;
+
+    private static final int MIN_CAPACITY = 16;
+
+    // msb at 2 * slot, lsb at 2 * slot + 1
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    public UuidIntMap() {
+        this(0);
+    }
+
+    public UuidIntMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    /** @return the value mapped to the key, or {@link #ABSENT} */
+    public int get(long msb, long lsb) {
+        int slot = hash(msb, lsb) & mask;
+        while (true) {
+            int value = values[slot];
+            if (value < 0) {
+                return ABSENT;
+            }
+            if (keys[slot * 2] == msb && keys[slot * 2 + 1] == lsb) {
+                return value;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /** @return the previous value, or {@link #ABSENT} */
+    public int put(long msb, long lsb, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("value must be >= 0");
+        }
+        if ((size + 1) * 2L > mask + 1) {
+            resize((mask + 1) * 2);
+        }
+        int slot = hash(msb, lsb) & mask;
+        while (true) {
+            int previous = values[slot];
+            if (previous < 0) {
+                keys[slot * 2] = msb;
+                keys[slot * 2 + 1] = lsb;
+                values[slot] = value;
+                size++;
+                return ABSENT;
+            }
+            if (keys[slot * 2] == msb && keys[slot * 2 + 1] == lsb) {
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /** @return the removed value, or {@link #ABSENT} */
+    public int remove(long msb, long lsb) {
+        int hole = hash(msb, lsb) & mask;
+        while (true) {
+            if (values[hole] < 0) {
+                return ABSENT;
+            }
+            if (keys[hole * 2] == msb && keys[hole * 2 + 1] == lsb) {
+                break;
+            }
+            hole = (hole + 1) & mask;
+        }
+        int removed = values[hole];
+        // backward-shift deletion keeps every remaining probe chain unbroken
+        int next = hole;
+        while (true) {
+            next = (next + 1) & mask;
+            if (values[next] < 0) {
+                break;
+            }
+            int home = hash(keys[next * 2], keys[next * 2 + 1]) & mask;
+            boolean reachable = hole <= next
+                ? hole < home && home <= next
+                : hole < home || home <= next;
+            if (!reachable) {
+                keys[hole * 2] = keys[next * 2];
+                keys[hole * 2 + 1] = keys[next * 2 + 1];
+                values[hole] = values[next];
+                hole = next;
+            }
+        }
+        values[hole] = ABSENT;
+        size--;
+        return removed;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Visits every entry in table order; the map must not change meanwhile. */
+    public void forEach(Visitor visitor) {
+        for (int slot = 0; slot <= mask; slot++) {
+            if (values[slot] >= 0) {
+                visitor.visit(keys[slot * 2], keys[slot * 2 + 1], values[slot]);
+            }
+        }
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int slot = 0; slot < oldValues.length; slot++) {
+            if (oldValues[slot] < 0) {
+                continue;
+            }
+            long msb = oldKeys[slot * 2];
+            long lsb = oldKeys[slot * 2 + 1];
+            int target = hash(msb, lsb) & mask;
+            while (values[target] >= 0) {
+                target = (target + 1) & mask;
+            }
+            keys[target * 2] = msb;
+            keys[target * 2 + 1] = lsb;
+            values[target] = oldValues[slot];
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity * 2];
+        values = new int[capacity];
+        Arrays.fill(values, ABSENT);
+        mask = capacity - 1;
+    }
+
+    /** Power of two keeping the load factor at or below one half. */
+    private static int capacityFor(int entries) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < entries * 2L) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int hash(long msb, long lsb) {
+        // murmur3 fmix64, as in UuidHashSet
+        long h = msb ^ Long.rotateLeft(lsb, 32);
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    @FunctionalInterface
+    public interface Visitor {
+        void visit(long msb, long lsb, int value);
+    }
+}